@@ -70,10 +70,34 @@ public class AppearanceCounterController implements Initializable
 	@FXML
 	private CheckBox chkboxGetLocation;
 	@FXML
+	private CheckBox chkboxApproximateCounting;
+	@FXML
+	private CheckBox chkboxServiceBreakdown;
+	@FXML
+	private CheckBox chkboxSubnetRollup;
+	@FXML
+	private CheckBox chkboxPipeline;
+	@FXML
 	private TableView<IPInfoRowModel> tableResults;
 	@FXML
 	private TableColumn<IPInfoRowModel, Integer> columnPacketCount;
 	@FXML
+	private TableColumn<IPInfoRowModel, Integer> columnMaxOvercount;
+	@FXML
+	private TableColumn<IPInfoRowModel, Integer> columnLast10Secs;
+	@FXML
+	private TableColumn<IPInfoRowModel, Integer> columnLastMinute;
+	@FXML
+	private TableColumn<IPInfoRowModel, Integer> columnLast5Minutes;
+	@FXML
+	private TableColumn<IPInfoRowModel, Integer> columnPacketsIn;
+	@FXML
+	private TableColumn<IPInfoRowModel, Integer> columnPacketsOut;
+	@FXML
+	private TableColumn<IPInfoRowModel, Long> columnBytesIn;
+	@FXML
+	private TableColumn<IPInfoRowModel, Long> columnBytesOut;
+	@FXML
 	private TableColumn<IPInfoRowModel, String> columnIP;
 	@FXML
 	private TableColumn<IPInfoRowModel, String> columnNotes;
@@ -116,6 +140,12 @@ public class AppearanceCounterController implements Initializable
 	@FXML
 	private Button btnExportTableToCSV;
 	@FXML
+	private Button btnShowSubnets;
+	@FXML
+	private Button btnShowHistory;
+	@FXML
+	private CheckBox chkboxKeepHistory;
+	@FXML
 	private NumberTextField numFieldCaptureTimeout;
 	@FXML
 	private NumberTextField numFieldRowsToRead;
@@ -156,6 +186,36 @@ public class AppearanceCounterController implements Initializable
 		ToolTipUtilities.setTooltipProperties(geoIPTooltip, true, GUIController.defaultTooltipMaxWidth, GUIController.defaultFontSize, null);
 		chkboxGetLocation.setTooltip(geoIPTooltip);		
 		GUIController.setCommonGraphicOnLabeled(chkboxGetLocation, GUIController.CommonGraphicImages.TOOLTIP);
+
+		Tooltip approximateCountingTooltip = new Tooltip("Use this when monitoring for a long time on a busy network, where the amount of different IP addresses can grow too large to count each of them. "
+				+ "Only the IP addresses with the most packets are kept, and their packet counts may be a bit too high. The \"Max overcount\" column shows by how much at most.");
+		ToolTipUtilities.setTooltipProperties(approximateCountingTooltip, true, GUIController.defaultTooltipMaxWidth, GUIController.defaultFontSize, null);
+		chkboxApproximateCounting.setTooltip(approximateCountingTooltip);
+		GUIController.setCommonGraphicOnLabeled(chkboxApproximateCounting, GUIController.CommonGraphicImages.TOOLTIP);
+
+		Tooltip serviceBreakdownTooltip = new Tooltip("For each IP address, also counts the packets per protocol and port (such as UDP/53 or TCP/443), where the port is the one on that IP address' side. "
+				+ "Right click on any row to see them. Not available with approximate counting.");
+		ToolTipUtilities.setTooltipProperties(serviceBreakdownTooltip, true, GUIController.defaultTooltipMaxWidth, GUIController.defaultFontSize, null);
+		chkboxServiceBreakdown.setTooltip(serviceBreakdownTooltip);
+		GUIController.setCommonGraphicOnLabeled(chkboxServiceBreakdown, GUIController.CommonGraphicImages.TOOLTIP);
+
+		Tooltip subnetRollupTooltip = new Tooltip("Also adds up the packets of the IP addresses by subnet, so \"Show packet counts by subnet\" can show them for any subnet size (such as /24 or /16) when monitoring ends. "
+				+ "Takes more memory for each IP address. Not available with approximate counting.");
+		ToolTipUtilities.setTooltipProperties(subnetRollupTooltip, true, GUIController.defaultTooltipMaxWidth, GUIController.defaultFontSize, null);
+		chkboxSubnetRollup.setTooltip(subnetRollupTooltip);
+		GUIController.setCommonGraphicOnLabeled(chkboxSubnetRollup, GUIController.CommonGraphicImages.TOOLTIP);
+
+		Tooltip pipelineTooltip = new Tooltip("The capture only copies each packet to a buffer in memory, and the packets are counted by another thread, so a busy moment doesn't make the network adapter drop packets. "
+				+ "If the buffer fills up, the capture waits for it. Packets that are dropped anyway are shown in the capture status.");
+		ToolTipUtilities.setTooltipProperties(pipelineTooltip, true, GUIController.defaultTooltipMaxWidth, GUIController.defaultFontSize, null);
+		chkboxPipeline.setTooltip(pipelineTooltip);
+		GUIController.setCommonGraphicOnLabeled(chkboxPipeline, GUIController.CommonGraphicImages.TOOLTIP);
+
+		Tooltip keepHistoryTooltip = new Tooltip("Keeps the packet count of each IP address on disk, once a minute while monitoring. "
+				+ "Click \"Packet count history\" to see which IP addresses had the most packets between any two points in time, including in earlier monitoring sessions.");
+		ToolTipUtilities.setTooltipProperties(keepHistoryTooltip, true, GUIController.defaultTooltipMaxWidth, GUIController.defaultFontSize, null);
+		chkboxKeepHistory.setTooltip(keepHistoryTooltip);
+		GUIController.setCommonGraphicOnLabeled(chkboxKeepHistory, GUIController.CommonGraphicImages.TOOLTIP);
 		
 		GUIController.setCommonGraphicOnLabeled(btnConfigCaptureHotkey, GUIController.CommonGraphicImages.HOTKEY);
 		GUIController.setGraphicForLabeledControl(btnStart, startWWWImageLocation, ContentDisplay.LEFT);
@@ -218,6 +278,26 @@ public class AppearanceCounterController implements Initializable
 		return chkboxGetLocation;
 	}
 
+	public CheckBox getChkboxApproximateCounting()
+	{
+		return chkboxApproximateCounting;
+	}
+
+	public CheckBox getChkboxServiceBreakdown()
+	{
+		return chkboxServiceBreakdown;
+	}
+
+	public CheckBox getChkboxSubnetRollup()
+	{
+		return chkboxSubnetRollup;
+	}
+
+	public CheckBox getChkboxPipeline()
+	{
+		return chkboxPipeline;
+	}
+
 	public TableView<IPInfoRowModel> getTableResults()
 	{
 		return tableResults;
@@ -228,6 +308,46 @@ public class AppearanceCounterController implements Initializable
 		return columnPacketCount;
 	}
 
+	public TableColumn<IPInfoRowModel, Integer> getColumnMaxOvercount()
+	{
+		return columnMaxOvercount;
+	}
+
+	public TableColumn<IPInfoRowModel, Integer> getColumnLast10Secs()
+	{
+		return columnLast10Secs;
+	}
+
+	public TableColumn<IPInfoRowModel, Integer> getColumnLastMinute()
+	{
+		return columnLastMinute;
+	}
+
+	public TableColumn<IPInfoRowModel, Integer> getColumnLast5Minutes()
+	{
+		return columnLast5Minutes;
+	}
+
+	public TableColumn<IPInfoRowModel, Integer> getColumnPacketsIn()
+	{
+		return columnPacketsIn;
+	}
+
+	public TableColumn<IPInfoRowModel, Integer> getColumnPacketsOut()
+	{
+		return columnPacketsOut;
+	}
+
+	public TableColumn<IPInfoRowModel, Long> getColumnBytesIn()
+	{
+		return columnBytesIn;
+	}
+
+	public TableColumn<IPInfoRowModel, Long> getColumnBytesOut()
+	{
+		return columnBytesOut;
+	}
+
 	public TableColumn<IPInfoRowModel, String> getColumnIP()
 	{
 		return columnIP;
@@ -347,4 +467,19 @@ public class AppearanceCounterController implements Initializable
 	{
 		return btnExportTableToCSV;
 	}
+
+	public Button getBtnShowSubnets()
+	{
+		return btnShowSubnets;
+	}
+
+	public Button getBtnShowHistory()
+	{
+		return btnShowHistory;
+	}
+
+	public CheckBox getChkboxKeepHistory()
+	{
+		return chkboxKeepHistory;
+	}
 }
@@ -19,9 +19,13 @@
 package whowhatwhere.controller.appearancecounter;
 
 import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,6 +46,7 @@ import javafx.beans.value.ChangeListener;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.concurrent.Task;
+import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
@@ -64,7 +69,9 @@ import javafx.scene.input.Clipboard;
 import javafx.scene.input.ClipboardContent;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
+import javafx.scene.layout.VBox;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import numbertextfield.NumberTextField;
@@ -78,18 +85,31 @@ import whowhatwhere.controller.commands.Commands;
 import whowhatwhere.controller.ipnotes.IPNotes;
 import whowhatwhere.controller.visualtrace.VisualTraceUI;
 import whowhatwhere.model.PropertiesByType;
+import whowhatwhere.model.appearancehistory.AppearanceHistory;
+import whowhatwhere.model.appearancehistory.AppearanceHistorySettings;
 import whowhatwhere.model.geoipresolver.GeoIPInfo;
 import whowhatwhere.model.geoipresolver.GeoIPResolver;
+import whowhatwhere.model.networksniffer.BackpressurePolicy;
 import whowhatwhere.model.networksniffer.CaptureStartListener;
+import whowhatwhere.model.networksniffer.CaptureStatistics;
+import whowhatwhere.model.networksniffer.CaptureStatisticsListener;
 import whowhatwhere.model.networksniffer.NICInfo;
 import whowhatwhere.model.networksniffer.NetworkSniffer;
+import whowhatwhere.model.networksniffer.PipelineSettings;
 import whowhatwhere.model.networksniffer.SupportedProtocols;
 import whowhatwhere.model.networksniffer.appearancecounter.AppearanceCounterResults;
+import whowhatwhere.model.networksniffer.appearancecounter.ApproximateCountingSettings;
+import whowhatwhere.model.networksniffer.appearancecounter.AppearanceCounterPacketHandler;
+import whowhatwhere.model.networksniffer.appearancecounter.DistinctPeers;
 import whowhatwhere.model.networksniffer.appearancecounter.IpAppearancesCounter;
+import whowhatwhere.model.networksniffer.appearancecounter.ServiceAppearancesCounter;
+import whowhatwhere.model.networksniffer.appearancecounter.SubnetAppearances;
+import whowhatwhere.model.networksniffer.appearancecounter.SubnetAppearancesCounter;
+import whowhatwhere.model.networksniffer.appearancecounter.TopAppearancesListener;
 import whowhatwhere.model.tts.MaryTTS;
 import whowhatwhere.model.tts.TTSVoice;
 
-public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSettings, ConfigurableTTS
+public class AppearanceCounterUI implements CaptureStartListener, CaptureStatisticsListener, TopAppearancesListener, LoadAndSaveSettings, ConfigurableTTS
 {
 	private final static Logger logger = Logger.getLogger(AppearanceCounterUI.class.getPackage().getName());
 	
@@ -102,6 +122,11 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 	private final static String propsNumFieldCaptureTimeout = "numFieldCaptureTimeout";
 	private final static String propsChkboxGetLocation = "chkboxGetLocation";
 	private final static String propsChkboxPing = "chkboxPing";
+	private final static String propsChkboxApproximateCounting = "chkboxApproximateCounting";
+	private final static String propsChkboxServiceBreakdown = "chkboxServiceBreakdown";
+	private final static String propsChkboxSubnetRollup = "chkboxSubnetRollup";
+	private final static String propsChkboxPipeline = "chkboxPipeline";
+	private final static String propsChkboxKeepHistory = "chkboxKeepHistory";
 	private final static String propsNumFieldPingTimeout = "numFieldPingTimeout";
 	private final static String propsChkboxUseCaptureHotkey = "chkboxUseCaptureHotkey";
 	private final static String propsCaptureHotkeyKeycode = "captureHotkeyKeycode";
@@ -118,6 +143,13 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 	private final static int maxPingTimeout = 3000;
 	private final static int numOfPingThreads = 10;
 	private final static long pingCompletionTimeoutSeconds = 30;
+	private final static int liveResultsRows = 20; //rows shown while monitoring, before the full results are ready
+	private final static int defaultIp4PrefixLength = 24;
+	private final static int defaultIp6PrefixLength = 64;
+	private final static String appearanceHistoryDirectory = Main.appFilesLocation + "Appearance history";
+	private final static String historyTimeFormat = "yyyy-MM-dd HH:mm";
+	private final static int defaultHistoryRows = 20;
+	private final static long millisInHour = 60 * 60 * 1000;
 	private final static String statusIdle = "Status: Idle";
 	private final static String statusGettingReady = "Status: Getting ready to start monitoring...";
 	private final static String statusCapturing = "Status: Monitoring...";
@@ -142,9 +174,24 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 	private AnchorPane paneUseTTS;
 	private CheckBox chkboxPing;
 	private CheckBox chkboxGetLocation;
+	private CheckBox chkboxApproximateCounting;
+	private CheckBox chkboxServiceBreakdown;
+	private CheckBox chkboxSubnetRollup;
+	private CheckBox chkboxPipeline;
 	private TableView<IPInfoRowModel> tableResults;
 	private Button btnExportTableToCSV;
+	private Button btnShowSubnets;
+	private Button btnShowHistory;
+	private CheckBox chkboxKeepHistory;
 	private TableColumn<IPInfoRowModel, Integer> columnPacketCount;
+	private TableColumn<IPInfoRowModel, Integer> columnMaxOvercount;
+	private TableColumn<IPInfoRowModel, Integer> columnLast10Secs;
+	private TableColumn<IPInfoRowModel, Integer> columnLastMinute;
+	private TableColumn<IPInfoRowModel, Integer> columnLast5Minutes;
+	private TableColumn<IPInfoRowModel, Integer> columnPacketsIn;
+	private TableColumn<IPInfoRowModel, Integer> columnPacketsOut;
+	private TableColumn<IPInfoRowModel, Long> columnBytesIn;
+	private TableColumn<IPInfoRowModel, Long> columnBytesOut;
 	private TableColumn<IPInfoRowModel, String> columnIP;
 	private TableColumn<IPInfoRowModel, String> columnNotes;
 	private TableColumn<IPInfoRowModel, String> columnOwner;
@@ -188,6 +235,10 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 	private Duration captureTimerExpiresIn;
 	private ScheduledThreadPoolExecutor displayTimer;
 	private PingManager pingManager = null;
+	private String captureStatus = statusIdle; //the status shown during a capture, without the statistics
+	private String captureStatistics = "";
+	private String distinctPeersStatus = ""; //the estimated amount of distinct addresses during a capture
+	private SubnetAppearances lastSubnetAppearances; //of the last results, null if they weren't rolled up by subnet
 		
 	
 	private Runnable captureHotkeyPressed = () ->
@@ -220,6 +271,9 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 		initColumnListForTTS();
 		initButtonHandlers();
 		
+		sniffer.setCaptureStatisticsListener(this);
+		sniffer.setTopAppearancesListener(this, liveResultsRows);
+		
 		guiController.setNumberTextFieldsValidationUI(guiController.getTabWWW(), numFieldCaptureTimeout, numFieldPingTimeout, numFieldRowsToRead);
 	}
 	
@@ -235,9 +289,24 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 		paneUseTTS = controller.getPaneUseTTS();
 		chkboxPing = controller.getChkboxPing();
 		chkboxGetLocation = controller.getChkboxGetLocation();
+		chkboxApproximateCounting = controller.getChkboxApproximateCounting();
+		chkboxServiceBreakdown = controller.getChkboxServiceBreakdown();
+		chkboxSubnetRollup = controller.getChkboxSubnetRollup();
+		chkboxPipeline = controller.getChkboxPipeline();
 		tableResults = controller.getTableResults();
 		btnExportTableToCSV = controller.getBtnExportTableToCSV();
+		btnShowSubnets = controller.getBtnShowSubnets();
+		btnShowHistory = controller.getBtnShowHistory();
+		chkboxKeepHistory = controller.getChkboxKeepHistory();
 		columnPacketCount = controller.getColumnPacketCount();
+		columnMaxOvercount = controller.getColumnMaxOvercount();
+		columnLast10Secs = controller.getColumnLast10Secs();
+		columnLastMinute = controller.getColumnLastMinute();
+		columnLast5Minutes = controller.getColumnLast5Minutes();
+		columnPacketsIn = controller.getColumnPacketsIn();
+		columnPacketsOut = controller.getColumnPacketsOut();
+		columnBytesIn = controller.getColumnBytesIn();
+		columnBytesOut = controller.getColumnBytesOut();
 		columnIP = controller.getColumnIP();
 		columnNotes = controller.getColumnNotes();
 		columnOwner = controller.getColumnOwner();
@@ -271,6 +340,8 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 	{
 		btnStart.setOnAction(e -> startButtonPressed());
 		btnStop.setOnAction(e -> stopButtonPressed());
+		btnShowSubnets.setOnAction(e -> showSubnetAppearances());
+		btnShowHistory.setOnAction(e -> showAppearanceHistory());
 
 		btnConfigCaptureHotkey.setOnAction(hotkeyRegistry.generateEventHandlerForHotkeyConfigButton(captureHotkeyID));
 
@@ -278,6 +349,11 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 		chkboxPing.selectedProperty().addListener((ov, old_val, new_val) -> numFieldPingTimeout.setDisable(!new_val));
 
 		chkboxTimedCapture.selectedProperty().addListener((ov, old_val, new_val) -> numFieldCaptureTimeout.setDisable(!new_val));
+		chkboxApproximateCounting.selectedProperty().addListener((ov, old_val, new_val) -> //services and subnets are only counted exactly
+		{
+			chkboxServiceBreakdown.setDisable(new_val);
+			chkboxSubnetRollup.setDisable(new_val);
+		});
 
 		chkboxFilterProtocols.selectedProperty().addListener((ov, old_val, new_val) -> paneProtocolBoxes.setDisable(!new_val));
 		
@@ -356,6 +432,14 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 		columnPing.setComparator(Comparator.comparingInt((String value) -> stringPingResultToInt(value)));
 
 		columnPacketCount.setCellValueFactory(new PropertyValueFactory<>("packetCount"));
+		columnMaxOvercount.setCellValueFactory(new PropertyValueFactory<>("maxOvercount"));
+		columnLast10Secs.setCellValueFactory(new PropertyValueFactory<>("packetsLast10Secs"));
+		columnLastMinute.setCellValueFactory(new PropertyValueFactory<>("packetsLastMinute"));
+		columnLast5Minutes.setCellValueFactory(new PropertyValueFactory<>("packetsLast5Minutes"));
+		columnPacketsIn.setCellValueFactory(new PropertyValueFactory<>("packetsIn"));
+		columnPacketsOut.setCellValueFactory(new PropertyValueFactory<>("packetsOut"));
+		columnBytesIn.setCellValueFactory(new PropertyValueFactory<>("bytesIn"));
+		columnBytesOut.setCellValueFactory(new PropertyValueFactory<>("bytesOut"));
 		columnIP.setCellValueFactory(new PropertyValueFactory<>("ipAddress"));
 		columnNotes.setCellValueFactory(new PropertyValueFactory<>("notes"));
 		columnOwner.setCellValueFactory(new PropertyValueFactory<>("owner"));
@@ -522,7 +606,11 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 					new Alert(AlertType.ERROR, "A trace is already in progress, please wait for it to finish and try again.").showAndWait();
 			});
 
-			ContextMenu rowMenu = new ContextMenu(copyMenu, getGeoIPinfo, sendIPToQuickPing, pingIP, traceIP);
+			MenuItem showServices = new MenuItem("Show packet counts per protocol and port");
+			showServices.setOnAction(event -> showServicesOfRow(row.getItem()));
+
+			ContextMenu rowMenu = new ContextMenu(copyMenu, getGeoIPinfo, sendIPToQuickPing, pingIP, traceIP, showServices);
+			rowMenu.setOnShowing(event -> showServices.setDisable(row.getItem().getServices().isEmpty())); //they are only counted when chkboxServiceBreakdown was selected
 
 			// only display context menu for non-null items:
 			row.contextMenuProperty().bind(Bindings.when(Bindings.isNotNull(row.itemProperty())).then(rowMenu).otherwise((ContextMenu) null));
@@ -531,6 +619,170 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 		});
 	}
 
+	private void showServicesOfRow(IPInfoRowModel row)
+	{
+		String ip = row.ipAddressProperty().getValue();
+		TableView<ServiceAppearancesCounter> servicesTable = new TableView<>(FXCollections.observableArrayList(row.getServices())); //already sorted, most packets first
+		TableColumn<ServiceAppearancesCounter, String> columnService = new TableColumn<>("Protocol/Port");
+		TableColumn<ServiceAppearancesCounter, Integer> columnServicePackets = new TableColumn<>("Packet Count");
+
+		columnService.setCellValueFactory(new PropertyValueFactory<>("serviceName"));
+		columnService.setPrefWidth(150);
+		columnServicePackets.setCellValueFactory(new PropertyValueFactory<>("amountOfAppearances"));
+		columnServicePackets.setPrefWidth(115);
+		servicesTable.getColumns().add(columnService);
+		servicesTable.getColumns().add(columnServicePackets);
+		servicesTable.setPrefHeight(300);
+
+		Alert servicesWindow = new Alert(AlertType.INFORMATION);
+		servicesWindow.initOwner(guiController.getStage());
+		servicesWindow.setTitle("Packets per protocol and port");
+		servicesWindow.setHeaderText("Packets exchanged with " + ip + ", by protocol and the port on " + ip + "'s side");
+		servicesWindow.getDialogPane().setContent(servicesTable);
+		servicesWindow.show();
+	}
+
+	/**
+	 * Shows the appearances of the last results rolled up by subnet, with prefix lengths that can be changed while it's shown
+	 */
+	private void showSubnetAppearances()
+	{
+		SubnetAppearances subnetAppearances = lastSubnetAppearances;
+		NumberTextField numFieldIp4PrefixLength = new NumberTextField();
+		NumberTextField numFieldIp6PrefixLength = new NumberTextField();
+		Button btnRollUp = new Button("Roll up");
+		TableView<SubnetAppearancesCounter> subnetsTable = new TableView<>();
+		TableColumn<SubnetAppearancesCounter, String> columnSubnet = new TableColumn<>("Subnet");
+		TableColumn<SubnetAppearancesCounter, Integer> columnSubnetPackets = new TableColumn<>("Packet Count");
+
+		numFieldIp4PrefixLength.setMinValue(0);
+		numFieldIp4PrefixLength.setMaxValue(AppearanceCounterPacketHandler.ip4MaxPrefixLength);
+		numFieldIp4PrefixLength.setText(String.valueOf(defaultIp4PrefixLength));
+		numFieldIp4PrefixLength.setPrefWidth(40);
+		numFieldIp6PrefixLength.setMinValue(0);
+		numFieldIp6PrefixLength.setMaxValue(AppearanceCounterPacketHandler.ip6MaxPrefixLength);
+		numFieldIp6PrefixLength.setText(String.valueOf(defaultIp6PrefixLength));
+		numFieldIp6PrefixLength.setPrefWidth(40);
+
+		columnSubnet.setCellValueFactory(new PropertyValueFactory<>("subnet"));
+		columnSubnet.setPrefWidth(250);
+		columnSubnetPackets.setCellValueFactory(new PropertyValueFactory<>("amountOfAppearances"));
+		columnSubnetPackets.setPrefWidth(115);
+		subnetsTable.getColumns().add(columnSubnet);
+		subnetsTable.getColumns().add(columnSubnetPackets);
+		subnetsTable.setPrefHeight(400);
+		subnetsTable.setPlaceholder(new Label("No packets to show"));
+
+		btnRollUp.setOnAction(event ->
+		{
+			if (numFieldIp4PrefixLength.getValidProperty().get() && numFieldIp6PrefixLength.getValidProperty().get())
+				subnetsTable.setItems(FXCollections.observableArrayList(subnetAppearances.getAppearances(numFieldIp4PrefixLength.getValue(), numFieldIp6PrefixLength.getValue())));
+		});
+		btnRollUp.fire();
+
+		HBox prefixLengths = new HBox(10, new Label("IPv4 prefix length (such as 24 or 16):"), numFieldIp4PrefixLength, new Label("IPv6 prefix length (such as 64 or 48):"), numFieldIp6PrefixLength, btnRollUp);
+		prefixLengths.setAlignment(Pos.CENTER_LEFT);
+
+		Alert subnetsWindow = new Alert(AlertType.INFORMATION);
+		subnetsWindow.initOwner(guiController.getStage());
+		subnetsWindow.setTitle("Packets by subnet");
+		subnetsWindow.setHeaderText("Packets exchanged with each subnet, to find the top talkers that spread their traffic over many addresses");
+		subnetsWindow.getDialogPane().setContent(new VBox(10, prefixLengths, subnetsTable));
+		subnetsWindow.show();
+	}
+
+	/**
+	 * Shows the IP addresses with the most packets between two points in time, as kept on disk by this and earlier captures with {@code chkboxKeepHistory} selected
+	 */
+	private void showAppearanceHistory()
+	{
+		SimpleDateFormat timeFormat = new SimpleDateFormat(historyTimeFormat);
+		long now = System.currentTimeMillis();
+		TextField textFrom = new TextField(timeFormat.format(new Date(now - millisInHour)));
+		TextField textTo = new TextField(timeFormat.format(new Date(now)));
+		NumberTextField numFieldRows = new NumberTextField();
+		Button btnQuery = new Button("Show");
+		Label labelQueryError = new Label();
+		TableView<IpAppearancesCounter> historyTable = new TableView<>();
+		TableColumn<IpAppearancesCounter, String> columnHistoryIP = new TableColumn<>("IP Address");
+		TableColumn<IpAppearancesCounter, Integer> columnHistoryPackets = new TableColumn<>("Packet Count");
+
+		textFrom.setPrefWidth(120);
+		textTo.setPrefWidth(120);
+		numFieldRows.setMinValue(1);
+		numFieldRows.setText(String.valueOf(defaultHistoryRows));
+		numFieldRows.setPrefWidth(50);
+
+		columnHistoryIP.setCellValueFactory(new PropertyValueFactory<>("ip"));
+		columnHistoryIP.setPrefWidth(250);
+		columnHistoryPackets.setCellValueFactory(new PropertyValueFactory<>("amountOfAppearances"));
+		columnHistoryPackets.setPrefWidth(115);
+		historyTable.getColumns().add(columnHistoryIP);
+		historyTable.getColumns().add(columnHistoryPackets);
+		historyTable.setPrefHeight(400);
+		historyTable.setPlaceholder(new Label("No packets to show"));
+
+		btnQuery.setOnAction(event ->
+		{
+			labelQueryError.setText("");
+
+			if (!numFieldRows.getValidProperty().get())
+				return;
+
+			long from, to;
+
+			try
+			{
+				from = timeFormat.parse(textFrom.getText()).getTime();
+				to = timeFormat.parse(textTo.getText()).getTime() + 60 * 1000 - 1; //until the end of that minute
+			}
+			catch (ParseException pe)
+			{
+				labelQueryError.setText("Times must be in the format " + historyTimeFormat);
+				return;
+			}
+
+			int rows = numFieldRows.getValue();
+
+			Task<List<IpAppearancesCounter>> queryTask = new Task<List<IpAppearancesCounter>>()
+			{
+				@Override
+				protected List<IpAppearancesCounter> call() throws Exception //reads every segment file in the range, so it's kept off the GUI thread
+				{
+					return new AppearanceHistory(new File(appearanceHistoryDirectory)).getTopAppearances(from, to, rows);
+				}
+
+				@Override
+				protected void succeeded()
+				{
+					historyTable.setItems(FXCollections.observableArrayList(getValue()));
+					btnQuery.setDisable(false);
+				}
+
+				@Override
+				protected void failed()
+				{
+					labelQueryError.setText(getException() instanceof IOException ? "No history was kept yet" : "Unable to read the history");
+					btnQuery.setDisable(false);
+				}
+			};
+
+			btnQuery.setDisable(true);
+			new Thread(queryTask).start();
+		});
+		btnQuery.fire();
+
+		HBox query = new HBox(10, new Label("Top"), numFieldRows, new Label("IP addresses from"), textFrom, new Label("to"), textTo, btnQuery);
+		query.setAlignment(Pos.CENTER_LEFT);
+
+		Alert historyWindow = new Alert(AlertType.INFORMATION);
+		historyWindow.initOwner(guiController.getStage());
+		historyWindow.setTitle("Packet count history");
+		historyWindow.setHeaderText("IP addresses with the most packets between two points in time, from all monitoring sessions that kept a history");
+		historyWindow.getDialogPane().setContent(new VBox(10, query, labelQueryError, historyTable));
+		historyWindow.show();
+	}
+
 	private void startButtonPressed()
 	{
 		StringBuilder errbuf = new StringBuilder();
@@ -541,6 +793,11 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 			pingManager.shutdown(); //if a previous session is still pinging results, stop it
 		
 		changeGuiTemplate(true);
+		sniffer.setApproximateCountingSettings(chkboxApproximateCounting.isSelected() ? new ApproximateCountingSettings() : null);
+		sniffer.setServiceBreakdownEnabled(chkboxServiceBreakdown.isSelected());
+		sniffer.setSubnetRollupEnabled(chkboxSubnetRollup.isSelected());
+		sniffer.setPipelineSettings(chkboxPipeline.isSelected() ? new PipelineSettings(BackpressurePolicy.BLOCK) : null);
+		sniffer.setAppearanceHistorySettings(chkboxKeepHistory.isSelected() ? new AppearanceHistorySettings(new File(appearanceHistoryDirectory)) : null);
 
 		Task<Void> workerThreadTask = new Task<Void>()
 		{
@@ -588,7 +845,10 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 					isAHotkeyResult = false;
 				}
 
-				labelStatus.setText(statusIdle);
+				String approximationSummary = results.getApproximationSummary();
+
+				labelStatus.setText(statusIdle + " (last results: " + results.getDistinctPeers().getOverall() + " distinct IP addresses" + (approximationSummary == null ? "" : ", " + approximationSummary) + ")");
+				lastSubnetAppearances = results.getSubnetAppearances();
 				changeGuiTemplate(false);
 			}
 
@@ -760,6 +1020,14 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 		Map<String, String> colMapping = new HashMap<>();
 		
 		colMapping.put(getColumnHeaderText(columnPacketCount), ipInfoRowModel.packetCountProperty().getValue().toString());
+		colMapping.put(getColumnHeaderText(columnMaxOvercount), ipInfoRowModel.maxOvercountProperty().getValue().toString());
+		colMapping.put(getColumnHeaderText(columnLast10Secs), ipInfoRowModel.packetsLast10SecsProperty().getValue().toString());
+		colMapping.put(getColumnHeaderText(columnLastMinute), ipInfoRowModel.packetsLastMinuteProperty().getValue().toString());
+		colMapping.put(getColumnHeaderText(columnLast5Minutes), ipInfoRowModel.packetsLast5MinutesProperty().getValue().toString());
+		colMapping.put(getColumnHeaderText(columnPacketsIn), ipInfoRowModel.packetsInProperty().getValue().toString());
+		colMapping.put(getColumnHeaderText(columnPacketsOut), ipInfoRowModel.packetsOutProperty().getValue().toString());
+		colMapping.put(getColumnHeaderText(columnBytesIn), ipInfoRowModel.bytesInProperty().getValue().toString());
+		colMapping.put(getColumnHeaderText(columnBytesOut), ipInfoRowModel.bytesOutProperty().getValue().toString());
 		colMapping.put(getColumnHeaderText(columnNotes), ipInfoRowModel.notesProperty().getValue());
 		colMapping.put(getColumnHeaderText(columnIP), ipInfoRowModel.ipAddressProperty().getValue());
 		colMapping.put(getColumnHeaderText(columnOwner), ipInfoRowModel.ownerProperty().getValue());
@@ -796,13 +1064,18 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 		btnStart.setDisable(duringCapture);
 		btnStop.setDisable(!duringCapture);
 		paneCaptureOptions.setDisable(duringCapture);
+		chkboxKeepHistory.setDisable(duringCapture);
 		btnExportTableToCSV.setDisable(duringCapture);
+		btnShowSubnets.setDisable(duringCapture || lastSubnetAppearances == null);
 
 		if (duringCapture)
 		{
+			lastSubnetAppearances = null;
 			tableResults.setItems(null);
 			tableResults.setPlaceholder(new Label(""));
-			labelStatus.setText(statusGettingReady);
+			captureStatistics = "";
+			distinctPeersStatus = "";
+			setCaptureStatus(statusGettingReady);
 		}
 	}
 
@@ -913,7 +1186,8 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 
 			notes = ipNotes.getIPNote(ip, emptyNotesString);
 
-			row = new IPInfoRowModel(id, amountOfAppearances, ip, notes, owner, ping, country, region, city);
+			row = new IPInfoRowModel(id, amountOfAppearances, ipCounter.getMaxOvercount(), ipCounter.getRecentAppearances(), ipCounter.getPacketsIn(), ipCounter.getPacketsOut(), ipCounter.getBytesIn(), ipCounter.getBytesOut(), ip, notes, owner, ping, country, region, city);
+			row.setServices(ipCounter.getServices());
 
 			if (performPings)
 				pingManager.addPingTask(row);
@@ -932,7 +1206,7 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 	{
 		Platform.runLater(() ->
 		{
-			labelStatus.setText(statusCapturing);
+			setCaptureStatus(statusCapturing);
 
 			if (isTimedTaskRunning)
 			{
@@ -965,13 +1239,63 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 							status = statusResults;
 						}
 						
-						labelStatus.setText(status);
+						setCaptureStatus(status);
 					});
 				}, 0, 1, TimeUnit.SECONDS);
 			}
 		});
 	}
 
+	@Override
+	public void captureStatisticsUpdated(CaptureStatistics statistics)
+	{
+		Platform.runLater(() ->
+		{
+			if (btnStop.isDisabled()) //the capture is stopping or already stopped, don't override its status
+				return;
+
+			captureStatistics = " (" + statistics + ")";
+			setCaptureStatus(captureStatus);
+		});
+	}
+
+	@Override
+	public void topAppearancesUpdated(List<IpAppearancesCounter> topAppearances, DistinctPeers distinctPeers)
+	{
+		Platform.runLater(() ->
+		{
+			if (btnStop.isDisabled()) //the capture is stopping or already stopped, the full results are on their way
+				return;
+
+			ObservableList<IPInfoRowModel> data = FXCollections.observableArrayList();
+			int id = 1;
+
+			for (IpAppearancesCounter ipCounter : topAppearances) //no GeoIP or ping while monitoring, they are only fetched for the full results
+			{
+				String ip = ipCounter.getIp();
+
+				IPInfoRowModel row = new IPInfoRowModel(id++, ipCounter.getAmountOfAppearances(), ipCounter.getMaxOvercount(), ipCounter.getRecentAppearances(), ipCounter.getPacketsIn(), ipCounter.getPacketsOut(), ipCounter.getBytesIn(), ipCounter.getBytesOut(), ip, ipNotes.getIPNote(ip, emptyNotesString), "", "", "", "", "");
+
+				row.setServices(ipCounter.getServices());
+				data.add(row);
+			}
+
+			tableResults.setItems(data);
+
+			distinctPeersStatus = " - " + distinctPeers.getOverall() + " distinct IP addresses, " + distinctPeers.getInLatestMinute() + " in the current minute";
+			setCaptureStatus(captureStatus);
+		});
+	}
+
+	/**
+	 * Shows {@code status}, followed by the latest capture statistics
+	 */
+	private void setCaptureStatus(String status)
+	{
+		captureStatus = status;
+		labelStatus.setText(status + captureStatistics + distinctPeersStatus);
+	}
+
 	private void setCaptureHotkeyAndPane(Properties props)
 	{
 		int captureHotkeyKeyCode = PropertiesByType.getIntProperty(props, propsCaptureHotkeyKeycode);
@@ -1009,6 +1333,11 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 		numFieldCaptureTimeout.setText(PropertiesByType.getStringProperty(props, propsNumFieldCaptureTimeout));
 		chkboxGetLocation.setSelected(PropertiesByType.getBoolProperty(props, propsChkboxGetLocation, false));
 		chkboxPing.setSelected(PropertiesByType.getBoolProperty(props, propsChkboxPing, false));
+		chkboxApproximateCounting.setSelected(PropertiesByType.getBoolProperty(props, propsChkboxApproximateCounting, false));
+		chkboxServiceBreakdown.setSelected(PropertiesByType.getBoolProperty(props, propsChkboxServiceBreakdown, false));
+		chkboxSubnetRollup.setSelected(PropertiesByType.getBoolProperty(props, propsChkboxSubnetRollup, false));
+		chkboxPipeline.setSelected(PropertiesByType.getBoolProperty(props, propsChkboxPipeline, false));
+		chkboxKeepHistory.setSelected(PropertiesByType.getBoolProperty(props, propsChkboxKeepHistory, false));
 		numFieldPingTimeout.setText(PropertiesByType.getStringProperty(props, propsNumFieldPingTimeout));
 	}
 
@@ -1064,6 +1393,11 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 		props.put(propsNumFieldCaptureTimeout, numFieldCaptureTimeout.getText());
 		props.put(propsChkboxGetLocation, ((Boolean) chkboxGetLocation.isSelected()).toString());
 		props.put(propsChkboxPing, ((Boolean) chkboxPing.isSelected()).toString());
+		props.put(propsChkboxApproximateCounting, ((Boolean) chkboxApproximateCounting.isSelected()).toString());
+		props.put(propsChkboxServiceBreakdown, ((Boolean) chkboxServiceBreakdown.isSelected()).toString());
+		props.put(propsChkboxSubnetRollup, ((Boolean) chkboxSubnetRollup.isSelected()).toString());
+		props.put(propsChkboxPipeline, ((Boolean) chkboxPipeline.isSelected()).toString());
+		props.put(propsChkboxKeepHistory, ((Boolean) chkboxKeepHistory.isSelected()).toString());
 		props.put(propsNumFieldPingTimeout, numFieldPingTimeout.getText());
 		props.put(propsChkboxUseCaptureHotkey, ((Boolean) chkboxUseCaptureHotkey.isSelected()).toString());
 		props.put(propsCaptureHotkeyKeycode, Integer.toString(hotkeyRegistry.getHotkeyKeycode(captureHotkeyID)));
@@ -1093,4 +1427,4 @@ public class AppearanceCounterUI implements CaptureStartListener, LoadAndSaveSet
 	{
 		return tts.getCurrentVoice();
 	}
-}
\ No newline at end of file
+}
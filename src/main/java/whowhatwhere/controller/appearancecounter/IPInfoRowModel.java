@@ -19,18 +19,31 @@
 package whowhatwhere.controller.appearancecounter;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import javafx.beans.property.SimpleIntegerProperty;
+import javafx.beans.property.SimpleLongProperty;
 import javafx.beans.property.SimpleStringProperty;
 
+import whowhatwhere.model.networksniffer.appearancecounter.ServiceAppearancesCounter;
+
 public class IPInfoRowModel
 {
 	private Integer rowID;
+	private List<ServiceAppearancesCounter> services = Collections.emptyList(); //not a column, shown on demand
 
 //	ANY NEW PROPERTY THAT IS ADDED, MUST ALSO BE ADDED TO AppearanceCounterUI.mapColumnNameToPropertyValue() method
 	
 	private SimpleIntegerProperty packetCount;
+	private SimpleIntegerProperty maxOvercount;
+	private SimpleIntegerProperty packetsLast10Secs;
+	private SimpleIntegerProperty packetsLastMinute;
+	private SimpleIntegerProperty packetsLast5Minutes;
+	private SimpleIntegerProperty packetsIn;
+	private SimpleIntegerProperty packetsOut;
+	private SimpleLongProperty bytesIn;
+	private SimpleLongProperty bytesOut;
 	private SimpleStringProperty ipAddress;
 	private SimpleStringProperty notes;
 	private SimpleStringProperty owner;
@@ -39,11 +52,27 @@ public class IPInfoRowModel
 	private SimpleStringProperty region;
 	private SimpleStringProperty city;
 
-	public IPInfoRowModel(Integer rowID, Integer packetCount, String ipAddress, String notes, String owner, String ping, String country, String region, String city)
+	/**
+	 * @param maxOvercount - by how much {@code packetCount} may be too high, when it was counted approximately
+	 * @param recentPacketCounts - packet counts in the last 10 seconds, minute and 5 minutes, as counted by {@code AppearanceCounterPacketHandler}. Can be empty.
+	 * @param packetsIn - packets this address sent to us
+	 * @param packetsOut - packets we sent to this address
+	 * @param bytesIn - bytes this address sent to us, as seen on the wire
+	 * @param bytesOut - bytes we sent to this address, as seen on the wire
+	 */
+	public IPInfoRowModel(Integer rowID, Integer packetCount, int maxOvercount, int[] recentPacketCounts, int packetsIn, int packetsOut, long bytesIn, long bytesOut, String ipAddress, String notes, String owner, String ping, String country, String region, String city)
 	{
 		this.rowID = rowID;
 		
 		this.packetCount = new SimpleIntegerProperty(packetCount);
+		this.maxOvercount = new SimpleIntegerProperty(maxOvercount);
+		this.packetsLast10Secs = new SimpleIntegerProperty(recentPacketCounts.length > 0 ? recentPacketCounts[0] : 0);
+		this.packetsLastMinute = new SimpleIntegerProperty(recentPacketCounts.length > 1 ? recentPacketCounts[1] : 0);
+		this.packetsLast5Minutes = new SimpleIntegerProperty(recentPacketCounts.length > 2 ? recentPacketCounts[2] : 0);
+		this.packetsIn = new SimpleIntegerProperty(packetsIn);
+		this.packetsOut = new SimpleIntegerProperty(packetsOut);
+		this.bytesIn = new SimpleLongProperty(bytesIn);
+		this.bytesOut = new SimpleLongProperty(bytesOut);
 		this.ipAddress = new SimpleStringProperty(ipAddress);
 		this.notes = new SimpleStringProperty(notes);
 		this.owner = new SimpleStringProperty(owner);
@@ -55,9 +84,22 @@ public class IPInfoRowModel
 	
 	public List<String> getFullRowDataAsOrderedList() //the items must be set in the order in which they will appear in the table
 	{
-		return Arrays.asList(packetCount.getValue().toString(), ipAddress.getValue(), notes.getValue(), owner.getValue(), ping.getValue(), country.getValue(), region.getValue(), city.getValue());
+		return Arrays.asList(packetCount.getValue().toString(), maxOvercount.getValue().toString(), packetsLast10Secs.getValue().toString(), packetsLastMinute.getValue().toString(), packetsLast5Minutes.getValue().toString(), packetsIn.getValue().toString(), packetsOut.getValue().toString(), bytesIn.getValue().toString(), bytesOut.getValue().toString(), ipAddress.getValue(), notes.getValue(), owner.getValue(), ping.getValue(), country.getValue(), region.getValue(), city.getValue());
 	}
 	
+	/**
+	 * @return the packet counts of this address per service, most packets first. Empty if they weren't counted.
+	 */
+	public List<ServiceAppearancesCounter> getServices()
+	{
+		return services;
+	}
+
+	public void setServices(List<ServiceAppearancesCounter> services)
+	{
+		this.services = services;
+	}
+
 	public SimpleIntegerProperty packetCountProperty()
 	{
 		return packetCount;
@@ -68,6 +110,46 @@ public class IPInfoRowModel
 		this.packetCount.setValue(packetCount);
 	}
 
+	public SimpleIntegerProperty maxOvercountProperty()
+	{
+		return maxOvercount;
+	}
+
+	public SimpleIntegerProperty packetsLast10SecsProperty()
+	{
+		return packetsLast10Secs;
+	}
+
+	public SimpleIntegerProperty packetsLastMinuteProperty()
+	{
+		return packetsLastMinute;
+	}
+
+	public SimpleIntegerProperty packetsLast5MinutesProperty()
+	{
+		return packetsLast5Minutes;
+	}
+
+	public SimpleIntegerProperty packetsInProperty()
+	{
+		return packetsIn;
+	}
+
+	public SimpleIntegerProperty packetsOutProperty()
+	{
+		return packetsOut;
+	}
+
+	public SimpleLongProperty bytesInProperty()
+	{
+		return bytesIn;
+	}
+
+	public SimpleLongProperty bytesOutProperty()
+	{
+		return bytesOut;
+	}
+
 	public SimpleStringProperty ipAddressProperty()
 	{
 		return ipAddress;
@@ -35,6 +35,7 @@ import whowhatwhere.controller.GUIController;
 import whowhatwhere.model.networksniffer.PacketDirection;
 import whowhatwhere.model.networksniffer.SupportedProtocols;
 import whowhatwhere.model.networksniffer.watchdog.OutputMethod;
+import whowhatwhere.model.networksniffer.watchdog.RateThreshold.ThresholdUnit;
 
 public class ListAddEditController implements Initializable
 {
@@ -108,6 +109,16 @@ public class ListAddEditController implements Initializable
 	private Button btnConfigTTS;
 	@FXML
 	private Label labelBytes;
+	@FXML
+	private CheckBox chkboxRateThreshold;
+	@FXML
+	private NumberTextField numFieldRateAmount;
+	@FXML
+	private ComboBox<ThresholdUnit> comboRateUnit;
+	@FXML
+	private NumberTextField numFieldRateWindow;
+	@FXML
+	private CheckBox chkboxRatePerSourceIP;
 	
 	
 	@Override
@@ -325,4 +336,29 @@ public class ListAddEditController implements Initializable
 	{
 		return btnConfigTTS;
 	}
+
+	public CheckBox getChkboxRateThreshold()
+	{
+		return chkboxRateThreshold;
+	}
+
+	public NumberTextField getNumFieldRateAmount()
+	{
+		return numFieldRateAmount;
+	}
+
+	public ComboBox<ThresholdUnit> getComboRateUnit()
+	{
+		return comboRateUnit;
+	}
+
+	public NumberTextField getNumFieldRateWindow()
+	{
+		return numFieldRateWindow;
+	}
+
+	public CheckBox getChkboxRatePerSourceIP()
+	{
+		return chkboxRatePerSourceIP;
+	}
 }
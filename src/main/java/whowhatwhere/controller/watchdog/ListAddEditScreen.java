@@ -47,6 +47,8 @@ import whowhatwhere.model.networksniffer.PacketDirection;
 import whowhatwhere.model.networksniffer.SupportedProtocols;
 import whowhatwhere.model.networksniffer.watchdog.OutputMethod;
 import whowhatwhere.model.networksniffer.watchdog.PacketTypeToMatch;
+import whowhatwhere.model.networksniffer.watchdog.RateThreshold;
+import whowhatwhere.model.networksniffer.watchdog.RateThreshold.ThresholdUnit;
 import whowhatwhere.model.tts.MaryTTS;
 import whowhatwhere.view.secondaryfxmlscreen.SecondaryFXMLScreen;
 
@@ -88,6 +90,11 @@ public class ListAddEditScreen extends SecondaryFXMLScreen
 	private Button btnPreview;
 	private Label labelNoteCount;
 	private Button btnConfigTTS;
+	private CheckBox chkboxRateThreshold;
+	private NumberTextField numFieldRateAmount;
+	private ComboBox<ThresholdUnit> comboRateUnit;
+	private NumberTextField numFieldRateWindow;
+	private CheckBox chkboxRatePerSourceIP;
 
 	private Map<String, List<String>> ipNotesToIPListMap;
 	private boolean isIPFieldValid = false;
@@ -146,6 +153,11 @@ public class ListAddEditScreen extends SecondaryFXMLScreen
 		btnPreview = watchdogListAddEditController.getBtnPreview();
 		labelNoteCount = watchdogListAddEditController.getLabelNoteCount();
 		btnConfigTTS = watchdogListAddEditController.getBtnConfigTTS();
+		chkboxRateThreshold = watchdogListAddEditController.getChkboxRateThreshold();
+		numFieldRateAmount = watchdogListAddEditController.getNumFieldRateAmount();
+		comboRateUnit = watchdogListAddEditController.getComboRateUnit();
+		numFieldRateWindow = watchdogListAddEditController.getNumFieldRateWindow();
+		chkboxRatePerSourceIP = watchdogListAddEditController.getChkboxRatePerSourceIP();
 	}
 
 	private void initControlsBehavior(boolean isEdit)
@@ -155,7 +167,7 @@ public class ListAddEditScreen extends SecondaryFXMLScreen
 		setTooltipsForControls();
 		setValidatorsForControls();
 		setButtonHandlers(isEdit);
-		GUIController.setNumberTextFieldValidationUI(numFieldDstPortLeft, numFieldDstPortRight, numFieldPacketSizeLeft, numFieldPacketSizeRight, numFieldSrcPortLeft, numFieldSrcPortRight);
+		GUIController.setNumberTextFieldValidationUI(numFieldDstPortLeft, numFieldDstPortRight, numFieldPacketSizeLeft, numFieldPacketSizeRight, numFieldSrcPortLeft, numFieldSrcPortRight, numFieldRateAmount, numFieldRateWindow);
 	}
 	
 	private String getValueFromTextField(CheckBox chkbox, TextField field)
@@ -210,6 +222,22 @@ public class ListAddEditScreen extends SecondaryFXMLScreen
 		
 		return new NumberRangeValues(comboValue, leftValue, rightValue);			
 	}
+	
+	private RateThreshold getRateThresholdFromControls()
+	{
+		ThresholdUnit unit = getValueFromComboBox(chkboxRateThreshold, comboRateUnit);
+		
+		if (unit == null) //unchecked checkbox
+			return null;
+		
+		Integer amount = numFieldRateAmount.getValue();
+		Integer windowInSecs = numFieldRateWindow.getValue();
+		
+		if (amount == null || windowInSecs == null)
+			throw new IllegalArgumentException("Rate: Both the amount and the number of seconds must be entered.");
+		
+		return new RateThreshold(amount, unit, windowInSecs, chkboxRatePerSourceIP.isSelected());
+	}
 
 	private void setButtonHandlers(boolean isEdit)
 	{
@@ -237,8 +265,9 @@ public class ListAddEditScreen extends SecondaryFXMLScreen
 				NumberRangeValues srcPort = getValuesFromNumberRangeControls(chkboxSrcPort, comboSrcPort, numFieldSrcPortLeft, numFieldSrcPortRight);
 				NumberRangeValues dstPort = getValuesFromNumberRangeControls(chkboxDstPort, comboDstPort, numFieldDstPortLeft, numFieldDstPortRight);
 				NumberRangeValues packetSize = getValuesFromNumberRangeControls(chkboxPacketSize, comboPacketSize, numFieldPacketSizeLeft, numFieldPacketSizeRight);
+				RateThreshold rateThreshold = getRateThresholdFromControls();
 				
-				if (isAllNull(ip, ipNotes, packetDirection, protocol, srcPort, dstPort, packetSize)) //not checking netmask since netmask without ip is meaningless
+				if (isAllNull(ip, ipNotes, packetDirection, protocol, srcPort, dstPort, packetSize)) //not checking netmask since netmask without ip is meaningless, and a rate on its own doesn't say which packets to count
 					throw new IllegalArgumentException("At least one condition must be set.");
 				
 				if (textMessage.getText().isEmpty())
@@ -246,7 +275,7 @@ public class ListAddEditScreen extends SecondaryFXMLScreen
 				
 				List<String> ipsFromipNotes = ipNotes == null ? null : ipNotesToIPListMap.get(ipNotes);
 				
-				PacketTypeToMatch newItem = new PacketTypeToMatch(ip, netmask, ipNotes, ipsFromipNotes, packetDirection, protocol, srcPort, dstPort, packetSize, textMessage.getText(), comboOutputMethod.getValue());
+				PacketTypeToMatch newItem = new PacketTypeToMatch(ip, netmask, ipNotes, ipsFromipNotes, packetDirection, protocol, srcPort, dstPort, packetSize, rateThreshold, textMessage.getText(), comboOutputMethod.getValue());
 				
 				if (isEdit)
 				{
@@ -431,6 +460,13 @@ public class ListAddEditScreen extends SecondaryFXMLScreen
 		chkboxSrcPort.selectedProperty().addListener(generateNumberRangeChangeListenerForCheckboxSelected(comboSrcPort, numFieldSrcPortLeft, numFieldSrcPortRight));
 		chkboxDstPort.selectedProperty().addListener(generateNumberRangeChangeListenerForCheckboxSelected(comboDstPort, numFieldDstPortLeft, numFieldDstPortRight));
 		chkboxPacketSize.selectedProperty().addListener(generateNumberRangeChangeListenerForCheckboxSelected(comboPacketSize, numFieldPacketSizeLeft, numFieldPacketSizeRight));
+		chkboxRateThreshold.selectedProperty().addListener((ChangeListener<Boolean>) (observable, oldValue, newValue) ->
+		{
+			numFieldRateAmount.setDisable(!newValue);
+			comboRateUnit.setDisable(!newValue);
+			numFieldRateWindow.setDisable(!newValue);
+			chkboxRatePerSourceIP.setDisable(!newValue);
+		});
 
 		comboProtocol.valueProperty().addListener((ChangeListener<SupportedProtocols>) (observable, oldValue, newValue) ->
 		{
@@ -606,6 +642,16 @@ public class ListAddEditScreen extends SecondaryFXMLScreen
 			}
 		}
 
+		RateThreshold rateThreshold = selectedItem.getRateThresholdValue();
+		if (rateThreshold != null)
+		{
+			chkboxRateThreshold.setSelected(true);
+			numFieldRateAmount.setText(String.valueOf(rateThreshold.getAmount()));
+			comboRateUnit.getSelectionModel().select(rateThreshold.getUnit());
+			numFieldRateWindow.setText(String.valueOf(rateThreshold.getWindowInSecs()));
+			chkboxRatePerSourceIP.setSelected(rateThreshold.isPerSourceIP());
+		}
+
 		textMessage.setText(selectedItem.getMessageTextValue());
 		comboOutputMethod.getSelectionModel().select(selectedItem.getMessageOutputMethodValue());
 	}
@@ -623,6 +669,9 @@ public class ListAddEditScreen extends SecondaryFXMLScreen
 		comboSrcPort.setItems(obsListNumberRange);
 		comboDstPort.setItems(FXCollections.observableArrayList(obsListNumberRange));
 		comboPacketSize.setItems(obsListNumberRange);
+		
+		comboRateUnit.setItems(FXCollections.observableArrayList(ThresholdUnit.values()));
+		comboRateUnit.getSelectionModel().select(ThresholdUnit.PACKETS);
 	}
 
 	public Button getBtnDone()
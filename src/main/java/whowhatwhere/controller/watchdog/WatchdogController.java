@@ -82,6 +82,8 @@ public class WatchdogController implements Initializable
 	@FXML
 	private TableColumn<PacketTypeToMatch, String> columnDstPort;
 	@FXML
+	private TableColumn<PacketTypeToMatch, String> columnRateThreshold;
+	@FXML
 	private Button btnMoveUp;
 	@FXML
 	private Button btnMoveDown;
@@ -118,6 +120,8 @@ public class WatchdogController implements Initializable
 	@FXML
 	private Label labelRuleList;
 	@FXML
+	private Label labelStatus;
+	@FXML
 	private ScrollPane scrollPane;
 	
 
@@ -197,6 +201,7 @@ public class WatchdogController implements Initializable
 		columnSrcPort.setCellValueFactory(new PropertyValueFactory<PacketTypeToMatch, String>("srcPort"));
 		columnDstPort.setCellValueFactory(new PropertyValueFactory<PacketTypeToMatch, String>("dstPort"));
 		columnPacketSize.setCellValueFactory(new PropertyValueFactory<PacketTypeToMatch, String>("packetSize"));
+		columnRateThreshold.setCellValueFactory(new PropertyValueFactory<PacketTypeToMatch, String>("rateThreshold"));
 
 		columnIP.setCellFactory(new Callback<TableColumn<PacketTypeToMatch, String>, TableCell<PacketTypeToMatch, String>>()
 		{
@@ -357,4 +362,9 @@ public class WatchdogController implements Initializable
 	{
 		return paneTableAndControls;
 	}
+
+	public Label getLabelStatus()
+	{
+		return labelStatus;
+	}
 }
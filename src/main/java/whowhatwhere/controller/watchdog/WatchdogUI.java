@@ -20,11 +20,7 @@ package whowhatwhere.controller.watchdog;
 
 import java.io.File;
 import java.io.FileFilter;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -67,6 +63,8 @@ import whowhatwhere.controller.GUIController;
 import whowhatwhere.controller.HotkeyRegistry;
 import whowhatwhere.controller.LoadAndSaveSettings;
 import whowhatwhere.model.PropertiesByType;
+import whowhatwhere.model.networksniffer.CaptureStatistics;
+import whowhatwhere.model.networksniffer.CaptureStatisticsListener;
 import whowhatwhere.model.networksniffer.NICInfo;
 import whowhatwhere.model.networksniffer.NetworkSniffer;
 import whowhatwhere.model.networksniffer.watchdog.PacketTypeToMatch;
@@ -75,7 +73,7 @@ import whowhatwhere.model.networksniffer.watchdog.WatchdogMessage;
 import whowhatwhere.model.tts.MaryTTS;
 import whowhatwhere.model.tts.TTSVoice;
 
-public class WatchdogUI implements WatchdogListener, LoadAndSaveSettings, ConfigurableTTS
+public class WatchdogUI implements WatchdogListener, CaptureStatisticsListener, LoadAndSaveSettings, ConfigurableTTS
 {
 	private enum RowMovementDirection {UP, DOWN}
 	
@@ -90,6 +88,8 @@ public class WatchdogUI implements WatchdogListener, LoadAndSaveSettings, Config
 	
 	private final static String hotkeyID = "Watchdog hotkey";
 	private final static String voiceForTTS = GUIController.defaultTTSVoiceName;
+	private final static String statusIdle = "Status: Idle";
+	private final static String statusWatching = "Status: Watching...";
 
 	private final static String propsChkboxHotkey = "chkboxWatchdogHotkey";
 	private final static String propsHotkeyKeycode = "watchdogHotkeyKeycode";
@@ -116,6 +116,7 @@ public class WatchdogUI implements WatchdogListener, LoadAndSaveSettings, Config
 	private AnchorPane paneWatchdogConfig;
 	private TableView<PacketTypeToMatch> table;
 	private AnchorPane paneTableAndControls;
+	private Label labelStatus;
 
 	private ObservableList<PacketTypeToMatch> ruleList;
 	private MaryTTS tts;
@@ -156,6 +157,8 @@ public class WatchdogUI implements WatchdogListener, LoadAndSaveSettings, Config
 		ruleList = table.getItems();
 		initButtonHandlers();
 		
+		sniffer.setCaptureStatisticsListener(this);
+		
 		guiController.setNumberTextFieldsValidationUI(guiController.getTabWatchdog(), numFieldCooldown);
 	}
 
@@ -176,6 +179,7 @@ public class WatchdogUI implements WatchdogListener, LoadAndSaveSettings, Config
 		paneWatchdogConfig = controller.getPaneConfig();
 		table = controller.getTable();
 		paneTableAndControls = controller.getPaneTableAndControls();
+		labelStatus = controller.getLabelStatus();
 }
 
 	private void initButtonHandlers()
@@ -488,6 +492,17 @@ public class WatchdogUI implements WatchdogListener, LoadAndSaveSettings, Config
 		btnStart.setDisable(listening);
 		paneWatchdogConfig.setDisable(listening);
 		paneTableAndControls.setDisable(listening);
+		labelStatus.setText(listening ? statusWatching : statusIdle);
+	}
+
+	@Override
+	public void captureStatisticsUpdated(CaptureStatistics statistics)
+	{
+		Platform.runLater(() ->
+		{
+			if (activeButton == btnStop) //still watching
+				labelStatus.setText(statusWatching + " (" + statistics + ")");
+		});
 	}
 
 	private void outputMessage(WatchdogMessage message)
@@ -511,31 +526,15 @@ public class WatchdogUI implements WatchdogListener, LoadAndSaveSettings, Config
 
 	public void saveListToFile(String filename) throws IOException
 	{
-		FileOutputStream fout = FileUtils.openOutputStream(new File(filename));
-		ObjectOutputStream oos = new ObjectOutputStream(fout);
-
-		oos.writeObject(new ArrayList<>(ruleList));
-
-		oos.close();
-		fout.close();
+		PacketTypeToMatch.saveListToFile(ruleList, filename);
 	}
 
-	@SuppressWarnings("unchecked")
 	public void loadListFromFile(String filename) throws IOException, ClassNotFoundException
 	{
-		FileInputStream fin = new FileInputStream(filename);
-		ObjectInputStream ois = new ObjectInputStream(fin);
-
-		ArrayList<PacketTypeToMatch> temp = (ArrayList<PacketTypeToMatch>) ois.readObject();
+		List<PacketTypeToMatch> temp = PacketTypeToMatch.loadListFromFile(filename);
 
 		ruleList.clear();
 		ruleList.addAll(temp);
-
-		ois.close();
-		fin.close();
-
-		for (PacketTypeToMatch row : ruleList)
-			row.initAfterSerialization();
 	}
 
 	private void setWatchdogHotkey(Properties props)
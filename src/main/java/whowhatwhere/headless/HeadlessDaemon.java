@@ -0,0 +1,571 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.headless;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jnetpcap.packet.PcapPacket;
+import org.jnetpcap.protocol.network.Ip4;
+import org.jnetpcap.protocol.network.Ip6;
+
+import whowhatwhere.model.networksniffer.NICInfo;
+import whowhatwhere.model.networksniffer.NetworkSniffer;
+import whowhatwhere.model.networksniffer.RecordingSettings;
+import whowhatwhere.model.networksniffer.appearancecounter.AppearanceCounterPacketHandler;
+import whowhatwhere.model.networksniffer.appearancecounter.AppearanceCounterResults;
+import whowhatwhere.model.networksniffer.appearancecounter.AppearanceCounterSnapshot;
+import whowhatwhere.model.networksniffer.appearancecounter.DistinctPeers;
+import whowhatwhere.model.networksniffer.appearancecounter.IpAppearancesCounter;
+import whowhatwhere.model.networksniffer.appearancecounter.ServiceAppearancesCounter;
+import whowhatwhere.model.networksniffer.appearancecounter.SubnetAppearances;
+import whowhatwhere.model.networksniffer.appearancecounter.SubnetAppearancesCounter;
+import whowhatwhere.model.networksniffer.watchdog.PacketTypeToMatch;
+import whowhatwhere.model.networksniffer.watchdog.WatchdogListener;
+import whowhatwhere.model.networksniffer.watchdog.WatchdogMessage;
+
+/**
+ * Runs the appearance counter and/or the watchdog without a GUI, for servers and scripts.<br>
+ * Doesn't start the JavaFX toolkit, TTS or global hotkeys; results and watchdog events are written to stdout or to files, as set in the settings file (see {@code HeadlessSettings}).
+ * The daemon runs until the capture duration is over, the capture file ends, or it's stopped (e.g. with Ctrl+C). The appearance counter results are written when it ends,
+ * and optionally also periodically while it runs, from snapshots that don't pause the capture.
+ */
+public class HeadlessDaemon implements WatchdogListener
+{
+	private static final Logger logger = Logger.getLogger(HeadlessDaemon.class.getPackage().getName());
+
+	private final static String usage = "Usage: java -cp WhoWhatWhere.jar " + HeadlessDaemon.class.getName() + " <settings file>";
+	private final static String timestampFormat = "yyyy-MM-dd HH:mm:ss.SSS";
+	private final static String minuteFormat = "yyyy-MM-dd HH:mm";
+	private final static int snapshotMaxWaitMillis = 1000;
+	private final static int snapshotTimerShutdownSecs = 10;
+	private final static int stopRetryMillis = 100;
+
+	private HeadlessSettings settings;
+	private NetworkSniffer counterSniffer;
+	private NetworkSniffer watchdogSniffer;
+	private PrintStream watchdogOut;
+	private List<Thread> captureThreads = new ArrayList<>();
+	private boolean hasFailed = false;
+	private boolean isStopRequested = false; //once set, no more captures are started
+
+	public HeadlessDaemon(HeadlessSettings settings)
+	{
+		this.settings = settings;
+	}
+
+	/**
+	 * Starts the enabled captures and blocks until they end
+	 * 
+	 * @return true if all of the captures ran, false if any of them failed
+	 */
+	public boolean run()
+	{
+		if (settings.isAppearanceCounterEnabled())
+		{
+			counterSniffer = createSniffer("appearance-counter");
+			counterSniffer.setApproximateCountingSettings(settings.getApproximateCountingSettings());
+			counterSniffer.setServiceBreakdownEnabled(settings.getServicesOutput() != null);
+			counterSniffer.setSubnetRollupEnabled(settings.getSubnetsOutput() != null);
+			counterSniffer.setAppearanceHistorySettings(settings.getAppearanceHistorySettings());
+			NICInfo device = findDevice(counterSniffer);
+
+			if (device == null)
+				return false;
+
+			startCaptureThread("Headless appearance counter", () -> runAppearanceCounter(device));
+		}
+
+		if (settings.isWatchdogEnabled())
+		{
+			watchdogSniffer = createSniffer("watchdog");
+			NICInfo device = findDevice(watchdogSniffer);
+			List<PacketTypeToMatch> ruleList;
+
+			if (device == null)
+			{
+				stop();
+				return false;
+			}
+
+			try
+			{
+				ruleList = PacketTypeToMatch.loadListFromFile(settings.getWatchdogRuleList());
+				watchdogOut = openOutput(settings.getWatchdogOutput(), true);
+			}
+			catch (IOException | ClassNotFoundException e)
+			{
+				logger.log(Level.SEVERE, "Unable to load watchdog rule list " + settings.getWatchdogRuleList(), e);
+				stop();
+				return false;
+			}
+
+			startCaptureThread("Headless watchdog", () -> runWatchdog(device, ruleList));
+		}
+
+		waitForCaptures(settings.getDurationSecs() * 1000L);
+		stop();
+
+		return !hasFailed;
+	}
+
+	/**
+	 * Stops all captures and waits for their threads to end. Safe to call more than once, and from any thread but the capture threads.<br>
+	 * A capture that is still starting isn't running yet, so it can't be stopped. It's asked to stop again until its thread ends.
+	 */
+	public void stop()
+	{
+		List<Thread> threadsToStop;
+
+		synchronized (this)
+		{
+			isStopRequested = true;
+			threadsToStop = new ArrayList<>(captureThreads);
+		}
+
+		try
+		{
+			for (Thread thread : threadsToStop)
+			{
+				while (thread.isAlive())
+				{
+					stopCaptures();
+					thread.join(stopRetryMillis);
+				}
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private synchronized void stopCaptures()
+	{
+		if (counterSniffer != null)
+			counterSniffer.stopCapture();
+
+		if (watchdogSniffer != null)
+			watchdogSniffer.stopCapture();
+	}
+
+	/**
+	 * @param recordingFilePrefix - names the capture's recordings, so the appearance counter and the watchdog can record to the same directory
+	 */
+	private NetworkSniffer createSniffer(String recordingFilePrefix)
+	{
+		NetworkSniffer sniffer = new NetworkSniffer();
+		RecordingSettings recordingSettings = settings.getRecordingSettings();
+
+		sniffer.setCaptureProfile(settings.getCaptureProfile());
+		sniffer.setAutoTuneEnabled(settings.isAutoTuneEnabled());
+		sniffer.setPipelineSettings(settings.getPipelineSettings());
+		sniffer.setRecordingSettings(recordingSettings == null ? null : recordingSettings.withFilePrefix(recordingFilePrefix));
+
+		return sniffer;
+	}
+
+	/**
+	 * @return the network interface set in the settings, or a description of the host in the capture file when replaying one. Null if it can't be found.
+	 */
+	private NICInfo findDevice(NetworkSniffer sniffer)
+	{
+		String nic = settings.getNIC();
+
+		if (settings.getCaptureFile() != null)
+		{
+			if (!NetworkSniffer.isValidIPv4(nic))
+			{
+				logger.log(Level.SEVERE, "When replaying a capture file, the NIC setting must be the IPv4 address of the host whose traffic was captured, got " + nic);
+				return null;
+			}
+
+			return new NICInfo("[" + nic + "]", settings.getNICMACAddress(), settings.getCaptureFile());
+		}
+
+		for (NICInfo device : sniffer.getListOfDevicesWithIP())
+			if (device.getIP().equals("[" + nic + "]") || device.getDescription().equals(nic))
+				return device;
+
+		logger.log(Level.SEVERE, "Unable to find a network interface with the IP address or description " + nic);
+		return null;
+	}
+
+	private synchronized void startCaptureThread(String name, Runnable capture)
+	{
+		if (isStopRequested) //stopped while starting up
+			return;
+
+		Thread thread = new Thread(capture, name);
+
+		captureThreads.add(thread);
+		thread.start();
+	}
+
+	/**
+	 * @param timeoutMillis - max time to wait, or 0 to wait for as long as it takes
+	 */
+	private void waitForCaptures(long timeoutMillis)
+	{
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+
+		try
+		{
+			for (Thread thread : captureThreads)
+			{
+				if (timeoutMillis == 0)
+					thread.join();
+				else
+				{
+					long timeLeft = deadline - System.currentTimeMillis();
+
+					if (timeLeft <= 0)
+						return;
+
+					thread.join(timeLeft);
+				}
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void runAppearanceCounter(NICInfo device)
+	{
+		StringBuilder errbuf = new StringBuilder();
+		AppearanceCounterResults results;
+		ScheduledThreadPoolExecutor snapshotTimer = startSnapshotTimer();
+
+		try
+		{
+			if (settings.getCaptureFile() == null)
+				results = counterSniffer.startAppearanceCounterCapture(device, settings.getProtocolsToCount(), null, errbuf);
+			else
+				results = counterSniffer.startAppearanceCounterCaptureFromFile(settings.getCaptureFile(), device, settings.getProtocolsToCount(), settings.getReplaySpeed(), null, errbuf);
+		}
+		finally
+		{
+			stopSnapshotTimer(snapshotTimer);
+		}
+
+		if (results == null || errbuf.length() > 0)
+		{
+			logger.log(Level.SEVERE, "Appearance counter capture failed: " + errbuf);
+			hasFailed = true;
+			return;
+		}
+
+		List<IpAppearancesCounter> appearances = results.getAppearanceCounterResults();
+		Collections.sort(appearances);
+
+		DistinctPeers distinctPeers = results.getDistinctPeers();
+
+		logger.log(Level.INFO, "Appearance counter saw about " + distinctPeers.getOverall() + " distinct IP addresses");
+
+		if (results.getApproximationSummary() != null)
+			logger.log(Level.INFO, "Appearance counter results are " + results.getApproximationSummary());
+
+		writeAppearanceCounterResults(appearances, distinctPeers, results.getSubnetAppearances());
+	}
+
+	/**
+	 * @return a timer that periodically writes a snapshot of the appearance counter's results, or null if they should only be written at the end
+	 */
+	private ScheduledThreadPoolExecutor startSnapshotTimer()
+	{
+		int intervalSecs = settings.getSnapshotIntervalSecs();
+
+		if (intervalSecs == 0)
+			return null;
+
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable ->
+		{
+			Thread thread = new Thread(runnable, "Appearance counter snapshot timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		timer.scheduleWithFixedDelay(() ->
+		{
+			AppearanceCounterSnapshot snapshot = counterSniffer.getAppearanceCounterSnapshot(snapshotMaxWaitMillis);
+
+			if (snapshot != null) //the capture is running
+				writeAppearanceCounterResults(snapshot.getAppearances(), snapshot.getDistinctPeers(), snapshot.getSubnetAppearances());
+		}, intervalSecs, intervalSecs, TimeUnit.SECONDS);
+
+		return timer;
+	}
+
+	/**
+	 * Stops the timer and waits for a snapshot that is being written, so it can't overwrite the final results
+	 */
+	private void stopSnapshotTimer(ScheduledThreadPoolExecutor timer)
+	{
+		if (timer == null)
+			return;
+
+		timer.shutdownNow();
+
+		try
+		{
+			timer.awaitTermination(snapshotTimerShutdownSecs, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @param appearances - most appearances first
+	 * @param subnetAppearances - null if they weren't rolled up by subnet
+	 */
+	private synchronized void writeAppearanceCounterResults(List<IpAppearancesCounter> appearances, DistinctPeers distinctPeers, SubnetAppearances subnetAppearances)
+	{
+		if (settings.getDistinctPeersOutput() != null)
+			writeDistinctPeers(distinctPeers);
+
+		if (settings.getServicesOutput() != null)
+			writeServices(appearances);
+
+		if (subnetAppearances != null)
+			writeSubnets(subnetAppearances);
+
+		try
+		{
+			PrintStream out = openOutput(settings.getAppearanceCounterOutput(), false);
+
+			StringBuilder title = new StringBuilder("IP address,Amount of appearances");
+
+			for (int windowInSecs : AppearanceCounterPacketHandler.recentWindowsInSecs)
+				title.append(",Last " + windowInSecs + " seconds");
+
+			title.append(",Packets in,Packets out,Bytes in,Bytes out,Max overcount");
+
+			out.println(title);
+
+			for (IpAppearancesCounter appearance : appearances)
+			{
+				StringBuilder line = new StringBuilder(appearance.getIp() + "," + appearance.getAmountOfAppearances());
+
+				for (int recentAppearances : appearance.getRecentAppearances())
+					line.append("," + recentAppearances);
+
+				line.append("," + appearance.getPacketsIn() + "," + appearance.getPacketsOut() + "," + appearance.getBytesIn() + "," + appearance.getBytesOut() + "," + appearance.getMaxOvercount());
+
+				out.println(line);
+			}
+
+			closeOutput(out);
+		}
+		catch (IOException ioe)
+		{
+			logger.log(Level.SEVERE, "Unable to write the appearance counter results to " + settings.getAppearanceCounterOutput(), ioe);
+			hasFailed = true;
+		}
+	}
+
+	private void writeDistinctPeers(DistinctPeers distinctPeers)
+	{
+		try
+		{
+			PrintStream out = openOutput(settings.getDistinctPeersOutput(), false);
+			SimpleDateFormat format = new SimpleDateFormat(minuteFormat);
+
+			out.println("Minute,Distinct IP addresses");
+
+			for (int i = 0; i < distinctPeers.getAmountOfMinutes(); i++)
+				out.println(format.format(new Date(distinctPeers.getMinuteStartTime(i))) + "," + distinctPeers.getInMinute(i));
+
+			closeOutput(out);
+		}
+		catch (IOException ioe)
+		{
+			logger.log(Level.SEVERE, "Unable to write the distinct IP addresses per minute to " + settings.getDistinctPeersOutput(), ioe);
+			hasFailed = true;
+		}
+	}
+
+	private void writeServices(List<IpAppearancesCounter> appearances)
+	{
+		try
+		{
+			PrintStream out = openOutput(settings.getServicesOutput(), false);
+
+			out.println("IP address,Protocol,Port,Amount of appearances");
+
+			for (IpAppearancesCounter appearance : appearances)
+				for (ServiceAppearancesCounter service : appearance.getServices())
+					out.println(appearance.getIp() + "," + service.getProtocol() + "," + service.getPort() + "," + service.getAmountOfAppearances());
+
+			closeOutput(out);
+		}
+		catch (IOException ioe)
+		{
+			logger.log(Level.SEVERE, "Unable to write the appearances per protocol and port to " + settings.getServicesOutput(), ioe);
+			hasFailed = true;
+		}
+	}
+
+	private void writeSubnets(SubnetAppearances subnetAppearances)
+	{
+		try
+		{
+			PrintStream out = openOutput(settings.getSubnetsOutput(), false);
+
+			out.println("Subnet,Amount of appearances");
+
+			for (int[] prefixLengths : settings.getSubnetPrefixLengths())
+				for (SubnetAppearancesCounter subnet : subnetAppearances.getAppearances(prefixLengths[0], prefixLengths[1]))
+					out.println(subnet.getSubnet() + "," + subnet.getAmountOfAppearances());
+
+			closeOutput(out);
+		}
+		catch (IOException ioe)
+		{
+			logger.log(Level.SEVERE, "Unable to write the appearances by subnet to " + settings.getSubnetsOutput(), ioe);
+			hasFailed = true;
+		}
+	}
+
+	private void runWatchdog(NICInfo device, List<PacketTypeToMatch> ruleList)
+	{
+		StringBuilder errbuf = new StringBuilder();
+		Integer cooldownInSecs = settings.isWatchdogRepeated() ? settings.getWatchdogCooldownSecs() : null;
+
+		try
+		{
+			if (settings.getCaptureFile() == null)
+				watchdogSniffer.startWatchdogCapture(device, ruleList, settings.isWatchdogRepeated(), cooldownInSecs, this, errbuf);
+			else
+				watchdogSniffer.startWatchdogCaptureFromFile(settings.getCaptureFile(), device, ruleList, settings.isWatchdogRepeated(), cooldownInSecs, settings.getReplaySpeed(), this, errbuf);
+		}
+		catch (IllegalArgumentException | UnknownHostException e)
+		{
+			logger.log(Level.SEVERE, "Unable to start the watchdog: " + e.getMessage(), e);
+			hasFailed = true;
+		}
+		finally
+		{
+			closeOutput(watchdogOut);
+		}
+
+		if (errbuf.length() > 0)
+		{
+			logger.log(Level.SEVERE, "Watchdog capture failed: " + errbuf);
+			hasFailed = true;
+		}
+	}
+
+	@Override
+	public void watchdogFoundMatchingPacket(PcapPacket packet, WatchdogMessage message)
+	{
+		String timestamp = new SimpleDateFormat(timestampFormat).format(new Date(packet.getCaptureHeader().timestampInMillis()));
+
+		synchronized (watchdogOut)
+		{
+			watchdogOut.println(timestamp + "\t" + getAddresses(packet) + "\t" + message.getMessage());
+		}
+	}
+
+	/**
+	 * @return "source -> destination" of an IP packet, or an empty string if it isn't one
+	 */
+	private static String getAddresses(PcapPacket packet)
+	{
+		Ip4 ip4 = new Ip4();
+		Ip6 ip6 = new Ip6();
+
+		try
+		{
+			if (packet.hasHeader(ip4))
+				return NetworkSniffer.intToIpString(ip4.sourceToInt()) + " -> " + NetworkSniffer.intToIpString(ip4.destinationToInt());
+
+			if (packet.hasHeader(ip6))
+				return InetAddress.getByAddress(ip6.source()).getHostAddress() + " -> " + InetAddress.getByAddress(ip6.destination()).getHostAddress();
+		}
+		catch (UnknownHostException uhe)
+		{
+			logger.log(Level.WARNING, "Unable to read the addresses of a matching packet", uhe);
+		}
+
+		return "";
+	}
+
+	/**
+	 * @param filename - the file to write to, or null for stdout
+	 * @param append - append to the file instead of overwriting it
+	 */
+	private static PrintStream openOutput(String filename, boolean append) throws IOException
+	{
+		return filename == null ? System.out : new PrintStream(new FileOutputStream(filename, append), true, "UTF-8");
+	}
+
+	private static void closeOutput(PrintStream out)
+	{
+		if (out == System.out)
+			out.flush();
+		else
+			out.close();
+	}
+
+	public static void main(String[] args)
+	{
+		if (args.length != 1)
+		{
+			System.err.println(usage);
+			System.exit(1);
+		}
+
+		HeadlessSettings settings;
+
+		try
+		{
+			settings = HeadlessSettings.loadFromFile(args[0]);
+		}
+		catch (IOException | IllegalArgumentException e)
+		{
+			System.err.println("Unable to load settings from " + args[0] + ": " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		HeadlessDaemon daemon = new HeadlessDaemon(settings);
+		Runtime.getRuntime().addShutdownHook(new Thread(() ->
+		{
+			daemon.stop(); //waits for the captures to write their results before the JVM exits
+		}, "Headless daemon shutdown"));
+
+		System.exit(daemon.run() ? 0 : 1);
+	}
+}
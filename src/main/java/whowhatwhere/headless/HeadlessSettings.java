@@ -0,0 +1,491 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.headless;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import whowhatwhere.model.PropertiesByType;
+import whowhatwhere.model.appearancehistory.AppearanceHistorySettings;
+import whowhatwhere.model.networksniffer.BackpressurePolicy;
+import whowhatwhere.model.networksniffer.CaptureProfile;
+import whowhatwhere.model.networksniffer.PipelineSettings;
+import whowhatwhere.model.networksniffer.RecordingSettings;
+import whowhatwhere.model.networksniffer.ReplaySpeed;
+import whowhatwhere.model.networksniffer.SupportedProtocols;
+import whowhatwhere.model.networksniffer.appearancecounter.AppearanceCounterPacketHandler;
+import whowhatwhere.model.networksniffer.appearancecounter.ApproximateCountingSettings;
+
+/**
+ * The settings of a headless run, read from a properties file:
+ * 
+ * <pre>
+ * nic = 192.168.1.10                        (IP address or description of the network interface, or of the host whose traffic is in capture.file)
+ * nic.mac = 00:11:22:33:44:55               (only with capture.file, used to tell packet direction)
+ * capture.file = traffic.pcapng             (optional, replay a capture file instead of capturing live)
+ * capture.replaySpeed = 0                   (multiplier of the file's original timing, 0 for full speed)
+ * capture.profile = Header only             (optional, see CaptureProfile)
+ * capture.autoTune = false
+ * capture.pipeline = false                  (true to only copy packets to a ring buffer on the capture thread, and handle them on worker threads. Packets it drops are logged when the capture ends)
+ * capture.pipelineWorkers = 1               (more workers only decode in parallel, the packets are still handled one at a time, in order)
+ * capture.pipelineRingBufferMB = 32
+ * capture.pipelineBackpressure = BLOCK      (when the ring buffer is full: BLOCK, DROP_NEWEST or DROP_OLDEST)
+ * capture.durationSecs = 0                  (0 to capture until the daemon is stopped or the file ends)
+ * appearanceCounter.enabled = true
+ * appearanceCounter.protocols = TCP,UDP     (empty for all protocols)
+ * appearanceCounter.output = counts.csv     (empty for stdout)
+ * appearanceCounter.approximate = false     (true to count with a fixed amount of memory, for long captures)
+ * appearanceCounter.monitoredAddresses = 10000 (with approximate counting, how many of the top addresses to keep)
+ * appearanceCounter.distinctPeersOutput = distinct.csv (optional, the estimated amount of distinct IP addresses per minute)
+ * appearanceCounter.servicesOutput = services.csv (optional, the appearances of each IP address per protocol and port. Not with approximate counting)
+ * appearanceCounter.subnetsOutput = subnets.csv (optional, the appearances rolled up by subnet. Not with approximate counting)
+ * appearanceCounter.subnetPrefixLengths = 24/64,16/48 (IPv4/IPv6 prefix lengths to roll up by, up to 32/64)
+ * appearanceCounter.historyDirectory = history (optional, keep the counts on disk in this directory, to be queried with AppearanceHistory)
+ * appearanceCounter.historyFlushIntervalSecs = 60
+ * appearanceCounter.snapshotIntervalSecs = 0 (also write the results this often while capturing, 0 to only write them at the end)
+ * watchdog.enabled = false
+ * watchdog.ruleList = rules.watchdogRuleList (a rule list saved by the Watchdog tab)
+ * watchdog.repeated = true                  (false to stop watching after the first match)
+ * watchdog.cooldownSecs = 10
+ * watchdog.output = events.log              (empty for stdout)
+ * recording.directory = recordings         (optional, record the analyzed packets to rotating pcap files in this directory)
+ * recording.maxFileSizeMB = 100            (0 for no size limit)
+ * recording.maxFileDurationSecs = 3600     (0 for no time limit)
+ * recording.maxFiles = 24                  (0 to keep all files)
+ * </pre>
+ */
+public class HeadlessSettings
+{
+	private final static String propsNIC = "nic";
+	private final static String propsNICMac = "nic.mac";
+	private final static String propsCaptureFile = "capture.file";
+	private final static String propsReplaySpeed = "capture.replaySpeed";
+	private final static String propsCaptureProfile = "capture.profile";
+	private final static String propsAutoTune = "capture.autoTune";
+	private final static String propsPipeline = "capture.pipeline";
+	private final static String propsPipelineWorkers = "capture.pipelineWorkers";
+	private final static String propsPipelineRingBuffer = "capture.pipelineRingBufferMB";
+	private final static String propsPipelineBackpressure = "capture.pipelineBackpressure";
+	private final static String propsDurationSecs = "capture.durationSecs";
+	private final static String propsCounterEnabled = "appearanceCounter.enabled";
+	private final static String propsCounterProtocols = "appearanceCounter.protocols";
+	private final static String propsCounterOutput = "appearanceCounter.output";
+	private final static String propsCounterApproximate = "appearanceCounter.approximate";
+	private final static String propsCounterMonitoredAddresses = "appearanceCounter.monitoredAddresses";
+	private final static String propsCounterDistinctPeersOutput = "appearanceCounter.distinctPeersOutput";
+	private final static String propsCounterServicesOutput = "appearanceCounter.servicesOutput";
+	private final static String propsCounterSubnetsOutput = "appearanceCounter.subnetsOutput";
+	private final static String propsCounterSubnetPrefixLengths = "appearanceCounter.subnetPrefixLengths";
+	private final static String propsCounterHistoryDirectory = "appearanceCounter.historyDirectory";
+	private final static String propsCounterHistoryFlushInterval = "appearanceCounter.historyFlushIntervalSecs";
+	private final static String propsCounterSnapshotInterval = "appearanceCounter.snapshotIntervalSecs";
+	private final static String propsWatchdogEnabled = "watchdog.enabled";
+	private final static String propsWatchdogRuleList = "watchdog.ruleList";
+	private final static String propsWatchdogRepeated = "watchdog.repeated";
+	private final static String propsWatchdogCooldown = "watchdog.cooldownSecs";
+	private final static String propsWatchdogOutput = "watchdog.output";
+	private final static String propsRecordingDirectory = "recording.directory";
+	private final static String propsRecordingMaxFileSize = "recording.maxFileSizeMB";
+	private final static String propsRecordingMaxFileDuration = "recording.maxFileDurationSecs";
+	private final static String propsRecordingMaxFiles = "recording.maxFiles";
+
+	private final static int defaultCooldownSecs = 10;
+	private final static String defaultSubnetPrefixLengths = "24/64,16/48";
+
+	private String nic;
+	private byte[] nicMACAddress;
+	private String captureFile;
+	private ReplaySpeed replaySpeed;
+	private CaptureProfile captureProfile;
+	private boolean isAutoTuneEnabled;
+	private PipelineSettings pipelineSettings;
+	private int durationSecs;
+	private boolean isAppearanceCounterEnabled;
+	private List<Integer> protocolsToCount = new ArrayList<>();
+	private String appearanceCounterOutput;
+	private ApproximateCountingSettings approximateCountingSettings;
+	private String distinctPeersOutput;
+	private String servicesOutput;
+	private String subnetsOutput;
+	private List<int[]> subnetPrefixLengths = new ArrayList<>();
+	private AppearanceHistorySettings appearanceHistorySettings;
+	private int snapshotIntervalSecs;
+	private boolean isWatchdogEnabled;
+	private String watchdogRuleList;
+	private boolean isWatchdogRepeated;
+	private int watchdogCooldownSecs;
+	private String watchdogOutput;
+	private RecordingSettings recordingSettings;
+
+	/**
+	 * @throws IllegalArgumentException if a setting is missing or has an invalid value
+	 */
+	public HeadlessSettings(Properties props) throws IllegalArgumentException
+	{
+		nic = PropertiesByType.getStringProperty(props, propsNIC).trim();
+		captureFile = emptyToNull(PropertiesByType.getStringProperty(props, propsCaptureFile, ""));
+		nicMACAddress = parseMACAddress(PropertiesByType.getStringProperty(props, propsNICMac, ""));
+
+		double replayMultiplier = PropertiesByType.getDoubleProperty(props, propsReplaySpeed, 0.0);
+		replaySpeed = replayMultiplier == 0 ? ReplaySpeed.FULL_SPEED : ReplaySpeed.multipliedBy(replayMultiplier);
+
+		String profile = emptyToNull(PropertiesByType.getStringProperty(props, propsCaptureProfile, ""));
+		if (profile != null)
+		{
+			captureProfile = CaptureProfile.stringToEnum(profile);
+
+			if (captureProfile == null)
+				throw new IllegalArgumentException("Unknown capture profile: " + profile);
+		}
+
+		isAutoTuneEnabled = PropertiesByType.getBoolProperty(props, propsAutoTune, false);
+
+		if (PropertiesByType.getBoolProperty(props, propsPipeline, false))
+		{
+			String policyName = PropertiesByType.getStringProperty(props, propsPipelineBackpressure, BackpressurePolicy.BLOCK.name()).trim().toUpperCase();
+			BackpressurePolicy policy;
+
+			try
+			{
+				policy = BackpressurePolicy.valueOf(policyName);
+			}
+			catch (IllegalArgumentException iae)
+			{
+				throw new IllegalArgumentException("Unknown backpressure policy: " + policyName);
+			}
+
+			pipelineSettings = new PipelineSettings(PropertiesByType.getIntProperty(props, propsPipelineRingBuffer, PipelineSettings.defaultRingBufferMemoryMB),
+					PropertiesByType.getIntProperty(props, propsPipelineWorkers, PipelineSettings.defaultWorkerThreads), policy);
+		}
+
+		durationSecs = PropertiesByType.getIntProperty(props, propsDurationSecs, 0);
+
+		if (durationSecs < 0)
+			throw new IllegalArgumentException("Invalid capture duration: " + durationSecs);
+
+		isAppearanceCounterEnabled = PropertiesByType.getBoolProperty(props, propsCounterEnabled, false);
+		appearanceCounterOutput = emptyToNull(PropertiesByType.getStringProperty(props, propsCounterOutput, ""));
+		distinctPeersOutput = emptyToNull(PropertiesByType.getStringProperty(props, propsCounterDistinctPeersOutput, ""));
+		servicesOutput = emptyToNull(PropertiesByType.getStringProperty(props, propsCounterServicesOutput, ""));
+		subnetsOutput = emptyToNull(PropertiesByType.getStringProperty(props, propsCounterSubnetsOutput, ""));
+
+		if (subnetsOutput != null)
+			subnetPrefixLengths = parseSubnetPrefixLengths(PropertiesByType.getStringProperty(props, propsCounterSubnetPrefixLengths, defaultSubnetPrefixLengths));
+
+		String historyDirectory = emptyToNull(PropertiesByType.getStringProperty(props, propsCounterHistoryDirectory, ""));
+		if (historyDirectory != null)
+			appearanceHistorySettings = new AppearanceHistorySettings(new File(historyDirectory), PropertiesByType.getIntProperty(props, propsCounterHistoryFlushInterval, AppearanceHistorySettings.defaultFlushIntervalSecs));
+		snapshotIntervalSecs = PropertiesByType.getIntProperty(props, propsCounterSnapshotInterval, 0);
+
+		if (snapshotIntervalSecs < 0)
+			throw new IllegalArgumentException("Invalid snapshot interval: " + snapshotIntervalSecs);
+
+		for (String protocolName : PropertiesByType.getStringProperty(props, propsCounterProtocols, "").split(","))
+		{
+			if (protocolName.trim().isEmpty())
+				continue;
+
+			SupportedProtocols protocol = SupportedProtocols.stringToEnum(protocolName.trim().toUpperCase());
+
+			if (protocol == null)
+				throw new IllegalArgumentException("Unknown protocol: " + protocolName);
+
+			protocolsToCount.add(protocol.getValue());
+		}
+
+		if (PropertiesByType.getBoolProperty(props, propsCounterApproximate, false))
+			approximateCountingSettings = new ApproximateCountingSettings(PropertiesByType.getIntProperty(props, propsCounterMonitoredAddresses, ApproximateCountingSettings.defaultMonitoredAddresses));
+
+		if (approximateCountingSettings != null && servicesOutput != null)
+			throw new IllegalArgumentException(propsCounterServicesOutput + " can't be used with " + propsCounterApproximate);
+
+		if (approximateCountingSettings != null && subnetsOutput != null)
+			throw new IllegalArgumentException(propsCounterSubnetsOutput + " can't be used with " + propsCounterApproximate);
+
+		isWatchdogEnabled = PropertiesByType.getBoolProperty(props, propsWatchdogEnabled, false);
+		watchdogOutput = emptyToNull(PropertiesByType.getStringProperty(props, propsWatchdogOutput, ""));
+		isWatchdogRepeated = PropertiesByType.getBoolProperty(props, propsWatchdogRepeated, true);
+		watchdogCooldownSecs = PropertiesByType.getIntProperty(props, propsWatchdogCooldown, defaultCooldownSecs);
+
+		if (isWatchdogEnabled)
+			watchdogRuleList = PropertiesByType.getStringProperty(props, propsWatchdogRuleList);
+
+		String recordingDirectory = emptyToNull(PropertiesByType.getStringProperty(props, propsRecordingDirectory, ""));
+		if (recordingDirectory != null)
+			recordingSettings = new RecordingSettings(new File(recordingDirectory), PropertiesByType.getIntProperty(props, propsRecordingMaxFileSize, 0),
+					PropertiesByType.getIntProperty(props, propsRecordingMaxFileDuration, 0), PropertiesByType.getIntProperty(props, propsRecordingMaxFiles, 0));
+
+		if (!isAppearanceCounterEnabled && !isWatchdogEnabled)
+			throw new IllegalArgumentException("Neither " + propsCounterEnabled + " nor " + propsWatchdogEnabled + " is set to true, nothing to do");
+	}
+
+	public static HeadlessSettings loadFromFile(String filename) throws IOException, IllegalArgumentException
+	{
+		Properties props = new Properties();
+		InputStream in = new FileInputStream(filename);
+
+		try
+		{
+			props.load(in);
+		}
+		finally
+		{
+			in.close();
+		}
+
+		return new HeadlessSettings(props);
+	}
+
+	/**
+	 * @param value - comma separated pairs of IPv4/IPv6 prefix lengths
+	 * @return each pair as an array of 2
+	 */
+	private static List<int[]> parseSubnetPrefixLengths(String value) throws IllegalArgumentException
+	{
+		List<int[]> pairs = new ArrayList<>();
+
+		for (String pair : value.split(","))
+		{
+			String[] lengths = pair.trim().split("/");
+
+			if (lengths.length != 2)
+				throw new IllegalArgumentException("Invalid subnet prefix lengths: " + pair);
+
+			try
+			{
+				int ip4PrefixLength = Integer.parseInt(lengths[0].trim());
+				int ip6PrefixLength = Integer.parseInt(lengths[1].trim());
+
+				if (ip4PrefixLength < 0 || ip4PrefixLength > AppearanceCounterPacketHandler.ip4MaxPrefixLength || ip6PrefixLength < 0 || ip6PrefixLength > AppearanceCounterPacketHandler.ip6MaxPrefixLength)
+					throw new IllegalArgumentException("Invalid subnet prefix lengths: " + pair);
+
+				pairs.add(new int[] {ip4PrefixLength, ip6PrefixLength});
+			}
+			catch (NumberFormatException nfe)
+			{
+				throw new IllegalArgumentException("Invalid subnet prefix lengths: " + pair);
+			}
+		}
+
+		return pairs;
+	}
+
+	private static String emptyToNull(String value)
+	{
+		return value.trim().isEmpty() ? null : value.trim();
+	}
+
+	/**
+	 * @return the address in {@code mac} (bytes separated by ':' or '-'), or all zeros if it's empty
+	 */
+	private static byte[] parseMACAddress(String mac) throws IllegalArgumentException
+	{
+		if (mac.trim().isEmpty())
+			return new byte[6];
+
+		String[] parts = mac.trim().split("[:-]");
+
+		if (parts.length != 6)
+			throw new IllegalArgumentException("Invalid MAC address: " + mac);
+
+		byte[] address = new byte[parts.length];
+
+		try
+		{
+			for (int i = 0; i < parts.length; i++)
+				address[i] = (byte) Integer.parseInt(parts[i], 16);
+		}
+		catch (NumberFormatException nfe)
+		{
+			throw new IllegalArgumentException("Invalid MAC address: " + mac);
+		}
+
+		return address;
+	}
+
+	/**
+	 * @return the IP address or description of the network interface
+	 */
+	public String getNIC()
+	{
+		return nic;
+	}
+
+	public byte[] getNICMACAddress()
+	{
+		return nicMACAddress;
+	}
+
+	/**
+	 * @return the capture file to replay, or null to capture live
+	 */
+	public String getCaptureFile()
+	{
+		return captureFile;
+	}
+
+	public ReplaySpeed getReplaySpeed()
+	{
+		return replaySpeed;
+	}
+
+	/**
+	 * @return the profile to capture with, or null to let each capture pick one
+	 */
+	public CaptureProfile getCaptureProfile()
+	{
+		return captureProfile;
+	}
+
+	public boolean isAutoTuneEnabled()
+	{
+		return isAutoTuneEnabled;
+	}
+
+	/**
+	 * @return the settings to capture in pipeline mode with, or null to handle the packets on the capture thread
+	 */
+	public PipelineSettings getPipelineSettings()
+	{
+		return pipelineSettings;
+	}
+
+	/**
+	 * @return how long to capture, or 0 to capture until stopped
+	 */
+	public int getDurationSecs()
+	{
+		return durationSecs;
+	}
+
+	public boolean isAppearanceCounterEnabled()
+	{
+		return isAppearanceCounterEnabled;
+	}
+
+	public List<Integer> getProtocolsToCount()
+	{
+		return protocolsToCount;
+	}
+
+	/**
+	 * @return the file to write the appearance counter results to, or null for stdout
+	 */
+	public String getAppearanceCounterOutput()
+	{
+		return appearanceCounterOutput;
+	}
+
+	/**
+	 * @return the file to write the amount of distinct IP addresses per minute to, or null to not write it
+	 */
+	public String getDistinctPeersOutput()
+	{
+		return distinctPeersOutput;
+	}
+
+	/**
+	 * @return the file to write the appearances of each IP address per protocol and port to, or null to not count them
+	 */
+	public String getServicesOutput()
+	{
+		return servicesOutput;
+	}
+
+	/**
+	 * @return the file to write the appearances rolled up by subnet to, or null to not roll them up
+	 */
+	public String getSubnetsOutput()
+	{
+		return subnetsOutput;
+	}
+
+	/**
+	 * @return the settings to keep the appearance counts on disk with, or null to not keep them
+	 */
+	public AppearanceHistorySettings getAppearanceHistorySettings()
+	{
+		return appearanceHistorySettings;
+	}
+
+	/**
+	 * @return the pairs of IPv4 and IPv6 prefix lengths to roll up by, each as an array of 2
+	 */
+	public List<int[]> getSubnetPrefixLengths()
+	{
+		return subnetPrefixLengths;
+	}
+
+	/**
+	 * @return how often to write the appearance counter results while capturing, or 0 to only write them at the end
+	 */
+	public int getSnapshotIntervalSecs()
+	{
+		return snapshotIntervalSecs;
+	}
+
+	/**
+	 * @return the settings to count appearances approximately with, or null to count them exactly
+	 */
+	public ApproximateCountingSettings getApproximateCountingSettings()
+	{
+		return approximateCountingSettings;
+	}
+
+	public boolean isWatchdogEnabled()
+	{
+		return isWatchdogEnabled;
+	}
+
+	public String getWatchdogRuleList()
+	{
+		return watchdogRuleList;
+	}
+
+	public boolean isWatchdogRepeated()
+	{
+		return isWatchdogRepeated;
+	}
+
+	public int getWatchdogCooldownSecs()
+	{
+		return watchdogCooldownSecs;
+	}
+
+	/**
+	 * @return the file to write watchdog events to, or null for stdout
+	 */
+	public String getWatchdogOutput()
+	{
+		return watchdogOutput;
+	}
+
+	/**
+	 * @return the settings to record the analyzed packets with, or null to not record them
+	 */
+	public RecordingSettings getRecordingSettings()
+	{
+		return recordingSettings;
+	}
+}
@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.appearancehistory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import whowhatwhere.model.counters.LongPairIndexMap;
+import whowhatwhere.model.networksniffer.NetworkSniffer;
+import whowhatwhere.model.networksniffer.appearancecounter.IpAppearancesCounter;
+
+/**
+ * Answers questions about the appearance counts kept on disk by {@code AppearanceHistoryWriter}, such as which addresses appeared the most between two points in time.<br>
+ * Only reads the segment files of the minutes that are asked for. Not thread safe.
+ */
+public class AppearanceHistory
+{
+	private static final Logger logger = Logger.getLogger(AppearanceHistory.class.getPackage().getName());
+
+	private final static long ip4MappedPrefix = 0xFFFF00000000L; //IPv4 addresses are summed as IPv4-mapped IPv6 addresses (::ffff:a.b.c.d)
+	private final static long millisInMinute = 60 * 1000;
+
+	private File directory;
+	private LongPairIndexMap addressToIndex;
+	private int[] counts; //by the index in addressToIndex
+
+	/**
+	 * @param directory - the directory of {@code AppearanceHistorySettings}
+	 */
+	public AppearanceHistory(File directory)
+	{
+		this.directory = directory;
+	}
+
+	/**
+	 * @param from - in millis
+	 * @param to - in millis
+	 * @param amount - the maximum amount of addresses to return
+	 * @return the addresses with the most appearances from {@code from} to {@code to} (inclusive), most appearances first.
+	 * Appearances are placed in time by the last packet of the flush that wrote them, so the time resolution is the flush interval.
+	 * @throws IOException if the directory can't be read
+	 */
+	public List<IpAppearancesCounter> getTopAppearances(long from, long to, int amount) throws IOException
+	{
+		addressToIndex = new LongPairIndexMap();
+		counts = new int[64];
+
+		File[] files = directory.listFiles();
+
+		if (files == null)
+			throw new IOException("Unable to list the files in " + directory);
+
+		for (File file : files)
+		{
+			long minuteStart = SegmentFormat.getMinuteStart(file);
+
+			if (minuteStart >= 0 && minuteStart + millisInMinute > from && minuteStart <= to)
+				readSegment(file, from, to);
+		}
+
+		List<IpAppearancesCounter> list = new ArrayList<>();
+
+		for (int i = 0; i < addressToIndex.size(); i++)
+		{
+			long high = addressToIndex.getHigh(i);
+			long low = addressToIndex.getLow(i);
+
+			try
+			{
+				String ip = high == 0 && (low & 0xFFFFFFFF00000000L) == ip4MappedPrefix ? NetworkSniffer.intToIpString((int) low) : NetworkSniffer.longPairToIpString(high, low);
+
+				list.add(new IpAppearancesCounter(ip, counts[i]));
+			}
+			catch (UnknownHostException uhe)
+			{
+				continue; //ignore this address
+			}
+		}
+
+		addressToIndex = null;
+		counts = null;
+
+		Collections.sort(list);
+
+		return list.size() > amount ? new ArrayList<>(list.subList(0, amount)) : list;
+	}
+
+	private void readSegment(File file, long from, long to)
+	{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			if (in.readInt() != SegmentFormat.magic || in.readByte() != SegmentFormat.version)
+			{
+				logger.log(Level.WARNING, "Skipping " + file + ", it isn't an appearance history segment of a known version");
+				return;
+			}
+
+			long minuteStart = in.readLong();
+			long bytesLeft = file.length() - SegmentFormat.headerLength;
+
+			while (true)
+			{
+				byte[] block;
+
+				try
+				{
+					long blockLength = SegmentFormat.readVarint(in);
+
+					bytesLeft -= SegmentFormat.getVarintLength(blockLength);
+
+					if (blockLength > bytesLeft) //a block that was cut short, or a corrupt length that mustn't be allocated
+					{
+						logger.log(Level.WARNING, "Skipping the rest of " + file + ", a block is longer than what's left of the file");
+						return;
+					}
+
+					block = new byte[(int) blockLength];
+					in.readFully(block);
+					bytesLeft -= blockLength;
+				}
+				catch (EOFException eofe) //the end of the file
+				{
+					return;
+				}
+
+				DataInputStream blockIn = new DataInputStream(new ByteArrayInputStream(block));
+				long time = minuteStart + SegmentFormat.readVarint(blockIn);
+
+				if (time >= from && time <= to)
+				{
+					readEntries(blockIn, false);
+					readEntries(blockIn, true);
+				}
+			}
+		}
+		catch (IOException ioe)
+		{
+			logger.log(Level.WARNING, "Unable to read appearance history segment " + file + ", skipping the rest of it", ioe);
+		}
+	}
+
+	/**
+	 * Mirrors {@code AppearanceHistoryWriter.writeEntries()}
+	 */
+	private void readEntries(DataInputStream in, boolean isIp6) throws IOException
+	{
+		long entries = SegmentFormat.readVarint(in);
+		long high = 0;
+		long low = 0;
+
+		for (long i = 0; i < entries; i++)
+		{
+			long highDifference = SegmentFormat.readVarint(in);
+
+			high += highDifference;
+
+			if (isIp6)
+				low = i > 0 && highDifference == 0 ? low + SegmentFormat.readVarint(in) : SegmentFormat.readVarint(in);
+
+			int count = (int) SegmentFormat.readVarint(in);
+
+			if (isIp6)
+				add(high, low, count);
+			else
+				add(0, ip4MappedPrefix | high, count);
+		}
+	}
+
+	private void add(long high, long low, int count)
+	{
+		int index = addressToIndex.getOrAdd(high, low);
+
+		if (index >= counts.length)
+			counts = Arrays.copyOf(counts, counts.length * 2);
+
+		counts[index] += count;
+	}
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.appearancehistory;
+
+import java.io.File;
+
+/**
+ * Settings for keeping the appearance counts of captures on disk (see {@code AppearanceHistoryWriter})
+ */
+public class AppearanceHistorySettings
+{
+	public final static int defaultFlushIntervalSecs = 60;
+
+	private File directory;
+	private int flushIntervalSecs;
+
+	/**
+	 * @param directory - where the segment files are written. Created if it doesn't exist.
+	 * @param flushIntervalSecs - how often the counts since the previous flush are written. This is also the finest time resolution of queries.
+	 */
+	public AppearanceHistorySettings(File directory, int flushIntervalSecs) throws IllegalArgumentException
+	{
+		if (directory == null || flushIntervalSecs < 1)
+			throw new IllegalArgumentException("Invalid appearance history settings: directory " + directory + ", flush every " + flushIntervalSecs + " secs");
+
+		this.directory = directory;
+		this.flushIntervalSecs = flushIntervalSecs;
+	}
+
+	public AppearanceHistorySettings(File directory)
+	{
+		this(directory, defaultFlushIntervalSecs);
+	}
+
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	public int getFlushIntervalSecs()
+	{
+		return flushIntervalSecs;
+	}
+
+	@Override
+	public String toString()
+	{
+		return directory.getPath() + ", flushed every " + flushIntervalSecs + " secs";
+	}
+}
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.appearancehistory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import whowhatwhere.model.networksniffer.appearancecounter.AppearanceCounterPacketHandler;
+import whowhatwhere.model.networksniffer.appearancecounter.AppearanceCounts;
+
+/**
+ * Keeps the appearance counts of a capture on disk while it runs, so they can be queried later (see {@code AppearanceHistory}).<br>
+ * Every flush interval, a copy of the counts is taken from the packet handler, and the appearances of each address since the previous flush are appended to the segment file
+ * of the minute of the copy's last packet (see {@code SegmentFormat}). The copy is made, encoded and written by the flush thread, the capture thread only swaps its counts (see {@code AppearanceCounterPacketHandler}).<br>
+ * The counts of the previous flush are kept by the ids the handler counted the addresses by, so nothing is kept per address beyond a few numbers.<br>
+ * Before the first append to a segment file that already exists (left by an earlier run, or by a write that failed), a block that was cut short at its end is cut off, so the new blocks can be read.<br>
+ * With approximate counting, the history has the same overcounts as the counts it was taken from.
+ */
+public class AppearanceHistoryWriter
+{
+	private static final Logger logger = Logger.getLogger(AppearanceHistoryWriter.class.getPackage().getName());
+
+	private final static long snapshotMaxWaitMillis = 1000;
+
+	private AppearanceHistorySettings settings;
+	private AppearanceCounterPacketHandler counterPH;
+	private ScheduledThreadPoolExecutor flushTimer;
+	private int[] flushedCounts = new int[0]; //the count of each id as of the previous flush
+	private long[] flushedHighs = new long[0]; //the address of each id as of the previous flush. With approximate counting, an id may be taken by another address
+	private long[] flushedLows = new long[0];
+	private long lastFlushedPacketTime = 0;
+	private File checkedSegmentFile; //the segment file this writer last appended to whole, so it doesn't need to be checked again. null after a failed write
+
+	public AppearanceHistoryWriter(AppearanceHistorySettings settings, AppearanceCounterPacketHandler counterPH)
+	{
+		this.settings = settings;
+		this.counterPH = counterPH;
+	}
+
+	/**
+	 * Must be called after {@code counterPH.captureStarted()}
+	 */
+	public void start()
+	{
+		flushTimer = new ScheduledThreadPoolExecutor(1, runnable ->
+		{
+			Thread thread = new Thread(runnable, "Appearance history to " + settings.getDirectory());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		flushTimer.scheduleAtFixedRate(() -> flush(snapshotMaxWaitMillis), settings.getFlushIntervalSecs(), settings.getFlushIntervalSecs(), TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stops the periodic flushes and writes what's left. Must be called after {@code counterPH.captureEnded()}, so the final snapshot is made right away.
+	 */
+	public void stop()
+	{
+		if (flushTimer != null)
+		{
+			flushTimer.shutdownNow();
+
+			try
+			{
+				flushTimer.awaitTermination(snapshotMaxWaitMillis * 2, TimeUnit.MILLISECONDS); //a flush may be waiting for a snapshot
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		flush(0);
+	}
+
+	private synchronized void flush(long maxWaitMillis)
+	{
+		AppearanceCounts counts = counterPH.getCounts(maxWaitMillis);
+		long packetTime = counts.getLastPacketTime();
+
+		if (packetTime <= lastFlushedPacketTime) //nothing new, or an older copy because the new one wasn't ready in time
+			return;
+
+		List<long[]> ip4Entries = new ArrayList<>(); //{address, 0, count}
+		List<long[]> ip6Entries = new ArrayList<>(); //{high, low, count}
+
+		for (int entry = 0; entry < counts.size(); entry++)
+		{
+			int id = counts.getId(entry);
+			long high = counts.getHigh(entry);
+			long low = counts.getLow(entry);
+			int count = counts.getCount(entry);
+
+			if (id >= flushedCounts.length)
+			{
+				int newLength = Math.max(id + 1, flushedCounts.length * 2);
+
+				flushedCounts = Arrays.copyOf(flushedCounts, newLength);
+				flushedHighs = Arrays.copyOf(flushedHighs, newLength);
+				flushedLows = Arrays.copyOf(flushedLows, newLength);
+			}
+
+			boolean isSameAddress = flushedCounts[id] > 0 && flushedHighs[id] == high && flushedLows[id] == low;
+			int newAppearances = isSameAddress ? count - flushedCounts[id] : count;
+
+			if (newAppearances < 0) //approximate counting dropped the address and took it in again since the previous flush
+				newAppearances = count;
+
+			flushedCounts[id] = count;
+			flushedHighs[id] = high;
+			flushedLows[id] = low;
+
+			if (newAppearances == 0)
+				continue;
+
+			if (counts.isIp4(entry))
+				ip4Entries.add(new long[] {low & 0xFFFFFFFFL, 0, newAppearances});
+			else
+				ip6Entries.add(new long[] {high, low, newAppearances});
+		}
+
+		lastFlushedPacketTime = packetTime;
+
+		try
+		{
+			appendBlock(packetTime, ip4Entries, ip6Entries);
+		}
+		catch (IOException ioe)
+		{
+			logger.log(Level.SEVERE, "Unable to write the appearance history to " + settings.getDirectory(), ioe);
+		}
+	}
+
+	private void appendBlock(long packetTime, List<long[]> ip4Entries, List<long[]> ip6Entries) throws IOException
+	{
+		long minuteStart = SegmentFormat.getMinuteStart(packetTime);
+		ByteArrayOutputStream block = new ByteArrayOutputStream();
+
+		SegmentFormat.writeVarint(block, packetTime - minuteStart);
+		writeEntries(block, ip4Entries, false);
+		writeEntries(block, ip6Entries, true);
+
+		if (!settings.getDirectory().isDirectory() && !settings.getDirectory().mkdirs())
+			throw new IOException("Unable to create directory " + settings.getDirectory());
+
+		File segmentFile = SegmentFormat.getSegmentFile(settings.getDirectory(), minuteStart);
+
+		if (!segmentFile.equals(checkedSegmentFile))
+			cutOffIncompleteBlock(segmentFile);
+
+		ByteArrayOutputStream bytesToAppend = new ByteArrayOutputStream(SegmentFormat.headerLength + block.size() + 5);
+
+		if (segmentFile.length() == 0) //a new file
+		{
+			DataOutputStream header = new DataOutputStream(bytesToAppend);
+
+			header.writeInt(SegmentFormat.magic);
+			header.writeByte(SegmentFormat.version);
+			header.writeLong(minuteStart);
+			header.flush();
+		}
+
+		SegmentFormat.writeVarint(bytesToAppend, block.size());
+		block.writeTo(bytesToAppend);
+
+		checkedSegmentFile = null; //until the block is written whole
+
+		try (FileOutputStream out = new FileOutputStream(segmentFile, true))
+		{
+			bytesToAppend.writeTo(out); //a single write, so a crash leaves at most one partial block at the end
+		}
+
+		checkedSegmentFile = segmentFile;
+	}
+
+	/**
+	 * Truncates the file to the end of its last complete block, if it exists. An incomplete header is cut off as well, so it's written again.
+	 */
+	private static void cutOffIncompleteBlock(File segmentFile) throws IOException
+	{
+		if (!segmentFile.exists())
+			return;
+
+		long completeLength = SegmentFormat.getCompleteLength(segmentFile);
+
+		if (completeLength == segmentFile.length())
+			return;
+
+		logger.log(Level.WARNING, "Cutting off " + (segmentFile.length() - completeLength) + " bytes of an incomplete block at the end of " + segmentFile);
+
+		try (RandomAccessFile file = new RandomAccessFile(segmentFile, "rw"))
+		{
+			file.setLength(completeLength);
+		}
+	}
+
+	/**
+	 * Writes the amount of entries and then the entries sorted by address, each address as a difference from the previous one
+	 * 
+	 * @param isIp6 - when false, the addresses are only in the high part of the entries
+	 */
+	private static void writeEntries(ByteArrayOutputStream block, List<long[]> entries, boolean isIp6)
+	{
+		entries.sort((entry1, entry2) -> entry1[0] != entry2[0] ? Long.compareUnsigned(entry1[0], entry2[0]) : Long.compareUnsigned(entry1[1], entry2[1]));
+
+		SegmentFormat.writeVarint(block, entries.size());
+
+		long previousHigh = 0;
+		long previousLow = 0;
+
+		for (int i = 0; i < entries.size(); i++)
+		{
+			long[] entry = entries.get(i);
+			long highDifference = entry[0] - previousHigh;
+
+			SegmentFormat.writeVarint(block, highDifference);
+
+			if (isIp6)
+				SegmentFormat.writeVarint(block, i > 0 && highDifference == 0 ? entry[1] - previousLow : entry[1]);
+
+			SegmentFormat.writeVarint(block, entry[2]);
+
+			previousHigh = entry[0];
+			previousLow = entry[1];
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.appearancehistory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * The layout of the appearance history's segment files. There is a file per minute of packet timestamps (in UTC, so it doesn't depend on daylight saving), made of:
+ * 
+ * <pre>
+ * header: magic (int), version (byte), the start of the minute in millis (long)
+ * blocks, each appended by a single flush:
+ *   length of the rest of the block (varint)
+ *   millis from the start of the minute to the last packet of the flush (varint)
+ *   amount of IPv4 addresses (varint), then for each one in ascending order: difference from the previous address (varint), count (varint)
+ *   amount of IPv6 addresses (varint), then for each one in ascending order: difference of the high 64 bits from the previous address (varint),
+ *   the low 64 bits - as a difference from the previous address if the high bits are the same (varint), count (varint)
+ * </pre>
+ * 
+ * Varints are unsigned LEB128: 7 bits per byte, least significant first, with the top bit set on all but the last byte.<br>
+ * A block cut short by a crash is detected by its length. The reader ignores it, and the writer cuts it off before it appends to the file again (see {@code getCompleteLength()}).
+ */
+final class SegmentFormat
+{
+	final static int magic = 0x57575748; //"WWWH"
+	final static byte version = 1;
+	final static int headerLength = 4 + 1 + 8;
+	final static String fileExtension = ".wwwhist";
+	private final static String fileMinuteFormat = "yyyyMMdd-HHmm";
+	private final static long millisInMinute = 60 * 1000;
+
+	private SegmentFormat()
+	{
+	}
+
+	static long getMinuteStart(long timestamp)
+	{
+		return Math.floorDiv(timestamp, millisInMinute) * millisInMinute;
+	}
+
+	static File getSegmentFile(File directory, long minuteStart)
+	{
+		return new File(directory, createMinuteFormat().format(new Date(minuteStart)) + fileExtension);
+	}
+
+	/**
+	 * @return the start of the file's minute in millis, or -1 if it isn't a segment file
+	 */
+	static long getMinuteStart(File segmentFile)
+	{
+		String name = segmentFile.getName();
+
+		if (!name.endsWith(fileExtension))
+			return -1;
+
+		try
+		{
+			return createMinuteFormat().parse(name.substring(0, name.length() - fileExtension.length())).getTime();
+		}
+		catch (ParseException pe)
+		{
+			return -1;
+		}
+	}
+
+	/**
+	 * @return the length of the file up to the end of its last complete block, or 0 if even its header is incomplete
+	 * @throws IOException if the file has a complete header that isn't of a segment of this version
+	 */
+	static long getCompleteLength(File segmentFile) throws IOException
+	{
+		long fileLength = segmentFile.length();
+
+		if (fileLength < headerLength)
+			return 0;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile))))
+		{
+			if (in.readInt() != magic || in.readByte() != version)
+				throw new IOException(segmentFile + " isn't an appearance history segment of a known version");
+
+			in.readLong();
+
+			long completeLength = headerLength;
+
+			while (completeLength < fileLength)
+			{
+				long blockLength;
+
+				try
+				{
+					blockLength = readVarint(in);
+				}
+				catch (EOFException eofe) //cut short in the middle of the length
+				{
+					break;
+				}
+
+				long blockEnd = completeLength + getVarintLength(blockLength) + blockLength;
+
+				if (blockEnd > fileLength)
+					break;
+
+				in.skipBytes((int) blockLength);
+				completeLength = blockEnd;
+			}
+
+			return completeLength;
+		}
+	}
+
+	static void writeVarint(ByteArrayOutputStream out, long value)
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			out.write((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		out.write((int) value);
+	}
+
+	/**
+	 * @return how many bytes {@code writeVarint()} writes for {@code value}
+	 */
+	static int getVarintLength(long value)
+	{
+		int length = 1;
+
+		while ((value & ~0x7FL) != 0)
+		{
+			length++;
+			value >>>= 7;
+		}
+
+		return length;
+	}
+
+	/**
+	 * @throws EOFException if the stream ends in the middle of the varint
+	 */
+	static long readVarint(DataInputStream in) throws IOException
+	{
+		long value = 0;
+
+		for (int shift = 0; shift < Long.SIZE; shift += 7)
+		{
+			int b = in.readUnsignedByte();
+
+			value |= (long) (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0)
+				return value;
+		}
+
+		throw new IOException("Invalid varint");
+	}
+
+	private static SimpleDateFormat createMinuteFormat()
+	{
+		SimpleDateFormat format = new SimpleDateFormat(fileMinuteFormat);
+
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+		return format;
+	}
+}
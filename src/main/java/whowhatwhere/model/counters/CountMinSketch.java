@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.counters;
+
+/**
+ * Estimates the count of any key in a stream with a fixed amount of memory, by the Count-Min sketch.<br>
+ * Each key is counted in one cell of each of {@code depth} rows of {@code width} cells, and its estimate is the lowest of those cells. An estimate is never below the key's true count,
+ * and with a probability of at least {@code getConfidence()}, it's above it by no more than {@code getErrorBound()}.<br>
+ * Keys are made of two longs (such as a 128-bit IPv6 address). Not thread safe.
+ */
+public class CountMinSketch
+{
+	private final int width;
+	private final int depth;
+	private final int[] cells; //depth rows of width cells
+	private long total = 0;
+
+	/**
+	 * @param width - cells per row, a power of 2. The error bound is e / width of the total count.
+	 * @param depth - amount of rows. The error bound holds with a probability of 1 - e^-depth.
+	 */
+	public CountMinSketch(int width, int depth) throws IllegalArgumentException
+	{
+		if (width < 1 || Integer.bitCount(width) != 1 || depth < 1 || (long) width * depth > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Invalid sketch size: width " + width + ", depth " + depth);
+
+		this.width = width;
+		this.depth = depth;
+
+		cells = new int[width * depth];
+	}
+
+	/**
+	 * @return the key's estimated count after adding it, the same as {@code estimate()} would return right after
+	 */
+	public int add(long high, long low)
+	{
+		long hash = Hashing.hash64(high, low); //its halves are used as two independent hashes, which generate the cell of each row
+		int hash1 = (int) hash;
+		int hash2 = (int) (hash >>> 32) | 1; //odd, so each row's cell is different
+		int mask = width - 1;
+		int estimate = Integer.MAX_VALUE;
+
+		for (int row = 0; row < depth; row++)
+			estimate = Math.min(estimate, ++cells[row * width + ((hash1 + row * hash2) & mask)]);
+
+		total++;
+
+		return estimate;
+	}
+
+	/**
+	 * @return the key's estimated count, which is at least its true count
+	 */
+	public int estimate(long high, long low)
+	{
+		long hash = Hashing.hash64(high, low);
+		int hash1 = (int) hash;
+		int hash2 = (int) (hash >>> 32) | 1;
+		int mask = width - 1;
+		int estimate = Integer.MAX_VALUE;
+
+		for (int row = 0; row < depth; row++)
+			estimate = Math.min(estimate, cells[row * width + ((hash1 + row * hash2) & mask)]);
+
+		return estimate;
+	}
+
+	/**
+	 * @return by how much an estimate may be above the true count, with a probability of {@code getConfidence()}
+	 */
+	public long getErrorBound()
+	{
+		return (long) Math.ceil(Math.E * total / width);
+	}
+
+	public double getConfidence()
+	{
+		return 1 - Math.exp(-depth);
+	}
+
+	/**
+	 * @return the amount of keys that were added
+	 */
+	public long getTotal()
+	{
+		return total;
+	}
+}
@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.counters;
+
+/**
+ * Hash functions shared by the sketches
+ */
+final class Hashing
+{
+	private Hashing()
+	{
+	}
+
+	/**
+	 * @return a well mixed 64-bit hash of a key made of two longs, whose bits are all usable on their own
+	 */
+	static long hash64(long high, long low)
+	{
+		long mixed = (high * 0xC2B2AE3D27D4EB4FL) ^ low;
+
+		mixed ^= mixed >>> 33;
+		mixed *= 0xFF51AFD7ED558CCDL;
+		mixed ^= mixed >>> 33;
+		mixed *= 0xC4CEB9FE1A85EC53L;
+		mixed ^= mixed >>> 33;
+
+		return mixed;
+	}
+}
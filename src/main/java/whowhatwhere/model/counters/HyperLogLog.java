@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.counters;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the amount of distinct keys in a stream with a fixed amount of memory, by the HyperLogLog algorithm.<br>
+ * Each key's hash picks one of 2^precision registers, which keeps the longest run of leading zeros seen in the rest of the hashes that picked it.
+ * The estimate's standard error is about 1.04 / sqrt(2^precision), e.g. 1.6% with a precision of 12, which takes 4KB.<br>
+ * Keys are made of two longs (such as a 128-bit IPv6 address). Not thread safe.
+ */
+public class HyperLogLog
+{
+	private final int precision;
+	private final byte[] registers;
+	private final double alphaMM; //the bias correction constant, times the amount of registers squared
+
+	/**
+	 * @param precision - 4 to 18. Uses 2^precision bytes.
+	 */
+	public HyperLogLog(int precision) throws IllegalArgumentException
+	{
+		if (precision < 4 || precision > 18)
+			throw new IllegalArgumentException("Precision must be 4 to 18, got " + precision);
+
+		this.precision = precision;
+
+		int m = 1 << precision;
+
+		registers = new byte[m];
+		alphaMM = (0.7213 / (1 + 1.079 / m)) * m * m;
+	}
+
+	public void add(long high, long low)
+	{
+		long hash = Hashing.hash64(high, low);
+		int register = (int) (hash >>> (64 - precision));
+		byte rank = (byte) (Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1); //the marker bit caps the rank when the rest of the hash is all zeros
+
+		if (rank > registers[register])
+			registers[register] = rank;
+	}
+
+	/**
+	 * @return the estimated amount of distinct keys that were added
+	 */
+	public long estimate()
+	{
+		double sum = 0;
+		int zeros = 0;
+
+		for (byte rank : registers)
+		{
+			sum += 1.0 / (1L << rank);
+
+			if (rank == 0)
+				zeros++;
+		}
+
+		double estimate = alphaMM / sum;
+
+		if (estimate <= 2.5 * registers.length && zeros > 0) //few keys, where counting the empty registers is more accurate
+			estimate = registers.length * Math.log((double) registers.length / zeros);
+
+		return Math.round(estimate);
+	}
+
+	public void clear()
+	{
+		Arrays.fill(registers, (byte) 0);
+	}
+}
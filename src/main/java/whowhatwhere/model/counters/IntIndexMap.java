@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.counters;
+
+import java.util.Arrays;
+
+/**
+ * Maps int keys (such as an IPv4 address) to dense indexes 0, 1, 2... in the order they were first added, without boxing.<br>
+ * Uses open addressing with linear probing over primitive arrays. Keys can't be removed. Not thread safe.
+ */
+public class IntIndexMap
+{
+	private final static int defaultCapacity = 64;
+	private final static float maxLoad = 0.5f;
+	private final static int noIndex = -1;
+
+	private int[] slotKey;
+	private int[] slotIndex; //noIndex for an empty slot
+	private int[] keys; //by index
+	private int size = 0;
+
+	public IntIndexMap()
+	{
+		this(defaultCapacity);
+	}
+
+	/**
+	 * @param expectedKeys - how many keys are expected, to avoid resizing
+	 */
+	public IntIndexMap(int expectedKeys)
+	{
+		int slots = Integer.highestOneBit(Math.max(4, (int) (expectedKeys / maxLoad)) - 1) << 1;
+
+		slotKey = new int[slots];
+		slotIndex = newEmptySlots(slots);
+		keys = new int[Math.max(4, expectedKeys)];
+	}
+
+	/**
+	 * @return the index of the key, or -1 if it was never added
+	 */
+	public int get(int key)
+	{
+		int mask = slotIndex.length - 1;
+
+		for (int slot = hash(key) & mask; slotIndex[slot] != noIndex; slot = (slot + 1) & mask)
+			if (slotKey[slot] == key)
+				return slotIndex[slot];
+
+		return noIndex;
+	}
+
+	/**
+	 * @return the index of the key. If it's a new key, it gets the next index, which is the previous {@code size()}.
+	 */
+	public int getOrAdd(int key)
+	{
+		int mask = slotIndex.length - 1;
+		int slot = hash(key) & mask;
+
+		for (; slotIndex[slot] != noIndex; slot = (slot + 1) & mask)
+			if (slotKey[slot] == key)
+				return slotIndex[slot];
+
+		int index = size++;
+
+		if (index == keys.length)
+			keys = Arrays.copyOf(keys, index * 2);
+
+		keys[index] = key;
+		slotKey[slot] = key;
+		slotIndex[slot] = index;
+
+		if (size > slotIndex.length * maxLoad)
+			rehash(slotIndex.length * 2);
+
+		return index;
+	}
+
+	public int getKey(int index)
+	{
+		return keys[index];
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	private void rehash(int newSlots)
+	{
+		slotKey = new int[newSlots];
+		slotIndex = newEmptySlots(newSlots);
+
+		int mask = newSlots - 1;
+
+		for (int index = 0; index < size; index++)
+		{
+			int key = keys[index];
+			int slot = hash(key) & mask;
+
+			while (slotIndex[slot] != noIndex)
+				slot = (slot + 1) & mask;
+
+			slotKey[slot] = key;
+			slotIndex[slot] = index;
+		}
+	}
+
+	private static int[] newEmptySlots(int slots)
+	{
+		int[] slotIndex = new int[slots];
+
+		Arrays.fill(slotIndex, noIndex);
+
+		return slotIndex;
+	}
+
+	private static int hash(int key)
+	{
+		int mixed = key * 0x9E3779B9; //spread the bits, since the low bits of addresses in the same subnet are similar
+
+		return mixed ^ (mixed >>> 16);
+	}
+}
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.counters;
+
+import java.util.Arrays;
+
+/**
+ * Maps keys made of two longs (such as a 128-bit IPv6 address) to dense indexes 0, 1, 2... in the order they were first added, without creating an object per key.<br>
+ * Uses open addressing with linear probing over primitive arrays. Keys can't be removed. Not thread safe.
+ */
+public class LongPairIndexMap
+{
+	private final static int defaultCapacity = 64;
+	private final static float maxLoad = 0.5f;
+	private final static int noIndex = -1;
+
+	private long[] slotHigh;
+	private long[] slotLow;
+	private int[] slotIndex; //noIndex for an empty slot
+	private long[] keysHigh; //by index
+	private long[] keysLow;
+	private int size = 0;
+
+	public LongPairIndexMap()
+	{
+		this(defaultCapacity);
+	}
+
+	/**
+	 * @param expectedKeys - how many keys are expected, to avoid resizing
+	 */
+	public LongPairIndexMap(int expectedKeys)
+	{
+		int slots = Integer.highestOneBit(Math.max(4, (int) (expectedKeys / maxLoad)) - 1) << 1;
+
+		slotHigh = new long[slots];
+		slotLow = new long[slots];
+		slotIndex = newEmptySlots(slots);
+		keysHigh = new long[Math.max(4, expectedKeys)];
+		keysLow = new long[keysHigh.length];
+	}
+
+	/**
+	 * @return the index of the key, or -1 if it was never added
+	 */
+	public int get(long high, long low)
+	{
+		int mask = slotIndex.length - 1;
+
+		for (int slot = hash(high, low) & mask; slotIndex[slot] != noIndex; slot = (slot + 1) & mask)
+			if (slotHigh[slot] == high && slotLow[slot] == low)
+				return slotIndex[slot];
+
+		return noIndex;
+	}
+
+	/**
+	 * @return the index of the key. If it's a new key, it gets the next index, which is the previous {@code size()}.
+	 */
+	public int getOrAdd(long high, long low)
+	{
+		int mask = slotIndex.length - 1;
+		int slot = hash(high, low) & mask;
+
+		for (; slotIndex[slot] != noIndex; slot = (slot + 1) & mask)
+			if (slotHigh[slot] == high && slotLow[slot] == low)
+				return slotIndex[slot];
+
+		int index = size++;
+
+		if (index == keysHigh.length)
+		{
+			keysHigh = Arrays.copyOf(keysHigh, index * 2);
+			keysLow = Arrays.copyOf(keysLow, index * 2);
+		}
+
+		keysHigh[index] = high;
+		keysLow[index] = low;
+		slotHigh[slot] = high;
+		slotLow[slot] = low;
+		slotIndex[slot] = index;
+
+		if (size > slotIndex.length * maxLoad)
+			rehash(slotIndex.length * 2);
+
+		return index;
+	}
+
+	public long getHigh(int index)
+	{
+		return keysHigh[index];
+	}
+
+	public long getLow(int index)
+	{
+		return keysLow[index];
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	private void rehash(int newSlots)
+	{
+		slotHigh = new long[newSlots];
+		slotLow = new long[newSlots];
+		slotIndex = newEmptySlots(newSlots);
+
+		int mask = newSlots - 1;
+
+		for (int index = 0; index < size; index++)
+		{
+			long high = keysHigh[index];
+			long low = keysLow[index];
+			int slot = hash(high, low) & mask;
+
+			while (slotIndex[slot] != noIndex)
+				slot = (slot + 1) & mask;
+
+			slotHigh[slot] = high;
+			slotLow[slot] = low;
+			slotIndex[slot] = index;
+		}
+	}
+
+	private static int[] newEmptySlots(int slots)
+	{
+		int[] slotIndex = new int[slots];
+
+		Arrays.fill(slotIndex, noIndex);
+
+		return slotIndex;
+	}
+
+	static int hash(long high, long low)
+	{
+		long mixed = (high * 0x9E3779B97F4A7C15L) ^ low;
+
+		mixed ^= mixed >>> 32;
+		mixed *= 0x9E3779B97F4A7C15L; //spread the bits, since the low bits of addresses in the same subnet are similar
+
+		return (int) (mixed >>> 32);
+	}
+}
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.counters;
+
+import java.util.Arrays;
+
+/**
+ * Counts appearances by address prefix, in a binary trie over the bits of the addresses (most significant bit first), down to a fixed prefix length.<br>
+ * Addresses are given as 128-bit pairs of longs. Shorter addresses (such as IPv4) go in the high bits of {@code high}, so their prefix lengths stay the same.<br>
+ * Nodes are kept in primitive arrays and referred to by their index, so a caller can keep the node of each address and count on it directly
+ * (see {@code getOrAddNode()}). The count of any shorter prefix is the sum of the counts below it, which is only computed when it's asked for.<br>
+ * Not thread safe.
+ */
+public class PrefixTrie
+{
+	private final static int defaultCapacity = 256;
+	private final static int noNode = 0; //the root is never a child, so 0 can mark a missing child
+	private final static int root = 0;
+
+	private final int maxPrefixLength;
+	private int[] children; //2 per node, by bit
+	private int[] counts; //by node
+	private int size = 1; //the root
+
+	/**
+	 * Receives the prefixes of a single length, with their counts
+	 */
+	public interface PrefixConsumer
+	{
+		/**
+		 * @param high - the high 64 bits of the prefix, with all bits after the prefix length set to 0
+		 * @param low - the low 64 bits of the prefix, likewise
+		 * @param count - the sum of the counts of all addresses under the prefix
+		 */
+		void accept(long high, long low, int count);
+	}
+
+	/**
+	 * @param maxPrefixLength - the length of the longest prefix that can be counted and asked for, up to 128
+	 */
+	public PrefixTrie(int maxPrefixLength)
+	{
+		if (maxPrefixLength < 0 || maxPrefixLength > 128)
+			throw new IllegalArgumentException("Prefix length must be between 0 and 128");
+
+		this.maxPrefixLength = maxPrefixLength;
+		children = new int[defaultCapacity * 2];
+		counts = new int[defaultCapacity];
+	}
+
+	/**
+	 * Creates a copy of {@code other} that doesn't share anything with it
+	 */
+	public PrefixTrie(PrefixTrie other)
+	{
+		maxPrefixLength = other.maxPrefixLength;
+		size = other.size;
+		children = Arrays.copyOf(other.children, size * 2);
+		counts = Arrays.copyOf(other.counts, size);
+	}
+
+	/**
+	 * @return the node of the address' prefix of {@code getMaxPrefixLength()} bits, to count on with {@code add()}. Its nodes are added if it's a new prefix.
+	 */
+	public int getOrAddNode(long high, long low)
+	{
+		int node = root;
+
+		for (int depth = 0; depth < maxPrefixLength; depth++)
+		{
+			int childSlot = node * 2 + getBit(high, low, depth);
+			int child = children[childSlot];
+
+			if (child == noNode)
+			{
+				child = addNode();
+				children[childSlot] = child;
+			}
+
+			node = child;
+		}
+
+		return node;
+	}
+
+	/**
+	 * @param node - as returned by {@code getOrAddNode()}
+	 */
+	public void add(int node, int amount)
+	{
+		counts[node] += amount;
+	}
+
+	/**
+	 * Passes each prefix of {@code prefixLength} bits that has counts under it to {@code consumer}, in order of the prefixes
+	 */
+	public void forEachPrefix(int prefixLength, PrefixConsumer consumer)
+	{
+		if (prefixLength < 0 || prefixLength > maxPrefixLength)
+			throw new IllegalArgumentException("Prefix length must be between 0 and " + maxPrefixLength);
+
+		forEachPrefix(root, 0, 0, 0, prefixLength, consumer);
+	}
+
+	public int getMaxPrefixLength()
+	{
+		return maxPrefixLength;
+	}
+
+	private void forEachPrefix(int node, int depth, long high, long low, int prefixLength, PrefixConsumer consumer)
+	{
+		if (depth == prefixLength)
+		{
+			int count = sumOfSubtree(node);
+
+			if (count > 0)
+				consumer.accept(high, low, count);
+
+			return;
+		}
+
+		for (int bit = 0; bit <= 1; bit++)
+		{
+			int child = children[node * 2 + bit];
+
+			if (child == noNode)
+				continue;
+
+			if (bit == 0)
+				forEachPrefix(child, depth + 1, high, low, prefixLength, consumer);
+			else
+				if (depth < 64)
+					forEachPrefix(child, depth + 1, high | (1L << (63 - depth)), low, prefixLength, consumer);
+				else
+					forEachPrefix(child, depth + 1, high, low | (1L << (127 - depth)), prefixLength, consumer);
+		}
+	}
+
+	private int sumOfSubtree(int node)
+	{
+		int sum = counts[node];
+
+		for (int bit = 0; bit <= 1; bit++)
+		{
+			int child = children[node * 2 + bit];
+
+			if (child != noNode)
+				sum += sumOfSubtree(child);
+		}
+
+		return sum;
+	}
+
+	private int addNode()
+	{
+		if (size == counts.length)
+		{
+			counts = Arrays.copyOf(counts, size * 2);
+			children = Arrays.copyOf(children, size * 4);
+		}
+
+		return size++;
+	}
+
+	private static int getBit(long high, long low, int depth)
+	{
+		return (int) (depth < 64 ? high >>> (63 - depth) : low >>> (127 - depth)) & 1;
+	}
+}
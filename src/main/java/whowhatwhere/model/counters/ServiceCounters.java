@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.counters;
+
+import java.util.Arrays;
+
+/**
+ * Counts appearances per service (IP protocol and port) of each address, where addresses are given as small non-negative ids.<br>
+ * Each (id, protocol, port) is packed into a single long (id in the top bits, then 8 bits of protocol and 16 bits of port) and mapped to a dense index by a {@code LongIndexMap}, so counting doesn't allocate anything.
+ * The services of each id are linked to each other by their indexes, so they can be listed without going over the services of other ids.<br>
+ * Not thread safe.
+ */
+public class ServiceCounters
+{
+	private final static int defaultCapacity = 64;
+	private final static int noService = -1;
+	private final static int portBits = 16;
+	private final static int protocolBits = 8;
+
+	private LongIndexMap serviceToIndex = new LongIndexMap();
+	private int[] counts = new int[defaultCapacity]; //by the index in serviceToIndex
+	private int[] nextOfSameId = new int[defaultCapacity]; //by the index in serviceToIndex, noService for the last one
+	private int[] firstById = newEmptyIndexes(defaultCapacity, new int[0]); //noService for an id without services
+
+	/**
+	 * Counts an appearance
+	 * 
+	 * @param id - a non-negative id. The arrays grow as needed.
+	 * @param protocol - the IP protocol number (0-255)
+	 * @param port - the port (0-65535), or 0 for protocols without ports
+	 */
+	public void increment(int id, int protocol, int port)
+	{
+		add(toKey(id, protocol, port), 1);
+	}
+
+	/**
+	 * Counts {@code amount} appearances of a service
+	 * 
+	 * @param key - the id, protocol and port of the service, see {@code toKey()}
+	 */
+	public void add(long key, int amount)
+	{
+		int id = (int) (key >>> (protocolBits + portBits));
+		int sizeBefore = serviceToIndex.size();
+		int service = serviceToIndex.getOrAdd(key);
+
+		if (service == sizeBefore) //a new service, link it as the first of its id
+		{
+			if (service == counts.length)
+			{
+				counts = Arrays.copyOf(counts, service * 2);
+				nextOfSameId = Arrays.copyOf(nextOfSameId, service * 2);
+			}
+
+			if (id >= firstById.length)
+				firstById = newEmptyIndexes(Math.max(firstById.length * 2, id + 1), firstById);
+
+			nextOfSameId[service] = firstById[id];
+			firstById[id] = service;
+		}
+
+		counts[service] += amount;
+	}
+
+	/**
+	 * @return the id, protocol and port of a service packed into a single long, as the services are kept
+	 */
+	public static long toKey(int id, int protocol, int port)
+	{
+		return ((long) id << (protocolBits + portBits)) | (protocol << portBits) | port;
+	}
+
+	/**
+	 * @return the index of a service of {@code id}, or -1 if it has none. Continue with {@code getNextOfSameId()}.
+	 */
+	public int getFirst(int id)
+	{
+		return id < firstById.length ? firstById[id] : noService;
+	}
+
+	/**
+	 * @return the index of the next service of the same id as {@code service}, or -1 if there are no more
+	 */
+	public int getNextOfSameId(int service)
+	{
+		return nextOfSameId[service];
+	}
+
+	public int getProtocol(int service)
+	{
+		return (int) (serviceToIndex.getKey(service) >>> portBits) & 0xFF;
+	}
+
+	public int getPort(int service)
+	{
+		return (int) serviceToIndex.getKey(service) & 0xFFFF;
+	}
+
+	public int getCount(int service)
+	{
+		return counts[service];
+	}
+
+	private static int[] newEmptyIndexes(int length, int[] from)
+	{
+		int[] indexes = new int[length];
+
+		Arrays.fill(indexes, noService);
+		System.arraycopy(from, 0, indexes, 0, from.length);
+
+		return indexes;
+	}
+}
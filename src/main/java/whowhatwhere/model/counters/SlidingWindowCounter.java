@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.counters;
+
+import java.util.Arrays;
+
+/**
+ * Counts events per id (such as the indexes given by {@code IntIndexMap}) over a sliding time window, e.g. "in the last 60 seconds".<br>
+ * Each id has a ring of time buckets and a running total of the buckets in the window. When time moves on, the buckets that fell out of the window are subtracted from the total and reused,
+ * so both counting and reading an id's count take constant time (at most one pass over the id's buckets, after a long quiet period). The count is accurate to one bucket's length.
+ * Not thread safe.
+ */
+public class SlidingWindowCounter
+{
+	private final static int initialCapacity = 64;
+
+	private final int windowInSecs;
+	private final int bucketCount;
+	private final long bucketMillis;
+
+	private int[] buckets; //bucketCount buckets per id
+	private int[] totals; //by id
+	private long[] newestBucket; //by id, the bucket (time / bucketMillis) the id's newest count went to
+
+	/**
+	 * @param windowInSecs - the length of the window
+	 * @param bucketCount - the amount of buckets the window is split to. More buckets make the count more accurate, and take more memory per id.
+	 */
+	public SlidingWindowCounter(int windowInSecs, int bucketCount) throws IllegalArgumentException
+	{
+		if (windowInSecs < 1 || bucketCount < 1 || windowInSecs * 1000L % bucketCount != 0)
+			throw new IllegalArgumentException("Can't split a window of " + windowInSecs + " seconds to " + bucketCount + " buckets");
+
+		this.windowInSecs = windowInSecs;
+		this.bucketCount = bucketCount;
+		this.bucketMillis = windowInSecs * 1000L / bucketCount;
+
+		buckets = new int[initialCapacity * bucketCount];
+		totals = new int[initialCapacity];
+		newestBucket = new long[initialCapacity];
+	}
+
+	/**
+	 * @param id - a non-negative id
+	 * @param timeInMillis - when the event happened. Events should come in time order; an event older than the id's newest one is counted as if it happened at the same time.
+	 */
+	public void increment(int id, long timeInMillis)
+	{
+		if (id >= totals.length)
+			grow(id);
+
+		long bucket = timeInMillis / bucketMillis;
+
+		advance(id, bucket);
+
+		buckets[id * bucketCount + (int) (Math.max(bucket, newestBucket[id]) % bucketCount)]++;
+		totals[id]++;
+	}
+
+	/**
+	 * @param timeInMillis - the end of the window, normally the time of the newest event
+	 * @return the amount of events of {@code id} in the window that ends at {@code timeInMillis}
+	 */
+	public int getCount(int id, long timeInMillis)
+	{
+		if (id >= totals.length)
+			return 0;
+
+		advance(id, timeInMillis / bucketMillis);
+
+		return totals[id];
+	}
+
+	/**
+	 * Clears the counts of {@code id}, so the id can be reused
+	 */
+	public void reset(int id)
+	{
+		if (id >= totals.length)
+			return;
+
+		Arrays.fill(buckets, id * bucketCount, (id + 1) * bucketCount, 0);
+		totals[id] = 0;
+	}
+
+	/**
+	 * Adds the events of each id in {@code other} to the same id here, in the buckets they were counted in.
+	 * Events that are too old for the window that ends at the id's newest event (here or in {@code other}) are dropped.
+	 * 
+	 * @param other - must have the same window and bucket count
+	 */
+	public void addAll(SlidingWindowCounter other)
+	{
+		for (int id = 0; id < other.totals.length; id++)
+		{
+			if (other.totals[id] == 0) //no events in its window
+				continue;
+
+			if (id >= totals.length)
+				grow(id);
+
+			long otherNewestBucket = other.newestBucket[id];
+
+			advance(id, otherNewestBucket);
+
+			for (long bucket = otherNewestBucket - bucketCount + 1; bucket <= otherNewestBucket; bucket++)
+			{
+				int count = other.buckets[id * bucketCount + (int) (bucket % bucketCount)];
+
+				if (count == 0 || bucket <= newestBucket[id] - bucketCount) //nothing to add, or too old for this window
+					continue;
+
+				buckets[id * bucketCount + (int) (bucket % bucketCount)] += count;
+				totals[id] += count;
+			}
+		}
+	}
+
+	/**
+	 * Clears the counts of all of the ids, keeping the capacity
+	 */
+	public void clear()
+	{
+		Arrays.fill(buckets, 0);
+		Arrays.fill(totals, 0);
+		Arrays.fill(newestBucket, 0);
+	}
+
+	public int getWindowInSecs()
+	{
+		return windowInSecs;
+	}
+
+	/**
+	 * Clears the buckets of {@code id} that are older than the window ending at {@code bucket}
+	 */
+	private void advance(int id, long bucket)
+	{
+		long elapsed = bucket - newestBucket[id];
+
+		if (elapsed <= 0)
+			return;
+
+		int first = id * bucketCount;
+
+		if (elapsed >= bucketCount)
+		{
+			Arrays.fill(buckets, first, first + bucketCount, 0);
+			totals[id] = 0;
+		}
+		else
+			for (long b = newestBucket[id] + 1; b <= bucket; b++)
+			{
+				int slot = first + (int) (b % bucketCount);
+
+				totals[id] -= buckets[slot];
+				buckets[slot] = 0;
+			}
+
+		newestBucket[id] = bucket;
+	}
+
+	private void grow(int id)
+	{
+		int newCapacity = Math.max(totals.length * 2, id + 1);
+
+		buckets = Arrays.copyOf(buckets, newCapacity * bucketCount);
+		totals = Arrays.copyOf(totals, newCapacity);
+		newestBucket = Arrays.copyOf(newestBucket, newCapacity);
+	}
+}
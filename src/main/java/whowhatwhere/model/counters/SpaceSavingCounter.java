@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.counters;
+
+import java.util.Arrays;
+
+/**
+ * Finds the keys with the highest counts in a stream with a fixed amount of memory, by the Space-Saving algorithm.<br>
+ * Up to {@code capacity} keys are monitored, each in a slot of its own. When a key that isn't monitored arrives and all of the slots are taken, it replaces the monitored key with the lowest count,
+ * and inherits that count as its error. So a monitored key's count is never below its true count, and is above it by no more than its error,
+ * and any key whose true count is above {@code getMinCount()} is monitored.<br>
+ * Keys are made of two longs (such as a 128-bit IPv6 address). Not thread safe.
+ */
+public class SpaceSavingCounter
+{
+	private final static float maxLoad = 0.5f;
+	private final static int noSlot = -1;
+
+	private final int capacity;
+	private final long[] keysHigh; //by slot
+	private final long[] keysLow;
+	private final int[] counts;
+	private final int[] errors;
+	private final int[] heap; //slots, min-heap by count
+	private final int[] heapPositions; //by slot
+	private final int[] table; //open addressing over the keys, holds slots. noSlot for an empty entry.
+	private int size = 0;
+
+	/**
+	 * @param capacity - the amount of keys to monitor
+	 */
+	public SpaceSavingCounter(int capacity) throws IllegalArgumentException
+	{
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive, got " + capacity);
+
+		this.capacity = capacity;
+
+		keysHigh = new long[capacity];
+		keysLow = new long[capacity];
+		counts = new int[capacity];
+		errors = new int[capacity];
+		heap = new int[capacity];
+		heapPositions = new int[capacity];
+		table = new int[Integer.highestOneBit(Math.max(4, (int) (capacity / maxLoad)) - 1) << 1];
+
+		Arrays.fill(table, noSlot);
+	}
+
+	/**
+	 * @return the slot of the key, or -1 if it isn't monitored
+	 */
+	public int indexOf(long high, long low)
+	{
+		int mask = table.length - 1;
+
+		for (int entry = LongPairIndexMap.hash(high, low) & mask; table[entry] != noSlot; entry = (entry + 1) & mask)
+		{
+			int slot = table[entry];
+
+			if (keysHigh[slot] == high && keysLow[slot] == low)
+				return slot;
+		}
+
+		return noSlot;
+	}
+
+	/**
+	 * Starts monitoring a key. If all of the slots are taken, the key with the lowest count is replaced, and the new key gets its slot, count and error.
+	 * 
+	 * The key must not be monitored already (see {@code indexOf()}).
+	 * 
+	 * @return the key's slot. Its count is not incremented.
+	 */
+	public int add(long high, long low)
+	{
+		int slot;
+
+		if (size < capacity)
+		{
+			slot = size;
+			counts[slot] = 0;
+			heap[size] = slot;
+			heapPositions[slot] = size;
+			siftUp(size++);
+		}
+		else
+		{
+			slot = heap[0];
+			removeFromTable(slot);
+		}
+
+		keysHigh[slot] = high;
+		keysLow[slot] = low;
+		errors[slot] = counts[slot];
+		addToTable(slot);
+
+		return slot;
+	}
+
+	public void increment(int slot)
+	{
+		counts[slot]++;
+		siftDown(heapPositions[slot]); //its count grew, so it can only move away from the root
+	}
+
+	/**
+	 * @return the amount of monitored keys, up to the capacity. Their slots are 0 to {@code size() - 1}.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	public long getHigh(int slot)
+	{
+		return keysHigh[slot];
+	}
+
+	public long getLow(int slot)
+	{
+		return keysLow[slot];
+	}
+
+	/**
+	 * @return the key's count, which is at least its true count
+	 */
+	public int getCount(int slot)
+	{
+		return counts[slot];
+	}
+
+	/**
+	 * @return by how much the key's count may be above its true count
+	 */
+	public int getError(int slot)
+	{
+		return errors[slot];
+	}
+
+	/**
+	 * @return the highest count a key that isn't monitored may have
+	 */
+	public int getMinCount()
+	{
+		return size < capacity ? 0 : counts[heap[0]];
+	}
+
+	private void addToTable(int slot)
+	{
+		int mask = table.length - 1;
+		int entry = LongPairIndexMap.hash(keysHigh[slot], keysLow[slot]) & mask;
+
+		while (table[entry] != noSlot)
+			entry = (entry + 1) & mask;
+
+		table[entry] = slot;
+	}
+
+	/**
+	 * Removes the slot's key from the table, and moves back the keys after it that would no longer be found by linear probing
+	 */
+	private void removeFromTable(int slot)
+	{
+		int mask = table.length - 1;
+		int hole = LongPairIndexMap.hash(keysHigh[slot], keysLow[slot]) & mask;
+
+		while (table[hole] != slot)
+			hole = (hole + 1) & mask;
+
+		for (int entry = (hole + 1) & mask; table[entry] != noSlot; entry = (entry + 1) & mask)
+		{
+			int home = LongPairIndexMap.hash(keysHigh[table[entry]], keysLow[table[entry]]) & mask;
+			boolean isReachable = hole <= entry ? (hole < home && home <= entry) : (hole < home || home <= entry); //can still be found from its home without passing the hole
+
+			if (!isReachable)
+			{
+				table[hole] = table[entry];
+				hole = entry;
+			}
+		}
+
+		table[hole] = noSlot;
+	}
+
+	private void siftUp(int position)
+	{
+		while (position > 0)
+		{
+			int parent = (position - 1) / 2;
+
+			if (counts[heap[parent]] <= counts[heap[position]])
+				return;
+
+			int slot = heap[position];
+
+			heap[position] = heap[parent];
+			heap[parent] = slot;
+			heapPositions[heap[position]] = position;
+			heapPositions[slot] = parent;
+			position = parent;
+		}
+	}
+
+	private void siftDown(int position)
+	{
+		while (true)
+		{
+			int smallest = position;
+			int left = 2 * position + 1;
+			int right = left + 1;
+
+			if (left < size && counts[heap[left]] < counts[heap[smallest]])
+				smallest = left;
+
+			if (right < size && counts[heap[right]] < counts[heap[smallest]])
+				smallest = right;
+
+			if (smallest == position)
+				return;
+
+			int slot = heap[position];
+
+			heap[position] = heap[smallest];
+			heap[smallest] = slot;
+			heapPositions[heap[position]] = position;
+			heapPositions[slot] = smallest;
+			position = smallest;
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.counters;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the K ids with the highest counts, updated incrementally as counts grow, so the current leaders are known without sorting all of the counts.<br>
+ * Ids are dense ints (such as the indexes given by {@code IntIndexMap}), and counts may only grow. The leaders are kept in a min-heap, so an update costs O(log K) at most,
+ * and nothing for an id that is neither a leader nor about to become one. Not thread safe.
+ */
+public class TopKTracker
+{
+	private final static int notInHeap = -1;
+
+	private int[] heapIds;
+	private int[] heapCounts;
+	private int size = 0;
+	private int[] positions = new int[64]; //by id, the id's position in the heap
+	private int maxId = -1;
+
+	/**
+	 * @param k - the amount of leaders to keep
+	 */
+	public TopKTracker(int k) throws IllegalArgumentException
+	{
+		if (k < 1)
+			throw new IllegalArgumentException("K must be positive, got " + k);
+
+		heapIds = new int[k];
+		heapCounts = new int[k];
+		Arrays.fill(positions, notInHeap);
+	}
+
+	/**
+	 * @param id - a non-negative id
+	 * @param count - the id's new count, which can't be lower than its previous count
+	 */
+	public void update(int id, int count)
+	{
+		if (id > maxId)
+			growPositions(id);
+
+		int position = positions[id];
+
+		if (position != notInHeap)
+		{
+			heapCounts[position] = count;
+			siftDown(position); //its count grew, so it can only move away from the root
+		}
+		else
+			if (size < heapIds.length)
+			{
+				heapIds[size] = id;
+				heapCounts[size] = count;
+				positions[id] = size;
+				siftUp(size++);
+			}
+			else
+				if (count > heapCounts[0]) //beats the weakest leader
+				{
+					positions[heapIds[0]] = notInHeap;
+					heapIds[0] = id;
+					heapCounts[0] = count;
+					positions[id] = 0;
+					siftDown(0);
+				}
+	}
+
+	/**
+	 * @return the amount of leaders, up to K
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @param i - 0 to {@code size() - 1}. The leaders are in no particular order.
+	 */
+	public int getId(int i)
+	{
+		return heapIds[i];
+	}
+
+	public int getCount(int i)
+	{
+		return heapCounts[i];
+	}
+
+	private void growPositions(int id)
+	{
+		if (id >= positions.length)
+		{
+			int oldLength = positions.length;
+
+			positions = Arrays.copyOf(positions, Math.max(oldLength * 2, id + 1));
+			Arrays.fill(positions, oldLength, positions.length, notInHeap);
+		}
+
+		maxId = id;
+	}
+
+	private void siftUp(int position)
+	{
+		while (position > 0)
+		{
+			int parent = (position - 1) / 2;
+
+			if (heapCounts[parent] <= heapCounts[position])
+				return;
+
+			swap(position, parent);
+			position = parent;
+		}
+	}
+
+	private void siftDown(int position)
+	{
+		while (true)
+		{
+			int smallest = position;
+			int left = 2 * position + 1;
+			int right = left + 1;
+
+			if (left < size && heapCounts[left] < heapCounts[smallest])
+				smallest = left;
+
+			if (right < size && heapCounts[right] < heapCounts[smallest])
+				smallest = right;
+
+			if (smallest == position)
+				return;
+
+			swap(position, smallest);
+			position = smallest;
+		}
+	}
+
+	private void swap(int a, int b)
+	{
+		int id = heapIds[a];
+		int count = heapCounts[a];
+
+		heapIds[a] = heapIds[b];
+		heapCounts[a] = heapCounts[b];
+		heapIds[b] = id;
+		heapCounts[b] = count;
+
+		positions[heapIds[a]] = a;
+		positions[heapIds[b]] = b;
+	}
+}
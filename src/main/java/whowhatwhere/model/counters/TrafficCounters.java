@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.counters;
+
+import java.util.Arrays;
+
+/**
+ * Inbound and outbound packet and byte counts per index (such as the indexes given by {@code IntIndexMap}), kept in parallel primitive arrays rather than in an object per index.<br>
+ * Not thread safe.
+ */
+public class TrafficCounters
+{
+	private final static int defaultCapacity = 64;
+
+	private int[] packetsIn;
+	private int[] packetsOut;
+	private long[] bytesIn;
+	private long[] bytesOut;
+
+	public TrafficCounters()
+	{
+		this(defaultCapacity);
+	}
+
+	public TrafficCounters(int initialCapacity)
+	{
+		packetsIn = new int[initialCapacity];
+		packetsOut = new int[initialCapacity];
+		bytesIn = new long[initialCapacity];
+		bytesOut = new long[initialCapacity];
+	}
+
+	/**
+	 * Counts a packet
+	 * 
+	 * @param index - a non-negative index. The arrays grow as needed.
+	 * @param isInbound - true if the packet was sent to us, false if it was sent by us
+	 * @param bytes - the packet's size on the wire
+	 */
+	public void add(int index, boolean isInbound, int bytes)
+	{
+		if (index >= packetsIn.length)
+			grow(index);
+
+		if (isInbound)
+		{
+			packetsIn[index]++;
+			bytesIn[index] += bytes;
+		}
+		else
+		{
+			packetsOut[index]++;
+			bytesOut[index] += bytes;
+		}
+	}
+
+	/**
+	 * Sets the counts of {@code index} back to 0, so the index can be reused
+	 */
+	public void reset(int index)
+	{
+		if (index >= packetsIn.length)
+			return;
+
+		packetsIn[index] = packetsOut[index] = 0;
+		bytesIn[index] = bytesOut[index] = 0;
+	}
+
+	/**
+	 * Adds the counts of each index in {@code other} to the counts of the same index here
+	 */
+	public void addAll(TrafficCounters other)
+	{
+		if (other.packetsIn.length > packetsIn.length)
+			grow(other.packetsIn.length - 1);
+
+		for (int index = 0; index < other.packetsIn.length; index++)
+		{
+			packetsIn[index] += other.packetsIn[index];
+			packetsOut[index] += other.packetsOut[index];
+			bytesIn[index] += other.bytesIn[index];
+			bytesOut[index] += other.bytesOut[index];
+		}
+	}
+
+	/**
+	 * Sets the counts of all of the indexes back to 0, keeping the capacity
+	 */
+	public void clear()
+	{
+		Arrays.fill(packetsIn, 0);
+		Arrays.fill(packetsOut, 0);
+		Arrays.fill(bytesIn, 0);
+		Arrays.fill(bytesOut, 0);
+	}
+
+	/**
+	 * @return the amount of indexes that can be read without growing. Indexes beyond it have no counts.
+	 */
+	public int getCapacity()
+	{
+		return packetsIn.length;
+	}
+
+	/**
+	 * @return the amount of packets in both directions
+	 */
+	public int getPackets(int index)
+	{
+		return packetsIn[index] + packetsOut[index];
+	}
+
+	public int getPacketsIn(int index)
+	{
+		return packetsIn[index];
+	}
+
+	public int getPacketsOut(int index)
+	{
+		return packetsOut[index];
+	}
+
+	public long getBytesIn(int index)
+	{
+		return bytesIn[index];
+	}
+
+	public long getBytesOut(int index)
+	{
+		return bytesOut[index];
+	}
+
+	private void grow(int index)
+	{
+		int newCapacity = Math.max(packetsIn.length * 2, index + 1);
+
+		packetsIn = Arrays.copyOf(packetsIn, newCapacity);
+		packetsOut = Arrays.copyOf(packetsOut, newCapacity);
+		bytesIn = Arrays.copyOf(bytesIn, newCapacity);
+		bytesOut = Arrays.copyOf(bytesOut, newCapacity);
+	}
+}
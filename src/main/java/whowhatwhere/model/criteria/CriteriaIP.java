@@ -20,16 +20,17 @@ package whowhatwhere.model.criteria;
 
 import org.apache.commons.net.util.SubnetUtils;
 import org.apache.commons.net.util.SubnetUtils.SubnetInfo;
-import org.jnetpcap.packet.PcapPacket;
-import org.jnetpcap.protocol.network.Ip4;
 
 import whowhatwhere.model.networksniffer.PacketDirection;
+import whowhatwhere.model.networksniffer.PacketView;
 
-public class CriteriaIP implements Criteria<PcapPacket, Boolean>
+public class CriteriaIP implements Criteria<PacketView, Boolean>
 {
 	private String ipAddress;
 	private PacketDirection direction;
 	private SubnetInfo subnetInfo;
+	private int netmaskAsInt;
+	private int networkAsInt;
 	
 	public CriteriaIP(String ipAddress, String mask, PacketDirection direction)
 	{
@@ -40,27 +41,31 @@ public class CriteriaIP implements Criteria<PcapPacket, Boolean>
 		subnetUtils.setInclusiveHostCount(true); //to allow one specific address with mask 255.255.255.255
 		
 		subnetInfo = subnetUtils.getInfo();
+		netmaskAsInt = subnetInfo.asInteger(subnetInfo.getNetmask());
+		networkAsInt = subnetInfo.asInteger(subnetInfo.getNetworkAddress());
 	}
 
 	@Override
-	public Boolean meetCriteria(PcapPacket itemToCheck)
+	public Boolean meetCriteria(PacketView itemToCheck)
 	{
-		if (!itemToCheck.hasHeader(Ip4.ID))
+		if (!itemToCheck.hasIp4())
 			return false;
 		
-		Ip4 ipHeader = new Ip4();
-		ipHeader = itemToCheck.getHeader(ipHeader);
-		
 		if (direction == null) //direction wasn't set, so any direction
-			return subnetInfo.isInRange(ipHeader.sourceToInt()) || subnetInfo.isInRange(ipHeader.destinationToInt());
+			return isInRange(itemToCheck.getSourceIp()) || isInRange(itemToCheck.getDestinationIp());
 		
 		switch(direction)
 		{
-			case Incoming:	return subnetInfo.isInRange(ipHeader.sourceToInt());
-			case Outgoing:	return subnetInfo.isInRange(ipHeader.destinationToInt());
+			case Incoming:	return isInRange(itemToCheck.getSourceIp());
+			case Outgoing:	return isInRange(itemToCheck.getDestinationIp());
 			default:		return null; //doesn't get here
 		}
 	}
+	
+	private boolean isInRange(int address)
+	{
+		return (address & netmaskAsInt) == networkAsInt; //same as subnetInfo.isInRange() with an inclusive host count, without the unsigned range comparisons
+	}
 
 	@Override
 	public String getCriteriaAsText()
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.criteria;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.net.util.SubnetUtils;
+import org.apache.commons.net.util.SubnetUtils.SubnetInfo;
+
+import whowhatwhere.model.networksniffer.PacketDirection;
+import whowhatwhere.model.networksniffer.PacketView;
+
+/**
+ * Matches packets whose IPv4 address is any one of a set of addresses or CIDR blocks. <br>
+ * The set is kept as sorted, non-overlapping address ranges, so checking an address is a binary search no matter how many addresses are in the set.
+ */
+public class CriteriaIPSet implements Criteria<PacketView, Boolean>
+{
+	private List<String> ipAddresses;
+	private PacketDirection direction;
+	private long[] rangeStarts; //unsigned addresses, so the ranges sort correctly
+	private long[] rangeEnds;
+
+	/**
+	 * @param ipAddresses - addresses ("192.168.1.1") or CIDR blocks ("192.168.1.0/24")
+	 * @param direction - if Incoming, the source address is checked. If Outgoing, the destination address is checked. If null, either one.
+	 * @throws IllegalArgumentException if one of the addresses isn't a valid IPv4 address or CIDR block
+	 */
+	public CriteriaIPSet(List<String> ipAddresses, PacketDirection direction) throws IllegalArgumentException
+	{
+		this.ipAddresses = ipAddresses;
+		this.direction = direction;
+		
+		long[][] ranges = new long[ipAddresses.size()][];
+		
+		for (int i = 0; i < ranges.length; i++)
+		{
+			String address = ipAddresses.get(i);
+			SubnetUtils subnetUtils = new SubnetUtils(address.contains("/") ? address : address + "/32");
+			subnetUtils.setInclusiveHostCount(true); //so the network and broadcast addresses are in the range too
+			
+			SubnetInfo subnetInfo = subnetUtils.getInfo();
+			ranges[i] = new long[] {toUnsigned(subnetInfo.asInteger(subnetInfo.getNetworkAddress())), toUnsigned(subnetInfo.asInteger(subnetInfo.getBroadcastAddress()))};
+		}
+		
+		Arrays.sort(ranges, (range1, range2) -> Long.compare(range1[0], range2[0]));
+		
+		rangeStarts = new long[ranges.length];
+		rangeEnds = new long[ranges.length];
+		int rangeCount = 0;
+		
+		for (long[] range : ranges)
+		{
+			if (rangeCount > 0 && range[0] <= rangeEnds[rangeCount - 1] + 1) //overlaps or touches the previous range, so merge them
+				rangeEnds[rangeCount - 1] = Math.max(rangeEnds[rangeCount - 1], range[1]);
+			else
+			{
+				rangeStarts[rangeCount] = range[0];
+				rangeEnds[rangeCount] = range[1];
+				rangeCount++;
+			}
+		}
+		
+		rangeStarts = Arrays.copyOf(rangeStarts, rangeCount);
+		rangeEnds = Arrays.copyOf(rangeEnds, rangeCount);
+	}
+
+	@Override
+	public Boolean meetCriteria(PacketView itemToCheck)
+	{
+		if (!itemToCheck.hasIp4())
+			return false;
+		
+		if (direction == null) //direction wasn't set, so any direction
+			return contains(itemToCheck.getSourceIp()) || contains(itemToCheck.getDestinationIp());
+		
+		switch(direction)
+		{
+			case Incoming:	return contains(itemToCheck.getSourceIp());
+			case Outgoing:	return contains(itemToCheck.getDestinationIp());
+			default:		return null; //doesn't get here
+		}
+	}
+
+	@Override
+	public String getCriteriaAsText()
+	{
+		return "(IP in [" + String.join(", ", ipAddresses) + "])";
+	}
+	
+	private boolean contains(int address)
+	{
+		long value = toUnsigned(address);
+		int index = Arrays.binarySearch(rangeStarts, value);
+		
+		if (index >= 0)
+			return true;
+		
+		index = -index - 2; //the range that starts before the address
+		
+		return index >= 0 && value <= rangeEnds[index];
+	}
+	
+	private static long toUnsigned(int address)
+	{
+		return address & 0xFFFFFFFFL;
+	}
+}
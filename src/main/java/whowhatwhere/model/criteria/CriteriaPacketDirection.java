@@ -18,39 +18,30 @@
  ******************************************************************************/
 package whowhatwhere.model.criteria;
 
-import java.util.Arrays;
-
-import org.jnetpcap.packet.PcapPacket;
-import org.jnetpcap.protocol.lan.Ethernet;
-
 import whowhatwhere.model.networksniffer.PacketDirection;
+import whowhatwhere.model.networksniffer.PacketView;
 
-public class CriteriaPacketDirection implements Criteria<PcapPacket, Boolean>
+/**
+ * Matches packets by their direction relative to the capturing device, whose MAC address is given to the {@code PacketView}.
+ */
+public class CriteriaPacketDirection implements Criteria<PacketView, Boolean>
 {
 	private PacketDirection direction;
-	private byte[] ownMAC;
 
-	public CriteriaPacketDirection(PacketDirection direction, byte[] ownMAC)
+	public CriteriaPacketDirection(PacketDirection direction)
 	{
 		this.direction = direction;
-		this.ownMAC = ownMAC;
 	}
 
 	@Override
-	public Boolean meetCriteria(PcapPacket itemToCheck)
+	public Boolean meetCriteria(PacketView itemToCheck)
 	{
-		if (!itemToCheck.hasHeader(Ethernet.ID))
-			return false;
-
-		Ethernet eth = new Ethernet();
-		eth = itemToCheck.getHeader(eth);
-
 		switch (direction)
 		{
 			case Incoming:
-				return Arrays.equals(ownMAC, eth.destination());
+				return itemToCheck.isIncoming();
 			case Outgoing:
-				return Arrays.equals(ownMAC, eth.source());
+				return itemToCheck.isOutgoing();
 			default:
 				return false; //doesn't get here
 		}
@@ -18,9 +18,9 @@
  ******************************************************************************/
 package whowhatwhere.model.criteria;
 
-import org.jnetpcap.packet.PcapPacket;
+import whowhatwhere.model.networksniffer.PacketView;
 
-public class CriteriaPacketSize implements Criteria<PcapPacket, Boolean>
+public class CriteriaPacketSize implements Criteria<PacketView, Boolean>
 {
 	private int size;
 	private RelativeToValue sign;
@@ -32,9 +32,9 @@ public class CriteriaPacketSize implements Criteria<PcapPacket, Boolean>
 	}
 
 	@Override
-	public Boolean meetCriteria(PcapPacket itemToCheck)
+	public Boolean meetCriteria(PacketView itemToCheck)
 	{
-		int currPacketSize = itemToCheck.size();
+		int currPacketSize = itemToCheck.getWireLength();
 		
 		switch (sign)
 		{
@@ -18,11 +18,9 @@
  ******************************************************************************/
 package whowhatwhere.model.criteria;
 
-import org.jnetpcap.packet.PcapPacket;
-import org.jnetpcap.protocol.tcpip.Tcp;
-import org.jnetpcap.protocol.tcpip.Udp;
+import whowhatwhere.model.networksniffer.PacketView;
 
-public class CriteriaPort implements Criteria<PcapPacket, Boolean>
+public class CriteriaPort implements Criteria<PacketView, Boolean>
 {
 	private int portNumber;
 	private RelativeToValue sign;
@@ -43,27 +41,14 @@ public class CriteriaPort implements Criteria<PcapPacket, Boolean>
 	}
 
 	@Override
-	public Boolean meetCriteria(PcapPacket itemToCheck)
+	public Boolean meetCriteria(PacketView itemToCheck)
 	{
-		if (itemToCheck.hasHeader(Tcp.ID))
-		{
-			Tcp tcp = new Tcp();
-			tcp = itemToCheck.getHeader(tcp);
-			int portToCheck = portType == PortType.SOURCE ? tcp.source() : tcp.destination();
-
-			return evaluate(portToCheck);
-		}
+		if (!itemToCheck.hasPorts()) //neither TCP nor UDP
+			return false;
 		
-		if (itemToCheck.hasHeader(Udp.ID))
-		{
-			Udp udp = new Udp();
-			udp = itemToCheck.getHeader(udp);
-			int portToCheck = portType == PortType.SOURCE ? udp.source() : udp.destination();
-
-			return evaluate(portToCheck);
-		}
+		int portToCheck = portType == PortType.SOURCE ? itemToCheck.getSourcePort() : itemToCheck.getDestinationPort();
 
-		return false;
+		return evaluate(portToCheck);
 	}
 
 	@Override
@@ -18,11 +18,10 @@
  ******************************************************************************/
 package whowhatwhere.model.criteria;
 
-import org.jnetpcap.packet.PcapPacket;
-
+import whowhatwhere.model.networksniffer.PacketView;
 import whowhatwhere.model.networksniffer.SupportedProtocols;
 
-public class CriteriaProtocol implements Criteria<PcapPacket, Boolean>
+public class CriteriaProtocol implements Criteria<PacketView, Boolean>
 {
 	private SupportedProtocols protocol;
 
@@ -32,7 +31,7 @@ public class CriteriaProtocol implements Criteria<PcapPacket, Boolean>
 	}
 	
 	@Override
-	public Boolean meetCriteria(PcapPacket itemToCheck)
+	public Boolean meetCriteria(PacketView itemToCheck)
 	{
 		return itemToCheck.hasHeader(protocol.getValue());
 	}
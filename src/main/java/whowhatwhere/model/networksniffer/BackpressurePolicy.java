@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer;
+
+/**
+ * What the capture thread does when the packet ring buffer is full
+ */
+public enum BackpressurePolicy
+{
+	BLOCK, //wait for a worker to free a slot. Nothing is dropped by us, but the kernel may drop packets while we wait.
+	DROP_NEWEST, //drop the packet that was just captured
+	DROP_OLDEST //drop the oldest packet that no worker has taken yet, and queue the new one
+}
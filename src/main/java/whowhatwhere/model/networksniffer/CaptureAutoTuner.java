@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jnetpcap.PcapStat;
+
+/**
+ * Watches the drop counters of a live capture session, and reopens its handle with settings that drop less when needed:
+ * first the kernel buffer is grown, and once it's at its maximum, immediate mode is turned off so packets are read in batches.<br>
+ * The snaplen is never changed, since the session's handlers may need the whole packet.
+ */
+public class CaptureAutoTuner
+{
+	private static final Logger logger = Logger.getLogger(CaptureAutoTuner.class.getPackage().getName());
+
+	private final static int sampleIntervalInSecs = 5;
+	private final static double maxDropRatio = 0.01;
+	private final static int maxBufferSize = 256 * 1024 * 1024;
+
+	private CaptureSession session;
+	private ScheduledThreadPoolExecutor timer;
+	private PcapStat stats = new PcapStat();
+	private long lastReceived = 0;
+	private long lastDropped = 0;
+	private boolean isExhausted = false; //nothing left to tune, warned once
+
+	public CaptureAutoTuner(CaptureSession session)
+	{
+		this.session = session;
+	}
+
+	public void start()
+	{
+		timer = new ScheduledThreadPoolExecutor(1, runnable ->
+		{
+			Thread thread = new Thread(runnable, "Auto-tuner for " + session.getSourceName());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		timer.scheduleWithFixedDelay(this::sample, sampleIntervalInSecs, sampleIntervalInSecs, TimeUnit.SECONDS);
+	}
+
+	public void stop()
+	{
+		if (timer != null)
+			timer.shutdownNow();
+	}
+
+	private void sample()
+	{
+		if (!session.readStats(stats))
+			return;
+
+		long received = stats.getRecv();
+		long dropped = stats.getDrop() + stats.getIfDrop();
+
+		if (received < lastReceived || dropped < lastDropped) //the handle was reopened, so the counters started over
+		{
+			lastReceived = 0;
+			lastDropped = 0;
+		}
+
+		long receivedDelta = received - lastReceived;
+		long droppedDelta = dropped - lastDropped;
+
+		lastReceived = received;
+		lastDropped = dropped;
+
+		if (droppedDelta == 0 || (double) droppedDelta / (receivedDelta + droppedDelta) <= maxDropRatio)
+			return;
+
+		CaptureParameters current = session.getCaptureParameters();
+		CaptureParameters tuned;
+
+		if (current.getBufferSize() < maxBufferSize)
+			tuned = current.withBufferSize((int) Math.min((long) current.getBufferSize() * 2, maxBufferSize));
+		else
+			if (current.isImmediate())
+				tuned = current.withImmediate(false);
+			else
+			{
+				if (!isExhausted)
+					logger.log(Level.WARNING, "Capture on " + session.getSourceName() + " keeps dropping packets (" + droppedDelta + " of the last " + (receivedDelta + droppedDelta) + "), and can't be tuned any further");
+
+				isExhausted = true;
+				return;
+			}
+
+		logger.log(Level.INFO, "Capture on " + session.getSourceName() + " dropped " + droppedDelta + " of the last " + (receivedDelta + droppedDelta) + " packets, reopening with " + tuned);
+		session.requestReopen(tuned);
+	}
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer;
+
+/**
+ * The settings a live capture handle is opened with. Immutable, the {@code with...()} methods return a modified copy.
+ */
+public class CaptureParameters
+{
+	private final static int immediateModeTimeout = 1; //jNetPcap 1.4 doesn't expose pcap_set_immediate_mode(), so the shortest read timeout is the closest we get
+
+	private int snaplen;
+	private int bufferSize;
+	private int timeout;
+	private boolean isImmediate;
+	private boolean isPromiscuous;
+
+	/**
+	 * @param snaplen - max amount of bytes captured from each packet
+	 * @param bufferSize - size of the kernel buffer in bytes
+	 * @param timeout - read timeout in milliseconds. Ignored in immediate mode.
+	 * @param isImmediate - deliver packets as soon as they arrive instead of in batches
+	 * @param isPromiscuous - capture packets that aren't addressed to this host as well
+	 */
+	public CaptureParameters(int snaplen, int bufferSize, int timeout, boolean isImmediate, boolean isPromiscuous)
+	{
+		this.snaplen = snaplen;
+		this.bufferSize = bufferSize;
+		this.timeout = timeout;
+		this.isImmediate = isImmediate;
+		this.isPromiscuous = isPromiscuous;
+	}
+
+	public int getSnaplen()
+	{
+		return snaplen;
+	}
+
+	public int getBufferSize()
+	{
+		return bufferSize;
+	}
+
+	public int getTimeout()
+	{
+		return timeout;
+	}
+
+	/**
+	 * @return the read timeout to actually open the handle with, taking immediate mode into account
+	 */
+	public int getEffectiveTimeout()
+	{
+		return isImmediate ? immediateModeTimeout : timeout;
+	}
+
+	public boolean isImmediate()
+	{
+		return isImmediate;
+	}
+
+	public boolean isPromiscuous()
+	{
+		return isPromiscuous;
+	}
+
+	public CaptureParameters withBufferSize(int newBufferSize)
+	{
+		return new CaptureParameters(snaplen, newBufferSize, timeout, isImmediate, isPromiscuous);
+	}
+
+	public CaptureParameters withImmediate(boolean newIsImmediate)
+	{
+		return new CaptureParameters(snaplen, bufferSize, timeout, newIsImmediate, isPromiscuous);
+	}
+
+	@Override
+	public String toString()
+	{
+		return "snaplen " + snaplen + ", buffer " + (bufferSize / 1024) + "KB, " + (isImmediate ? "immediate mode" : "timeout " + timeout + "ms") + (isPromiscuous ? ", promiscuous" : "");
+	}
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer;
+
+import org.apache.commons.collections4.bidimap.TreeBidiMap;
+
+/**
+ * Preset capture settings for the common kinds of captures
+ */
+public enum CaptureProfile
+{
+	HEADER_ONLY(new CaptureParameters(96, 4 * 1024 * 1024, 1000, false, true)), //enough for Ethernet + IP + TCP/UDP headers, which is all counting and header-based rules need
+	FULL_PAYLOAD(new CaptureParameters(64 * 1024, 8 * 1024 * 1024, 1000, false, true)), //whole packets, for rules that look at the payload (e.g. HTTP)
+	LOW_LATENCY(new CaptureParameters(64 * 1024, 2 * 1024 * 1024, 1000, true, true)), //packets are delivered as soon as they arrive
+	HIGH_THROUGHPUT(new CaptureParameters(256, 64 * 1024 * 1024, 1000, false, true)); //large kernel buffer, short snaplen, for busy links
+
+	private CaptureParameters parameters;
+	private static TreeBidiMap<String, CaptureProfile> profileBidiMap;
+
+	static
+	{
+		profileBidiMap = new TreeBidiMap<>();
+		profileBidiMap.put("Header only", HEADER_ONLY);
+		profileBidiMap.put("Full payload", FULL_PAYLOAD);
+		profileBidiMap.put("Low latency", LOW_LATENCY);
+		profileBidiMap.put("High throughput", HIGH_THROUGHPUT);
+	}
+
+	private CaptureProfile(CaptureParameters parameters)
+	{
+		this.parameters = parameters;
+	}
+
+	public CaptureParameters getParameters()
+	{
+		return parameters;
+	}
+
+	@Override
+	public String toString()
+	{
+		return profileBidiMap.getKey(this);
+	}
+
+	public static CaptureProfile stringToEnum(String str)
+	{
+		return profileBidiMap.get(str);
+	}
+}
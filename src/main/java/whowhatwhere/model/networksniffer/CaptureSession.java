@@ -0,0 +1,735 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jnetpcap.JBufferHandler;
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapBpfProgram;
+import org.jnetpcap.PcapHeader;
+import org.jnetpcap.PcapIf;
+import org.jnetpcap.PcapStat;
+import org.jnetpcap.nio.JBuffer;
+import org.jnetpcap.nio.JMemory;
+import org.jnetpcap.packet.JRegistry;
+import org.jnetpcap.packet.PcapPacket;
+import org.jnetpcap.packet.PcapPacketHandler;
+
+/**
+ * A single pcap handle, shared by everyone that captures on the same network interface with compatible settings (see {@code acquireLiveSession()}). Each packet is decoded once and handed to every registered packet handler.<br>
+ * Live sessions are obtained with {@code acquireLiveSession()} and must be given back with {@code release()}. The handle is closed when the last user releases it.<br>
+ * Each handler may ask for a kernel (BPF) filter. The session installs a filter that lets through the union of what all of its handlers asked for, so handlers must still check every packet they get.<br>
+ * Raw handlers (registered with {@code addRawPacketHandler()}) get the captured bytes as they are, and packets are only decoded if there are regular handlers that need them.<br>
+ * By default, packets are handled on the capture thread. In pipeline mode (see {@code PipelineSettings}), the capture thread only copies packets into a {@code PacketRingBuffer}, and worker threads decode and handle them,
+ * so slow handlers don't make the kernel drop packets. With several workers, only the decoding runs in parallel: the handlers still get the packets one at a time, in the order they were captured,
+ * since they count by the packets' times and record them to files in order.<br>
+ * A live session can be auto-tuned (see {@code CaptureAutoTuner}), in which case its handle may be reopened with different settings while capturing.
+ */
+public class CaptureSession
+{
+	private static final Logger logger = Logger.getLogger(CaptureSession.class.getPackage().getName());
+
+	private final static int bpfOptimize = 1;
+	private final static int bpfNetmask = 0; //only needed by filters that check for broadcast addresses, which we don't generate
+	private final static String bpfAcceptAll = "";
+
+	private static Map<String, List<CaptureSession>> liveSessions = new HashMap<>(); //device name to the sessions capturing on it
+
+	private String sourceName;
+	private Pcap pcap;
+	private boolean isShared;
+	private CaptureParameters captureParameters; //null for file sessions
+	private CaptureParameters pendingParameters; //set when the handle should be reopened with new parameters
+	private CaptureAutoTuner autoTuner;
+	private int referenceCount = 0;
+	private int dataLinkType;
+	private int dataLinkId;
+	private ReplaySpeed replaySpeed; //null for live sessions
+	private ReplayPacketHandler replayHandler;
+	private Thread captureThread;
+	private PipelineSettings pipelineSettings; //null when packets are handled on the capture thread
+	private PacketRingBuffer ringBuffer;
+	private List<Thread> workerThreads = new ArrayList<>();
+	private final Object handlerTurnLock = new Object();
+	private long nextSequenceToHandle = 0; //the sequence number (see PacketRingBuffer.take()) of the next packet to hand to the handlers, guarded by handlerTurnLock
+	private volatile boolean isClosed = false;
+	private boolean hasEnded = false;
+
+	private List<PcapPacketHandler<Void>> packetHandlers = new CopyOnWriteArrayList<>();
+	private List<JBufferHandler<Void>> rawPacketHandlers = new CopyOnWriteArrayList<>();
+	private Map<Object, Runnable> captureEndedListeners = new ConcurrentHashMap<>(); //keys are packet handlers of either kind
+	private Map<Object, String> kernelFilters = new HashMap<>(); //a null filter means that handler needs every packet
+	private String installedKernelFilter = bpfAcceptAll;
+
+	private CaptureSession(String sourceName, Pcap pcap, boolean isShared, PipelineSettings pipelineSettings)
+	{
+		this.sourceName = sourceName;
+		this.pcap = pcap;
+		this.isShared = isShared;
+		this.dataLinkType = pcap.datalink();
+		this.dataLinkId = JRegistry.mapDLTToId(dataLinkType);
+
+		if (pipelineSettings != null)
+		{
+			this.pipelineSettings = pipelineSettings;
+			this.ringBuffer = new PacketRingBuffer(pcap.snapshot(), pipelineSettings.getRingBufferMemoryMB() * 1024L * 1024L, pipelineSettings.getBackpressurePolicy());
+		}
+	}
+
+	/**
+	 * @param device - the device to capture on
+	 * @param captureParameters - the settings to open the device with. A session that is already capturing on {@code device} is joined if its snaplen is at least as large as this one, whatever its other settings are.
+	 * @param isAutoTuned - if true, a newly opened session is auto-tuned by a {@code CaptureAutoTuner}
+	 * @param pipelineSettings - settings for pipeline mode, or null to handle packets on the capture thread. Only used if a new session is opened.
+	 * @return a session that is already capturing on {@code device}, or a newly opened one if there isn't a suitable one. Returns null if the device couldn't be opened, in which case {@code errbuf} contains the error.
+	 */
+	public static synchronized CaptureSession acquireLiveSession(PcapIf device, CaptureParameters captureParameters, boolean isAutoTuned, PipelineSettings pipelineSettings, StringBuilder errbuf)
+	{
+		String deviceName = device.getName();
+		List<CaptureSession> deviceSessions = liveSessions.computeIfAbsent(deviceName, name -> new ArrayList<>());
+		CaptureSession session = null;
+
+		for (CaptureSession deviceSession : deviceSessions)
+		{
+			if (deviceSession.captureParameters.getSnaplen() >= captureParameters.getSnaplen()) //packets captured by it are complete enough for us
+			{
+				session = deviceSession;
+				break;
+			}
+		}
+
+		if (session == null)
+		{
+			Pcap pcap = openLiveHandle(deviceName, captureParameters, errbuf);
+
+			if (pcap == null)
+			{
+				logger.log(Level.SEVERE, "Error while opening device for capture: " + errbuf.toString());
+
+				if (deviceSessions.isEmpty())
+					liveSessions.remove(deviceName);
+
+				return null;
+			}
+
+			session = new CaptureSession(deviceName, pcap, true, pipelineSettings);
+			session.captureParameters = captureParameters;
+
+			if (isAutoTuned)
+				session.autoTuner = new CaptureAutoTuner(session);
+
+			deviceSessions.add(session);
+		}
+		else
+			if ((session.pipelineSettings == null) != (pipelineSettings == null))
+				logger.log(Level.INFO, "Capture on " + deviceName + " is already running " + session.getModeDescription() + ", joining it as is");
+
+		session.referenceCount++;
+
+		return session;
+	}
+
+	/**
+	 * Opens a private (non-shared) session that replays a pcap/pcapng file. The capture ends at the end of the file, after all the packets were handled.
+	 *
+	 * @param pipelineSettings - settings for pipeline mode, or null to handle packets on the capture thread
+	 * @return the new session, or null if the file couldn't be opened, in which case {@code errbuf} contains the error.
+	 */
+	public static synchronized CaptureSession openFileSession(String pcapFilename, ReplaySpeed replaySpeed, PipelineSettings pipelineSettings, StringBuilder errbuf)
+	{
+		Pcap pcap = Pcap.openOffline(pcapFilename, errbuf);
+
+		if (pcap == null)
+		{
+			logger.log(Level.SEVERE, "Error while opening capture file " + pcapFilename + ": " + errbuf.toString());
+			return null;
+		}
+
+		CaptureSession session = new CaptureSession(pcapFilename, pcap, false, pipelineSettings);
+		session.replaySpeed = replaySpeed;
+		session.referenceCount++;
+
+		return session;
+	}
+
+	/**
+	 * Gives back a session that was obtained by {@code acquireLiveSession()} or {@code openFileSession()}. When the last user releases it, the capture stops and the handle is closed.
+	 */
+	public static synchronized void release(CaptureSession session)
+	{
+		if (--session.referenceCount > 0)
+			return;
+
+		if (session.isShared)
+			forgetLiveSession(session);
+
+		session.close();
+	}
+
+	/**
+	 * Opens a live handle the long way (create, set, activate), since {@code Pcap.openLive()} can't set the kernel buffer size
+	 * 
+	 * @return the activated handle, or null on failure, in which case {@code errbuf} contains the error
+	 */
+	private static Pcap openLiveHandle(String deviceName, CaptureParameters captureParameters, StringBuilder errbuf)
+	{
+		Pcap pcap = Pcap.create(deviceName, errbuf);
+
+		if (pcap == null)
+			return null;
+
+		pcap.setSnaplen(captureParameters.getSnaplen());
+		pcap.setPromisc(captureParameters.isPromiscuous() ? Pcap.MODE_PROMISCUOUS : Pcap.MODE_NON_PROMISCUOUS);
+		pcap.setTimeout(captureParameters.getEffectiveTimeout());
+		pcap.setBufferSize(captureParameters.getBufferSize());
+
+		if (pcap.activate() < Pcap.OK) //positive values are warnings
+		{
+			errbuf.append(pcap.getErr());
+			pcap.close();
+			return null;
+		}
+
+		return pcap;
+	}
+
+	/**
+	 * Registers {@code packetHandler} to receive every packet of this session. The capture starts when the first handler is registered.
+	 *
+	 * @param kernelFilter - a BPF expression (tcpdump syntax) describing the only packets {@code packetHandler} is interested in, or null if it needs every packet
+	 * @param captureEndedListener - called (on the capture thread) if the capture ends while {@code packetHandler} is still registered, for example at the end of a replayed file. Can be null.
+	 */
+	public void addPacketHandler(PcapPacketHandler<Void> packetHandler, String kernelFilter, Runnable captureEndedListener)
+	{
+		addHandler(packetHandler, packetHandlers, kernelFilter, captureEndedListener);
+	}
+
+	/**
+	 * Same as {@code addPacketHandler()}, but {@code rawPacketHandler} gets the captured bytes without any decoding. The buffer is only valid during the call.
+	 * 
+	 * @see #getDataLinkType()
+	 */
+	public void addRawPacketHandler(JBufferHandler<Void> rawPacketHandler, String kernelFilter, Runnable captureEndedListener)
+	{
+		addHandler(rawPacketHandler, rawPacketHandlers, kernelFilter, captureEndedListener);
+	}
+
+	private synchronized <T> void addHandler(T handler, List<T> handlerList, String kernelFilter, Runnable captureEndedListener)
+	{
+		if (hasEnded) //the capture already ended (e.g. the device was removed), so this handler will never get any packets
+		{
+			if (captureEndedListener != null)
+				captureEndedListener.run();
+
+			return;
+		}
+
+		if (captureEndedListener != null)
+			captureEndedListeners.put(handler, captureEndedListener);
+
+		kernelFilters.put(handler, kernelFilter);
+		updateKernelFilter();
+		handlerList.add(handler);
+
+		if (captureThread == null)
+			startCapture();
+	}
+
+	/**
+	 * Must be called while holding the lock
+	 */
+	private void startCapture()
+	{
+		JBufferHandler<Void> captureHandler;
+
+		if (ringBuffer != null)
+		{
+			captureHandler = (header, buffer, nothing) -> ringBuffer.offer(header, buffer);
+
+			boolean isMultiThreaded = pipelineSettings.getWorkerThreads() > 1;
+
+			for (int i = 1; i <= pipelineSettings.getWorkerThreads(); i++)
+			{
+				Thread worker = new Thread(() -> runWorker(isMultiThreaded));
+				worker.setName("Capture worker " + i + " on " + sourceName);
+				worker.setDaemon(true);
+				workerThreads.add(worker);
+				worker.start();
+			}
+		}
+		else
+		{
+			PcapPacket packet = new PcapPacket(JMemory.POINTER);
+
+			captureHandler = (header, buffer, nothing) -> handlePacket(header, buffer, packet, false);
+		}
+
+		if (replaySpeed != null)
+		{
+			replayHandler = new ReplayPacketHandler(captureHandler, replaySpeed);
+			captureHandler = replayHandler;
+		}
+
+		JBufferHandler<Void> loopHandler = captureHandler;
+
+		captureThread = new Thread(() -> runCapture(loopHandler), "Capture on " + sourceName);
+		captureThread.setDaemon(true);
+		captureThread.start();
+
+		if (autoTuner != null)
+			autoTuner.start();
+	}
+
+	/**
+	 * Hands a captured packet to the raw handlers, then decodes it and hands it to the regular handlers. If there are no regular handlers, the packet isn't decoded at all.
+	 * 
+	 * @param packet - used for decoding the captured data
+	 * @param isDecoded - true if {@code packet} was already decoded from this packet
+	 */
+	private void handlePacket(PcapHeader header, JBuffer buffer, PcapPacket packet, boolean isDecoded)
+	{
+		for (JBufferHandler<Void> rawPacketHandler : rawPacketHandlers)
+			rawPacketHandler.nextPacket(header, buffer, null);
+
+		if (packetHandlers.isEmpty())
+			return;
+
+		if (!isDecoded)
+			decode(packet, header, buffer);
+
+		for (PcapPacketHandler<Void> packetHandler : packetHandlers)
+			packetHandler.nextPacket(packet, null);
+	}
+
+	/**
+	 * Used when several workers take packets at once. Decodes the packet right away, then waits until the packets that were taken before it were handled,
+	 * so the handlers get the packets one at a time, in the order they were captured.
+	 * 
+	 * @param sequence - the packet's sequence number, as returned by {@code PacketRingBuffer.take()}
+	 */
+	private void handlePacketInOrder(PcapHeader header, JBuffer buffer, PcapPacket packet, long sequence)
+	{
+		try
+		{
+			boolean isDecoded = !packetHandlers.isEmpty();
+
+			if (isDecoded)
+				decode(packet, header, buffer);
+
+			waitForTurn(sequence);
+			handlePacket(header, buffer, packet, isDecoded);
+		}
+		finally
+		{
+			endTurn(sequence); //even if a handler failed, or the next packets would never be handled
+		}
+	}
+
+	private void waitForTurn(long sequence)
+	{
+		boolean isInterrupted = false;
+
+		synchronized (handlerTurnLock)
+		{
+			while (nextSequenceToHandle != sequence)
+			{
+				try
+				{
+					handlerTurnLock.wait();
+				}
+				catch (InterruptedException ie)
+				{
+					isInterrupted = true; //the turn will come, and the packets before it must not be skipped
+				}
+			}
+		}
+
+		if (isInterrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	private void endTurn(long sequence)
+	{
+		waitForTurn(sequence); //returns right away, unless decoding failed before the turn came
+
+		synchronized (handlerTurnLock)
+		{
+			nextSequenceToHandle = sequence + 1;
+			handlerTurnLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Makes {@code packet} point at the captured data and decodes its headers. No data is copied.
+	 */
+	private void decode(PcapPacket packet, PcapHeader header, JBuffer buffer)
+	{
+		packet.peer(buffer);
+		packet.getCaptureHeader().peerTo(header, 0);
+		packet.scan(dataLinkId);
+	}
+
+	/**
+	 * Takes packets out of the ring buffer and hands them to the packet handlers, until the ring buffer is closed and empty
+	 */
+	private void runWorker(boolean isMultiThreaded)
+	{
+		ByteBuffer packetData = ByteBuffer.allocateDirect(ringBuffer.getSlotSize()); //the worker's own copy, so the slot is freed before the (possibly slow) handlers run
+		int headerSize = ringBuffer.getHeaderSize();
+		PcapHeader header = new PcapHeader(JMemory.POINTER);
+		JBuffer buffer = new JBuffer(JMemory.POINTER);
+		PcapPacket packet = new PcapPacket(JMemory.POINTER);
+		long sequence;
+
+		while ((sequence = ringBuffer.take(packetData)) >= 0)
+		{
+			int dataEnd = packetData.limit();
+
+			packetData.limit(headerSize);
+			header.peer(packetData);
+			packetData.limit(dataEnd);
+			packetData.position(headerSize);
+			buffer.peer(packetData);
+
+			try
+			{
+				if (isMultiThreaded)
+					handlePacketInOrder(header, buffer, packet, sequence);
+				else
+					handlePacket(header, buffer, packet, false);
+			}
+			catch (RuntimeException re) //don't let one bad packet kill the worker, or the capture thread would eventually block forever
+			{
+				logger.log(Level.SEVERE, "Packet handler failed on " + sourceName, re);
+			}
+		}
+	}
+
+	/**
+	 * After this method returns, {@code packetHandler} won't receive any new packets. Safe to call from within {@code packetHandler} itself.
+	 */
+	public void removePacketHandler(PcapPacketHandler<Void> packetHandler)
+	{
+		packetHandlers.remove(packetHandler);
+		forgetHandler(packetHandler);
+	}
+
+	/**
+	 * Same as {@code removePacketHandler()}, for handlers that were registered with {@code addRawPacketHandler()}
+	 */
+	public void removeRawPacketHandler(JBufferHandler<Void> rawPacketHandler)
+	{
+		rawPacketHandlers.remove(rawPacketHandler);
+		forgetHandler(rawPacketHandler);
+	}
+
+	private void forgetHandler(Object handler)
+	{
+		captureEndedListeners.remove(handler);
+
+		synchronized (this)
+		{
+			kernelFilters.remove(handler);
+			updateKernelFilter();
+		}
+	}
+
+	/**
+	 * Compiles {@code filter} for checking packets in user space with {@code Pcap.offlineFilter()}. Used by handlers that must only get the packets that pass their own filter,
+	 * rather than everything the session lets through for all of its handlers.
+	 * 
+	 * @param dataLinkType - the link layer type of the packets (see {@code getDataLinkType()})
+	 * @return the compiled filter, which must be freed with {@code Pcap.freecode()}, or null if {@code filter} is null or couldn't be compiled
+	 */
+	static PcapBpfProgram compileOfflineFilter(String filter, int snaplen, int dataLinkType)
+	{
+		if (filter == null)
+			return null;
+
+		PcapBpfProgram program = new PcapBpfProgram();
+
+		if (Pcap.compileNoPcap(snaplen, dataLinkType, program, filter, bpfOptimize, bpfNetmask) != Pcap.OK)
+		{
+			logger.log(Level.WARNING, "Unable to compile filter \"" + filter + "\" for checking packets in user space");
+			return null;
+		}
+
+		return program;
+	}
+
+	/**
+	 * Installs a filter that is the OR of all the handlers' filters, or accepts everything if any handler needs every packet. Must be called while holding the lock.
+	 */
+	private void updateKernelFilter()
+	{
+		if (hasEnded || kernelFilters.isEmpty()) //when the last handler leaves, there's no point in changing the filter
+			return;
+
+		String newFilter;
+
+		if (kernelFilters.containsValue(null))
+			newFilter = bpfAcceptAll;
+		else
+		{
+			Set<String> distinctFilters = new LinkedHashSet<>(kernelFilters.values());
+			StringBuilder combined = new StringBuilder();
+
+			for (String filter : distinctFilters)
+				combined.append(combined.length() == 0 ? "" : " or ").append("(").append(filter).append(")");
+
+			newFilter = combined.toString();
+		}
+
+		if (newFilter.equals(installedKernelFilter))
+			return;
+
+		PcapBpfProgram program = new PcapBpfProgram();
+
+		if (pcap.compile(program, newFilter, bpfOptimize, bpfNetmask) != Pcap.OK)
+		{
+			logger.log(Level.WARNING, "Unable to compile kernel filter \"" + newFilter + "\" for " + sourceName + ", all packets will be passed to the handlers: " + pcap.getErr());
+			newFilter = bpfAcceptAll;
+
+			if (newFilter.equals(installedKernelFilter) || pcap.compile(program, newFilter, bpfOptimize, bpfNetmask) != Pcap.OK)
+				return;
+		}
+
+		if (pcap.setFilter(program) == Pcap.OK)
+			installedKernelFilter = newFilter;
+		else
+			logger.log(Level.WARNING, "Unable to install kernel filter \"" + newFilter + "\" on " + sourceName + ": " + pcap.getErr());
+
+		Pcap.freecode(program);
+	}
+
+	private void runCapture(JBufferHandler<Void> captureHandler)
+	{
+		try
+		{
+			do
+			{
+				int result = pcap.loop(Pcap.LOOP_INFINITE, captureHandler, null);
+
+				if (result == Pcap.ERROR && !isClosed)
+					logger.log(Level.SEVERE, "Capture on " + sourceName + " ended with an error: " + pcap.getErr());
+			}
+			while (reopenIfRequested());
+
+			if (replayHandler != null)
+				replayHandler.logReplaySummary(sourceName);
+		}
+		finally
+		{
+			if (autoTuner != null)
+				autoTuner.stop();
+
+			if (ringBuffer != null)
+				finishPipeline();
+
+			synchronized (this)
+			{
+				hasEnded = true;
+				pcap.close(); //the handle is only closed by the thread that loops on it
+			}
+
+			if (isShared)
+				forgetLiveSession(this); //so the next user opens a fresh handle instead of getting this dead one
+
+			for (Runnable listener : captureEndedListeners.values())
+				listener.run();
+		}
+	}
+
+	/**
+	 * Lets the workers handle the packets that are still in the ring buffer, and waits for them to finish
+	 */
+	private void finishPipeline()
+	{
+		ringBuffer.close();
+
+		for (Thread worker : workerThreads)
+		{
+			try
+			{
+				worker.join();
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+
+		if (ringBuffer.getTotalDropped() > 0)
+			logger.log(Level.WARNING, "Pipeline on " + sourceName + " queued " + ringBuffer.getPacketsQueued() + " packets and dropped " + ringBuffer.getTotalDropped() + " (" + ringBuffer.getDroppedNewest() + " newest, "
+					+ ringBuffer.getDroppedOldest() + " oldest, " + ringBuffer.getDroppedTooLarge() + " too large)");
+	}
+
+	/**
+	 * Called by the capture thread after the loop was broken. If new parameters were requested, the handle is replaced by a new one opened with them.
+	 * 
+	 * @return true if the capture should go on with the new handle
+	 */
+	private synchronized boolean reopenIfRequested()
+	{
+		CaptureParameters newParameters = pendingParameters;
+		pendingParameters = null;
+
+		if (newParameters == null || isClosed)
+			return false;
+
+		StringBuilder errbuf = new StringBuilder();
+		Pcap newPcap = openLiveHandle(sourceName, newParameters, errbuf);
+
+		if (newPcap == null)
+		{
+			logger.log(Level.SEVERE, "Unable to reopen " + sourceName + " with " + newParameters + ", capture stopped: " + errbuf.toString());
+			return false;
+		}
+
+		pcap.close();
+		pcap = newPcap;
+		captureParameters = newParameters;
+		installedKernelFilter = bpfAcceptAll; //a new handle has no filter, so it accepts everything
+		updateKernelFilter();
+
+		return true;
+	}
+
+	/**
+	 * Makes the capture thread reopen the handle with {@code newParameters}. Packets that arrive while the handle is being replaced are lost.
+	 */
+	public synchronized void requestReopen(CaptureParameters newParameters)
+	{
+		if (hasEnded || isClosed || captureParameters == null)
+			return;
+
+		pendingParameters = newParameters;
+		pcap.breakloop();
+	}
+
+	/**
+	 * Reads the handle's statistics into {@code stats}
+	 * 
+	 * @return false if the capture has ended or the statistics aren't available
+	 */
+	public synchronized boolean readStats(PcapStat stats)
+	{
+		return !hasEnded && pcap.stats(stats) == Pcap.OK;
+	}
+
+	/**
+	 * @return the settings the live handle is currently opened with, or null for a file session
+	 */
+	public synchronized CaptureParameters getCaptureParameters()
+	{
+		return captureParameters;
+	}
+
+	private static synchronized void forgetLiveSession(CaptureSession session)
+	{
+		List<CaptureSession> deviceSessions = liveSessions.get(session.sourceName);
+
+		if (deviceSessions != null && deviceSessions.remove(session) && deviceSessions.isEmpty())
+			liveSessions.remove(session.sourceName);
+	}
+
+	private synchronized void close()
+	{
+		isClosed = true;
+
+		if (autoTuner != null)
+			autoTuner.stop();
+
+		if (replayHandler != null)
+			replayHandler.stop();
+
+		if (ringBuffer != null)
+			ringBuffer.close(); //releases the capture thread if it's blocked on a full ring buffer
+
+		if (hasEnded)
+			return;
+
+		if (captureThread != null)
+			pcap.breakloop();
+		else
+		{
+			hasEnded = true;
+			pcap.close(); //no capture was ever started
+		}
+	}
+
+	public String getSourceName()
+	{
+		return sourceName;
+	}
+
+	/**
+	 * @return the link layer type of the captured packets (a DLT_ value, as returned by {@code Pcap.datalink()}). Raw packet handlers need it to find the network layer.
+	 */
+	public int getDataLinkType()
+	{
+		return dataLinkType;
+	}
+
+	public boolean isPipelined()
+	{
+		return ringBuffer != null;
+	}
+
+	/**
+	 * @return the settings this session runs with in pipeline mode, or null if packets are handled on the capture thread
+	 */
+	public PipelineSettings getPipelineSettings()
+	{
+		return pipelineSettings;
+	}
+
+	/**
+	 * @return amount of packets the ring buffer dropped so far (see {@code PacketRingBuffer} for the breakdown), or 0 if not in pipeline mode
+	 */
+	public long getPipelineDroppedPackets()
+	{
+		return ringBuffer == null ? 0 : ringBuffer.getTotalDropped();
+	}
+
+	/**
+	 * @return the ring buffer between the capture thread and the workers, or null if not in pipeline mode
+	 */
+	public PacketRingBuffer getRingBuffer()
+	{
+		return ringBuffer;
+	}
+
+	private String getModeDescription()
+	{
+		return pipelineSettings == null ? "without a pipeline" : "with a pipeline (" + pipelineSettings + ")";
+	}
+}
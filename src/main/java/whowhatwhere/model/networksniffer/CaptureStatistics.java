@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer;
+
+/**
+ * A snapshot of how a capture is doing. Packet counts are since the capture started.<br>
+ * Kernel statistics count every packet the handle saw, including packets that other captures sharing the handle were interested in.
+ */
+public class CaptureStatistics
+{
+	private boolean areKernelStatsAvailable;
+	private long packetsReceived;
+	private long packetsDroppedByKernel;
+	private long packetsDroppedByInterface;
+	private long packetsDroppedByPipeline;
+	private long packetsHandled;
+	private double packetsPerSecond;
+	private LatencyHistogram handlerLatency;
+
+	/**
+	 * @param areKernelStatsAvailable - false if the capture source doesn't provide statistics (e.g. a capture file), in which case the kernel counts are 0 and the rate is of handled packets
+	 * @param packetsPerSecond - rate of received packets (or handled packets, if kernel statistics aren't available) since the previous snapshot
+	 * @param handlerLatency - how long the packet handler took for each packet
+	 */
+	public CaptureStatistics(boolean areKernelStatsAvailable, long packetsReceived, long packetsDroppedByKernel, long packetsDroppedByInterface, long packetsDroppedByPipeline, long packetsHandled,
+			double packetsPerSecond, LatencyHistogram handlerLatency)
+	{
+		this.areKernelStatsAvailable = areKernelStatsAvailable;
+		this.packetsReceived = packetsReceived;
+		this.packetsDroppedByKernel = packetsDroppedByKernel;
+		this.packetsDroppedByInterface = packetsDroppedByInterface;
+		this.packetsDroppedByPipeline = packetsDroppedByPipeline;
+		this.packetsHandled = packetsHandled;
+		this.packetsPerSecond = packetsPerSecond;
+		this.handlerLatency = handlerLatency;
+	}
+
+	public boolean areKernelStatsAvailable()
+	{
+		return areKernelStatsAvailable;
+	}
+
+	public long getPacketsReceived()
+	{
+		return packetsReceived;
+	}
+
+	public long getPacketsDroppedByKernel()
+	{
+		return packetsDroppedByKernel;
+	}
+
+	public long getPacketsDroppedByInterface()
+	{
+		return packetsDroppedByInterface;
+	}
+
+	public long getPacketsDroppedByPipeline()
+	{
+		return packetsDroppedByPipeline;
+	}
+
+	public long getTotalDropped()
+	{
+		return packetsDroppedByKernel + packetsDroppedByInterface + packetsDroppedByPipeline;
+	}
+
+	public long getPacketsHandled()
+	{
+		return packetsHandled;
+	}
+
+	public double getPacketsPerSecond()
+	{
+		return packetsPerSecond;
+	}
+
+	/**
+	 * @return the fraction (0 to 1) of packets that were lost before reaching the handler. Platforms count received packets a bit differently, so this is an approximation.
+	 */
+	public double getDropRatio()
+	{
+		long seen = packetsReceived + packetsDroppedByKernel + packetsDroppedByInterface;
+
+		if (seen == 0)
+			seen = packetsHandled + packetsDroppedByPipeline;
+
+		return seen == 0 ? 0 : Math.min(1, (double) getTotalDropped() / seen);
+	}
+
+	public LatencyHistogram getHandlerLatency()
+	{
+		return handlerLatency;
+	}
+
+	@Override
+	public String toString()
+	{
+		String pipelineDrops = packetsDroppedByPipeline > 0 ? " (" + packetsDroppedByPipeline + " by the pipeline)" : "";
+
+		return String.format("%.0f packets/sec, %.1f%% dropped%s, handler time %s (99%%: %s)", packetsPerSecond, getDropRatio() * 100, pipelineDrops, LatencyHistogram.formatNanos(handlerLatency.getPercentile(0.5)),
+				LatencyHistogram.formatNanos(handlerLatency.getPercentile(0.99)));
+	}
+}
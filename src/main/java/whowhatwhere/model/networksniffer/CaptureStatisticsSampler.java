@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.jnetpcap.PcapStat;
+
+/**
+ * Samples the statistics of a running capture once a second, and hands them to a listener
+ */
+public class CaptureStatisticsSampler
+{
+	private final static int sampleIntervalInSecs = 1;
+
+	private CaptureSession session;
+	private LatencyHistogram handlerLatency;
+	private CaptureStatisticsListener listener;
+	private ScheduledThreadPoolExecutor timer;
+	private PcapStat stats = new PcapStat();
+	private volatile CaptureStatistics latest;
+
+	//counts since the capture started. The handle's own counters restart when it's reopened, so they are accumulated here.
+	private long received, droppedByKernel, droppedByInterface;
+	private long lastRawReceived, lastRawDroppedByKernel, lastRawDroppedByInterface;
+	private long pipelineDroppedAtStart;
+	private long lastRateCount;
+	private long lastSampleNanos;
+
+	/**
+	 * @param handlerLatency - the histogram that the capture's packet handler calls are timed into. The amount of recorded calls is the amount of handled packets.
+	 * @param listener - gets every sample. Can be null.
+	 */
+	public CaptureStatisticsSampler(CaptureSession session, LatencyHistogram handlerLatency, CaptureStatisticsListener listener)
+	{
+		this.session = session;
+		this.handlerLatency = handlerLatency;
+		this.listener = listener;
+	}
+
+	public void start()
+	{
+		if (session.readStats(stats)) //the counts so far belong to whoever used the handle before us
+		{
+			lastRawReceived = stats.getRecv();
+			lastRawDroppedByKernel = stats.getDrop();
+			lastRawDroppedByInterface = stats.getIfDrop();
+		}
+
+		pipelineDroppedAtStart = session.getPipelineDroppedPackets();
+		lastSampleNanos = System.nanoTime();
+
+		timer = new ScheduledThreadPoolExecutor(1, runnable ->
+		{
+			Thread thread = new Thread(runnable, "Statistics for " + session.getSourceName());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		timer.scheduleAtFixedRate(this::sample, sampleIntervalInSecs, sampleIntervalInSecs, TimeUnit.SECONDS);
+	}
+
+	public void stop()
+	{
+		if (timer != null)
+			timer.shutdownNow();
+	}
+
+	/**
+	 * @return the most recent sample, or null if none was taken yet
+	 */
+	public CaptureStatistics getLatest()
+	{
+		return latest;
+	}
+
+	private void sample()
+	{
+		boolean areKernelStatsAvailable = session.readStats(stats);
+
+		if (areKernelStatsAvailable)
+		{
+			received += delta(stats.getRecv(), lastRawReceived);
+			droppedByKernel += delta(stats.getDrop(), lastRawDroppedByKernel);
+			droppedByInterface += delta(stats.getIfDrop(), lastRawDroppedByInterface);
+
+			lastRawReceived = stats.getRecv();
+			lastRawDroppedByKernel = stats.getDrop();
+			lastRawDroppedByInterface = stats.getIfDrop();
+		}
+
+		long handled = handlerLatency.getCount();
+		long rateCount = areKernelStatsAvailable ? received : handled;
+		long now = System.nanoTime();
+		double packetsPerSecond = (rateCount - lastRateCount) * (double) TimeUnit.SECONDS.toNanos(1) / Math.max(1, now - lastSampleNanos);
+
+		lastRateCount = rateCount;
+		lastSampleNanos = now;
+
+		latest = new CaptureStatistics(areKernelStatsAvailable, received, droppedByKernel, droppedByInterface, session.getPipelineDroppedPackets() - pipelineDroppedAtStart, handled, packetsPerSecond,
+				handlerLatency.copy());
+
+		if (listener != null)
+			listener.captureStatisticsUpdated(latest);
+	}
+
+	/**
+	 * @return how much a counter grew since it was last read. A counter that went down was restarted (the handle was reopened), so all of its current value is new.
+	 */
+	private static long delta(long current, long last)
+	{
+		return current >= last ? current - last : current;
+	}
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in power-of-two buckets: bucket i holds durations of [2^(i-1), 2^i) nanoseconds. Percentiles are reported as the upper bound of the bucket they fall in, so they are accurate up to a factor of 2.<br>
+ * Recording is meant for a single thread at a time, while reading can be done from any thread.
+ */
+public class LatencyHistogram
+{
+	private final static int bucketCount = 64;
+
+	private AtomicLongArray buckets = new AtomicLongArray(bucketCount);
+
+	public void record(long nanos)
+	{
+		int bucket = nanos <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(nanos);
+
+		buckets.lazySet(bucket, buckets.get(bucket) + 1); //single writer, so no need for an atomic increment
+	}
+
+	public long getCount()
+	{
+		long count = 0;
+
+		for (int i = 0; i < bucketCount; i++)
+			count += buckets.get(i);
+
+		return count;
+	}
+
+	/**
+	 * @param fraction - which percentile to return, between 0 and 1 (e.g. 0.99 for the 99th percentile)
+	 * @return the duration (in nanoseconds) that {@code fraction} of the recorded durations are shorter than, or 0 if nothing was recorded
+	 */
+	public long getPercentile(double fraction)
+	{
+		long count = getCount();
+
+		if (count == 0)
+			return 0;
+
+		long rank = (long) Math.ceil(fraction * count);
+		long seen = 0;
+
+		for (int i = 0; i < bucketCount; i++)
+		{
+			seen += buckets.get(i);
+
+			if (seen >= rank && seen > 0)
+				return bucketUpperBound(i);
+		}
+
+		return bucketUpperBound(bucketCount - 1);
+	}
+
+	/**
+	 * @return the upper bound (in nanoseconds) of the highest non-empty bucket, or 0 if nothing was recorded
+	 */
+	public long getMax()
+	{
+		for (int i = bucketCount - 1; i >= 0; i--)
+			if (buckets.get(i) > 0)
+				return bucketUpperBound(i);
+
+		return 0;
+	}
+
+	/**
+	 * @return the amount of durations recorded in each bucket
+	 */
+	public long[] getBuckets()
+	{
+		long[] copy = new long[bucketCount];
+
+		for (int i = 0; i < bucketCount; i++)
+			copy[i] = buckets.get(i);
+
+		return copy;
+	}
+
+	/**
+	 * @return a copy of this histogram, that won't change when more durations are recorded here
+	 */
+	public LatencyHistogram copy()
+	{
+		LatencyHistogram copy = new LatencyHistogram();
+
+		for (int i = 0; i < bucketCount; i++)
+			copy.buckets.set(i, buckets.get(i));
+
+		return copy;
+	}
+
+	private static long bucketUpperBound(int bucket)
+	{
+		return bucket >= 63 ? Long.MAX_VALUE : 1L << bucket;
+	}
+
+	/**
+	 * @return a short human readable duration, such as "850ns", "12µs" or "3ms"
+	 */
+	public static String formatNanos(long nanos)
+	{
+		if (nanos < TimeUnit.MICROSECONDS.toNanos(1))
+			return nanos + "ns";
+
+		if (nanos < TimeUnit.MILLISECONDS.toNanos(1))
+			return TimeUnit.NANOSECONDS.toMicros(nanos) + "\u00b5s";
+
+		return TimeUnit.NANOSECONDS.toMillis(nanos) + "ms";
+	}
+}
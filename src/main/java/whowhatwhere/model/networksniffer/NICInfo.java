@@ -18,11 +18,14 @@
  ******************************************************************************/
 package whowhatwhere.model.networksniffer;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 public class NICInfo
 {
 	private String ip;
+	private List<String> ipv6Addresses = new ArrayList<>();
 	private byte[] macAddress;
 	private String description;
 
@@ -37,9 +40,19 @@ public class NICInfo
 		this.description = description;
 	}
 
+	/**
+	 * @param ipv6Addresses - the interface's IPv6 addresses, in their textual form (without brackets or scope)
+	 */
+	public NICInfo(String ip, List<String> ipv6Addresses, byte[] macAddress, String description)
+	{
+		this(ip, macAddress, description);
+		this.ipv6Addresses = ipv6Addresses;
+	}
+
 	public void copyNICInfo(NICInfo other)
 	{
 		ip = other.ip;
+		ipv6Addresses = other.ipv6Addresses;
 		macAddress = other.macAddress;
 		description = other.description;
 	}
@@ -49,6 +62,14 @@ public class NICInfo
 		return ip;
 	}
 
+	/**
+	 * @return the interface's IPv6 addresses. Unlike {@code getIP()}, they aren't surrounded by brackets.
+	 */
+	public List<String> getIPv6Addresses()
+	{
+		return ipv6Addresses;
+	}
+
 	public byte[] getMACAddress()
 	{
 		return macAddress;
@@ -25,21 +25,33 @@ import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.net.util.SubnetUtils;
+import org.jnetpcap.JBufferHandler;
 import org.jnetpcap.Pcap;
 import org.jnetpcap.PcapAddr;
 import org.jnetpcap.PcapIf;
 import org.jnetpcap.packet.PcapPacketHandler;
 
+import whowhatwhere.model.appearancehistory.AppearanceHistorySettings;
+import whowhatwhere.model.appearancehistory.AppearanceHistoryWriter;
 import whowhatwhere.model.networksniffer.appearancecounter.AppearanceCounterPacketHandler;
+import whowhatwhere.model.networksniffer.appearancecounter.ApproximateCountingSettings;
 import whowhatwhere.model.networksniffer.appearancecounter.AppearanceCounterResults;
+import whowhatwhere.model.networksniffer.appearancecounter.AppearanceCounterSnapshot;
+import whowhatwhere.model.networksniffer.appearancecounter.TopAppearancesListener;
 import whowhatwhere.model.networksniffer.watchdog.PacketTypeToMatch;
 import whowhatwhere.model.networksniffer.watchdog.WatchdogListener;
 import whowhatwhere.model.networksniffer.watchdog.WatchdogPacketHandler;
@@ -52,15 +64,29 @@ public class NetworkSniffer
 	public final static String pingError = "Error";
 	public final static String pingTimeout = "Request timed out";
 
-	private static int snaplen = 64 * 1024; // Capture all packets, no truncation
-	private static int flags = Pcap.MODE_PROMISCUOUS; // capture all packets
-	private static int timeout = 1 * 1000; // 1 second in milliseconds
-
 	private static final Pattern ipv4Pattern = Pattern.compile("^(([01]?\\d\\d?|2[0-4]\\d|25[0-5])\\.){3}([01]?\\d\\d?|2[0-4]\\d|25[0-5])$");
 
 	private final static String Ipv4Prefix = "INET4:";
-
-	private Pcap pcap;
+	private final static String Ipv6Prefix = "INET6:";
+	private final static int maxFileSnaplen = 256 * 1024; //the largest packet a capture file is expected to hold
+	private final static int topAppearancesIntervalInMillis = 500;
+
+	private CaptureSession activeSession;
+	private Runnable activeHandlerRemover;
+	private CountDownLatch activeCaptureEnded;
+	private PipelineSettings pipelineSettings; //null to handle packets on the capture thread
+	private CaptureProfile captureProfile; //null to pick a profile by what each capture needs
+	private boolean isAutoTuneEnabled = false;
+	private CaptureStatisticsListener statisticsListener;
+	private CaptureStatisticsSampler activeStatisticsSampler;
+	private RecordingSettings recordingSettings; //null to not record
+	private AppearanceHistorySettings appearanceHistorySettings; //null to not keep the appearance counts on disk
+	private TopAppearancesListener topAppearancesListener;
+	private int topAppearancesAmount;
+	private ApproximateCountingSettings approximateCountingSettings; //null to count exactly
+	private boolean isServiceBreakdownEnabled = false;
+	private boolean isSubnetRollupEnabled = false;
+	private AppearanceCounterPacketHandler activeCounterPH;
 	private List<NICInfo> ipAndDescList = new ArrayList<>();
 	private Map<NICInfo, PcapIf> nicInfoToPcapIf = new HashMap<>();
 
@@ -92,15 +118,29 @@ public class NetworkSniffer
 		{
 			String description = (device.getDescription() != null) ? device.getDescription() : "No description available";
 			String ip = null;
+			List<String> ipv6Addresses = new ArrayList<>();
+
 			for (PcapAddr pcapAddr : device.getAddresses())
 			{
 				String temp = pcapAddr.getAddr().toString();
 
 				if (temp.contains(Ipv4Prefix))
 				{
-					ip = temp.replace(Ipv4Prefix, "");
-					break;
+					if (ip == null)
+						ip = temp.replace(Ipv4Prefix, "");
 				}
+				else
+					if (temp.contains(Ipv6Prefix))
+					{
+						try
+						{
+							ipv6Addresses.add(InetAddress.getByAddress(pcapAddr.getAddr().getData()).getHostAddress());
+						}
+						catch (UnknownHostException uhe)
+						{
+							logger.log(Level.WARNING, "Unable to read IPv6 address " + temp + " of " + description);
+						}
+					}
 			}
 
 			if (ip == null || ip.equals("[0.0.0.0]"))
@@ -117,7 +157,7 @@ public class NetworkSniffer
 				hardwareAddress = new byte[8];
 			}
 
-			NICInfo nicInfo = new NICInfo(ip, hardwareAddress, description);
+			NICInfo nicInfo = new NICInfo(ip, ipv6Addresses, hardwareAddress, description);
 			ipAndDescList.add(nicInfo);
 			nicInfoToPcapIf.put(nicInfo, device);
 		}
@@ -136,6 +176,29 @@ public class NetworkSniffer
 		return ByteBuffer.wrap(bar.getAddress()).getInt();
 	}
 
+	/**
+	 * @return the IPv6 address as two longs: the high 64 bits, then the low 64 bits
+	 * @throws UnknownHostException if {@code str} isn't an IPv6 address
+	 */
+	public static long[] stringToLongPairIp(String str) throws UnknownHostException
+	{
+		byte[] address = InetAddress.getByName(str).getAddress();
+
+		if (address.length != 16)
+			throw new UnknownHostException(str + " is not an IPv6 address");
+
+		ByteBuffer buffer = ByteBuffer.wrap(address);
+
+		return new long[] {buffer.getLong(), buffer.getLong()};
+	}
+
+	public static String longPairToIpString(long high, long low) throws UnknownHostException
+	{
+		byte[] address = ByteBuffer.allocate(16).putLong(high).putLong(low).array();
+
+		return InetAddress.getByAddress(address).getHostAddress();
+	}
+
 	public static boolean isValidIPv4(String ip)
 	{
 		return ipv4Pattern.matcher(ip).matches();
@@ -177,8 +240,113 @@ public class NetworkSniffer
 
 	public AppearanceCounterResults startAppearanceCounterCapture(NICInfo device, List<Integer> protocolsToCapture, CaptureStartListener listener, StringBuilder errbuf)
 	{
-		String deviceIp = device.getIP();
-		String ownAddress = deviceIp.substring(1, deviceIp.length() - 1);
+		AppearanceCounterPacketHandler filteredCounterPH = createAppearanceCounterPacketHandler(device, protocolsToCapture, listener);
+
+		if (filteredCounterPH == null)
+			return null;
+
+		CaptureProfile defaultProfile = protocolsToCapture.contains(SupportedProtocols.HTTP.getValue()) ? CaptureProfile.FULL_PAYLOAD : CaptureProfile.HEADER_ONLY; //HTTP is detected by its payload
+		CaptureSession liveSession = acquireLiveSession(nicInfoToPcapIf.get(device), defaultProfile, errbuf);
+
+		if (liveSession != null)
+			runAppearanceCounterCapture(liveSession, filteredCounterPH, generateAppearanceCounterKernelFilter(device, protocolsToCapture));
+
+		return new AppearanceCounterResults(filteredCounterPH.getSnapshot(0)); //the capture ended, so it's made right away
+	}
+
+	/**
+	 * Same as {@code startAppearanceCounterCapture}, but reads the packets from a pcap/pcapng file instead of a live network interface.
+	 * 
+	 * @param pcapFilename - the capture file to read
+	 * @param device - describes the host whose traffic was captured in the file. Its IP address is used as "our" address when counting appearances. 
+	 * @param replaySpeed - how fast to replay the file's packets
+	 */
+	public AppearanceCounterResults startAppearanceCounterCaptureFromFile(String pcapFilename, NICInfo device, List<Integer> protocolsToCapture, ReplaySpeed replaySpeed, CaptureStartListener listener, StringBuilder errbuf)
+	{
+		AppearanceCounterPacketHandler filteredCounterPH = createAppearanceCounterPacketHandler(device, protocolsToCapture, listener);
+
+		if (filteredCounterPH == null)
+			return null;
+
+		CaptureSession fileSession = openFileSession(pcapFilename, replaySpeed, errbuf);
+
+		if (fileSession != null)
+			runAppearanceCounterCapture(fileSession, filteredCounterPH, generateAppearanceCounterKernelFilter(device, protocolsToCapture));
+
+		return new AppearanceCounterResults(filteredCounterPH.getSnapshot(0)); //the capture ended, so it's made right away
+	}
+
+	/**
+	 * Counts straight from the captured bytes when the handler supports the session's link type and the selected protocols, and falls back to decoding every packet otherwise
+	 */
+	private void runAppearanceCounterCapture(CaptureSession session, AppearanceCounterPacketHandler counterPH, String kernelFilter)
+	{
+		int dataLinkType = session.getDataLinkType();
+		ScheduledThreadPoolExecutor topAppearancesTimer = startTopAppearancesTimer(counterPH);
+		AppearanceHistoryWriter historyWriter = appearanceHistorySettings != null ? new AppearanceHistoryWriter(appearanceHistorySettings, counterPH) : null;
+
+		counterPH.captureStarted();
+
+		if (historyWriter != null)
+			historyWriter.start();
+
+		synchronized (this)
+		{
+			activeCounterPH = counterPH;
+		}
+
+		try
+		{
+			if (counterPH.supportsRawCounting(dataLinkType))
+			{
+				counterPH.setDataLinkType(dataLinkType);
+				runRawCapture(session, counterPH, kernelFilter);
+			}
+			else
+				runCapture(session, counterPH, kernelFilter);
+		}
+		finally
+		{
+			if (topAppearancesTimer != null)
+				topAppearancesTimer.shutdownNow();
+
+			synchronized (this)
+			{
+				activeCounterPH = null;
+			}
+
+			counterPH.captureEnded();
+
+			if (historyWriter != null)
+				historyWriter.stop();
+		}
+	}
+
+	/**
+	 * @return a timer that periodically has {@code counterPH} pass its current leaders to the {@code TopAppearancesListener} on the timer's thread, or null if there is no listener
+	 */
+	private ScheduledThreadPoolExecutor startTopAppearancesTimer(AppearanceCounterPacketHandler counterPH)
+	{
+		if (topAppearancesListener == null)
+			return null;
+
+		counterPH.trackTopAppearances(topAppearancesAmount, topAppearancesListener);
+
+		ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable ->
+		{
+			Thread thread = new Thread(runnable, "Top appearances timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		timer.scheduleAtFixedRate(() -> counterPH.publishTopAppearances(topAppearancesIntervalInMillis), topAppearancesIntervalInMillis, topAppearancesIntervalInMillis, TimeUnit.MILLISECONDS);
+
+		return timer;
+	}
+
+	private AppearanceCounterPacketHandler createAppearanceCounterPacketHandler(NICInfo device, List<Integer> protocolsToCapture, CaptureStartListener listener)
+	{
+		String ownAddress = getOwnAddress(device);
 		int ownIpInt;
 
 		try
@@ -191,11 +359,83 @@ public class NetworkSniffer
 			return null;
 		}
 
-		AppearanceCounterPacketHandler filteredCounterPH = new AppearanceCounterPacketHandler(ownIpInt, protocolsToCapture, listener);
+		List<String> ownIpv6Addresses = device.getIPv6Addresses();
+		long[] ownIp6High = new long[ownIpv6Addresses.size()];
+		long[] ownIp6Low = new long[ownIpv6Addresses.size()];
+
+		for (int i = 0; i < ownIp6High.length; i++)
+		{
+			try
+			{
+				long[] ip6 = stringToLongPairIp(ownIpv6Addresses.get(i));
+
+				ownIp6High[i] = ip6[0];
+				ownIp6Low[i] = ip6[1];
+			}
+			catch (UnknownHostException uhe)
+			{
+				logger.log(Level.WARNING, "Unable convert own IPv6 address " + ownIpv6Addresses.get(i) + ", IPv6 traffic to that address won't be counted");
+				ownIp6High[i] = ownIp6Low[i] = 0; //:: is never a source or destination of counted traffic
+			}
+		}
+
+		AppearanceCounterPacketHandler counterPH = new AppearanceCounterPacketHandler(ownIpInt, ownIp6High, ownIp6Low, protocolsToCapture, listener);
+
+		if (approximateCountingSettings != null)
+			counterPH.useApproximateCounting(approximateCountingSettings);
+		else
+		{
+			if (isServiceBreakdownEnabled)
+				counterPH.countServices();
+
+			if (isSubnetRollupEnabled)
+				counterPH.rollUpSubnets();
+		}
+
+		return counterPH;
+	}
+
+	private static String getOwnAddress(NICInfo device)
+	{
+		String deviceIp = device.getIP();
+
+		return deviceIp.substring(1, deviceIp.length() - 1);
+	}
+
+	/**
+	 * Generates a BPF expression that only lets through the packets that {@code AppearanceCounterPacketHandler} would count, so irrelevant traffic is dropped in the kernel instead of being copied to Java.
+	 * The handler still performs its own checks, so the filter may let through more than needed (e.g. all of TCP when HTTP is selected, since HTTP can't be detected by a BPF program).<br>
+	 * IPv6 traffic is only filtered by address, since BPF can't reliably find the upper layer protocol behind IPv6 extension headers.
+	 */
+	private static String generateAppearanceCounterKernelFilter(NICInfo device, List<Integer> protocolsToCapture)
+	{
+		String ip6Filter = "";
 
-		startCapture(nicInfoToPcapIf.get(device), filteredCounterPH, errbuf);
+		for (String ipv6Address : device.getIPv6Addresses())
+			ip6Filter += " or ip6 host " + ipv6Address;
 
-		return new AppearanceCounterResults(filteredCounterPH);
+		String filter = "ip host " + getOwnAddress(device);
+
+		if (protocolsToCapture.isEmpty())
+			return filter + ip6Filter;
+
+		Set<String> bpfProtocols = new LinkedHashSet<>();
+
+		for (Integer protocolId : protocolsToCapture)
+		{
+			if (protocolId == SupportedProtocols.UDP.getValue())
+				bpfProtocols.add("udp");
+			else
+				if (protocolId == SupportedProtocols.TCP.getValue() || protocolId == SupportedProtocols.HTTP.getValue())
+					bpfProtocols.add("tcp");
+				else
+					if (protocolId == SupportedProtocols.ICMP.getValue())
+						bpfProtocols.add("icmp");
+					else
+						return filter + ip6Filter; //unknown protocol, let the handler decide
+		}
+
+		return "(" + filter + " and (" + String.join(" or ", bpfProtocols) + "))" + ip6Filter;
 	}
 
 	public void startWatchdogCapture(NICInfo deviceInfo, List<PacketTypeToMatch> packetTypeList, boolean isRepeated, Integer cooldownInSecs, WatchdogListener listener, StringBuilder errbuf)
@@ -203,35 +443,348 @@ public class NetworkSniffer
 	{
 		WatchdogPacketHandler watchdogPH = new WatchdogPacketHandler(packetTypeList, isRepeated, cooldownInSecs, listener, this, deviceInfo.getMACAddress());
 
-		startCapture(nicInfoToPcapIf.get(deviceInfo), watchdogPH, errbuf);
+		CaptureSession liveSession = acquireLiveSession(nicInfoToPcapIf.get(deviceInfo), getWatchdogCaptureProfile(packetTypeList), errbuf);
+
+		if (liveSession != null)
+		{
+			runCapture(liveSession, watchdogPH, null);
+			watchdogPH.logHitCounts();
+		}
 	}
 
-	private void startCapture(PcapIf device, PcapPacketHandler<Void> packetHandler, StringBuilder errbuf)
+	/**
+	 * @return {@code CaptureProfile.FULL_PAYLOAD} if any of the rules matches a protocol that is detected by its payload (HTTP), {@code CaptureProfile.HEADER_ONLY} otherwise
+	 */
+	private static CaptureProfile getWatchdogCaptureProfile(List<PacketTypeToMatch> packetTypeList)
 	{
-		pcap = Pcap.openLive(device.getName(), snaplen, flags, timeout, errbuf);
+		for (PacketTypeToMatch packetType : packetTypeList)
+			if (packetType.getProtocolValue() == SupportedProtocols.HTTP)
+				return CaptureProfile.FULL_PAYLOAD;
 
-		if (pcap == null)
+		return CaptureProfile.HEADER_ONLY;
+	}
+
+	/**
+	 * Same as {@code startWatchdogCapture}, but reads the packets from a pcap/pcapng file instead of a live network interface.
+	 * 
+	 * @param pcapFilename - the capture file to read
+	 * @param deviceInfo - describes the host whose traffic was captured in the file. Its MAC address is used to determine packet direction.
+	 * @param replaySpeed - how fast to replay the file's packets
+	 */
+	public void startWatchdogCaptureFromFile(String pcapFilename, NICInfo deviceInfo, List<PacketTypeToMatch> packetTypeList, boolean isRepeated, Integer cooldownInSecs, ReplaySpeed replaySpeed,
+			WatchdogListener listener, StringBuilder errbuf) throws IllegalArgumentException, UnknownHostException
+	{
+		WatchdogPacketHandler watchdogPH = new WatchdogPacketHandler(packetTypeList, isRepeated, cooldownInSecs, listener, this, deviceInfo.getMACAddress());
+
+		CaptureSession fileSession = openFileSession(pcapFilename, replaySpeed, errbuf);
+
+		if (fileSession != null)
 		{
-			logger.log(Level.SEVERE, "Error while opening device for capture: " + errbuf.toString());
-			return;
+			runCapture(fileSession, watchdogPH, null);
+			watchdogPH.logHitCounts();
 		}
+	}
+
+	/**
+	 * @param defaultProfile - the profile that suits the capture, used unless a profile was set with {@code setCaptureProfile()}
+	 * @return the session capturing on {@code device}, or null if it couldn't be opened. Must be given back with {@code CaptureSession.release()}, which {@code runCapture()} does.
+	 */
+	private CaptureSession acquireLiveSession(PcapIf device, CaptureProfile defaultProfile, StringBuilder errbuf)
+	{
+		CaptureProfile profile = captureProfile != null ? captureProfile : defaultProfile;
 
-		pcap.loop(Pcap.LOOP_INFINITE, packetHandler, null);
+		return CaptureSession.acquireLiveSession(device, profile.getParameters(), isAutoTuneEnabled, pipelineSettings, errbuf);
 	}
 
-	public void stopCapture()
+	/**
+	 * Both pcap and pcapng files are supported (pcapng requires libpcap 1.1 / WinPcap 4.1.3 or newer).
+	 */
+	private CaptureSession openFileSession(String pcapFilename, ReplaySpeed replaySpeed, StringBuilder errbuf)
 	{
-		if (pcap != null)
-			pcap.breakloop();
+		return CaptureSession.openFileSession(pcapFilename, replaySpeed, pipelineSettings, errbuf);
 	}
 
-	public void cleanup()
+	/**
+	 * Registers {@code packetHandler} on {@code session} and blocks until {@code stopCapture()} is called or the session's capture ends (e.g. at the end of a replayed file)
+	 * 
+	 * @param kernelFilter - a BPF expression for the packets {@code packetHandler} needs, or null if it needs all of them
+	 */
+	private void runCapture(CaptureSession session, PcapPacketHandler<Void> packetHandler, String kernelFilter)
 	{
-		if (pcap != null)
+		LatencyHistogram handlerLatency = new LatencyHistogram();
+		PcapPacketHandler<Void> timedHandler = (packet, nothing) ->
 		{
-			stopCapture();
-			pcap.close();
+			long start = System.nanoTime();
+			packetHandler.nextPacket(packet, nothing);
+			handlerLatency.record(System.nanoTime() - start);
+		};
+
+		runCapture(session, handlerLatency, kernelFilter, captureEnded -> session.addPacketHandler(timedHandler, kernelFilter, captureEnded), () -> session.removePacketHandler(timedHandler));
+	}
+
+	/**
+	 * Same as {@code runCapture()}, for a handler that reads the captured bytes without decoding them
+	 */
+	private void runRawCapture(CaptureSession session, JBufferHandler<Void> rawPacketHandler, String kernelFilter)
+	{
+		LatencyHistogram handlerLatency = new LatencyHistogram();
+		JBufferHandler<Void> timedHandler = (header, buffer, nothing) ->
+		{
+			long start = System.nanoTime();
+			rawPacketHandler.nextPacket(header, buffer, nothing);
+			handlerLatency.record(System.nanoTime() - start);
+		};
+
+		runCapture(session, handlerLatency, kernelFilter, captureEnded -> session.addRawPacketHandler(timedHandler, kernelFilter, captureEnded), () -> session.removeRawPacketHandler(timedHandler));
+	}
+
+	/**
+	 * @param handlerLatency - the histogram the handler's calls are timed into
+	 * @param kernelFilter - the handler's kernel filter, also used for recording
+	 * @param handlerAdder - registers the handler on the session, with the given capture ended listener
+	 * @param handlerRemover - unregisters the handler from the session
+	 */
+	private void runCapture(CaptureSession session, LatencyHistogram handlerLatency, String kernelFilter, Consumer<Runnable> handlerAdder, Runnable handlerRemover)
+	{
+		CountDownLatch captureEnded = new CountDownLatch(1);
+		CaptureStatisticsSampler statisticsSampler = new CaptureStatisticsSampler(session, handlerLatency, statisticsListener);
+		PcapRecorder recorder = startRecording(session, kernelFilter);
+
+		synchronized (this)
+		{
+			activeSession = session;
+			activeHandlerRemover = handlerRemover;
+			activeCaptureEnded = captureEnded;
+			activeStatisticsSampler = statisticsSampler;
+		}
+
+		statisticsSampler.start();
+		handlerAdder.accept(captureEnded::countDown);
+
+		try
+		{
+			captureEnded.await();
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			handlerRemover.run();
+			statisticsSampler.stop();
+
+			if (recorder != null)
+			{
+				session.removeRawPacketHandler(recorder);
+				recorder.stop();
+			}
+
+			synchronized (this)
+			{
+				if (activeSession == session)
+				{
+					activeSession = null;
+					activeHandlerRemover = null;
+					activeCaptureEnded = null;
+					activeStatisticsSampler = null;
+				}
+			}
+
+			CaptureSession.release(session);
+		}
+	}
+
+	/**
+	 * @return a recorder of the packets of {@code session} that pass {@code kernelFilter}, already registered on it, or null if recording is off.
+	 *         The session may let through more packets for its other handlers, so the recorder checks {@code kernelFilter} itself.
+	 */
+	private PcapRecorder startRecording(CaptureSession session, String kernelFilter)
+	{
+		if (recordingSettings == null)
+			return null;
+
+		CaptureParameters captureParameters = session.getCaptureParameters();
+		int snaplen = captureParameters != null ? captureParameters.getSnaplen() : maxFileSnaplen;
+		PcapRecorder recorder = new PcapRecorder(recordingSettings, snaplen, session.getDataLinkType(), kernelFilter);
+
+		recorder.start();
+		session.addRawPacketHandler(recorder, kernelFilter, null);
+
+		return recorder;
+	}
+
+	/**
+	 * Gets a consistent copy of the counts of the running appearance counter capture, without stopping or pausing it. Can be called from any thread.
+	 * 
+	 * @param maxWaitMillis - how long to wait for the capture thread to make a new snapshot. It's made right before the next counted packet is handled.
+	 * @return the new snapshot, or the latest one that was made if the new one isn't ready in time. Null if there is no running appearance counter capture.
+	 */
+	public AppearanceCounterSnapshot getAppearanceCounterSnapshot(long maxWaitMillis)
+	{
+		AppearanceCounterPacketHandler counterPH;
+
+		synchronized (this)
+		{
+			counterPH = activeCounterPH;
 		}
+
+		return counterPH == null ? null : counterPH.getSnapshot(maxWaitMillis);
+	}
+
+	public synchronized void stopCapture()
+	{
+		if (activeSession != null)
+		{
+			activeHandlerRemover.run(); //stop getting packets right away, even if the session keeps capturing for others
+			activeCaptureEnded.countDown();
+		}
+	}
+
+	/**
+	 * @param pipelineSettings - settings for running the next captures in pipeline mode, or null to handle packets on the capture thread.
+	 * A live capture that joins a session that is already running on the same device uses that session's mode.
+	 */
+	public void setPipelineSettings(PipelineSettings pipelineSettings)
+	{
+		this.pipelineSettings = pipelineSettings;
+	}
+
+	public PipelineSettings getPipelineSettings()
+	{
+		return pipelineSettings;
+	}
+
+	/**
+	 * @param captureProfile - the profile to open devices with in the next live captures, or null to pick one by what each capture needs
+	 * (header only for appearance counting without HTTP, full payload otherwise). Note that a profile with a short snaplen truncates packets, so rules that look at the payload may stop matching.
+	 */
+	public void setCaptureProfile(CaptureProfile captureProfile)
+	{
+		this.captureProfile = captureProfile;
+	}
+
+	public CaptureProfile getCaptureProfile()
+	{
+		return captureProfile;
+	}
+
+	/**
+	 * @param isAutoTuneEnabled - if true, devices opened by the next live captures are reopened with a larger kernel buffer (and without immediate mode) when they drop packets
+	 */
+	public void setAutoTuneEnabled(boolean isAutoTuneEnabled)
+	{
+		this.isAutoTuneEnabled = isAutoTuneEnabled;
+	}
+
+	public boolean isAutoTuneEnabled()
+	{
+		return isAutoTuneEnabled;
+	}
+
+	/**
+	 * @return amount of packets dropped so far by the active capture's ring buffer, or 0 if there is no active capture or it isn't in pipeline mode
+	 */
+	public synchronized long getPipelineDroppedPackets()
+	{
+		return activeSession == null ? 0 : activeSession.getPipelineDroppedPackets();
+	}
+
+	/**
+	 * @param statisticsListener - gets the statistics of the next captures once a second while they run, or null to stop getting them
+	 */
+	public void setCaptureStatisticsListener(CaptureStatisticsListener statisticsListener)
+	{
+		this.statisticsListener = statisticsListener;
+	}
+
+	/**
+	 * @param listener - gets the {@code amount} addresses with the most appearances twice a second while the next appearance counter captures run, or null to stop getting them
+	 */
+	public void setTopAppearancesListener(TopAppearancesListener listener, int amount)
+	{
+		this.topAppearancesListener = listener;
+		this.topAppearancesAmount = amount;
+	}
+
+	/**
+	 * @param approximateCountingSettings - settings for counting the appearances of the next appearance counter captures with a fixed amount of memory, or null to count them exactly
+	 */
+	public void setApproximateCountingSettings(ApproximateCountingSettings approximateCountingSettings)
+	{
+		this.approximateCountingSettings = approximateCountingSettings;
+	}
+
+	public ApproximateCountingSettings getApproximateCountingSettings()
+	{
+		return approximateCountingSettings;
+	}
+
+	/**
+	 * @param isServiceBreakdownEnabled - whether the next appearance counter captures also count the appearances of each address per protocol and port.
+	 * Only applies when counting exactly (see {@code setApproximateCountingSettings()}).
+	 */
+	public void setServiceBreakdownEnabled(boolean isServiceBreakdownEnabled)
+	{
+		this.isServiceBreakdownEnabled = isServiceBreakdownEnabled;
+	}
+
+	public boolean isServiceBreakdownEnabled()
+	{
+		return isServiceBreakdownEnabled;
+	}
+
+	/**
+	 * @param isSubnetRollupEnabled - whether the next appearance counter captures also roll up the appearances by subnet (see {@code AppearanceCounterResults.getSubnetAppearances()}).
+	 * Only applies when counting exactly (see {@code setApproximateCountingSettings()}).
+	 */
+	public void setSubnetRollupEnabled(boolean isSubnetRollupEnabled)
+	{
+		this.isSubnetRollupEnabled = isSubnetRollupEnabled;
+	}
+
+	public boolean isSubnetRollupEnabled()
+	{
+		return isSubnetRollupEnabled;
+	}
+
+	/**
+	 * @param recordingSettings - settings for recording the packets of the next captures to rotating pcap files while they are analyzed, or null to not record them
+	 */
+	public void setRecordingSettings(RecordingSettings recordingSettings)
+	{
+		this.recordingSettings = recordingSettings;
+	}
+
+	public RecordingSettings getRecordingSettings()
+	{
+		return recordingSettings;
+	}
+
+	/**
+	 * @param appearanceHistorySettings - settings for keeping the appearance counts of the next appearance counter captures on disk (see {@code AppearanceHistory}), or null to not keep them
+	 */
+	public void setAppearanceHistorySettings(AppearanceHistorySettings appearanceHistorySettings)
+	{
+		this.appearanceHistorySettings = appearanceHistorySettings;
+	}
+
+	public AppearanceHistorySettings getAppearanceHistorySettings()
+	{
+		return appearanceHistorySettings;
+	}
+
+	/**
+	 * @return the most recent statistics of the active capture, or null if there is no active capture or no statistics were sampled yet
+	 */
+	public synchronized CaptureStatistics getCaptureStatistics()
+	{
+		return activeStatisticsSampler == null ? null : activeStatisticsSampler.getLatest();
+	}
+
+	public void cleanup()
+	{
+		stopCapture();
 	}
 
 	/**
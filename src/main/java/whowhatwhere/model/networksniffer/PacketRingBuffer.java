@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jnetpcap.PcapHeader;
+import org.jnetpcap.nio.JBuffer;
+
+/**
+ * A fixed size queue of captured packets, backed by a single direct (off-heap) buffer that is allocated once. Nothing is allocated per packet.<br>
+ * Each slot holds the packet's pcap header, followed by the captured bytes. Packets are copied in by the capture thread and copied out by the worker threads.
+ */
+public class PacketRingBuffer
+{
+	private final int headerSize = PcapHeader.sizeof();
+	private final int slotSize;
+	private final int capacity;
+	private final ByteBuffer memory;
+	private final ByteBuffer view; //a view of memory for copying in and out of slots, only used while holding the lock
+	private final int[] slotLengths; //bytes used in each slot
+	private final BackpressurePolicy backpressurePolicy;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+
+	private int head = 0; //next slot to take
+	private int count = 0;
+	private long packetsTaken = 0;
+	private boolean isClosed = false;
+
+	private volatile long packetsQueued = 0;
+	private volatile long droppedNewest = 0;
+	private volatile long droppedOldest = 0;
+	private volatile long droppedTooLarge = 0;
+
+	/**
+	 * @param maxPacketSize - the largest amount of captured bytes a packet can have (the capture's snaplen)
+	 * @param memoryBytes - total size of the buffer. At least 2 packets will fit, regardless of this value.
+	 * @param backpressurePolicy - what {@code offer()} does when the buffer is full
+	 */
+	public PacketRingBuffer(int maxPacketSize, long memoryBytes, BackpressurePolicy backpressurePolicy) throws IllegalArgumentException
+	{
+		if (maxPacketSize <= 0)
+			throw new IllegalArgumentException("Invalid max packet size: " + maxPacketSize);
+
+		this.slotSize = headerSize + maxPacketSize;
+		this.capacity = (int) Math.max(2, Math.min(memoryBytes / slotSize, Integer.MAX_VALUE / slotSize));
+		this.memory = ByteBuffer.allocateDirect(capacity * slotSize);
+		this.view = memory.duplicate();
+		this.slotLengths = new int[capacity];
+		this.backpressurePolicy = backpressurePolicy;
+	}
+
+	/**
+	 * Copies a packet into the buffer. Called by the capture thread.
+	 *
+	 * @return true if the packet was queued, false if it was dropped or the buffer was closed
+	 */
+	public boolean offer(PcapHeader header, JBuffer buffer)
+	{
+		int caplen = header.caplen();
+
+		if (headerSize + caplen > slotSize)
+		{
+			droppedTooLarge++; //only the capture thread writes the counters that offer() updates
+			return false;
+		}
+
+		lock.lock();
+		try
+		{
+			while (count == capacity && !isClosed)
+			{
+				switch (backpressurePolicy)
+				{
+					case BLOCK:
+						notFull.awaitUninterruptibly();
+						break;
+					case DROP_NEWEST:
+						droppedNewest++;
+						return false;
+					case DROP_OLDEST:
+						head = (head + 1) % capacity;
+						count--;
+						droppedOldest++;
+						break;
+				}
+			}
+
+			if (isClosed)
+				return false;
+
+			int slot = (head + count) % capacity;
+			int slotStart = slot * slotSize;
+
+			view.limit(slotStart + headerSize);
+			view.position(slotStart);
+			header.transferTo(view);
+
+			view.limit(slotStart + headerSize + caplen);
+			view.position(slotStart + headerSize);
+			buffer.transferTo(view);
+
+			slotLengths[slot] = headerSize + caplen;
+			count++;
+			packetsQueued++;
+			notEmpty.signal();
+
+			return true;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits for a packet and copies it out of the buffer. Called by the worker threads.<br>
+	 * Once closed, packets that are already in the buffer can still be taken.
+	 *
+	 * @param destination - a direct buffer of at least {@code getSlotSize()} bytes. On return, it holds the pcap header (see {@code getHeaderSize()}) followed by the packet's bytes, ready to be read.
+	 * @return the packet's sequence number: 0 for the first packet that was taken, and one more for each packet after it, in the order they were queued.
+	 * Returns -1 if the buffer is closed and empty.
+	 */
+	public long take(ByteBuffer destination)
+	{
+		lock.lock();
+		try
+		{
+			while (count == 0)
+			{
+				if (isClosed)
+					return -1;
+
+				notEmpty.awaitUninterruptibly();
+			}
+
+			int slotStart = head * slotSize;
+
+			view.limit(slotStart + slotLengths[head]);
+			view.position(slotStart);
+			destination.clear();
+			destination.put(view);
+			destination.flip();
+
+			head = (head + 1) % capacity;
+			count--;
+			notFull.signal();
+
+			return packetsTaken++;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Makes {@code offer()} reject any new packet (releasing the capture thread if it's blocked), and makes {@code take()} return false once the buffer is empty
+	 */
+	public void close()
+	{
+		lock.lock();
+		try
+		{
+			isClosed = true;
+			notEmpty.signalAll();
+			notFull.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	public int getHeaderSize()
+	{
+		return headerSize;
+	}
+
+	public int getSlotSize()
+	{
+		return slotSize;
+	}
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	public BackpressurePolicy getBackpressurePolicy()
+	{
+		return backpressurePolicy;
+	}
+
+	public long getPacketsQueued()
+	{
+		return packetsQueued;
+	}
+
+	/**
+	 * @return amount of packets that were dropped because the buffer was full and the policy is {@code DROP_NEWEST}
+	 */
+	public long getDroppedNewest()
+	{
+		return droppedNewest;
+	}
+
+	/**
+	 * @return amount of packets that were dropped because the buffer was full and the policy is {@code DROP_OLDEST}
+	 */
+	public long getDroppedOldest()
+	{
+		return droppedOldest;
+	}
+
+	/**
+	 * @return amount of packets that were dropped because they were larger than the snaplen the buffer was created with
+	 */
+	public long getDroppedTooLarge()
+	{
+		return droppedTooLarge;
+	}
+
+	public long getTotalDropped()
+	{
+		return droppedNewest + droppedOldest + droppedTooLarge;
+	}
+}
@@ -0,0 +1,313 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer;
+
+import org.jnetpcap.packet.PcapPacket;
+import org.jnetpcap.protocol.lan.Ethernet;
+import org.jnetpcap.protocol.network.Ip4;
+import org.jnetpcap.protocol.network.Ip6;
+import org.jnetpcap.protocol.tcpip.Tcp;
+import org.jnetpcap.protocol.tcpip.Udp;
+
+/**
+ * A reusable view of the fields of a captured packet that packet criteria look at. <br>
+ * Each field is extracted from the packet at most once, the first time it's asked for after {@code load()}, 
+ * so checking many criteria against the same packet only decodes each header once. <br>
+ * Not thread safe.
+ */
+public class PacketView
+{
+	private final static int ethernetExtracted = 1;
+	private final static int ip4Extracted = 2;
+	private final static int portsExtracted = 4;
+	private final static int ip6Extracted = 8;
+	private final static int ip6SourceField = 8;
+	private final static int headerMapBits = 64; //protocol IDs below this are answered from the first word of the header map
+	
+	private final Ethernet ethernet = new Ethernet();
+	private final Ip4 ip4 = new Ip4();
+	private final Ip6 ip6 = new Ip6();
+	private final Tcp tcp = new Tcp();
+	private final Udp udp = new Udp();
+	
+	private final boolean hasOwnMAC;
+	private final long ownMAC;
+	
+	private PcapPacket packet;
+	private long headerMap;
+	private int extracted;
+	
+	private boolean hasEthernet;
+	private long sourceMAC;
+	private long destinationMAC;
+	
+	private boolean hasIp4;
+	private int sourceIp;
+	private int destinationIp;
+
+	private boolean hasIp6;
+	private long sourceIp6High;
+	private long sourceIp6Low;
+	
+	private boolean hasPorts;
+	private int sourcePort;
+	private int destinationPort;
+
+	/**
+	 * @param ownMAC - the MAC address of the capturing device, used to tell the direction of packets. Can be null, in which case no packet has a direction.
+	 */
+	public PacketView(byte[] ownMAC)
+	{
+		hasOwnMAC = ownMAC != null && ownMAC.length == 6;
+		this.ownMAC = hasOwnMAC ? macToLong(ownMAC) : 0;
+	}
+
+	/**
+	 * Points this view at a new packet, discarding every field extracted from the previous one.
+	 * 
+	 * @param packet - the packet to view
+	 */
+	public void load(PcapPacket packet)
+	{
+		this.packet = packet;
+		headerMap = packet.getState().get64BitHeaderMap(0);
+		extracted = 0;
+	}
+
+	public PcapPacket getPacket()
+	{
+		return packet;
+	}
+
+	/**
+	 * @param protocolId - a jNetPcap protocol ID
+	 * @return true if the packet has a header of that protocol
+	 */
+	public boolean hasHeader(int protocolId)
+	{
+		if (protocolId >= 0 && protocolId < headerMapBits)
+			return (headerMap & (1L << protocolId)) != 0;
+		
+		return packet.hasHeader(protocolId);
+	}
+
+	/**
+	 * @return the size of the packet on the wire, which the captured size is less than if the packet was truncated by the snaplen
+	 */
+	public int getWireLength()
+	{
+		return packet.getCaptureHeader().wirelen();
+	}
+
+	/**
+	 * @return the time the packet was captured, in milliseconds since the epoch
+	 */
+	public long getTimestampInMillis()
+	{
+		return packet.getCaptureHeader().timestampInMillis();
+	}
+
+	/**
+	 * @return true if the packet was sent to the capturing device
+	 */
+	public boolean isIncoming()
+	{
+		extractEthernet();
+		
+		return hasEthernet && hasOwnMAC && destinationMAC == ownMAC;
+	}
+
+	/**
+	 * @return true if the packet was sent by the capturing device
+	 */
+	public boolean isOutgoing()
+	{
+		extractEthernet();
+		
+		return hasEthernet && hasOwnMAC && sourceMAC == ownMAC;
+	}
+
+	public boolean hasIp4()
+	{
+		extractIp4();
+		
+		return hasIp4;
+	}
+
+	/**
+	 * @return the IPv4 source address. Only valid if {@code hasIp4()} returned true.
+	 */
+	public int getSourceIp()
+	{
+		extractIp4();
+		
+		return sourceIp;
+	}
+
+	/**
+	 * @return the IPv4 destination address. Only valid if {@code hasIp4()} returned true.
+	 */
+	public int getDestinationIp()
+	{
+		extractIp4();
+		
+		return destinationIp;
+	}
+
+	public boolean hasIp6()
+	{
+		extractIp6();
+		
+		return hasIp6;
+	}
+
+	/**
+	 * @return the high 64 bits of the IPv6 source address. Only valid if {@code hasIp6()} returned true.
+	 */
+	public long getSourceIp6High()
+	{
+		extractIp6();
+		
+		return sourceIp6High;
+	}
+
+	/**
+	 * @return the low 64 bits of the IPv6 source address. Only valid if {@code hasIp6()} returned true.
+	 */
+	public long getSourceIp6Low()
+	{
+		extractIp6();
+		
+		return sourceIp6Low;
+	}
+
+	/**
+	 * @return true if the packet has a TCP or UDP header
+	 */
+	public boolean hasPorts()
+	{
+		extractPorts();
+		
+		return hasPorts;
+	}
+
+	/**
+	 * @return the TCP or UDP source port. Only valid if {@code hasPorts()} returned true.
+	 */
+	public int getSourcePort()
+	{
+		extractPorts();
+		
+		return sourcePort;
+	}
+
+	/**
+	 * @return the TCP or UDP destination port. Only valid if {@code hasPorts()} returned true.
+	 */
+	public int getDestinationPort()
+	{
+		extractPorts();
+		
+		return destinationPort;
+	}
+
+	private void extractEthernet()
+	{
+		if ((extracted & ethernetExtracted) != 0)
+			return;
+		
+		extracted |= ethernetExtracted;
+		hasEthernet = hasHeader(Ethernet.ID) && packet.hasHeader(ethernet);
+		
+		if (hasEthernet)
+		{
+			destinationMAC = readMAC(0); //the destination MAC comes first in the ethernet header
+			sourceMAC = readMAC(6);
+		}
+	}
+
+	private void extractIp4()
+	{
+		if ((extracted & ip4Extracted) != 0)
+			return;
+		
+		extracted |= ip4Extracted;
+		hasIp4 = hasHeader(Ip4.ID) && packet.hasHeader(ip4);
+		
+		if (hasIp4)
+		{
+			sourceIp = ip4.sourceToInt();
+			destinationIp = ip4.destinationToInt();
+		}
+	}
+
+	private void extractIp6()
+	{
+		if ((extracted & ip6Extracted) != 0)
+			return;
+		
+		extracted |= ip6Extracted;
+		hasIp6 = hasHeader(Ip6.ID) && packet.hasHeader(ip6);
+		
+		if (hasIp6)
+		{
+			sourceIp6High = ip6.getLong(ip6SourceField);
+			sourceIp6Low = ip6.getLong(ip6SourceField + 8);
+		}
+	}
+
+	private void extractPorts()
+	{
+		if ((extracted & portsExtracted) != 0)
+			return;
+		
+		extracted |= portsExtracted;
+		
+		if (hasHeader(Tcp.ID) && packet.hasHeader(tcp))
+		{
+			hasPorts = true;
+			sourcePort = tcp.source();
+			destinationPort = tcp.destination();
+		}
+		else
+			if (hasHeader(Udp.ID) && packet.hasHeader(udp))
+			{
+				hasPorts = true;
+				sourcePort = udp.source();
+				destinationPort = udp.destination();
+			}
+			else
+				hasPorts = false;
+	}
+
+	private long readMAC(int offset)
+	{
+		return ((long) ethernet.getUShort(offset) << 32) | (ethernet.getInt(offset + 2) & 0xFFFFFFFFL);
+	}
+
+	private static long macToLong(byte[] mac)
+	{
+		long value = 0;
+		
+		for (byte b : mac)
+			value = (value << 8) | (b & 0xFF);
+		
+		return value;
+	}
+}
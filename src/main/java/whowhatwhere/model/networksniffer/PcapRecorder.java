@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jnetpcap.JBufferHandler;
+import org.jnetpcap.Pcap;
+import org.jnetpcap.PcapBpfProgram;
+import org.jnetpcap.PcapHeader;
+import org.jnetpcap.nio.JBuffer;
+import org.jnetpcap.nio.JMemory;
+
+/**
+ * Records packets to rotating pcap files while they are being analyzed. Registered on a capture session as a raw packet handler, so it sees the same packets as the analysis,
+ * without a second capture.<br>
+ * The session lets through the packets of all of its handlers, so the recorder checks each packet against the filter of the handler it records for (in user space, with a compiled BPF program),
+ * and only records the packets that handler asked for.<br>
+ * The capture thread only copies each packet into a ring buffer; a writer thread formats the files and writes them in large blocks. If the disk can't keep up, packets are left out of the
+ * recording rather than slowing down the capture. Buffered data is written when the block fills up, when a new file is started and when the recorder is stopped.
+ */
+public class PcapRecorder implements JBufferHandler<Void>
+{
+	private static final Logger logger = Logger.getLogger(PcapRecorder.class.getPackage().getName());
+
+	private final static int pcapMagic = 0xA1B2C3D4; //microsecond timestamps, the byte order of the file tells readers how to read the rest
+	private final static short pcapVersionMajor = 2;
+	private final static short pcapVersionMinor = 4;
+	private final static int recordHeaderLength = 16;
+	private final static int writeBufferSize = 1024 * 1024;
+	private final static String fileExtension = ".pcap";
+	private final static String fileTimestampFormat = "yyyyMMdd-HHmmss";
+
+	private RecordingSettings settings;
+	private int snaplen;
+	private int dataLinkType;
+	private PcapBpfProgram filter; //null to record every packet the session lets through
+	private PacketRingBuffer ringBuffer;
+	private Thread writerThread;
+
+	private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(writeBufferSize).order(ByteOrder.LITTLE_ENDIAN);
+	private FileChannel currentFile;
+	private long currentFileSize;
+	private long currentFileEndsAt; //in millis, by packet timestamps
+	private Deque<File> recordedFiles = new ArrayDeque<>(); //oldest first
+	private volatile long packetsRecorded = 0;
+
+	/**
+	 * @param snaplen - the largest amount of captured bytes a packet can have
+	 * @param dataLinkType - the link layer type of the packets, written to each file's header (see {@code CaptureSession.getDataLinkType()})
+	 * @param kernelFilter - the kernel filter of the handler whose packets are recorded, or null to record every packet. If it can't be compiled, every packet is recorded.
+	 */
+	public PcapRecorder(RecordingSettings settings, int snaplen, int dataLinkType, String kernelFilter)
+	{
+		this.settings = settings;
+		this.snaplen = snaplen;
+		this.dataLinkType = dataLinkType;
+		this.filter = CaptureSession.compileOfflineFilter(kernelFilter, snaplen, dataLinkType);
+		this.ringBuffer = new PacketRingBuffer(snaplen, settings.getRingBufferMemoryMB() * 1024L * 1024L, BackpressurePolicy.DROP_NEWEST);
+	}
+
+	public void start()
+	{
+		writerThread = new Thread(this::runWriter, "Pcap recorder to " + settings.getDirectory());
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Writes the packets that are still buffered, closes the current file and stops the writer thread. Must be called after the recorder was removed from the capture session.
+	 */
+	public void stop()
+	{
+		ringBuffer.close();
+
+		if (filter != null)
+		{
+			Pcap.freecode(filter);
+			filter = null;
+		}
+
+		if (writerThread == null)
+			return;
+
+		try
+		{
+			writerThread.join();
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Called by the capture session
+	 */
+	@Override
+	public void nextPacket(PcapHeader header, JBuffer buffer, Void nothing)
+	{
+		if (filter != null && Pcap.offlineFilter(filter, header, buffer) == 0) //let through for another handler of the session
+			return;
+
+		ringBuffer.offer(header, buffer);
+	}
+
+	private void runWriter()
+	{
+		ByteBuffer packetData = ByteBuffer.allocateDirect(ringBuffer.getSlotSize());
+		int headerSize = ringBuffer.getHeaderSize();
+		PcapHeader header = new PcapHeader(JMemory.POINTER);
+
+		try
+		{
+			if (!settings.getDirectory().isDirectory() && !settings.getDirectory().mkdirs())
+				throw new IOException("Unable to create directory " + settings.getDirectory());
+
+			while (ringBuffer.take(packetData) >= 0)
+			{
+				int dataEnd = packetData.limit();
+
+				packetData.limit(headerSize);
+				header.peer(packetData);
+				packetData.limit(dataEnd);
+				packetData.position(headerSize);
+
+				writePacket(header, packetData);
+			}
+		}
+		catch (IOException ioe)
+		{
+			logger.log(Level.SEVERE, "Recording to " + settings.getDirectory() + " failed, no more packets will be recorded", ioe);
+			ringBuffer.close();
+		}
+		finally
+		{
+			closeCurrentFile();
+		}
+
+		long dropped = ringBuffer.getTotalDropped();
+
+		logger.log(dropped > 0 ? Level.WARNING : Level.INFO, "Recorded " + packetsRecorded + " packets to " + settings.getDirectory() + (dropped > 0 ? ", " + dropped + " packets were left out since the disk couldn't keep up" : ""));
+	}
+
+	private void writePacket(PcapHeader header, ByteBuffer data) throws IOException
+	{
+		long timestamp = header.timestampInMillis();
+		int caplen = data.remaining();
+
+		if (currentFile == null || (settings.getMaxFileSizeBytes() > 0 && currentFileSize + recordHeaderLength + caplen > settings.getMaxFileSizeBytes())
+				|| (settings.getMaxFileDurationSecs() > 0 && timestamp >= currentFileEndsAt))
+			startNewFile(timestamp);
+
+		if (writeBuffer.remaining() < recordHeaderLength + caplen)
+			flush();
+
+		writeBuffer.putInt((int) header.hdr_sec());
+		writeBuffer.putInt(header.hdr_usec());
+		writeBuffer.putInt(caplen);
+		writeBuffer.putInt(header.wirelen());
+		writeBuffer.put(data);
+
+		currentFileSize += recordHeaderLength + caplen;
+		packetsRecorded++;
+	}
+
+	private void startNewFile(long firstPacketTimestamp) throws IOException
+	{
+		closeCurrentFile();
+
+		File file = generateFilename(firstPacketTimestamp);
+
+		currentFile = new FileOutputStream(file).getChannel();
+		recordedFiles.addLast(file);
+		currentFileEndsAt = firstPacketTimestamp + settings.getMaxFileDurationSecs() * 1000L;
+
+		writeBuffer.putInt(pcapMagic);
+		writeBuffer.putShort(pcapVersionMajor);
+		writeBuffer.putShort(pcapVersionMinor);
+		writeBuffer.putInt(0); //timezone offset, timestamps are in UTC
+		writeBuffer.putInt(0); //timestamp accuracy, unused
+		writeBuffer.putInt(snaplen);
+		writeBuffer.putInt(dataLinkType);
+		currentFileSize = writeBuffer.position();
+
+		while (settings.getMaxFiles() > 0 && recordedFiles.size() > settings.getMaxFiles())
+		{
+			File oldest = recordedFiles.removeFirst();
+
+			if (!oldest.delete())
+				logger.log(Level.WARNING, "Unable to delete old recording " + oldest);
+		}
+	}
+
+	/**
+	 * @return a file named after the time of its first packet, that doesn't overwrite an existing file
+	 */
+	private File generateFilename(long timestamp)
+	{
+		String name = settings.getFilePrefix() + "-" + new SimpleDateFormat(fileTimestampFormat).format(new Date(timestamp));
+		File file = new File(settings.getDirectory(), name + fileExtension);
+
+		for (int i = 1; file.exists(); i++)
+			file = new File(settings.getDirectory(), name + "-" + i + fileExtension);
+
+		return file;
+	}
+
+	private void flush() throws IOException
+	{
+		writeBuffer.flip();
+
+		while (writeBuffer.hasRemaining())
+			currentFile.write(writeBuffer);
+
+		writeBuffer.clear();
+	}
+
+	private void closeCurrentFile()
+	{
+		if (currentFile == null)
+			return;
+
+		try
+		{
+			flush();
+			currentFile.close();
+		}
+		catch (IOException ioe)
+		{
+			logger.log(Level.SEVERE, "Unable to finish writing " + recordedFiles.peekLast(), ioe);
+		}
+		finally
+		{
+			currentFile = null;
+			writeBuffer.clear();
+		}
+	}
+
+	public RecordingSettings getSettings()
+	{
+		return settings;
+	}
+
+	public long getPacketsRecorded()
+	{
+		return packetsRecorded;
+	}
+
+	/**
+	 * @return amount of packets that were left out of the recording because the writer couldn't keep up
+	 */
+	public long getDroppedPackets()
+	{
+		return ringBuffer.getTotalDropped();
+	}
+}
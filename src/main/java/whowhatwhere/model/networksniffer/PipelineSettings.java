@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer;
+
+/**
+ * Settings for running a capture session in pipeline mode, where the capture thread only copies packets into a ring buffer and worker threads decode them and run the packet handlers
+ */
+public class PipelineSettings
+{
+	public final static int defaultRingBufferMemoryMB = 32;
+	public final static int defaultWorkerThreads = 1;
+
+	private int ringBufferMemoryMB;
+	private int workerThreads;
+	private BackpressurePolicy backpressurePolicy;
+
+	/**
+	 * @param ringBufferMemoryMB - size of the preallocated (off-heap) ring buffer. The amount of packets it holds depends on the capture's snaplen.
+	 * @param workerThreads - amount of threads that decode packets and run the handlers. With more than one worker, only the decoding runs in parallel:
+	 * the handlers still get the packets one at a time, in the order they were captured. So more workers only help when decoding is the bottleneck.
+	 * @param backpressurePolicy - what to do when the ring buffer is full
+	 */
+	public PipelineSettings(int ringBufferMemoryMB, int workerThreads, BackpressurePolicy backpressurePolicy) throws IllegalArgumentException
+	{
+		if (ringBufferMemoryMB < 1 || workerThreads < 1 || backpressurePolicy == null)
+			throw new IllegalArgumentException("Invalid pipeline settings: " + ringBufferMemoryMB + "MB, " + workerThreads + " workers, policy " + backpressurePolicy);
+
+		this.ringBufferMemoryMB = ringBufferMemoryMB;
+		this.workerThreads = workerThreads;
+		this.backpressurePolicy = backpressurePolicy;
+	}
+
+	public PipelineSettings(BackpressurePolicy backpressurePolicy)
+	{
+		this(defaultRingBufferMemoryMB, defaultWorkerThreads, backpressurePolicy);
+	}
+
+	public int getRingBufferMemoryMB()
+	{
+		return ringBufferMemoryMB;
+	}
+
+	public int getWorkerThreads()
+	{
+		return workerThreads;
+	}
+
+	public BackpressurePolicy getBackpressurePolicy()
+	{
+		return backpressurePolicy;
+	}
+
+	@Override
+	public String toString()
+	{
+		return ringBufferMemoryMB + "MB ring buffer, " + workerThreads + " worker" + (workerThreads > 1 ? "s" : "") + ", " + backpressurePolicy;
+	}
+}
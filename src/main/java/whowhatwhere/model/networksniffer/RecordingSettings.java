@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer;
+
+import java.io.File;
+
+/**
+ * Settings for recording the packets a capture handles to rotating pcap files (see {@code PcapRecorder})
+ */
+public class RecordingSettings
+{
+	public final static String defaultFilePrefix = "capture";
+	public final static int defaultRingBufferMemoryMB = 16;
+
+	private File directory;
+	private String filePrefix;
+	private int maxFileSizeMB;
+	private int maxFileDurationSecs;
+	private int maxFiles;
+	private int ringBufferMemoryMB;
+
+	/**
+	 * @param directory - where the files are written. Created if it doesn't exist.
+	 * @param filePrefix - the start of each file's name, followed by the time of its first packet
+	 * @param maxFileSizeMB - start a new file once the current one reaches this size, or 0 for no size limit
+	 * @param maxFileDurationSecs - start a new file once the current one spans this many seconds of traffic, or 0 for no time limit
+	 * @param maxFiles - the amount of files to keep, deleting the oldest one when a new file is started. 0 to keep them all.
+	 * @param ringBufferMemoryMB - size of the buffer between the capture and the file writer. When the disk can't keep up and it fills up, packets are left out of the recording (never out of the analysis).
+	 */
+	public RecordingSettings(File directory, String filePrefix, int maxFileSizeMB, int maxFileDurationSecs, int maxFiles, int ringBufferMemoryMB) throws IllegalArgumentException
+	{
+		if (directory == null || filePrefix == null || filePrefix.isEmpty() || maxFileSizeMB < 0 || maxFileDurationSecs < 0 || maxFiles < 0 || ringBufferMemoryMB < 1)
+			throw new IllegalArgumentException("Invalid recording settings: directory " + directory + ", prefix " + filePrefix + ", " + maxFileSizeMB + "MB, " + maxFileDurationSecs + " secs, " + maxFiles + " files, "
+					+ ringBufferMemoryMB + "MB ring buffer");
+
+		this.directory = directory;
+		this.filePrefix = filePrefix;
+		this.maxFileSizeMB = maxFileSizeMB;
+		this.maxFileDurationSecs = maxFileDurationSecs;
+		this.maxFiles = maxFiles;
+		this.ringBufferMemoryMB = ringBufferMemoryMB;
+	}
+
+	public RecordingSettings(File directory, int maxFileSizeMB, int maxFileDurationSecs, int maxFiles)
+	{
+		this(directory, defaultFilePrefix, maxFileSizeMB, maxFileDurationSecs, maxFiles, defaultRingBufferMemoryMB);
+	}
+
+	public File getDirectory()
+	{
+		return directory;
+	}
+
+	public String getFilePrefix()
+	{
+		return filePrefix;
+	}
+
+	/**
+	 * @return the size a file can reach before a new one is started, or 0 for no size limit
+	 */
+	public long getMaxFileSizeBytes()
+	{
+		return maxFileSizeMB * 1024L * 1024L;
+	}
+
+	/**
+	 * @return the amount of seconds of traffic a file can span before a new one is started, or 0 for no time limit
+	 */
+	public int getMaxFileDurationSecs()
+	{
+		return maxFileDurationSecs;
+	}
+
+	/**
+	 * @return the amount of files to keep, or 0 to keep them all
+	 */
+	public int getMaxFiles()
+	{
+		return maxFiles;
+	}
+
+	public int getRingBufferMemoryMB()
+	{
+		return ringBufferMemoryMB;
+	}
+
+	/**
+	 * @return a copy of these settings that names its files with {@code newFilePrefix}, for recording another capture to the same directory
+	 */
+	public RecordingSettings withFilePrefix(String newFilePrefix)
+	{
+		return new RecordingSettings(directory, newFilePrefix, maxFileSizeMB, maxFileDurationSecs, maxFiles, ringBufferMemoryMB);
+	}
+
+	@Override
+	public String toString()
+	{
+		return new File(directory, filePrefix + "*").getPath() + ", " + (maxFileSizeMB > 0 ? maxFileSizeMB + "MB" : "unlimited size") + " / "
+				+ (maxFileDurationSecs > 0 ? maxFileDurationSecs + " secs" : "unlimited time") + " per file, " + (maxFiles > 0 ? "keeping " + maxFiles + " files" : "keeping all files");
+	}
+}
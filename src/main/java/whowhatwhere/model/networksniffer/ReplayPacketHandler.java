@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jnetpcap.JBufferHandler;
+import org.jnetpcap.PcapHeader;
+import org.jnetpcap.nio.JBuffer;
+
+/**
+ * Wraps a packet handler and hands it the packets read from a capture file, paced according to the packets' original timestamps and the requested {@code ReplaySpeed}
+ */
+public class ReplayPacketHandler implements JBufferHandler<Void>
+{
+	private static final Logger logger = Logger.getLogger(ReplayPacketHandler.class.getPackage().getName());
+
+	private final static long maxSleepSliceNanos = TimeUnit.MILLISECONDS.toNanos(100); //so a stop request isn't delayed by long gaps in the file
+	private final static long minSleepNanos = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private JBufferHandler<Void> packetHandler;
+	private ReplaySpeed replaySpeed;
+	private volatile boolean isStopped = false;
+	private boolean isFirstPacket = true;
+	private long firstPacketTimestampNanos;
+	private long replayStartNanos;
+	private long packetsReplayed = 0;
+
+	public ReplayPacketHandler(JBufferHandler<Void> packetHandler, ReplaySpeed replaySpeed)
+	{
+		this.packetHandler = packetHandler;
+		this.replaySpeed = replaySpeed;
+	}
+
+	@Override
+	public void nextPacket(PcapHeader header, JBuffer buffer, Void nothing)
+	{
+		if (isStopped)
+			return;
+
+		long packetTimestampNanos = header.timestampInNanos();
+
+		if (isFirstPacket)
+		{
+			firstPacketTimestampNanos = packetTimestampNanos;
+			replayStartNanos = System.nanoTime();
+			isFirstPacket = false;
+		}
+		else
+			if (!replaySpeed.isFullSpeed())
+				waitUntilPacketIsDue(packetTimestampNanos);
+
+		if (isStopped) //stop was requested while waiting
+			return;
+
+		packetHandler.nextPacket(header, buffer, nothing);
+		packetsReplayed++;
+	}
+
+	private void waitUntilPacketIsDue(long packetTimestampNanos)
+	{
+		long offsetInFile = Math.max(0, packetTimestampNanos - firstPacketTimestampNanos); //out of order timestamps are replayed immediately
+		long dueAt = replayStartNanos + (long) (offsetInFile / replaySpeed.getMultiplier());
+		long remaining;
+
+		while (!isStopped && (remaining = dueAt - System.nanoTime()) >= minSleepNanos)
+		{
+			try
+			{
+				TimeUnit.NANOSECONDS.sleep(Math.min(remaining, maxSleepSliceNanos));
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Makes the handler ignore any further packets, and wakes it up if it's waiting for the next packet to be due
+	 */
+	public void stop()
+	{
+		isStopped = true;
+	}
+
+	/**
+	 * Logs how many packets were replayed and how fast. At full speed, this is the throughput of the wrapped packet handler.
+	 */
+	public void logReplaySummary(String filename)
+	{
+		if (isFirstPacket)
+		{
+			logger.log(Level.INFO, "No packets were replayed from " + filename);
+			return;
+		}
+
+		long elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - replayStartNanos));
+
+		logger.log(Level.INFO, "Replayed " + packetsReplayed + " packets from " + filename + " at " + replaySpeed + " in " + elapsedMillis + " ms (" + (packetsReplayed * 1000 / elapsedMillis) + " packets/sec)");
+	}
+}
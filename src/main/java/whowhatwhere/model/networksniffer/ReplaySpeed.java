@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer;
+
+public class ReplaySpeed
+{
+	public final static ReplaySpeed ORIGINAL_TIMING = new ReplaySpeed(1);
+	public final static ReplaySpeed FULL_SPEED = new ReplaySpeed(0);
+
+	private double multiplier;
+
+	private ReplaySpeed(double multiplier)
+	{
+		this.multiplier = multiplier;
+	}
+
+	/**
+	 * @param multiplier - how many times faster than the original timing the file should be replayed. For example, 2 replays the file twice as fast, 0.5 replays it at half speed.
+	 * @return a ReplaySpeed that replays the file at {@code multiplier} times the original speed
+	 * @throws IllegalArgumentException if {@code multiplier} isn't a positive number
+	 */
+	public static ReplaySpeed multipliedBy(double multiplier) throws IllegalArgumentException
+	{
+		if (!(multiplier > 0) || Double.isInfinite(multiplier))
+			throw new IllegalArgumentException("Replay speed multiplier must be a positive number, got " + multiplier);
+
+		return new ReplaySpeed(multiplier);
+	}
+
+	public double getMultiplier()
+	{
+		return multiplier;
+	}
+
+	/**
+	 * @return true if packets should be handed to the packet handler as fast as they can be read, ignoring their timestamps
+	 */
+	public boolean isFullSpeed()
+	{
+		return multiplier == 0;
+	}
+
+	@Override
+	public String toString()
+	{
+		return isFullSpeed() ? "full speed" : multiplier + "x";
+	}
+}
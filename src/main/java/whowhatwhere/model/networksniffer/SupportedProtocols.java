@@ -26,9 +26,11 @@ import org.jnetpcap.protocol.tcpip.Udp;
 
 public enum SupportedProtocols
 {
-	ICMP(Icmp.ID), UDP(Udp.ID), TCP(Tcp.ID), HTTP(Http.ID);
+	ICMP(Icmp.ID, 1, 58), UDP(Udp.ID, 17, 17), TCP(Tcp.ID, 6, 6), HTTP(Http.ID, -1, -1); //HTTP can't be identified by the IP header alone
 	
 	private int value;
+	private int ipProtocolNumber;
+	private int ip6NextHeader;
 	private static TreeBidiMap<String, SupportedProtocols> protocolBidiMap;
 	
 	static
@@ -40,9 +42,11 @@ public enum SupportedProtocols
 		protocolBidiMap.put("HTTP", HTTP);
 	}
 	
-	private SupportedProtocols(int value)
+	private SupportedProtocols(int value, int ipProtocolNumber, int ip6NextHeader)
 	{
 		this.value = value;
+		this.ipProtocolNumber = ipProtocolNumber;
+		this.ip6NextHeader = ip6NextHeader;
 	}
 	
 	public int getValue()
@@ -50,6 +54,35 @@ public enum SupportedProtocols
 		return value;
 	}
 	
+	/**
+	 * @return the value of the protocol field in the IPv4 header for this protocol, or -1 if the protocol can't be identified by the IP header alone
+	 */
+	public int getIpProtocolNumber()
+	{
+		return ipProtocolNumber;
+	}
+	
+	/**
+	 * @return the IPv6 next header value for this protocol (ICMP means ICMPv6), or -1 if the protocol can't be identified by the IP header alone
+	 */
+	public int getIp6NextHeader()
+	{
+		return ip6NextHeader;
+	}
+	
+	/**
+	 * @param value - a jNetPcap protocol ID, as returned by {@code getValue()}
+	 * @return the matching protocol, or null if it isn't supported
+	 */
+	public static SupportedProtocols fromValue(int value)
+	{
+		for (SupportedProtocols protocol : values())
+			if (protocol.value == value)
+				return protocol;
+		
+		return null;
+	}
+	
 	@Override
 	public String toString()
 	{
@@ -18,28 +18,126 @@
  ******************************************************************************/
 package whowhatwhere.model.networksniffer.appearancecounter;
 
-import java.net.UnknownHostException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.jnetpcap.JBufferHandler;
+import org.jnetpcap.PcapHeader;
+import org.jnetpcap.nio.JBuffer;
 import org.jnetpcap.packet.PcapPacket;
 import org.jnetpcap.packet.PcapPacketHandler;
 import org.jnetpcap.protocol.network.Ip4;
+import org.jnetpcap.protocol.network.Ip6;
 
+import whowhatwhere.model.counters.CountMinSketch;
+import whowhatwhere.model.counters.IntIndexMap;
+import whowhatwhere.model.counters.LongIndexMap;
+import whowhatwhere.model.counters.LongPairIndexMap;
+import whowhatwhere.model.counters.ServiceCounters;
+import whowhatwhere.model.counters.SpaceSavingCounter;
+import whowhatwhere.model.counters.TopKTracker;
 import whowhatwhere.model.networksniffer.CaptureStartListener;
-import whowhatwhere.model.networksniffer.NetworkSniffer;
+import whowhatwhere.model.networksniffer.SupportedProtocols;
 
-public class AppearanceCounterPacketHandler implements PcapPacketHandler<Void>
+/**
+ * Counts how many packets were exchanged with each IP address, IPv4 or IPv6.<br>
+ * Can be used either as a regular packet handler, or (when {@code supportsRawCounting()} says so) as a raw buffer handler that reads the few IP header fields it needs at fixed offsets,
+ * skipping the decoding of the whole packet. Both ways produce the same counts.<br>
+ * IPv6 addresses are kept as pairs of longs, so counting them costs about as much as counting IPv4 addresses.<br>
+ * Counting doesn't allocate anything per packet: addresses are mapped to indexes by primitive hash maps, and the counts are kept in int arrays by those indexes.<br>
+ * Optionally keeps track of the addresses with the most appearances while counting, and hands them out on request (see {@code trackTopAppearances()}).<br>
+ * Besides the total since the capture started, each address is counted over a few recent windows (see {@code recentWindowsInSecs}), by the timestamps of the packets.<br>
+ * The amount of distinct addresses is estimated as well, overall and per minute.<br>
+ * The thread that handles the packets counts into a generation (see {@code CountsGeneration}). When a reader asks for the counts (see {@code getCounts()}), that thread swaps it
+ * with a cleared one between two packets, and the reader merges the retired generation into the counts since the capture started (see {@code MergedAppearanceCounts}).
+ * The swap costs the same no matter how many addresses were counted, so the capture never waits for a reader, and the counts a reader gets are as they were after a single packet.<br>
+ * For long captures, it can count with a fixed amount of memory instead (see {@code useApproximateCounting()}). Then only the addresses that seem to appear the most are kept, their counts may be too high by up to
+ * {@code IpAppearancesCounter.getMaxOvercount()}, and their traffic and recent counts are only counted since they were last taken in.<br>
+ * When counting exactly, it can also break the appearances of each address down by service: the IP protocol and the address' port (see {@code countServices()}),
+ * and roll them up by subnet as they are merged (see {@code rollUpSubnets()}).
+ */
+public class AppearanceCounterPacketHandler implements PcapPacketHandler<Void>, JBufferHandler<Void>
 {
+	public final static int[] recentWindowsInSecs = {10, 60, 300};
+	public final static int ip4MaxPrefixLength = 32;
+	public final static int ip6MaxPrefixLength = 64; //the usual size of a single network, so there's little point in rolling up inside it
+	private final static int bucketsPerRecentWindow = 10;
 
-	private Map<Integer, Integer> ipToAmountOfRepeats = new HashMap<>();
+	private final static int dltEthernet = 1; //DLT_EN10MB
+	private final static int dltRawIp = 12; //DLT_RAW
+	private final static int ethernetHeaderLength = 14;
+	private final static int ethernetTypeOffset = 12;
+	private final static int vlanTagLength = 4;
+	private final static int etherTypeIp4 = 0x0800;
+	private final static int etherTypeIp6 = 0x86DD;
+	private final static int etherTypeVlan = 0x8100; //802.1Q
+	private final static int etherTypeQinQ = 0x88A8; //802.1ad
+	private final static int ip4MinHeaderLength = 20;
+	private final static int ip4HeaderLengthMask = 0x0F; //in 32-bit words, in the low bits of the first byte
+	private final static int ip4FragmentOffsetField = 6;
+	private final static int ip4ProtocolField = 9;
+	private final static int ip4SourceField = 12;
+	private final static int ip4DestinationField = 16;
+	private final static int ip4FragmentOffsetMask = 0x1FFF;
+	private final static int ip6HeaderLength = 40;
+	private final static int ip6NextHeaderField = 6;
+	private final static int ip6SourceField = 8;
+	private final static int ip6DestinationField = 24;
+	private final static int ip6HopByHop = 0;
+	private final static int ip6Routing = 43;
+	private final static int ip6Fragment = 44;
+	private final static int ip6DestinationOptions = 60;
+	private final static int ip6FragmentHeaderLength = 8;
+	private final static int ip6FragmentOffsetMask = 0xFFF8;
+	private final static int ip6MaxExtensionHeaders = 8;
+	private final static int tcpProtocol = SupportedProtocols.TCP.getIpProtocolNumber();
+	private final static int udpProtocol = SupportedProtocols.UDP.getIpProtocolNumber();
+	private final static int transportPortsLength = 4; //source and destination ports, at the start of both TCP and UDP headers
+
+	private final static int initialCounterCapacity = 64;
+	private final static long ip4MappedPrefix = 0xFFFF00000000L; //approximate and distinct counting keep IPv4 addresses as IPv4-mapped IPv6 addresses (::ffff:a.b.c.d)
+
+	private IntIndexMap ipToIndex = new IntIndexMap();
+	private Ip4 ipHeader = new Ip4();
 	private int ownIpInt;
+	private long[] ownIp6High; //our IPv6 addresses, split to high and low 64 bits
+	private long[] ownIp6Low;
+	private LongPairIndexMap ip6ToIndex = new LongPairIndexMap();
+	private Ip6 ip6Header = new Ip6();
 	private List<Integer> protocolsToCount = new ArrayList<>();
+	private long protocolHeaderMask = 0; //bit per jNetPcap protocol ID, matched against the decoded packet's header map
+	private long payloadProtocolHeaderMask = 0; //the same, only for the protocols that can't be identified by the IP header alone (HTTP)
 	private boolean isFirstPacket = true;
 	private CaptureStartListener captureStartListener;
+	private boolean[] ipProtocolsToCount = new boolean[256]; //used by the raw path, indexed by the IPv4 protocol field
+	private boolean[] ip6ProtocolsToCount = new boolean[256]; //used by the raw path, indexed by the IPv6 next header field
+	private int dataLinkType = dltEthernet;
+	private TopKTracker topAppearances; //null when not tracking. IPv4 index i is tracked as id 2i, IPv6 index i as id 2i+1
+	private TopAppearancesListener topAppearancesListener;
+	private int[] appearancesById = new int[initialCounterCapacity]; //by the same ids as topAppearances, only kept when tracking them and counting exactly
+	private long lastPacketTime = 0; //in millis, by the packets' timestamps
+	private SpaceSavingCounter heavyHitters; //null when counting exactly. When not null, the addresses are only counted here, and each is tracked by its slot as its id.
+	private CountMinSketch sketch;
+	private DistinctPeersCounter distinctPeers = new DistinctPeersCounter();
+	private volatile boolean isCapturing = false;
+	private LongIndexMap serviceToIndex; //null when not counting services. Keyed by ServiceCounters.toKey(), by the same ids as topAppearances
+	private boolean isRollingUpSubnets = false;
+	private int ip6UpperLayerProtocol; //set by findIp6UpperLayer()
+	private int packetProtocol; //the IP protocol and ports of the packet being counted, only set when counting services
+	private int packetSourcePort;
+	private int packetDestinationPort;
+	private CountsGeneration generation; //counted into by the thread that handles the packets
+	private volatile CountsGeneration spareGeneration; //cleared by the reader, swapped in when a reader asks for the counts. null while the reader has it.
+	private final AtomicReference<CompletableFuture<CountsGeneration>> pendingGeneration = new AtomicReference<>(); //a reader's request, until the generation is swapped
+	private CompletableFuture<CountsGeneration> requestedGeneration; //the rest are only touched by readers, while holding this handler's lock
+	private MergedAppearanceCounts merged;
+	private AppearanceCounts latestCounts; //made from merged on request, null when it changed since
 
 	public AppearanceCounterPacketHandler(int ownIpInt, List<Integer> listOfProtocls)
 	{
@@ -47,38 +145,449 @@ public class AppearanceCounterPacketHandler implements PcapPacketHandler<Void>
 	}
 	
 	public AppearanceCounterPacketHandler(int ownIpInt, List<Integer> listOfProtocols, CaptureStartListener listener)
+	{
+		this(ownIpInt, new long[0], new long[0], listOfProtocols, listener);
+	}
+
+	/**
+	 * @param ownIp6High - the high 64 bits of each of our IPv6 addresses (see {@code NetworkSniffer.stringToLongPairIp()})
+	 * @param ownIp6Low - the low 64 bits of each of our IPv6 addresses, in the same order
+	 */
+	public AppearanceCounterPacketHandler(int ownIpInt, long[] ownIp6High, long[] ownIp6Low, List<Integer> listOfProtocols, CaptureStartListener listener)
 	{
 		this.ownIpInt = ownIpInt;
+		this.ownIp6High = ownIp6High;
+		this.ownIp6Low = ownIp6Low;
 		this.protocolsToCount = listOfProtocols;
 		this.captureStartListener = listener;
+
+		for (Integer protocolId : listOfProtocols)
+		{
+			SupportedProtocols protocol = SupportedProtocols.fromValue(protocolId);
+
+			protocolHeaderMask |= 1L << protocolId; //the IDs of the core protocols are all below 64, so they fit in the first word of the header map
+
+			if (protocol != null && protocol.getIpProtocolNumber() >= 0)
+			{
+				ipProtocolsToCount[protocol.getIpProtocolNumber()] = true;
+				ip6ProtocolsToCount[protocol.getIp6NextHeader()] = true;
+			}
+			else
+				payloadProtocolHeaderMask |= 1L << protocolId;
+		}
+
+		createGenerations();
+	}
+
+	/**
+	 * @param dataLinkType - the link type of the capture (as returned by {@code Pcap.datalink()})
+	 * @return true if this handler can count packets of that link type from the raw buffer, with the protocols it was asked to count.
+	 * Protocols that can't be identified by the IP header alone (HTTP) require the decoded path.
+	 */
+	public boolean supportsRawCounting(int dataLinkType)
+	{
+		if (dataLinkType != dltEthernet && dataLinkType != dltRawIp)
+			return false;
+
+		for (Integer protocolId : protocolsToCount)
+		{
+			SupportedProtocols protocol = SupportedProtocols.fromValue(protocolId);
+
+			if (protocol == null || protocol.getIpProtocolNumber() < 0)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Must be called before using this handler as a raw buffer handler
+	 * 
+	 * @param dataLinkType - the link type of the capture (as returned by {@code Pcap.datalink()}). Must be supported, see {@code supportsRawCounting()}.
+	 */
+	public void setDataLinkType(int dataLinkType)
+	{
+		this.dataLinkType = dataLinkType;
+	}
+
+	/**
+	 * Keeps track of the {@code amount} addresses with the most appearances while counting. Must be called before the capture starts.
+	 * 
+	 * @param listener - gets the current leaders after each call to {@code publishTopAppearances()}
+	 */
+	public void trackTopAppearances(int amount, TopAppearancesListener listener)
+	{
+		topAppearances = new TopKTracker(amount);
+		topAppearancesListener = listener;
+	}
+
+	/**
+	 * Counts with a fixed amount of memory, instead of keeping a count for every address that appears. Must be called before the capture starts.
+	 */
+	public void useApproximateCounting(ApproximateCountingSettings settings)
+	{
+		heavyHitters = new SpaceSavingCounter(settings.getMonitoredAddresses());
+		sketch = new CountMinSketch(settings.getSketchWidth(), settings.getSketchDepth());
+		createGenerations();
+	}
+
+	/**
+	 * Also counts the appearances of each address per service: the IP protocol, and for TCP and UDP, the port on the address' side. Must be called before the capture starts.<br>
+	 * Ignored when counting approximately.
+	 */
+	public void countServices()
+	{
+		serviceToIndex = new LongIndexMap();
+		createGenerations();
+	}
+
+	/**
+	 * Also rolls up the appearances of the addresses by subnet as they are merged, so they can be asked for by any prefix length (see {@code SubnetAppearances}).
+	 * Must be called before the capture starts.<br>
+	 * Ignored when counting approximately.
+	 */
+	public void rollUpSubnets()
+	{
+		isRollingUpSubnets = true;
+		createGenerations();
 	}
 
-	public List<IpAppearancesCounter> getListOfIpAppearances()
+	private void createGenerations()
 	{
-		List<IpAppearancesCounter> list = new ArrayList<>();
-		String strKey;
+		int slots = heavyHitters != null ? heavyHitters.getCapacity() : 0;
 
-		for (Integer key : ipToAmountOfRepeats.keySet())
+		generation = new CountsGeneration(recentWindowsInSecs, bucketsPerRecentWindow, slots);
+		spareGeneration = new CountsGeneration(recentWindowsInSecs, bucketsPerRecentWindow, slots);
+		merged = new MergedAppearanceCounts(recentWindowsInSecs, bucketsPerRecentWindow, slots, sketch != null ? sketch.getConfidence() : 0, serviceToIndex != null, isRollingUpSubnets);
+		latestCounts = null;
+	}
+
+	/**
+	 * Passes the current leaders to the {@code TopAppearancesListener}, on the calling thread. Can be called from any thread.
+	 * 
+	 * @param maxWaitMillis - how long to wait for the counts during a capture. If no packet comes by then nothing changed, so nothing is passed.
+	 */
+	public void publishTopAppearances(long maxWaitMillis)
+	{
+		AppearanceCounts topCounts;
+		DistinctPeers peers;
+
+		synchronized (this)
 		{
-			try
+			if (topAppearances == null || !mergeNextGeneration(maxWaitMillis))
+				return;
+
+			topCounts = merged.toTopCounts();
+			peers = merged.getDistinctPeers();
+		}
+
+		topAppearancesListener.topAppearancesUpdated(topCounts.createListOfIpAppearances(), peers);
+	}
+
+	/**
+	 * Must be called before this handler starts getting packets
+	 */
+	public void captureStarted()
+	{
+		isCapturing = true;
+	}
+
+	/**
+	 * Must be called after this handler stopped getting packets. Retires the generation for a pending request on the calling thread, since no packet will come to do it.
+	 */
+	public void captureEnded()
+	{
+		isCapturing = false;
+		retirePendingGeneration();
+	}
+
+	/**
+	 * Gets a consistent copy of the counts. Can be called from any thread.<br>
+	 * During a capture, the generation is swapped by the thread that handles the packets, right before it handles the next packet that isn't filtered out by the kernel.
+	 * Otherwise, it's swapped right away on the calling thread. Either way, merging it and making the copy is done on the calling thread.
+	 * 
+	 * @param maxWaitMillis - how long to wait for the swap during a capture (no packets means nothing changed, but nothing swaps the generation either)
+	 * @return the new copy, or the latest one if the generation wasn't swapped in time. Concurrent callers share the same copy.
+	 */
+	public synchronized AppearanceCounts getCounts(long maxWaitMillis)
+	{
+		mergeNextGeneration(maxWaitMillis);
+
+		if (latestCounts == null)
+			latestCounts = merged.toCounts();
+
+		return latestCounts;
+	}
+
+	/**
+	 * Same as {@code getCounts()}, turned into a snapshot on the calling thread
+	 */
+	public AppearanceCounterSnapshot getSnapshot(long maxWaitMillis)
+	{
+		return getCounts(maxWaitMillis).toSnapshot();
+	}
+
+	/**
+	 * Asks for the current generation and merges it. A request that wasn't answered in time stays pending, and the next call waits for the same generation.
+	 * Only called while holding this handler's lock.
+	 * 
+	 * @return true if a generation was merged
+	 */
+	private boolean mergeNextGeneration(long maxWaitMillis)
+	{
+		if (requestedGeneration == null)
+		{
+			requestedGeneration = new CompletableFuture<>();
+			pendingGeneration.set(requestedGeneration);
+
+			if (!isCapturing)
+				retirePendingGeneration();
+		}
+
+		CountsGeneration retired;
+
+		try
+		{
+			retired = requestedGeneration.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		catch (ExecutionException | TimeoutException e)
+		{
+			return false;
+		}
+
+		merged.merge(retired);
+		retired.clear();
+		spareGeneration = retired; //before the next request can be made, so there's always a spare to swap in
+		requestedGeneration = null;
+		latestCounts = null;
+
+		return true;
+	}
+
+	/**
+	 * Swaps the current generation with the spare one, if a reader asked for it. Only called by the thread that handles the packets, or when no thread does.
+	 */
+	private void retirePendingGeneration()
+	{
+		CompletableFuture<CountsGeneration> request = pendingGeneration.getAndSet(null); //only one thread gets it, in case the capture ends while a reader asks
+
+		if (request == null)
+			return;
+
+		CountsGeneration retired = generation;
+
+		generation = spareGeneration;
+		spareGeneration = null;
+		retired.retire(lastPacketTime, distinctPeers.getDistinctPeers(), topAppearances, heavyHitters, sketch);
+		request.complete(retired);
+	}
+
+	@Override
+	public void nextPacket(PcapPacket packet, Void nothing)
+	{
+		notifyOnFirstPacket();
+
+		if (pendingGeneration.get() != null)
+			retirePendingGeneration();
+		
+		if (packet.hasHeader(ipHeader)) //only if there's an IP layer
+		{
+			if (protocolsToCount.isEmpty() || isSelectedProtocol(packet)) //if any filter is selected, filter it
 			{
-				strKey = NetworkSniffer.intToIpString(key);
+				if (serviceToIndex != null)
+					readIp4Service(packet, ipHeader.getOffset(), packet.size());
+
+				countPacket(ipHeader.sourceToInt(), ipHeader.destinationToInt(), packet.getCaptureHeader());
 			}
-			catch (UnknownHostException uhe)
+		}
+		else
+			if (packet.hasHeader(Ip6.ID))
 			{
-				continue; //ignore this packet
+				int ip6Offset = packet.getHeader(ip6Header).getOffset();
+				int upperLayerOffset = !protocolsToCount.isEmpty() || serviceToIndex != null ? findIp6UpperLayer(packet, ip6Offset, packet.size()) : -1;
+
+				if (protocolsToCount.isEmpty() || isSelectedIp6Protocol(packet, upperLayerOffset))
+				{
+					if (serviceToIndex != null)
+						readService(packet, ip6UpperLayerProtocol, upperLayerOffset, packet.size());
+
+					countIp6Packet(packet, ip6Offset, packet.getCaptureHeader());
+				}
 			}
+	}
+
+	/**
+	 * The raw path: reads the IP protocol, source and destination straight from the captured bytes
+	 */
+	@Override
+	public void nextPacket(PcapHeader header, JBuffer buffer, Void nothing)
+	{
+		notifyOnFirstPacket();
+
+		if (pendingGeneration.get() != null)
+			retirePendingGeneration();
+
+		int caplen = header.caplen();
+		int ipOffset = findIpHeaderOffset(buffer, caplen);
+
+		if (ipOffset < 0 || ipOffset >= caplen) //not IP
+			return;
+
+		int ipVersion = buffer.getUByte(ipOffset) >> 4;
+
+		if (ipVersion == 6)
+		{
+			if (ipOffset + ip6HeaderLength > caplen)
+				return;
+
+			if (!protocolsToCount.isEmpty() || serviceToIndex != null)
+			{
+				int upperLayerOffset = findIp6UpperLayer(buffer, ipOffset, caplen);
+
+				if (!protocolsToCount.isEmpty() && (upperLayerOffset < 0 || !ip6ProtocolsToCount[ip6UpperLayerProtocol]))
+					return;
 
-			list.add(new IpAppearancesCounter(strKey, ipToAmountOfRepeats.get(key)));
+				if (serviceToIndex != null)
+					readService(buffer, ip6UpperLayerProtocol, upperLayerOffset, caplen);
+			}
+
+			countIp6Packet(buffer, ipOffset, header);
+			return;
+		}
+
+		if (ipVersion != 4 || ipOffset + ip4MinHeaderLength > caplen) //not IPv4, or too short to be decoded as such
+			return;
+
+		if (!protocolsToCount.isEmpty())
+		{
+			boolean isFirstFragment = (buffer.getUShort(ipOffset + ip4FragmentOffsetField) & ip4FragmentOffsetMask) == 0; //later fragments have no transport header, so they aren't decoded as TCP/UDP/ICMP either
+
+			if (!isFirstFragment || !ipProtocolsToCount[buffer.getUByte(ipOffset + ip4ProtocolField)])
+				return;
 		}
 
-		Collections.sort(list);
+		if (serviceToIndex != null)
+			readIp4Service(buffer, ipOffset, caplen);
 
-		return list;
+		countPacket(buffer.getInt(ipOffset + ip4SourceField), buffer.getInt(ipOffset + ip4DestinationField), header);
 	}
 
-	@Override
-	public void nextPacket(PcapPacket packet, Void nothing)
+	/**
+	 * Sets the protocol and ports of the packet being counted from its IPv4 header and the start of its transport header
+	 */
+	private void readIp4Service(JBuffer buffer, int ipOffset, int caplen)
+	{
+		boolean isFirstFragment = (buffer.getUShort(ipOffset + ip4FragmentOffsetField) & ip4FragmentOffsetMask) == 0;
+		int transportOffset = ipOffset + (buffer.getUByte(ipOffset) & ip4HeaderLengthMask) * 4;
+
+		readService(buffer, buffer.getUByte(ipOffset + ip4ProtocolField), isFirstFragment ? transportOffset : -1, caplen);
+	}
+
+	/**
+	 * Sets the protocol and ports of the packet being counted. The ports are 0 unless it's TCP or UDP and the ports were captured.
+	 * 
+	 * @param transportOffset - the offset of the transport header, or -1 if the packet has none (a later fragment)
+	 */
+	private void readService(JBuffer buffer, int protocol, int transportOffset, int caplen)
+	{
+		packetProtocol = protocol;
+
+		if ((protocol == tcpProtocol || protocol == udpProtocol) && transportOffset >= 0 && transportOffset + transportPortsLength <= caplen)
+		{
+			packetSourcePort = buffer.getUShort(transportOffset);
+			packetDestinationPort = buffer.getUShort(transportOffset + 2);
+		}
+		else
+			packetSourcePort = packetDestinationPort = 0;
+	}
+
+	/**
+	 * Skips the extension headers of an IPv6 packet, and sets {@code ip6UpperLayerProtocol} to the last next header that was read.
+	 * 
+	 * @return the offset of the upper layer header (which may be beyond the captured bytes). Returns -1 if it isn't the first fragment of the packet
+	 * (later fragments have no upper layer header, so they aren't decoded as TCP/UDP/ICMP either) or the captured bytes end before the upper layer.
+	 */
+	private int findIp6UpperLayer(JBuffer buffer, int ipOffset, int caplen)
+	{
+		int nextHeader = ip6UpperLayerProtocol = buffer.getUByte(ipOffset + ip6NextHeaderField);
+		int headerOffset = ipOffset + ip6HeaderLength;
+
+		for (int i = 0; i < ip6MaxExtensionHeaders; i++)
+		{
+			switch (nextHeader)
+			{
+				case ip6HopByHop:
+				case ip6Routing:
+				case ip6DestinationOptions:
+					if (headerOffset + 2 > caplen)
+						return -1;
+
+					nextHeader = ip6UpperLayerProtocol = buffer.getUByte(headerOffset);
+					headerOffset += (buffer.getUByte(headerOffset + 1) + 1) * 8;
+					break;
+				case ip6Fragment:
+					if (headerOffset + ip6FragmentHeaderLength > caplen)
+						return -1;
+
+					nextHeader = ip6UpperLayerProtocol = buffer.getUByte(headerOffset);
+
+					if ((buffer.getUShort(headerOffset + 2) & ip6FragmentOffsetMask) != 0)
+						return -1;
+
+					headerOffset += ip6FragmentHeaderLength;
+					break;
+				default:
+					return headerOffset;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Matches the upper layer protocol the same way the raw path does (there is no ICMPv6 decoder, and the decoders may not follow every extension header),
+	 * and the protocols that are identified by their payload by the decoded headers
+	 * 
+	 * @param upperLayerOffset - as returned by {@code findIp6UpperLayer()}
+	 */
+	private boolean isSelectedIp6Protocol(PcapPacket packet, int upperLayerOffset)
+	{
+		if (upperLayerOffset >= 0 && ip6ProtocolsToCount[ip6UpperLayerProtocol])
+			return true;
+
+		return (packet.getState().get64BitHeaderMap(0) & payloadProtocolHeaderMask) != 0;
+	}
+
+	/**
+	 * @return the offset of the IP (v4 or v6) header in the packet, or -1 if the packet doesn't carry IP
+	 */
+	private int findIpHeaderOffset(JBuffer buffer, int caplen)
+	{
+		if (dataLinkType == dltRawIp)
+			return 0;
+
+		int typeOffset = ethernetTypeOffset;
+
+		if (typeOffset + 2 > caplen)
+			return -1;
+
+		int etherType = buffer.getUShort(typeOffset);
+
+		while ((etherType == etherTypeVlan || etherType == etherTypeQinQ) && typeOffset + vlanTagLength + 2 <= caplen) //skip VLAN tags
+		{
+			typeOffset += vlanTagLength;
+			etherType = buffer.getUShort(typeOffset);
+		}
+
+		return etherType == etherTypeIp4 || etherType == etherTypeIp6 ? typeOffset + 2 : -1;
+	}
+
+	private void notifyOnFirstPacket()
 	{
 		if (isFirstPacket)
 		{
@@ -87,43 +596,169 @@ public class AppearanceCounterPacketHandler implements PcapPacketHandler<Void>
 		
 			isFirstPacket = false;
 		}
-		
-		if (packet.hasHeader(Ip4.ID) && (protocolsToCount.isEmpty() || isSelectedProtocol(packet))) //only if there's an IP layer, and if any filter is selected, filter it 
+	}
+
+	/**
+	 * @param header - the packet's capture header, for its timestamp and size
+	 */
+	private void countPacket(int sourceInt, int destInt, PcapHeader header)
+	{
+		int key;
+		boolean isInbound;
+
+		if (ownIpInt == sourceInt)
+		{
+			key = destInt;
+			isInbound = false;
+		}
+		else
+			if (ownIpInt == destInt)
+			{
+				key = sourceInt;
+				isInbound = true;
+			}
+			else //not relevant to us
+				return;
+
+		long mappedKey = ip4MappedPrefix | (key & 0xFFFFFFFFL);
+
+		distinctPeers.add(0, mappedKey, header.timestampInMillis());
+
+		if (heavyHitters != null)
 		{
-			Ip4 ipHeader = new Ip4();
-			ipHeader = packet.getHeader(ipHeader);
+			countApproximately(0, mappedKey, isInbound, header);
+			return;
+		}
 
-			int sourceInt = ipHeader.sourceToInt();
-			int destInt = ipHeader.destinationToInt();
+		int sizeBefore = ipToIndex.size();
+		int index = ipToIndex.getOrAdd(key);
 
-			int key;
+		if (index == sizeBefore)
+			generation.addAddress(index * 2, 0, mappedKey);
 
-			if (ownIpInt == sourceInt)
-				key = destInt;
-			else
-				if (ownIpInt == destInt)
-					key = sourceInt;
-				else //not relevant to us
-					return;
+		countExactly(index * 2, isInbound, header);
+	}
 
-			Integer repeats = ipToAmountOfRepeats.get(key);
+	/**
+	 * @param ipOffset - offset of the IPv6 header in {@code buffer}
+	 * @param header - the packet's capture header, for its timestamp and size
+	 */
+	private void countIp6Packet(JBuffer buffer, int ipOffset, PcapHeader header)
+	{
+		long sourceHigh = buffer.getLong(ipOffset + ip6SourceField);
+		long sourceLow = buffer.getLong(ipOffset + ip6SourceField + 8);
+		long destHigh = buffer.getLong(ipOffset + ip6DestinationField);
+		long destLow = buffer.getLong(ipOffset + ip6DestinationField + 8);
+		long keyHigh, keyLow;
+		boolean isInbound;
 
-			if (repeats == null) //first time we see this ip
-				ipToAmountOfRepeats.put(key, 1);
-			else
-				ipToAmountOfRepeats.put(key, repeats + 1);
+		if (isOwnIp6(sourceHigh, sourceLow))
+		{
+			keyHigh = destHigh;
+			keyLow = destLow;
+			isInbound = false;
 		}
+		else
+			if (isOwnIp6(destHigh, destLow))
+			{
+				keyHigh = sourceHigh;
+				keyLow = sourceLow;
+				isInbound = true;
+			}
+			else //not relevant to us
+				return;
+
+		distinctPeers.add(keyHigh, keyLow, header.timestampInMillis());
+
+		if (heavyHitters != null)
+		{
+			countApproximately(keyHigh, keyLow, isInbound, header);
+			return;
+		}
+
+		int sizeBefore = ip6ToIndex.size();
+		int index = ip6ToIndex.getOrAdd(keyHigh, keyLow);
+
+		if (index == sizeBefore)
+			generation.addAddress(index * 2 + 1, keyHigh, keyLow);
+
+		countExactly(index * 2 + 1, isInbound, header);
 	}
 
-	private boolean isSelectedProtocol(PcapPacket packet)
+	/**
+	 * @param id - the address' id in {@code topAppearances}
+	 */
+	private void countExactly(int id, boolean isInbound, PcapHeader header)
 	{
-		for (Integer protocolId : protocolsToCount)
-			if (packet.hasHeader(protocolId))
+		countInGeneration(id, isInbound, header);
+
+		if (topAppearances != null)
+		{
+			if (id >= appearancesById.length)
+				appearancesById = Arrays.copyOf(appearancesById, Math.max(appearancesById.length * 2, id + 1));
+
+			topAppearances.update(id, ++appearancesById[id]);
+		}
+
+		if (serviceToIndex != null)
+		{
+			long key = ServiceCounters.toKey(id, packetProtocol, isInbound ? packetSourcePort : packetDestinationPort);
+			int servicesBefore = serviceToIndex.size();
+			int service = serviceToIndex.getOrAdd(key);
+
+			if (service == servicesBefore)
+				generation.addService(key);
+
+			generation.countService(service);
+		}
+	}
+
+	/**
+	 * Counts a packet to or from an address given as an IPv6 address (see {@code ip4MappedPrefix})
+	 */
+	private void countApproximately(long high, long low, boolean isInbound, PcapHeader header)
+	{
+		int slot = heavyHitters.indexOf(high, low);
+
+		if (slot < 0)
+		{
+			slot = heavyHitters.add(high, low); //may take the slot of the address with the fewest appearances, so the slot's other counts start over
+			generation.takeSlot(slot);
+		}
+
+		heavyHitters.increment(slot);
+
+		int estimate = sketch.add(high, low);
+
+		generation.setSlot(slot, high, low, heavyHitters.getCount(slot), heavyHitters.getError(slot), estimate);
+		countInGeneration(slot, isInbound, header);
+
+		if (topAppearances != null)
+			topAppearances.update(slot, heavyHitters.getCount(slot));
+	}
+
+	private void countInGeneration(int id, boolean isInbound, PcapHeader header)
+	{
+		long timestamp = header.timestampInMillis();
+
+		lastPacketTime = Math.max(lastPacketTime, timestamp);
+		generation.countPacket(id, isInbound, header.wirelen(), timestamp);
+	}
+
+	private boolean isOwnIp6(long high, long low)
+	{
+		for (int i = 0; i < ownIp6High.length; i++)
+			if (ownIp6High[i] == high && ownIp6Low[i] == low)
 				return true;
 
 		return false;
 	}
 
+	private boolean isSelectedProtocol(PcapPacket packet)
+	{
+		return (packet.getState().get64BitHeaderMap(0) & protocolHeaderMask) != 0;
+	}
+
 	public void setCaptureStartListener(CaptureStartListener captureStartListener)
 	{
 		this.captureStartListener = captureStartListener;
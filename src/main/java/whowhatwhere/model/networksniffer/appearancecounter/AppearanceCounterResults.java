@@ -18,19 +18,44 @@
  ******************************************************************************/
 package whowhatwhere.model.networksniffer.appearancecounter;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class AppearanceCounterResults
 {
-	private AppearanceCounterPacketHandler packetHandler;
+	private AppearanceCounterSnapshot snapshot;
 	
-	public AppearanceCounterResults(AppearanceCounterPacketHandler packetHandler)
+	/**
+	 * @param snapshot - the counts at the end of the capture
+	 */
+	public AppearanceCounterResults(AppearanceCounterSnapshot snapshot)
 	{
-		this.packetHandler = packetHandler;
+		this.snapshot = snapshot;
 	}
 	
 	public List<IpAppearancesCounter> getAppearanceCounterResults()
 	{
-		return packetHandler.getListOfIpAppearances();
+		return new ArrayList<>(snapshot.getAppearances());
+	}
+
+	public DistinctPeers getDistinctPeers()
+	{
+		return snapshot.getDistinctPeers();
+	}
+
+	/**
+	 * @return a description of how far the counts may be from the true counts, or null if they are exact
+	 */
+	public String getApproximationSummary()
+	{
+		return snapshot.getApproximationSummary();
+	}
+
+	/**
+	 * @return the appearances rolled up by subnet, or null if they weren't
+	 */
+	public SubnetAppearances getSubnetAppearances()
+	{
+		return snapshot.getSubnetAppearances();
 	}
 }
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer.appearancecounter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A consistent copy of an appearance counter's counts, as they were after a single packet. Immutable, so it can be read from any thread.
+ */
+public class AppearanceCounterSnapshot
+{
+	private List<IpAppearancesCounter> appearances;
+	private DistinctPeers distinctPeers;
+	private String approximationSummary;
+	private long lastPacketTime;
+	private SubnetAppearances subnetAppearances;
+
+	/**
+	 * @param appearances - most appearances first
+	 * @param approximationSummary - see {@code getApproximationSummary()}
+	 * @param lastPacketTime - the timestamp of the last counted packet, in millis. 0 if no packet was counted yet.
+	 * @param subnetAppearances - null if the appearances weren't rolled up by subnet
+	 */
+	public AppearanceCounterSnapshot(List<IpAppearancesCounter> appearances, DistinctPeers distinctPeers, String approximationSummary, long lastPacketTime, SubnetAppearances subnetAppearances)
+	{
+		this.appearances = Collections.unmodifiableList(appearances);
+		this.distinctPeers = distinctPeers;
+		this.approximationSummary = approximationSummary;
+		this.lastPacketTime = lastPacketTime;
+		this.subnetAppearances = subnetAppearances;
+	}
+
+	/**
+	 * @return the counts of each address, most appearances first. Unmodifiable.
+	 */
+	public List<IpAppearancesCounter> getAppearances()
+	{
+		return appearances;
+	}
+
+	public DistinctPeers getDistinctPeers()
+	{
+		return distinctPeers;
+	}
+
+	/**
+	 * @return a description of how far the counts may be from the true counts, or null if they are exact
+	 */
+	public String getApproximationSummary()
+	{
+		return approximationSummary;
+	}
+
+	/**
+	 * @return the timestamp of the last packet counted before this snapshot was taken, in millis. 0 if no packet was counted yet.
+	 */
+	public long getLastPacketTime()
+	{
+		return lastPacketTime;
+	}
+
+	/**
+	 * @return the appearances rolled up by subnet, or null if they weren't
+	 */
+	public SubnetAppearances getSubnetAppearances()
+	{
+		return subnetAppearances;
+	}
+}
@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer.appearancecounter;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import whowhatwhere.model.counters.TrafficCounters;
+import whowhatwhere.model.networksniffer.NetworkSniffer;
+
+/**
+ * A consistent copy of an appearance counter's counts, as they were after a single packet, kept in primitive arrays by entry.<br>
+ * It's filled by the reader from the merged generations of the counts (see {@code MergedAppearanceCounts}), and only holds numbers. Turning them into an {@code AppearanceCounterSnapshot}
+ * (formatting the addresses and sorting them) is done the first time it's asked for, see {@code toSnapshot()}.<br>
+ * IPv4 addresses are kept as IPv4-mapped IPv6 addresses (::ffff:a.b.c.d). Not modified once it's handed out, so it can be read from any thread.
+ */
+public class AppearanceCounts
+{
+	private final static long ip4MappedPrefix = 0xFFFF00000000L;
+
+	private int size = 0;
+	private int[] ids; //the id each address was counted by
+	private long[] highs;
+	private long[] lows;
+	private int[] counts;
+	private int[] maxOvercounts;
+	private int[] packetsIn;
+	private int[] packetsOut;
+	private long[] bytesIn;
+	private long[] bytesOut;
+	private int[][] recentCounts; //by window, then by entry
+	private int[] firstServices; //the first service of each entry, and the end of the last one after it. null when services weren't counted
+	private int serviceAmount = 0;
+	private int[] serviceProtocols = new int[0];
+	private int[] servicePorts = new int[0];
+	private int[] serviceCounts = new int[0];
+	private DistinctPeers distinctPeers = new DistinctPeers(0, new long[0], new long[0]);
+	private long lastPacketTime = 0;
+	private SubnetAppearances subnetAppearances;
+	private boolean isApproximate = false;
+	private int approximationMinCount;
+	private long approximationErrorBound;
+	private double approximationConfidence;
+	private AppearanceCounterSnapshot snapshot; //made on the first call to toSnapshot()
+
+	/**
+	 * @param capacity - how many addresses will be added
+	 * @param recentWindows - the amount of recent windows each address is counted over
+	 * @param hasServices - whether the services of each address will be added
+	 */
+	AppearanceCounts(int capacity, int recentWindows, boolean hasServices)
+	{
+		ids = new int[capacity];
+		highs = new long[capacity];
+		lows = new long[capacity];
+		counts = new int[capacity];
+		maxOvercounts = new int[capacity];
+		packetsIn = new int[capacity];
+		packetsOut = new int[capacity];
+		bytesIn = new long[capacity];
+		bytesOut = new long[capacity];
+		recentCounts = new int[recentWindows][capacity];
+
+		if (hasServices)
+			firstServices = new int[capacity + 1];
+	}
+
+	/**
+	 * Adds an address. Its recent counts and services are added after it, see {@code setRecentCount()} and {@code addService()}.
+	 * 
+	 * @param traffic - the address' traffic is copied from it
+	 * @param index - the address' index in {@code traffic}
+	 * @return the address' entry
+	 */
+	int add(int id, long high, long low, int count, int maxOvercount, TrafficCounters traffic, int index)
+	{
+		int entry = size++;
+
+		ids[entry] = id;
+		highs[entry] = high;
+		lows[entry] = low;
+		counts[entry] = count;
+		maxOvercounts[entry] = maxOvercount;
+		packetsIn[entry] = traffic.getPacketsIn(index);
+		packetsOut[entry] = traffic.getPacketsOut(index);
+		bytesIn[entry] = traffic.getBytesIn(index);
+		bytesOut[entry] = traffic.getBytesOut(index);
+
+		if (firstServices != null)
+			firstServices[entry + 1] = serviceAmount;
+
+		return entry;
+	}
+
+	void setRecentCount(int entry, int window, int count)
+	{
+		recentCounts[window][entry] = count;
+	}
+
+	/**
+	 * Adds a service of the address that was added last
+	 */
+	void addService(int protocol, int port, int count)
+	{
+		if (serviceAmount == serviceCounts.length)
+		{
+			int newLength = Math.max(16, serviceAmount * 2);
+
+			serviceProtocols = Arrays.copyOf(serviceProtocols, newLength);
+			servicePorts = Arrays.copyOf(servicePorts, newLength);
+			serviceCounts = Arrays.copyOf(serviceCounts, newLength);
+		}
+
+		serviceProtocols[serviceAmount] = protocol;
+		servicePorts[serviceAmount] = port;
+		serviceCounts[serviceAmount] = count;
+		serviceAmount++;
+		firstServices[size] = serviceAmount;
+	}
+
+	/**
+	 * @param lastPacketTime - the timestamp of the last counted packet, in millis. 0 if no packet was counted yet.
+	 * @param subnetAppearances - null if the appearances weren't rolled up by subnet
+	 */
+	void setTotals(DistinctPeers distinctPeers, long lastPacketTime, SubnetAppearances subnetAppearances)
+	{
+		this.distinctPeers = distinctPeers;
+		this.lastPacketTime = lastPacketTime;
+		this.subnetAppearances = subnetAppearances;
+	}
+
+	/**
+	 * Marks the counts as approximate
+	 * 
+	 * @param minCount - addresses with up to this many appearances may be missing
+	 * @param errorBound - the counts may be up to this much too high, with {@code confidence}
+	 */
+	void setApproximation(int minCount, long errorBound, double confidence)
+	{
+		isApproximate = true;
+		approximationMinCount = minCount;
+		approximationErrorBound = errorBound;
+		approximationConfidence = confidence;
+	}
+
+	/**
+	 * @return the amount of addresses
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return the id the address was counted by. When counting exactly, an address keeps its id for the whole capture.
+	 * When counting approximately, the id is a slot that may be taken by another address later.
+	 */
+	public int getId(int entry)
+	{
+		return ids[entry];
+	}
+
+	/**
+	 * @return the high 64 bits of the address (0 for IPv4)
+	 */
+	public long getHigh(int entry)
+	{
+		return highs[entry];
+	}
+
+	/**
+	 * @return the low 64 bits of the address (::ffff:a.b.c.d for IPv4)
+	 */
+	public long getLow(int entry)
+	{
+		return lows[entry];
+	}
+
+	public boolean isIp4(int entry)
+	{
+		return highs[entry] == 0 && (lows[entry] & 0xFFFFFFFF00000000L) == ip4MappedPrefix;
+	}
+
+	public int getCount(int entry)
+	{
+		return counts[entry];
+	}
+
+	/**
+	 * @return the timestamp of the last packet counted before this copy was made, in millis. 0 if no packet was counted yet.
+	 */
+	public long getLastPacketTime()
+	{
+		return lastPacketTime;
+	}
+
+	public boolean isApproximate()
+	{
+		return isApproximate;
+	}
+
+	/**
+	 * Formats and sorts the counts on the calling thread the first time it's called, and returns the same snapshot after that
+	 */
+	public synchronized AppearanceCounterSnapshot toSnapshot()
+	{
+		if (snapshot == null)
+			snapshot = new AppearanceCounterSnapshot(createListOfIpAppearances(), distinctPeers, createApproximationSummary(), lastPacketTime, subnetAppearances);
+
+		return snapshot;
+	}
+
+	/**
+	 * @return the counts of each address, most appearances first
+	 */
+	List<IpAppearancesCounter> createListOfIpAppearances()
+	{
+		List<IpAppearancesCounter> list = new ArrayList<>(size);
+
+		for (int entry = 0; entry < size; entry++)
+		{
+			String ip;
+
+			try
+			{
+				ip = isIp4(entry) ? NetworkSniffer.intToIpString((int) lows[entry]) : NetworkSniffer.longPairToIpString(highs[entry], lows[entry]);
+			}
+			catch (UnknownHostException uhe)
+			{
+				continue; //ignore this address
+			}
+
+			int[] recentAppearances = new int[recentCounts.length];
+
+			for (int window = 0; window < recentCounts.length; window++)
+				recentAppearances[window] = recentCounts[window][entry];
+
+			IpAppearancesCounter counter = new IpAppearancesCounter(ip, counts[entry], recentAppearances);
+
+			counter.setTraffic(packetsIn[entry], packetsOut[entry], bytesIn[entry], bytesOut[entry]);
+			counter.setMaxOvercount(maxOvercounts[entry]);
+
+			if (firstServices != null)
+				counter.setServices(createListOfServices(entry));
+
+			list.add(counter);
+		}
+
+		Collections.sort(list);
+
+		return list;
+	}
+
+	private List<ServiceAppearancesCounter> createListOfServices(int entry)
+	{
+		List<ServiceAppearancesCounter> list = new ArrayList<>(firstServices[entry + 1] - firstServices[entry]);
+
+		for (int service = firstServices[entry]; service < firstServices[entry + 1]; service++)
+			list.add(new ServiceAppearancesCounter(serviceProtocols[service], servicePorts[service], serviceCounts[service]));
+
+		Collections.sort(list);
+
+		return list;
+	}
+
+	/**
+	 * @return a description of how far the approximate counts may be from the true counts, or null when counting exactly
+	 */
+	private String createApproximationSummary()
+	{
+		if (!isApproximate)
+			return null;
+
+		return String.format("approximate counts, up to %d too high with %.0f%% confidence. Addresses with up to %d appearances may be missing", Math.min(approximationMinCount, approximationErrorBound),
+				approximationConfidence * 100, approximationMinCount);
+	}
+}
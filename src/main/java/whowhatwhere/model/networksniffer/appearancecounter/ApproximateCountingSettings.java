@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer.appearancecounter;
+
+/**
+ * Settings for counting appearances with a fixed amount of memory, for long captures that see too many addresses to count each of them exactly.<br>
+ * Only the {@code monitoredAddresses} addresses that seem to appear the most are kept (by the Space-Saving algorithm), and their counts are tightened by a Count-Min sketch of {@code sketchDepth} rows of {@code sketchWidth} cells.
+ */
+public class ApproximateCountingSettings
+{
+	public final static int defaultMonitoredAddresses = 10000;
+	public final static int defaultSketchWidth = 1 << 16;
+	public final static int defaultSketchDepth = 4;
+
+	private int monitoredAddresses;
+	private int sketchWidth;
+	private int sketchDepth;
+
+	/**
+	 * @param monitoredAddresses - the amount of addresses whose appearances are counted. Any address that appears more than (total appearances / monitoredAddresses) times is guaranteed to be among them.
+	 * @param sketchWidth - cells per row of the sketch, a power of 2. Counts are too high by no more than e / sketchWidth of the total appearances, with a high probability.
+	 * @param sketchDepth - rows of the sketch. That probability is 1 - e^-sketchDepth.
+	 */
+	public ApproximateCountingSettings(int monitoredAddresses, int sketchWidth, int sketchDepth) throws IllegalArgumentException
+	{
+		if (monitoredAddresses < 1 || sketchWidth < 1 || Integer.bitCount(sketchWidth) != 1 || sketchDepth < 1)
+			throw new IllegalArgumentException("Invalid approximate counting settings: " + monitoredAddresses + " addresses, sketch width " + sketchWidth + ", sketch depth " + sketchDepth);
+
+		this.monitoredAddresses = monitoredAddresses;
+		this.sketchWidth = sketchWidth;
+		this.sketchDepth = sketchDepth;
+	}
+
+	public ApproximateCountingSettings(int monitoredAddresses)
+	{
+		this(monitoredAddresses, defaultSketchWidth, defaultSketchDepth);
+	}
+
+	public ApproximateCountingSettings()
+	{
+		this(defaultMonitoredAddresses);
+	}
+
+	public int getMonitoredAddresses()
+	{
+		return monitoredAddresses;
+	}
+
+	public int getSketchWidth()
+	{
+		return sketchWidth;
+	}
+
+	public int getSketchDepth()
+	{
+		return sketchDepth;
+	}
+
+	@Override
+	public String toString()
+	{
+		return monitoredAddresses + " monitored addresses, " + sketchDepth + "x" + sketchWidth + " sketch";
+	}
+}
@@ -0,0 +1,320 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer.appearancecounter;
+
+import java.util.Arrays;
+
+import whowhatwhere.model.counters.CountMinSketch;
+import whowhatwhere.model.counters.SlidingWindowCounter;
+import whowhatwhere.model.counters.SpaceSavingCounter;
+import whowhatwhere.model.counters.TopKTracker;
+import whowhatwhere.model.counters.TrafficCounters;
+
+/**
+ * The counts of an appearance counter since its previous generation was retired, by the ids of {@code AppearanceCounterPacketHandler}.<br>
+ * The thread that handles the packets counts into one generation, while a reader merges the generation before it into {@code MergedAppearanceCounts}
+ * and then clears it, so it can be counted into again. Retiring a generation only swaps it with the cleared one, no matter how many addresses were counted.<br>
+ * When counting exactly, the addresses and services that appeared for the first time are listed in the order they appeared, so the reader learns them by the same ids and indexes.
+ * When counting approximately, the latest state of each slot that was counted in is kept instead.<br>
+ * Not thread safe, it belongs to a single thread at a time.
+ */
+class CountsGeneration
+{
+	private final static int initialCapacity = 64;
+
+	private TrafficCounters traffic = new TrafficCounters(); //by id
+	private SlidingWindowCounter[] recentWindows;
+	private int newAddresses = 0;
+	private int[] newAddressIds = new int[initialCapacity];
+	private long[] newAddressHighs = new long[initialCapacity];
+	private long[] newAddressLows = new long[initialCapacity];
+	private int newServices = 0;
+	private long[] newServiceKeys = new long[initialCapacity]; //see ServiceCounters.toKey()
+	private int[] serviceCounts = new int[initialCapacity]; //by the index of the service, in the order the services first appeared
+	private long[] slotHighs; //by the slot in SpaceSavingCounter, null when counting exactly
+	private long[] slotLows;
+	private int[] slotCounts; //0 for a slot that wasn't counted in
+	private int[] slotErrors;
+	private int[] slotEstimates; //by CountMinSketch, at the slot's last packet. It's still an upper bound on its count later on, since it didn't appear since.
+	private boolean[] isSlotTaken; //true if the slot was taken by another address in this generation, so its earlier counts are no longer of the same address
+	private long lastPacketTime = 0;
+	private DistinctPeers distinctPeers;
+	private int[] topIds = new int[0];
+	private int approximationMinCount;
+	private long approximationErrorBound;
+
+	/**
+	 * @param recentWindowsInSecs - the length of each recent window
+	 * @param bucketsPerRecentWindow - see {@code SlidingWindowCounter}
+	 * @param slots - the capacity of the {@code SpaceSavingCounter} when counting approximately, 0 when counting exactly
+	 */
+	CountsGeneration(int[] recentWindowsInSecs, int bucketsPerRecentWindow, int slots)
+	{
+		recentWindows = new SlidingWindowCounter[recentWindowsInSecs.length];
+
+		for (int i = 0; i < recentWindows.length; i++)
+			recentWindows[i] = new SlidingWindowCounter(recentWindowsInSecs[i], bucketsPerRecentWindow);
+
+		if (slots > 0)
+		{
+			slotHighs = new long[slots];
+			slotLows = new long[slots];
+			slotCounts = new int[slots];
+			slotErrors = new int[slots];
+			slotEstimates = new int[slots];
+			isSlotTaken = new boolean[slots];
+		}
+	}
+
+	/**
+	 * Counts a packet to or from the address of {@code id}
+	 */
+	void countPacket(int id, boolean isInbound, int bytes, long timeInMillis)
+	{
+		traffic.add(id, isInbound, bytes);
+
+		for (SlidingWindowCounter window : recentWindows)
+			window.increment(id, timeInMillis);
+	}
+
+	/**
+	 * Lists an address that appeared for the first time, when counting exactly
+	 */
+	void addAddress(int id, long high, long low)
+	{
+		if (newAddresses == newAddressIds.length)
+		{
+			newAddressIds = Arrays.copyOf(newAddressIds, newAddresses * 2);
+			newAddressHighs = Arrays.copyOf(newAddressHighs, newAddresses * 2);
+			newAddressLows = Arrays.copyOf(newAddressLows, newAddresses * 2);
+		}
+
+		newAddressIds[newAddresses] = id;
+		newAddressHighs[newAddresses] = high;
+		newAddressLows[newAddresses] = low;
+		newAddresses++;
+	}
+
+	/**
+	 * Lists a service that appeared for the first time. Its index is the amount of services that appeared before it.
+	 */
+	void addService(long key)
+	{
+		if (newServices == newServiceKeys.length)
+			newServiceKeys = Arrays.copyOf(newServiceKeys, newServices * 2);
+
+		newServiceKeys[newServices++] = key;
+	}
+
+	void countService(int service)
+	{
+		if (service >= serviceCounts.length)
+			serviceCounts = Arrays.copyOf(serviceCounts, Math.max(serviceCounts.length * 2, service + 1));
+
+		serviceCounts[service]++;
+	}
+
+	/**
+	 * Marks a slot as taken by another address, and drops what this generation counted for the address that had it
+	 */
+	void takeSlot(int slot)
+	{
+		isSlotTaken[slot] = true;
+		traffic.reset(slot);
+
+		for (SlidingWindowCounter window : recentWindows)
+			window.reset(slot);
+	}
+
+	/**
+	 * Keeps the latest state of a slot, after a packet was counted in it
+	 */
+	void setSlot(int slot, long high, long low, int count, int error, int estimate)
+	{
+		slotHighs[slot] = high;
+		slotLows[slot] = low;
+		slotCounts[slot] = count;
+		slotErrors[slot] = error;
+		slotEstimates[slot] = estimate;
+	}
+
+	/**
+	 * Keeps what the reader needs besides the counts. Called by the thread that handles the packets, as it stops counting into this generation.
+	 * 
+	 * @param topAppearances - null if not tracking
+	 * @param heavyHitters - null when counting exactly
+	 */
+	void retire(long lastPacketTime, DistinctPeers distinctPeers, TopKTracker topAppearances, SpaceSavingCounter heavyHitters, CountMinSketch sketch)
+	{
+		this.lastPacketTime = lastPacketTime;
+		this.distinctPeers = distinctPeers;
+
+		if (topAppearances != null)
+		{
+			if (topIds.length != topAppearances.size())
+				topIds = new int[topAppearances.size()];
+
+			for (int i = 0; i < topIds.length; i++)
+				topIds[i] = topAppearances.getId(i);
+		}
+
+		if (heavyHitters != null)
+		{
+			approximationMinCount = heavyHitters.getMinCount();
+			approximationErrorBound = sketch.getErrorBound();
+		}
+	}
+
+	/**
+	 * Clears the counts, so the thread that handles the packets can count into this generation again. Called by the reader, after merging it.
+	 */
+	void clear()
+	{
+		traffic.clear();
+
+		for (SlidingWindowCounter window : recentWindows)
+			window.clear();
+
+		newAddresses = 0;
+		newServices = 0;
+		Arrays.fill(serviceCounts, 0);
+
+		if (slotCounts != null)
+		{
+			Arrays.fill(slotCounts, 0);
+			Arrays.fill(isSlotTaken, false);
+		}
+	}
+
+	TrafficCounters getTraffic()
+	{
+		return traffic;
+	}
+
+	SlidingWindowCounter getRecentWindow(int window)
+	{
+		return recentWindows[window];
+	}
+
+	int getNewAddresses()
+	{
+		return newAddresses;
+	}
+
+	int getNewAddressId(int i)
+	{
+		return newAddressIds[i];
+	}
+
+	long getNewAddressHigh(int i)
+	{
+		return newAddressHighs[i];
+	}
+
+	long getNewAddressLow(int i)
+	{
+		return newAddressLows[i];
+	}
+
+	int getNewServices()
+	{
+		return newServices;
+	}
+
+	long getNewServiceKey(int i)
+	{
+		return newServiceKeys[i];
+	}
+
+	/**
+	 * @return the appearances of the service in this generation
+	 */
+	int getServiceCount(int service)
+	{
+		return service < serviceCounts.length ? serviceCounts[service] : 0;
+	}
+
+	int getSlots()
+	{
+		return slotCounts == null ? 0 : slotCounts.length;
+	}
+
+	boolean isSlotCounted(int slot)
+	{
+		return slotCounts[slot] > 0;
+	}
+
+	boolean isSlotTaken(int slot)
+	{
+		return isSlotTaken[slot];
+	}
+
+	long getSlotHigh(int slot)
+	{
+		return slotHighs[slot];
+	}
+
+	long getSlotLow(int slot)
+	{
+		return slotLows[slot];
+	}
+
+	int getSlotCount(int slot)
+	{
+		return slotCounts[slot];
+	}
+
+	int getSlotError(int slot)
+	{
+		return slotErrors[slot];
+	}
+
+	int getSlotEstimate(int slot)
+	{
+		return slotEstimates[slot];
+	}
+
+	long getLastPacketTime()
+	{
+		return lastPacketTime;
+	}
+
+	DistinctPeers getDistinctPeers()
+	{
+		return distinctPeers;
+	}
+
+	/**
+	 * @return the ids of the addresses with the most appearances as of the end of this generation, in no particular order. Empty if not tracking.
+	 */
+	int[] getTopIds()
+	{
+		return topIds;
+	}
+
+	int getApproximationMinCount()
+	{
+		return approximationMinCount;
+	}
+
+	long getApproximationErrorBound()
+	{
+		return approximationErrorBound;
+	}
+}
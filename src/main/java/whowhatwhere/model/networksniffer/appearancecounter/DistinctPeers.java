@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer.appearancecounter;
+
+/**
+ * Estimated amounts of distinct remote addresses seen by an appearance counter capture, overall and in each minute of the capture (by the packets' timestamps).
+ * The estimates are usually within 2% of the true amounts.
+ */
+public class DistinctPeers
+{
+	private long overall;
+	private long[] minuteStartTimes; //in millis
+	private long[] perMinute;
+
+	/**
+	 * @param minuteStartTimes - the start of each minute that had packets, in millis, oldest first. The last one may still be in progress.
+	 * @param perMinute - the estimate for each of those minutes, in the same order
+	 */
+	public DistinctPeers(long overall, long[] minuteStartTimes, long[] perMinute)
+	{
+		this.overall = overall;
+		this.minuteStartTimes = minuteStartTimes;
+		this.perMinute = perMinute;
+	}
+
+	public long getOverall()
+	{
+		return overall;
+	}
+
+	public int getAmountOfMinutes()
+	{
+		return minuteStartTimes.length;
+	}
+
+	public long getMinuteStartTime(int minute)
+	{
+		return minuteStartTimes[minute];
+	}
+
+	public long getInMinute(int minute)
+	{
+		return perMinute[minute];
+	}
+
+	/**
+	 * @return the estimate for the newest minute, which may still be in progress. 0 if there were no packets.
+	 */
+	public long getInLatestMinute()
+	{
+		return perMinute.length == 0 ? 0 : perMinute[perMinute.length - 1];
+	}
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer.appearancecounter;
+
+import java.util.Arrays;
+
+import whowhatwhere.model.counters.HyperLogLog;
+
+/**
+ * Estimates the amount of distinct remote addresses, overall and per minute, with HyperLogLog sketches of a few KB instead of a set of all of the addresses.<br>
+ * Minutes are by the packets' timestamps, and only the estimate of each minute that ended is kept. Not thread safe.
+ */
+public class DistinctPeersCounter
+{
+	private final static int precision = 12; //4KB per sketch, about 1.6% standard error
+	private final static long minuteInMillis = 60 * 1000;
+
+	private HyperLogLog overall = new HyperLogLog(precision);
+	private HyperLogLog currentMinute = new HyperLogLog(precision);
+	private long currentMinuteIndex = -1; //time / minuteInMillis, -1 before the first packet
+	private long[] pastMinuteStartTimes = new long[16];
+	private long[] pastMinuteEstimates = new long[16];
+	private int pastMinutes = 0;
+
+	/**
+	 * Counts a remote address, given as an IPv6 address (IPv4 addresses as IPv4-mapped addresses)
+	 * 
+	 * @param timeInMillis - the packet's timestamp. A packet older than the current minute is counted in the current minute.
+	 */
+	public void add(long high, long low, long timeInMillis)
+	{
+		long minuteIndex = timeInMillis / minuteInMillis;
+
+		if (minuteIndex > currentMinuteIndex)
+		{
+			if (currentMinuteIndex >= 0)
+				endCurrentMinute();
+
+			currentMinuteIndex = minuteIndex;
+		}
+
+		overall.add(high, low);
+		currentMinute.add(high, low);
+	}
+
+	public DistinctPeers getDistinctPeers()
+	{
+		int minutes = currentMinuteIndex < 0 ? 0 : pastMinutes + 1;
+		long[] minuteStartTimes = Arrays.copyOf(pastMinuteStartTimes, minutes);
+		long[] perMinute = Arrays.copyOf(pastMinuteEstimates, minutes);
+
+		if (minutes > 0)
+		{
+			minuteStartTimes[minutes - 1] = currentMinuteIndex * minuteInMillis;
+			perMinute[minutes - 1] = currentMinute.estimate();
+		}
+
+		return new DistinctPeers(overall.estimate(), minuteStartTimes, perMinute);
+	}
+
+	private void endCurrentMinute()
+	{
+		if (pastMinutes == pastMinuteStartTimes.length)
+		{
+			pastMinuteStartTimes = Arrays.copyOf(pastMinuteStartTimes, pastMinutes * 2);
+			pastMinuteEstimates = Arrays.copyOf(pastMinuteEstimates, pastMinutes * 2);
+		}
+
+		pastMinuteStartTimes[pastMinutes] = currentMinuteIndex * minuteInMillis;
+		pastMinuteEstimates[pastMinutes] = currentMinute.estimate();
+		pastMinutes++;
+
+		currentMinute.clear();
+	}
+}
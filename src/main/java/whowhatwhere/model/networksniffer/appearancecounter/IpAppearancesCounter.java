@@ -18,10 +18,20 @@
  ******************************************************************************/
 package whowhatwhere.model.networksniffer.appearancecounter;
 
+import java.util.Collections;
+import java.util.List;
+
 public class IpAppearancesCounter implements Comparable<IpAppearancesCounter>
 {
 	private String ip;
 	private int amountOfAppearances;
+	private int[] recentAppearances = new int[0]; //by AppearanceCounterPacketHandler.recentWindowsInSecs
+	private int packetsIn;
+	private int packetsOut;
+	private long bytesIn;
+	private long bytesOut;
+	private int maxOvercount = 0; //0 when counted exactly
+	private List<ServiceAppearancesCounter> services = Collections.emptyList();
 
 	public IpAppearancesCounter()
 	{
@@ -33,6 +43,15 @@ public class IpAppearancesCounter implements Comparable<IpAppearancesCounter>
 		amountOfAppearances = amount;
 	}
 
+	/**
+	 * @param recentAppearances - the amount of appearances in each of the windows in {@code AppearanceCounterPacketHandler.recentWindowsInSecs}, in the same order
+	 */
+	public IpAppearancesCounter(String ip, int amount, int[] recentAppearances)
+	{
+		this(ip, amount);
+		this.recentAppearances = recentAppearances;
+	}
+
 	public String getIp()
 	{
 		return ip;
@@ -53,6 +72,77 @@ public class IpAppearancesCounter implements Comparable<IpAppearancesCounter>
 		this.amountOfAppearances = amountOfAppearances;
 	}
 
+	/**
+	 * @return the amount of appearances in each of the windows in {@code AppearanceCounterPacketHandler.recentWindowsInSecs}, ending at the last packet of the capture.
+	 * Empty if they weren't counted.
+	 */
+	public int[] getRecentAppearances()
+	{
+		return recentAppearances;
+	}
+
+	public void setRecentAppearances(int[] recentAppearances)
+	{
+		this.recentAppearances = recentAppearances;
+	}
+
+	/**
+	 * Sets the traffic with this address by direction. "In" is traffic sent to us by this address, "out" is traffic we sent to it. Sizes are as seen on the wire.
+	 */
+	public void setTraffic(int packetsIn, int packetsOut, long bytesIn, long bytesOut)
+	{
+		this.packetsIn = packetsIn;
+		this.packetsOut = packetsOut;
+		this.bytesIn = bytesIn;
+		this.bytesOut = bytesOut;
+	}
+
+	public int getPacketsIn()
+	{
+		return packetsIn;
+	}
+
+	public int getPacketsOut()
+	{
+		return packetsOut;
+	}
+
+	public long getBytesIn()
+	{
+		return bytesIn;
+	}
+
+	public long getBytesOut()
+	{
+		return bytesOut;
+	}
+
+	/**
+	 * @return by how much the amount of appearances may be above the true amount. Always 0 when counting exactly.
+	 */
+	public int getMaxOvercount()
+	{
+		return maxOvercount;
+	}
+
+	public void setMaxOvercount(int maxOvercount)
+	{
+		this.maxOvercount = maxOvercount;
+	}
+
+	/**
+	 * @return the appearances of this address per service, most appearances first. Empty if they weren't counted.
+	 */
+	public List<ServiceAppearancesCounter> getServices()
+	{
+		return services;
+	}
+
+	public void setServices(List<ServiceAppearancesCounter> services)
+	{
+		this.services = services;
+	}
+
 	@Override
 	public int compareTo(IpAppearancesCounter o) //REVERSE ORDER, bigger numbers first
 	{
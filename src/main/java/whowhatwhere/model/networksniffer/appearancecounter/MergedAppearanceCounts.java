@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer.appearancecounter;
+
+import java.util.Arrays;
+
+import whowhatwhere.model.counters.PrefixTrie;
+import whowhatwhere.model.counters.ServiceCounters;
+import whowhatwhere.model.counters.SlidingWindowCounter;
+import whowhatwhere.model.counters.TrafficCounters;
+
+/**
+ * The counts of an appearance counter since the capture started, by the ids of {@code AppearanceCounterPacketHandler}, made by merging its retired generations (see {@code CountsGeneration}) in order.<br>
+ * Only the reader touches it, so the thread that handles the packets doesn't pay for copying the counts or rolling them up by subnet.<br>
+ * Not thread safe.
+ */
+class MergedAppearanceCounts
+{
+	private final static int initialCapacity = 64;
+
+	private final boolean isApproximate;
+	private final double approximationConfidence;
+	private int[] ids = new int[initialCapacity]; //in the order the addresses were learned, when counting exactly
+	private int idAmount = 0;
+	private long[] highs = new long[initialCapacity]; //by id
+	private long[] lows = new long[initialCapacity];
+	private TrafficCounters traffic = new TrafficCounters(initialCapacity); //by id
+	private SlidingWindowCounter[] recentWindows;
+	private ServiceCounters services; //null when not counting services
+	private long[] serviceKeys = new long[initialCapacity]; //by the index of the service, the same as in services
+	private int serviceAmount = 0;
+	private PrefixTrie ip4Prefixes; //null when not rolling up by subnet. IPv4 addresses are kept in the high 32 bits
+	private PrefixTrie ip6Prefixes;
+	private int[] prefixNodeById = new int[initialCapacity];
+	private int[] slotCounts; //by slot, when counting approximately
+	private int[] slotErrors;
+	private int[] slotEstimates;
+	private int slotsInUse = 0;
+	private long lastPacketTime = 0;
+	private DistinctPeers distinctPeers = new DistinctPeers(0, new long[0], new long[0]);
+	private int[] topIds = new int[0];
+	private int approximationMinCount;
+	private long approximationErrorBound;
+
+	/**
+	 * @param slots - the capacity of the {@code SpaceSavingCounter} when counting approximately, 0 when counting exactly
+	 * @param approximationConfidence - the confidence of the {@code CountMinSketch} when counting approximately
+	 * @param isCountingServices - ignored when counting approximately
+	 * @param isRollingUpSubnets - ignored when counting approximately
+	 */
+	MergedAppearanceCounts(int[] recentWindowsInSecs, int bucketsPerRecentWindow, int slots, double approximationConfidence, boolean isCountingServices, boolean isRollingUpSubnets)
+	{
+		isApproximate = slots > 0;
+		this.approximationConfidence = approximationConfidence;
+		recentWindows = new SlidingWindowCounter[recentWindowsInSecs.length];
+
+		for (int i = 0; i < recentWindows.length; i++)
+			recentWindows[i] = new SlidingWindowCounter(recentWindowsInSecs[i], bucketsPerRecentWindow);
+
+		if (isApproximate)
+		{
+			highs = new long[slots];
+			lows = new long[slots];
+			slotCounts = new int[slots];
+			slotErrors = new int[slots];
+			slotEstimates = new int[slots];
+			return;
+		}
+
+		if (isCountingServices)
+			services = new ServiceCounters();
+
+		if (isRollingUpSubnets)
+		{
+			ip4Prefixes = new PrefixTrie(AppearanceCounterPacketHandler.ip4MaxPrefixLength);
+			ip6Prefixes = new PrefixTrie(AppearanceCounterPacketHandler.ip6MaxPrefixLength);
+		}
+	}
+
+	/**
+	 * Adds the counts of the next generation. It isn't modified, so it can be cleared and reused afterwards.
+	 */
+	void merge(CountsGeneration generation)
+	{
+		if (isApproximate)
+			mergeSlots(generation);
+		else
+			mergeNewAddresses(generation);
+
+		if (ip4Prefixes != null)
+			rollUpSubnets(generation.getTraffic());
+
+		traffic.addAll(generation.getTraffic());
+
+		for (int window = 0; window < recentWindows.length; window++)
+			recentWindows[window].addAll(generation.getRecentWindow(window));
+
+		if (services != null)
+			mergeServices(generation);
+
+		lastPacketTime = generation.getLastPacketTime();
+		distinctPeers = generation.getDistinctPeers();
+		topIds = Arrays.copyOf(generation.getTopIds(), generation.getTopIds().length);
+		approximationMinCount = generation.getApproximationMinCount();
+		approximationErrorBound = generation.getApproximationErrorBound();
+	}
+
+	/**
+	 * Takes the latest state of each slot the generation counted in. The earlier counts of a slot that was taken by another address are dropped first.
+	 */
+	private void mergeSlots(CountsGeneration generation)
+	{
+		for (int slot = 0; slot < generation.getSlots(); slot++)
+		{
+			if (!generation.isSlotCounted(slot))
+				continue;
+
+			if (generation.isSlotTaken(slot))
+			{
+				traffic.reset(slot);
+
+				for (SlidingWindowCounter window : recentWindows)
+					window.reset(slot);
+			}
+
+			highs[slot] = generation.getSlotHigh(slot);
+			lows[slot] = generation.getSlotLow(slot);
+			slotCounts[slot] = generation.getSlotCount(slot);
+			slotErrors[slot] = generation.getSlotError(slot);
+			slotEstimates[slot] = generation.getSlotEstimate(slot);
+			slotsInUse = Math.max(slotsInUse, slot + 1);
+		}
+	}
+
+	private void mergeNewAddresses(CountsGeneration generation)
+	{
+		for (int i = 0; i < generation.getNewAddresses(); i++)
+		{
+			int id = generation.getNewAddressId(i);
+
+			if (idAmount == ids.length)
+				ids = Arrays.copyOf(ids, idAmount * 2);
+
+			if (id >= highs.length)
+			{
+				int newCapacity = Math.max(highs.length * 2, id + 1);
+
+				highs = Arrays.copyOf(highs, newCapacity);
+				lows = Arrays.copyOf(lows, newCapacity);
+			}
+
+			ids[idAmount++] = id;
+			highs[id] = generation.getNewAddressHigh(i);
+			lows[id] = generation.getNewAddressLow(i);
+		}
+	}
+
+	/**
+	 * Adds the packets each address got in the generation to its subnets. An address' node is only looked up by its bits the first time.
+	 */
+	private void rollUpSubnets(TrafficCounters generationTraffic)
+	{
+		for (int i = 0; i < idAmount; i++)
+		{
+			int id = ids[i];
+			int packets = id < generationTraffic.getCapacity() ? generationTraffic.getPackets(id) : 0;
+
+			if (packets == 0)
+				continue;
+
+			if (id >= prefixNodeById.length)
+				prefixNodeById = Arrays.copyOf(prefixNodeById, Math.max(prefixNodeById.length * 2, id + 1));
+
+			boolean isIp4 = id % 2 == 0;
+			PrefixTrie prefixes = isIp4 ? ip4Prefixes : ip6Prefixes;
+
+			if (prefixNodeById[id] == 0)
+				prefixNodeById[id] = isIp4 ? prefixes.getOrAddNode((long) (int) lows[id] << 32, 0) : prefixes.getOrAddNode(highs[id], lows[id]);
+
+			prefixes.add(prefixNodeById[id], packets);
+		}
+	}
+
+	private void mergeServices(CountsGeneration generation)
+	{
+		for (int i = 0; i < generation.getNewServices(); i++)
+		{
+			if (serviceAmount == serviceKeys.length)
+				serviceKeys = Arrays.copyOf(serviceKeys, serviceAmount * 2);
+
+			serviceKeys[serviceAmount] = generation.getNewServiceKey(i);
+			services.add(serviceKeys[serviceAmount], 0); //learned in the same order as by the thread that handles the packets, so it gets the same index
+			serviceAmount++;
+		}
+
+		for (int service = 0; service < serviceAmount; service++)
+		{
+			int count = generation.getServiceCount(service);
+
+			if (count > 0)
+				services.add(serviceKeys[service], count);
+		}
+	}
+
+	/**
+	 * @return the counts of all of the addresses
+	 */
+	AppearanceCounts toCounts()
+	{
+		AppearanceCounts counts;
+
+		if (isApproximate)
+		{
+			counts = new AppearanceCounts(slotsInUse, recentWindows.length, false);
+
+			for (int slot = 0; slot < slotsInUse; slot++)
+				addAddress(counts, slot);
+
+			counts.setApproximation(approximationMinCount, approximationErrorBound, approximationConfidence);
+		}
+		else
+		{
+			counts = new AppearanceCounts(idAmount, recentWindows.length, services != null);
+
+			for (int i = 0; i < idAmount; i++)
+				addAddress(counts, ids[i]);
+		}
+
+		counts.setTotals(distinctPeers, lastPacketTime, ip4Prefixes != null ? new SubnetAppearances(ip4Prefixes, ip6Prefixes) : null);
+
+		return counts;
+	}
+
+	/**
+	 * @return the counts of the addresses with the most appearances, without the totals
+	 */
+	AppearanceCounts toTopCounts()
+	{
+		AppearanceCounts counts = new AppearanceCounts(topIds.length, recentWindows.length, services != null);
+
+		for (int id : topIds)
+			addAddress(counts, id);
+
+		return counts;
+	}
+
+	DistinctPeers getDistinctPeers()
+	{
+		return distinctPeers;
+	}
+
+	/**
+	 * Adds the counts of an address to {@code counts}.<br>
+	 * When counting approximately, the count is the lower of the two estimates (both are never below the true count), and its max overcount is how far it may be from the lowest count the address may have.
+	 */
+	private void addAddress(AppearanceCounts counts, int id)
+	{
+		int entry;
+
+		if (isApproximate)
+		{
+			int count = Math.min(slotCounts[id], slotEstimates[id]);
+
+			entry = counts.add(id, highs[id], lows[id], count, Math.max(0, count - (slotCounts[id] - slotErrors[id])), traffic, id);
+		}
+		else
+		{
+			entry = counts.add(id, highs[id], lows[id], traffic.getPackets(id), 0, traffic, id);
+
+			if (services != null)
+			{
+				for (int service = services.getFirst(id); service >= 0; service = services.getNextOfSameId(service))
+					counts.addService(services.getProtocol(service), services.getPort(service), services.getCount(service));
+			}
+		}
+
+		for (int window = 0; window < recentWindows.length; window++)
+			counts.setRecentCount(entry, window, recentWindows[window].getCount(id, lastPacketTime));
+	}
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer.appearancecounter;
+
+import whowhatwhere.model.networksniffer.SupportedProtocols;
+
+/**
+ * The amount of appearances of an address with a single service: an IP protocol, and for TCP and UDP, the port on the address' side
+ */
+public class ServiceAppearancesCounter implements Comparable<ServiceAppearancesCounter>
+{
+	private int protocol;
+	private int port;
+	private int amountOfAppearances;
+
+	/**
+	 * @param protocol - the IP protocol number (the IPv6 next header of the upper layer)
+	 * @param port - the port of the address, 0 for protocols without ports or when it wasn't captured
+	 */
+	public ServiceAppearancesCounter(int protocol, int port, int amount)
+	{
+		this.protocol = protocol;
+		this.port = port;
+		amountOfAppearances = amount;
+	}
+
+	public int getProtocol()
+	{
+		return protocol;
+	}
+
+	public int getPort()
+	{
+		return port;
+	}
+
+	public int getAmountOfAppearances()
+	{
+		return amountOfAppearances;
+	}
+
+	/**
+	 * @return a short name for the service, such as "UDP/53", "TCP/443" or "ICMP"
+	 */
+	public String getServiceName()
+	{
+		if (protocol == SupportedProtocols.TCP.getIpProtocolNumber())
+			return "TCP/" + port;
+
+		if (protocol == SupportedProtocols.UDP.getIpProtocolNumber())
+			return "UDP/" + port;
+
+		if (protocol == SupportedProtocols.ICMP.getIpProtocolNumber())
+			return "ICMP";
+
+		if (protocol == SupportedProtocols.ICMP.getIp6NextHeader())
+			return "ICMPv6";
+
+		return "IP protocol " + protocol;
+	}
+
+	@Override
+	public String toString()
+	{
+		return getServiceName() + ": " + amountOfAppearances;
+	}
+
+	@Override
+	public int compareTo(ServiceAppearancesCounter o) //REVERSE ORDER, bigger numbers first
+	{
+		return o.getAmountOfAppearances() - this.amountOfAppearances;
+	}
+}
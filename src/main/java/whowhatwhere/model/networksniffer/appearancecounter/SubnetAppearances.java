@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer.appearancecounter;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import whowhatwhere.model.counters.PrefixTrie;
+import whowhatwhere.model.networksniffer.NetworkSniffer;
+
+/**
+ * The appearances of a capture's addresses rolled up by subnet. Any prefix length can be asked for, up to {@code AppearanceCounterPacketHandler.ip4MaxPrefixLength}
+ * for IPv4 and {@code AppearanceCounterPacketHandler.ip6MaxPrefixLength} for IPv6.<br>
+ * Immutable, so it can be read from any thread.
+ */
+public class SubnetAppearances
+{
+	private final PrefixTrie ip4Prefixes;
+	private final PrefixTrie ip6Prefixes;
+
+	/**
+	 * @param ip4Prefixes - IPv4 addresses are kept in the high 32 bits of {@code high}. It's copied, so it can keep changing.
+	 * @param ip6Prefixes - copied as well
+	 */
+	SubnetAppearances(PrefixTrie ip4Prefixes, PrefixTrie ip6Prefixes)
+	{
+		this.ip4Prefixes = new PrefixTrie(ip4Prefixes);
+		this.ip6Prefixes = new PrefixTrie(ip6Prefixes);
+	}
+
+	/**
+	 * @param ip4PrefixLength - the length of the IPv4 subnets, such as 24 or 16
+	 * @param ip6PrefixLength - the length of the IPv6 subnets, such as 64 or 48
+	 * @return the appearances of each subnet that appeared, IPv4 and IPv6 together, most appearances first
+	 * @throws IllegalArgumentException if a prefix length is longer than the longest one that was counted
+	 */
+	public List<SubnetAppearancesCounter> getAppearances(int ip4PrefixLength, int ip6PrefixLength) throws IllegalArgumentException
+	{
+		List<SubnetAppearancesCounter> list = new ArrayList<>();
+
+		ip4Prefixes.forEachPrefix(ip4PrefixLength, (high, low, count) ->
+		{
+			try
+			{
+				list.add(new SubnetAppearancesCounter(NetworkSniffer.intToIpString((int) (high >>> 32)) + "/" + ip4PrefixLength, count));
+			}
+			catch (UnknownHostException uhe)
+			{
+				//ignore this subnet
+			}
+		});
+
+		ip6Prefixes.forEachPrefix(ip6PrefixLength, (high, low, count) ->
+		{
+			try
+			{
+				list.add(new SubnetAppearancesCounter(NetworkSniffer.longPairToIpString(high, low) + "/" + ip6PrefixLength, count));
+			}
+			catch (UnknownHostException uhe)
+			{
+				//ignore this subnet
+			}
+		});
+
+		Collections.sort(list);
+
+		return list;
+	}
+}
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer.appearancecounter;
+
+/**
+ * The amount of appearances of all addresses in a subnet
+ */
+public class SubnetAppearancesCounter implements Comparable<SubnetAppearancesCounter>
+{
+	private String subnet;
+	private int amountOfAppearances;
+
+	/**
+	 * @param subnet - in CIDR notation, such as "192.168.1.0/24"
+	 */
+	public SubnetAppearancesCounter(String subnet, int amount)
+	{
+		this.subnet = subnet;
+		amountOfAppearances = amount;
+	}
+
+	public String getSubnet()
+	{
+		return subnet;
+	}
+
+	public int getAmountOfAppearances()
+	{
+		return amountOfAppearances;
+	}
+
+	@Override
+	public int compareTo(SubnetAppearancesCounter o) //REVERSE ORDER, bigger numbers first
+	{
+		return o.getAmountOfAppearances() - this.amountOfAppearances;
+	}
+}
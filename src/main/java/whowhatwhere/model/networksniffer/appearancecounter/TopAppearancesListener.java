@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer.appearancecounter;
+
+import java.util.List;
+
+public interface TopAppearancesListener
+{
+	/**
+	 * This method is called periodically (from a timer thread, not the capture thread) while an appearance counter capture is running
+	 * 
+	 * @param topAppearances - the addresses with the most appearances so far, most appearances first
+	 * @param distinctPeers - the estimated amount of distinct addresses so far
+	 */
+	public void topAppearancesUpdated(List<IpAppearancesCounter> topAppearances, DistinctPeers distinctPeers);
+}
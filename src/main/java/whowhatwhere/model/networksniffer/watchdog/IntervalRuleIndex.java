@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer.watchdog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Finds the rules whose number range (a port range or a packet size range) contains a given value. <br>
+ * The range endpoints split the number line into elementary intervals, each holding the set of rules that cover all of it, 
+ * so a lookup is a binary search over the interval starts regardless of how many rules there are. <br>
+ * Ranges are added first, and then {@code build()} is called once before any lookup. <br>
+ * Not thread safe.
+ */
+class IntervalRuleIndex
+{
+	private List<long[]> ranges = new ArrayList<>(); //each is {low, high, rule index}
+	private long[] intervalStarts = new long[0];
+	private BitSet[] intervalRules = new BitSet[0];
+
+	/**
+	 * @param low - lowest value in the range, inclusive
+	 * @param high - highest value in the range, inclusive
+	 * @param ruleIndex - the rule to return for values in this range
+	 */
+	public void add(int low, int high, int ruleIndex)
+	{
+		if (low <= high)
+			ranges.add(new long[] {low, high, ruleIndex});
+	}
+
+	public boolean isEmpty()
+	{
+		return ranges.isEmpty();
+	}
+
+	public void build()
+	{
+		long[] points = new long[ranges.size() * 2];
+		int pointCount = 0;
+		
+		for (long[] range : ranges)
+		{
+			points[pointCount++] = range[0];
+			points[pointCount++] = range[1] + 1; //first value after the range, as a long so it doesn't overflow
+		}
+		
+		Arrays.sort(points);
+		
+		int distinct = 0;
+		for (int i = 0; i < pointCount; i++)
+			if (distinct == 0 || points[distinct - 1] != points[i])
+				points[distinct++] = points[i];
+		
+		intervalStarts = Arrays.copyOf(points, distinct);
+		intervalRules = new BitSet[distinct];
+		
+		for (long[] range : ranges)
+		{
+			int first = Arrays.binarySearch(intervalStarts, range[0]);
+			int end = Arrays.binarySearch(intervalStarts, range[1] + 1);
+			
+			for (int i = first; i < end; i++)
+			{
+				if (intervalRules[i] == null)
+					intervalRules[i] = new BitSet();
+				
+				intervalRules[i].set((int) range[2]);
+			}
+		}
+	}
+
+	/**
+	 * @param value - the value to look up
+	 * @param candidates - the rules whose range contains {@code value} are added to this set
+	 */
+	public void addRulesContaining(int value, BitSet candidates)
+	{
+		int index = Arrays.binarySearch(intervalStarts, value);
+		
+		if (index < 0)
+			index = -index - 2; //the interval that starts before the value
+		
+		if (index >= 0 && intervalRules[index] != null)
+			candidates.or(intervalRules[index]);
+	}
+}
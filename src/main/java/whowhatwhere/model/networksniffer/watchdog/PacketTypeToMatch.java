@@ -18,9 +18,18 @@
  ******************************************************************************/
 package whowhatwhere.model.networksniffer.watchdog;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.commons.io.FileUtils;
+
 import javafx.beans.property.SimpleStringProperty;
 import whowhatwhere.controller.watchdog.NumberRange;
 import whowhatwhere.controller.watchdog.NumberRangeValues;
@@ -39,6 +48,7 @@ public class PacketTypeToMatch implements Serializable
 	public final static String packetOrPort_EMPTY = "";
 	public final static String protocol_EMPTY = "";
 	public final static String message_EMPTY = "";
+	public final static String rateThreshold_EMPTY = "";
 	public final static String outputMethod_default = OutputMethod.TTS.toString();
 
 	transient private SimpleStringProperty messageText;
@@ -70,8 +80,11 @@ public class PacketTypeToMatch implements Serializable
 	transient private SimpleStringProperty dstPort;
 	private NumberRangeValues dstPortValues;
 
+	transient private SimpleStringProperty rateThreshold;
+	private RateThreshold rateThresholdValue; //null in rules that match on every packet, including all rules saved before rate rules existed
+
 	public PacketTypeToMatch(String ipAddress, String netmask, String ipNotes, List<String> ipsFromIPNotes, PacketDirection packetDirection, SupportedProtocols protocol, NumberRangeValues srcPortValues, NumberRangeValues dstPortValues, 
-			NumberRangeValues packetSizeValues, String message, OutputMethod outputMethod)
+			NumberRangeValues packetSizeValues, RateThreshold rateThreshold, String message, OutputMethod outputMethod)
 	{
 		setNetmask(netmask); //needs to be set before IP
 		setIpAddress(ipAddress);
@@ -81,6 +94,7 @@ public class PacketTypeToMatch implements Serializable
 		setSrcPort(srcPortValues);
 		setDstPort(dstPortValues);
 		setPacketSize(packetSizeValues);
+		setRateThreshold(rateThreshold);
 		setMessageText(message);
 		setMessageOutputMethod(outputMethod);
 	}
@@ -95,6 +109,7 @@ public class PacketTypeToMatch implements Serializable
 		setSrcPort(srcPortValues);
 		setDstPort(dstPortValues);
 		setPacketSize(packetSizeValues);
+		setRateThreshold(rateThresholdValue);
 		setMessageText(messageTextValue);
 		setMessageOutputMethod(messageOutputMethodValue);
 	}
@@ -261,6 +276,23 @@ public class PacketTypeToMatch implements Serializable
 		this.dstPortValues = dstPortValues;
 	}
 
+	public SimpleStringProperty rateThresholdProperty()
+	{
+		return rateThreshold;
+	}
+
+	public void setRateThreshold(RateThreshold rateThreshold)
+	{
+		String newStringValue = rateThreshold == null ? rateThreshold_EMPTY : rateThreshold.toString();
+
+		if (this.rateThreshold == null)
+			this.rateThreshold = new SimpleStringProperty(newStringValue);
+		else
+			this.rateThreshold.set(newStringValue);
+		
+		this.rateThresholdValue = rateThreshold;
+	}
+
 	public List<String> getIPsFromIPNotes()
 	{
 		return ipsFromipNotes;
@@ -320,4 +352,43 @@ public class PacketTypeToMatch implements Serializable
 	{
 		return dstPortValues;
 	}
+
+	public RateThreshold getRateThresholdValue()
+	{
+		return rateThresholdValue;
+	}
+
+	/**
+	 * Saves a rule list in the format {@code loadListFromFile()} reads
+	 */
+	public static void saveListToFile(List<PacketTypeToMatch> ruleList, String filename) throws IOException
+	{
+		FileOutputStream fout = FileUtils.openOutputStream(new File(filename));
+		ObjectOutputStream oos = new ObjectOutputStream(fout);
+
+		oos.writeObject(new ArrayList<>(ruleList));
+
+		oos.close();
+		fout.close();
+	}
+
+	/**
+	 * @return the rules saved in {@code filename}, ready to be used
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<PacketTypeToMatch> loadListFromFile(String filename) throws IOException, ClassNotFoundException
+	{
+		FileInputStream fin = new FileInputStream(filename);
+		ObjectInputStream ois = new ObjectInputStream(fin);
+
+		ArrayList<PacketTypeToMatch> ruleList = (ArrayList<PacketTypeToMatch>) ois.readObject();
+
+		ois.close();
+		fin.close();
+
+		for (PacketTypeToMatch row : ruleList)
+			row.initAfterSerialization();
+
+		return ruleList;
+	}
 }
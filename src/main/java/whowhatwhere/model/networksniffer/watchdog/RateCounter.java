@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer.watchdog;
+
+import java.util.Arrays;
+
+import whowhatwhere.model.counters.LongPairIndexMap;
+
+/**
+ * Counts, per key (such as a source IP address, given as a pair of longs), the packets or bytes seen over a sliding window of time, and tells when a key goes above a threshold. <br>
+ * Each key only keeps the totals of the current and the previous fixed-length windows. The sliding window total is estimated by adding 
+ * the part of the previous window's total that's still inside the sliding window, assuming it was spread evenly over that window. <br>
+ * Each key has its own cooldown, so a key that went above the threshold doesn't silence the others. Keys are still counted during their cooldown. <br>
+ * Not thread safe.
+ */
+class RateCounter
+{
+	private final static int initialCapacity = 16;
+	private final static int minKeysBeforeCleanup = 1 << 16; //below this many keys, keys that went idle aren't dropped
+	
+	private long threshold;
+	private long windowInMillis;
+	private long cooldownInNanos;
+	private int keysBeforeCleanup = minKeysBeforeCleanup;
+	
+	private LongPairIndexMap keyToIndex = new LongPairIndexMap();
+	private long[] windowNumbers = new long[initialCapacity]; //per key, which fixed window currentTotals refers to (time / windowInMillis)
+	private long[] currentTotals = new long[initialCapacity];
+	private long[] previousTotals = new long[initialCapacity];
+	private long[] cooldownEnds = new long[initialCapacity]; //per key, the System.nanoTime() value until which the key is silenced
+	private boolean[] isCoolingDown = new boolean[initialCapacity];
+
+	/**
+	 * @param threshold - {@code add()} returns true once a key's total over the window is more than this
+	 * @param windowInMillis - the length of the window
+	 * @param cooldownInNanos - how long a key is silenced after {@code add()} returned true for it, 0 for no cooldown
+	 */
+	public RateCounter(long threshold, long windowInMillis, long cooldownInNanos)
+	{
+		this.threshold = threshold;
+		this.windowInMillis = windowInMillis;
+		this.cooldownInNanos = cooldownInNanos;
+	}
+
+	/**
+	 * @param high - the high 64 bits of the key to count the amount for (0 for IPv4 addresses, which are given as IPv4-mapped addresses)
+	 * @param low - the low 64 bits of the key
+	 * @param amount - amount to add, such as 1 for a packet or the packet's size for bytes
+	 * @param timeInMillis - when the amount was seen. Times that go back to an earlier window are counted in the key's current window.
+	 * @param nowInNanos - the current {@code System.nanoTime()}, for the key's cooldown
+	 * @return true if the key's total over the window went above the threshold, and the key isn't in its cooldown. Either way, the key's totals are then reset, 
+	 * so it has to go above the threshold again for this to return true again.
+	 */
+	public boolean add(long high, long low, long amount, long timeInMillis, long nowInNanos)
+	{
+		long windowNumber = timeInMillis / windowInMillis;
+		int index = keyToIndex.get(high, low);
+		
+		if (index < 0)
+		{
+			if (keyToIndex.size() >= keysBeforeCleanup)
+				dropIdleKeys(windowNumber, nowInNanos);
+			
+			index = keyToIndex.getOrAdd(high, low);
+			ensureCapacity(index + 1);
+			windowNumbers[index] = windowNumber;
+			currentTotals[index] = 0;
+			previousTotals[index] = 0;
+			isCoolingDown[index] = false;
+		}
+		
+		moveToWindow(index, windowNumber);
+		currentTotals[index] += amount;
+		
+		long elapsedInWindow = Math.max(timeInMillis - windowNumbers[index] * windowInMillis, 0);
+		double estimatedTotal = currentTotals[index] + previousTotals[index] * (double) (windowInMillis - elapsedInWindow) / windowInMillis;
+		
+		if (estimatedTotal > threshold)
+		{
+			currentTotals[index] = 0;
+			previousTotals[index] = 0;
+			
+			if (isCoolingDown(index, nowInNanos))
+				return false;
+			
+			if (cooldownInNanos > 0)
+			{
+				cooldownEnds[index] = nowInNanos + cooldownInNanos;
+				isCoolingDown[index] = true;
+			}
+			
+			return true;
+		}
+		
+		return false;
+	}
+
+	private boolean isCoolingDown(int index, long nowInNanos)
+	{
+		if (isCoolingDown[index] && nowInNanos - cooldownEnds[index] >= 0) //nanoTime() values are only compared by their difference
+			isCoolingDown[index] = false;
+		
+		return isCoolingDown[index];
+	}
+
+	private void moveToWindow(int index, long windowNumber)
+	{
+		long windowsPassed = windowNumber - windowNumbers[index];
+		
+		if (windowsPassed <= 0) //same window, or an out of order time from an earlier one
+			return;
+		
+		previousTotals[index] = windowsPassed == 1 ? currentTotals[index] : 0;
+		currentTotals[index] = 0;
+		windowNumbers[index] = windowNumber;
+	}
+
+	/**
+	 * Rebuilds the key map with only the keys that were seen in the current or the previous window or are in their cooldown, since the others have nothing left to keep
+	 */
+	private void dropIdleKeys(long windowNumber, long nowInNanos)
+	{
+		LongPairIndexMap newKeyToIndex = new LongPairIndexMap();
+		
+		for (int i = 0; i < keyToIndex.size(); i++)
+		{
+			if (windowNumbers[i] < windowNumber - 1 && !isCoolingDown(i, nowInNanos))
+				continue;
+			
+			int newIndex = newKeyToIndex.getOrAdd(keyToIndex.getHigh(i), keyToIndex.getLow(i)); //always <= i, so copying in place is safe
+			windowNumbers[newIndex] = windowNumbers[i];
+			currentTotals[newIndex] = currentTotals[i];
+			previousTotals[newIndex] = previousTotals[i];
+			cooldownEnds[newIndex] = cooldownEnds[i];
+			isCoolingDown[newIndex] = isCoolingDown[i];
+		}
+		
+		keyToIndex = newKeyToIndex;
+		keysBeforeCleanup = Math.max(minKeysBeforeCleanup, keyToIndex.size() * 2); //so a window full of active keys doesn't cause a cleanup on every new key
+	}
+
+	private void ensureCapacity(int capacity)
+	{
+		if (capacity <= windowNumbers.length)
+			return;
+		
+		int newCapacity = Math.max(capacity, windowNumbers.length * 2);
+		windowNumbers = Arrays.copyOf(windowNumbers, newCapacity);
+		currentTotals = Arrays.copyOf(currentTotals, newCapacity);
+		previousTotals = Arrays.copyOf(previousTotals, newCapacity);
+		cooldownEnds = Arrays.copyOf(cooldownEnds, newCapacity);
+		isCoolingDown = Arrays.copyOf(isCoolingDown, newCapacity);
+	}
+}
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer.watchdog;
+
+import java.io.Serializable;
+
+/**
+ * Turns a watchdog rule into a rate rule: instead of matching on every matching packet, the rule only matches when more than 
+ * {@code amount} packets or bytes matched it within {@code windowInSecs} seconds, optionally counted separately for each source IP address.
+ */
+public class RateThreshold implements Serializable
+{
+	private static final long serialVersionUID = 8570324080203446406L; //auto-generated, modify if changes to the class are not backwards-compatible
+	
+	public enum ThresholdUnit
+	{
+		PACKETS("packets"), BYTES("bytes");
+		
+		private String value;
+		
+		private ThresholdUnit(String value)
+		{
+			this.value = value;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return value;
+		}
+	}
+	
+	private int amount;
+	private ThresholdUnit unit;
+	private int windowInSecs;
+	private boolean isPerSourceIP;
+
+	/**
+	 * @param amount - the rule matches when more than this many packets or bytes were seen within the window
+	 * @param unit - whether {@code amount} counts packets or bytes (the size of the packets on the wire)
+	 * @param windowInSecs - the length of the sliding window, in seconds
+	 * @param isPerSourceIP - if true, each IPv4 or IPv6 source address is counted separately, and packets without an IP header aren't counted
+	 */
+	public RateThreshold(int amount, ThresholdUnit unit, int windowInSecs, boolean isPerSourceIP)
+	{
+		this.amount = amount;
+		this.unit = unit;
+		this.windowInSecs = windowInSecs;
+		this.isPerSourceIP = isPerSourceIP;
+	}
+
+	public int getAmount()
+	{
+		return amount;
+	}
+
+	public ThresholdUnit getUnit()
+	{
+		return unit;
+	}
+
+	public int getWindowInSecs()
+	{
+		return windowInSecs;
+	}
+
+	public boolean isPerSourceIP()
+	{
+		return isPerSourceIP;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "> " + amount + " " + unit + " in " + windowInSecs + " sec" + (isPerSourceIP ? " per source IP" : "");
+	}
+}
@@ -19,212 +19,105 @@
 package whowhatwhere.model.networksniffer.watchdog;
 
 import java.net.UnknownHostException;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.jnetpcap.packet.PcapPacket;
 import org.jnetpcap.packet.PcapPacketHandler;
 
-import whowhatwhere.controller.watchdog.NumberRange;
-import whowhatwhere.controller.watchdog.NumberRangeValues;
-import whowhatwhere.model.criteria.AndCriteria;
-import whowhatwhere.model.criteria.Criteria;
-import whowhatwhere.model.criteria.CriteriaIP;
-import whowhatwhere.model.criteria.CriteriaPacketDirection;
-import whowhatwhere.model.criteria.CriteriaPacketSize;
-import whowhatwhere.model.criteria.CriteriaPort;
-import whowhatwhere.model.criteria.CriteriaPort.PortType;
-import whowhatwhere.model.criteria.CriteriaProtocol;
-import whowhatwhere.model.criteria.OrCriteria;
-import whowhatwhere.model.criteria.RelativeToValue;
 import whowhatwhere.model.networksniffer.NetworkSniffer;
-import whowhatwhere.model.networksniffer.PacketDirection;
-import whowhatwhere.model.networksniffer.SupportedProtocols;
 
+/**
+ * Checks every captured packet against the watchdog rules and notifies the listener of each match. <br>
+ * In repeated mode each rule has its own cooldown, so a rule that keeps matching doesn't silence the others. 
+ * Cooldowns are kept as {@code System.nanoTime()} deadlines checked on the capture thread, so no timer thread is needed. <br>
+ * A rule with a rate threshold only counts as a match once enough matching packets were seen, see {@code RateThreshold}. Its packets are still counted during its cooldown,
+ * and a rule that counts each source IP address separately has a cooldown per source, both kept by {@code WatchdogRulePlan}.
+ */
 public class WatchdogPacketHandler implements PcapPacketHandler<Void>
 {
-	private enum NumberRangeBasedCriteria {PORT, PACKETSIZE}
+	private static final Logger logger = Logger.getLogger(WatchdogPacketHandler.class.getPackage().getName());
 	
 	private boolean isRepeated;
-	private Integer cooldownInSecs;
-	private boolean isCooldownPeriod = false;
-	private ScheduledThreadPoolExecutor timer;
+	private long cooldownInNanos;
 	private WatchdogListener listener;
 	private NetworkSniffer sniffer;
-	private byte[] ownMACAddress;
-	
-	private List<Criteria<PcapPacket, Boolean>> criteriaList;
-	private Map<Criteria<PcapPacket, Boolean>, WatchdogMessage> criteriaToMsgMap = new HashMap<>();
+	private WatchdogRulePlan rulePlan;
+	private long[] cooldownEnds; //per rule without a rate threshold, the System.nanoTime() value until which the rule is silenced
+	private long[] hitCounts; //per rule, how many times the rule matched (or went over its rate threshold) and the listener was notified
 
 	public WatchdogPacketHandler(List<PacketTypeToMatch> packetTypeList, boolean isRepeated, Integer cooldownInSecs, WatchdogListener listener, NetworkSniffer sniffer, byte[] ownMACAddress)
 			throws IllegalArgumentException, UnknownHostException
 	{
 		this.isRepeated = isRepeated;
-		this.cooldownInSecs = cooldownInSecs;
 		this.listener = listener;
 		this.sniffer = sniffer;
-		this.ownMACAddress = ownMACAddress;
 
 		if (isRepeated && cooldownInSecs == null)
 			throw new IllegalArgumentException("A repeated task cannot have a null cooldownInSecs");
 
-		timer = new ScheduledThreadPoolExecutor(1);
+		cooldownInNanos = isRepeated ? TimeUnit.SECONDS.toNanos(cooldownInSecs) : 0;
 
-		criteriaList = convertPacketTypeToMatchListToCriteria(packetTypeList);
+		rulePlan = new WatchdogRulePlan(packetTypeList, ownMACAddress, cooldownInNanos);
 
-		if (criteriaList.size() == 0)
+		if (rulePlan.getRuleCount() == 0)
 			throw new IllegalArgumentException("No criteria was set");
+		
+		cooldownEnds = new long[rulePlan.getRuleCount()];
+		Arrays.fill(cooldownEnds, System.nanoTime()); //nanoTime() can be negative, so 0 wouldn't mean "not silenced"
+		hitCounts = new long[rulePlan.getRuleCount()];
 	}
 
 	@Override
 	public void nextPacket(PcapPacket packet, Void nothing)
 	{
-		if (!isCooldownPeriod)
+		rulePlan.load(packet);
+		long now = System.nanoTime();
+		
+		for (int i = rulePlan.nextCandidate(0); i >= 0; i = rulePlan.nextCandidate(i + 1))
 		{
-			for (Criteria<PcapPacket, Boolean> criteria : criteriaList)
+			boolean hasRateThreshold = rulePlan.hasRateThreshold(i);
+			
+			if (isRepeated && !hasRateThreshold && now - cooldownEnds[i] < 0) //this rule is silenced, no need to check it
+				continue;
+			
+			if (rulePlan.matches(i) && rulePlan.countTowardsRate(i, now))
 			{
-				if (criteria.meetCriteria(packet))
-				{
-					if (isRepeated)
-					{
-						isCooldownPeriod = true;
-
-						timer.schedule(() -> isCooldownPeriod = false, cooldownInSecs, TimeUnit.SECONDS);
-					}
-					else
-						sniffer.stopCapture();
+				hitCounts[i]++;
+				
+				if (isRepeated && !hasRateThreshold)
+					cooldownEnds[i] = now + cooldownInNanos;
+				else
+					sniffer.stopCapture();
 
-					listener.watchdogFoundMatchingPacket(packet, criteriaToMsgMap.get(criteria));
-				}
+				listener.watchdogFoundMatchingPacket(packet, rulePlan.getMessage(i));
 			}
 		}
 	}
 
-	private List<Criteria<PcapPacket, Boolean>> convertPacketTypeToMatchListToCriteria(List<PacketTypeToMatch> packetTypeList)
+	/**
+	 * @param ruleIndex - index of the compiled rule, between 0 and {@code getRuleCount() - 1}
+	 * @return how many times the rule matched a packet outside of its cooldown
+	 */
+	public long getHitCount(int ruleIndex)
 	{
-		List<Criteria<PcapPacket, Boolean>> criterias = new ArrayList<>();
-
-		for (PacketTypeToMatch item : packetTypeList)
-		{
-			Criteria<PcapPacket, Boolean> andCriteria = null;
-			List<Criteria<PcapPacket, Boolean>> criteriasToAND = generateCriteriasToAND(item);
-
-			if (criteriasToAND.size() > 0)
-				andCriteria = criteriasToAND.get(0);
-
-			for (int i = 1; i < criteriasToAND.size(); i++)
-				andCriteria = new AndCriteria<PcapPacket>(andCriteria, criteriasToAND.get(i));
-
-			if (criteriasToAND.size() > 0)
-			{
-				criterias.add(andCriteria);
-				criteriaToMsgMap.put(andCriteria, new WatchdogMessage(item.getMessageTextValue(), item.getMessageOutputMethodValue()));
-			}
-		}
-
-		return criterias;
+		return hitCounts[ruleIndex];
 	}
 
-	private List<Criteria<PcapPacket, Boolean>> generateCriteriasToAND(PacketTypeToMatch item)
+	public int getRuleCount()
 	{
-		List<Criteria<PcapPacket, Boolean>> criteriasToAND = new ArrayList<>();
-
-		if (item.getPacketDirectionValue() != null)
-			criteriasToAND.add(new CriteriaPacketDirection(item.getPacketDirectionValue(), ownMACAddress));
-
-		String ipAddress = item.getIpAddressValue();
-		if (ipAddress != null && !ipAddress.equals(PacketTypeToMatch.IPAddress_EMPTY))
-		{
-			String temp = item.getNetmaskValue();
-			String netmask = temp == null || temp.isEmpty() || temp.equals(PacketTypeToMatch.netmask_EMPTY) ? "255.255.255.255" : temp;
-			criteriasToAND.add(new CriteriaIP(ipAddress, netmask, item.getPacketDirectionValue()));
-		}
-
-		String ipNotesValue = item.getIPNotesValue();
-		if (ipNotesValue != null && !ipNotesValue.equals(PacketTypeToMatch.ipNotes_EMPTY))
-		{
-			List<String> ipsFromIPNotes = item.getIPsFromIPNotes();
-			int ipsToAdd = ipsFromIPNotes.size();
-
-			if (ipsToAdd > 0)
-			{
-				PacketDirection packetDirectionValue = item.getPacketDirectionValue();
-				
-				Criteria<PcapPacket, Boolean> orBetweenIPs = new CriteriaIP(ipsFromIPNotes.get(0), "255.255.255.255", packetDirectionValue);
-
-				for (int i = 1; i < ipsToAdd; i++)
-					orBetweenIPs = new OrCriteria<PcapPacket>(orBetweenIPs, new CriteriaIP(ipsFromIPNotes.get(i), "255.255.255.255", packetDirectionValue));
-
-				criteriasToAND.add(orBetweenIPs);
-			}
-		}
-
-		Criteria<PcapPacket, Boolean> packetSizeCriteria = generateNumberRangeBasedCriteria(NumberRangeBasedCriteria.PORT, item.getPacketSizeValues(), null);
-		if (packetSizeCriteria != null)
-			criteriasToAND.add(packetSizeCriteria);
-		
-		SupportedProtocols protocol = item.getProtocolValue();
-		if (protocol != null)
-			criteriasToAND.add(new CriteriaProtocol(protocol));
-		
-		Criteria<PcapPacket, Boolean> srcPortCriteria = generateNumberRangeBasedCriteria(NumberRangeBasedCriteria.PORT, item.getSrcPortValues(), PortType.SOURCE);
-		if (srcPortCriteria != null)
-			criteriasToAND.add(srcPortCriteria);
-		
-		Criteria<PcapPacket, Boolean> dstPortCriteria = generateNumberRangeBasedCriteria(NumberRangeBasedCriteria.PORT, item.getDstPortValues(), PortType.DESTINATION);
-		if (dstPortCriteria != null)
-			criteriasToAND.add(dstPortCriteria);
-		
-		return criteriasToAND;
+		return rulePlan.getRuleCount();
 	}
-	
-	
+
 	/**
-	 * @param criteriaType - type of criteria to generate
-	 * @param numberRangeValues - the number range values
-	 * @param portType - if it's a CriteriaPort, this is the type of port for the criteria. Otherwise, ignored, should be null.
-	 * @return - the requested criteria, or null if there's no NumberRange set
+	 * Logs how many times each rule matched, to help find rules that are too noisy
 	 */
-	private Criteria<PcapPacket, Boolean> generateNumberRangeBasedCriteria(NumberRangeBasedCriteria criteriaType, NumberRangeValues numberRangeValues, PortType portType)
+	public void logHitCounts()
 	{
-		if (numberRangeValues != null)
-		{
-			NumberRange numberRange = numberRangeValues.getRange();
-			Integer leftValue = numberRangeValues.getLeftValue();
-			
-			if (criteriaType == NumberRangeBasedCriteria.PORT)
-				switch (numberRange)
-				{
-					case EQUALS:
-						return new CriteriaPort(leftValue, RelativeToValue.EQUALS, portType);
-					case GREATER_THAN:
-						return new CriteriaPort(leftValue, RelativeToValue.GREATER_THAN, portType);
-					case LESS_THAN:
-						return new CriteriaPort(leftValue, RelativeToValue.LESS_THAN, portType);
-					case RANGE:
-						return new AndCriteria<PcapPacket>(new CriteriaPort(leftValue, RelativeToValue.GREATER_THAN, portType), 
-															new CriteriaPort(numberRangeValues.getRightValue(), RelativeToValue.LESS_THAN, portType));
-				}
-			else
-				if (criteriaType == NumberRangeBasedCriteria.PACKETSIZE)
-					switch (numberRange)
-					{
-						case EQUALS:
-							return new CriteriaPacketSize(leftValue, RelativeToValue.EQUALS);
-						case GREATER_THAN:
-							return new CriteriaPacketSize(leftValue, RelativeToValue.GREATER_THAN);
-						case LESS_THAN:
-							return new CriteriaPacketSize(leftValue, RelativeToValue.LESS_THAN);
-						case RANGE:
-							return new AndCriteria<PcapPacket>(new CriteriaPacketSize(leftValue, RelativeToValue.GREATER_THAN), 
-																new CriteriaPacketSize(numberRangeValues.getRightValue(), RelativeToValue.LESS_THAN));
-					}
-		}
-
-		return null; //nothing to add, just return null
+		for (int i = 0; i < hitCounts.length; i++)
+			logger.log(Level.INFO, "Watchdog rule " + rulePlan.getRuleAsText(i) + " matched " + hitCounts[i] + " times");
 	}
 }
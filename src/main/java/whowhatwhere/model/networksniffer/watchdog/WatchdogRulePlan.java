@@ -0,0 +1,426 @@
+/*******************************************************************************
+ * Who What Where
+ * Copyright (C) 2017  ck3ck3
+ * https://github.com/ck3ck3/WhoWhatWhere
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package whowhatwhere.model.networksniffer.watchdog;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jnetpcap.packet.PcapPacket;
+
+import whowhatwhere.controller.watchdog.NumberRange;
+import whowhatwhere.controller.watchdog.NumberRangeValues;
+import whowhatwhere.model.criteria.AndCriteria;
+import whowhatwhere.model.criteria.Criteria;
+import whowhatwhere.model.criteria.CriteriaIP;
+import whowhatwhere.model.criteria.CriteriaIPSet;
+import whowhatwhere.model.criteria.CriteriaPacketDirection;
+import whowhatwhere.model.criteria.CriteriaPacketSize;
+import whowhatwhere.model.criteria.CriteriaPort;
+import whowhatwhere.model.criteria.CriteriaPort.PortType;
+import whowhatwhere.model.criteria.CriteriaProtocol;
+import whowhatwhere.model.criteria.RelativeToValue;
+import whowhatwhere.model.networksniffer.PacketView;
+import whowhatwhere.model.networksniffer.SupportedProtocols;
+
+/**
+ * The watchdog rules compiled once into criteria that are all checked against a single {@code PacketView}. <br>
+ * A packet is loaded once with {@code load()}, and then every rule is checked against the header fields the view already extracted, 
+ * instead of each rule decoding the packet again. <br>
+ * Each rule is also filed under one of its fields (an exact port, a port or packet size range, or a protocol), 
+ * so {@code load()} only picks the rules that can match the packet as candidates, and the rest aren't checked at all. <br>
+ * Not thread safe.
+ */
+public class WatchdogRulePlan
+{
+	private enum NumberRangeBasedCriteria {PORT, PACKETSIZE}
+	
+	private final static int portCount = 65536;
+	private final static long ip4MappedPrefix = 0xFFFF00000000L; //per source rate counters keep IPv4 addresses as IPv4-mapped IPv6 addresses (::ffff:a.b.c.d)
+	private final static SupportedProtocols[] protocols = SupportedProtocols.values();
+	
+	private PacketView packetView;
+	private List<Criteria<PacketView, Boolean>> rules = new ArrayList<>();
+	private List<WatchdogMessage> messages = new ArrayList<>();
+	private List<RateThreshold> rateThresholds = new ArrayList<>(); //null for rules that match on every packet
+	private List<RateCounter> rateCounters = new ArrayList<>();
+	
+	private BitSet candidates = new BitSet();
+	private BitSet unindexedRules = new BitSet(); //rules without any field to be filed under, checked against every packet
+	private BitSet[] protocolRules = new BitSet[protocols.length]; //by SupportedProtocols ordinal
+	private BitSet[] srcPortRules; //by exact source port, only allocated if a rule has one
+	private BitSet[] dstPortRules; //by exact destination port, only allocated if a rule has one
+	private IntervalRuleIndex srcPortRangeRules = new IntervalRuleIndex();
+	private IntervalRuleIndex dstPortRangeRules = new IntervalRuleIndex();
+	private IntervalRuleIndex packetSizeRules = new IntervalRuleIndex();
+	private boolean hasPortRules;
+
+	/**
+	 * @param packetTypeList - the rules to compile. Rules without any criteria are dropped.
+	 * @param ownMACAddress - the MAC address of the capturing device, used by rules that match a packet direction
+	 * @param rateCooldownInNanos - how long a rule with a rate threshold is silenced after it went over its threshold, separately for each source IP address if it counts them separately. 0 for no cooldown.
+	 */
+	public WatchdogRulePlan(List<PacketTypeToMatch> packetTypeList, byte[] ownMACAddress, long rateCooldownInNanos)
+	{
+		packetView = new PacketView(ownMACAddress);
+		
+		for (PacketTypeToMatch item : packetTypeList)
+		{
+			Criteria<PacketView, Boolean> andCriteria = null;
+			List<Criteria<PacketView, Boolean>> criteriasToAND = generateCriteriasToAND(item);
+
+			if (criteriasToAND.size() > 0)
+				andCriteria = criteriasToAND.get(0);
+
+			for (int i = 1; i < criteriasToAND.size(); i++)
+				andCriteria = new AndCriteria<PacketView>(andCriteria, criteriasToAND.get(i));
+
+			if (criteriasToAND.size() > 0)
+			{
+				rules.add(andCriteria);
+				messages.add(new WatchdogMessage(item.getMessageTextValue(), item.getMessageOutputMethodValue()));
+				
+				RateThreshold rateThreshold = item.getRateThresholdValue();
+				rateThresholds.add(rateThreshold);
+				rateCounters.add(rateThreshold == null ? null : new RateCounter(rateThreshold.getAmount(), TimeUnit.SECONDS.toMillis(rateThreshold.getWindowInSecs()), rateCooldownInNanos));
+				
+				indexRule(item, rules.size() - 1);
+			}
+		}
+		
+		srcPortRangeRules.build();
+		dstPortRangeRules.build();
+		packetSizeRules.build();
+		
+		hasPortRules = srcPortRules != null || dstPortRules != null || !srcPortRangeRules.isEmpty() || !dstPortRangeRules.isEmpty();
+	}
+
+	public int getRuleCount()
+	{
+		return rules.size();
+	}
+
+	/**
+	 * Makes the following calls to {@code matches()} check the given packet, and picks the rules that can match it as candidates.
+	 * 
+	 * @param packet - the packet to check
+	 */
+	public void load(PcapPacket packet)
+	{
+		packetView.load(packet);
+		
+		candidates.clear();
+		candidates.or(unindexedRules);
+		
+		for (int i = 0; i < protocolRules.length; i++)
+			if (protocolRules[i] != null && packetView.hasHeader(protocols[i].getValue()))
+				candidates.or(protocolRules[i]);
+		
+		if (!packetSizeRules.isEmpty())
+			packetSizeRules.addRulesContaining(packetView.getWireLength(), candidates);
+		
+		if (hasPortRules && packetView.hasPorts())
+		{
+			int srcPort = packetView.getSourcePort(), dstPort = packetView.getDestinationPort();
+			
+			if (srcPortRules != null && srcPortRules[srcPort] != null)
+				candidates.or(srcPortRules[srcPort]);
+			
+			if (dstPortRules != null && dstPortRules[dstPort] != null)
+				candidates.or(dstPortRules[dstPort]);
+			
+			srcPortRangeRules.addRulesContaining(srcPort, candidates);
+			dstPortRangeRules.addRulesContaining(dstPort, candidates);
+		}
+	}
+
+	/**
+	 * Iterates the candidate rules of the loaded packet in rule order, like {@code BitSet.nextSetBit()}.
+	 * 
+	 * @param fromRuleIndex - the rule index to start looking from, inclusive
+	 * @return index of the next candidate rule, or -1 if there are no more candidates
+	 */
+	public int nextCandidate(int fromRuleIndex)
+	{
+		return candidates.nextSetBit(fromRuleIndex);
+	}
+
+	/**
+	 * @param ruleIndex - index of the rule, between 0 and {@code getRuleCount() - 1}
+	 * @return true if the loaded packet matches the rule
+	 */
+	public boolean matches(int ruleIndex)
+	{
+		return rules.get(ruleIndex).meetCriteria(packetView);
+	}
+
+	/**
+	 * @param ruleIndex - index of the rule, between 0 and {@code getRuleCount() - 1}
+	 * @return true if the rule has a rate threshold, in which case its cooldown is kept by the rule plan (see {@code countTowardsRate()})
+	 */
+	public boolean hasRateThreshold(int ruleIndex)
+	{
+		return rateThresholds.get(ruleIndex) != null;
+	}
+
+	/**
+	 * Counts the loaded packet, which matched the rule, towards the rule's rate threshold. Should be called once per matching packet, including during the rule's cooldown.
+	 * 
+	 * @param ruleIndex - index of the rule, between 0 and {@code getRuleCount() - 1}
+	 * @param nowInNanos - the current {@code System.nanoTime()}, for the cooldown
+	 * @return true if the rule has no rate threshold, or if this packet took it over its threshold outside of its cooldown (of the packet's source IP address, if it's counted separately)
+	 */
+	public boolean countTowardsRate(int ruleIndex, long nowInNanos)
+	{
+		RateThreshold rateThreshold = rateThresholds.get(ruleIndex);
+		
+		if (rateThreshold == null)
+			return true;
+		
+		long high = 0, low = 0; //all packets are counted together
+		
+		if (rateThreshold.isPerSourceIP())
+		{
+			if (packetView.hasIp4())
+				low = ip4MappedPrefix | (packetView.getSourceIp() & 0xFFFFFFFFL);
+			else
+				if (packetView.hasIp6())
+				{
+					high = packetView.getSourceIp6High();
+					low = packetView.getSourceIp6Low();
+				}
+				else
+					return false;
+		}
+		
+		long amount = rateThreshold.getUnit() == RateThreshold.ThresholdUnit.BYTES ? packetView.getWireLength() : 1;
+		
+		return rateCounters.get(ruleIndex).add(high, low, amount, packetView.getTimestampInMillis(), nowInNanos);
+	}
+
+	/**
+	 * @param ruleIndex - index of the rule, between 0 and {@code getRuleCount() - 1}
+	 * @return the rule's criteria as text
+	 */
+	public String getRuleAsText(int ruleIndex)
+	{
+		RateThreshold rateThreshold = rateThresholds.get(ruleIndex);
+		
+		return rules.get(ruleIndex).getCriteriaAsText() + (rateThreshold == null ? "" : " " + rateThreshold);
+	}
+
+	/**
+	 * @param ruleIndex - index of the rule, between 0 and {@code getRuleCount() - 1}
+	 * @return the message of the rule
+	 */
+	public WatchdogMessage getMessage(int ruleIndex)
+	{
+		return messages.get(ruleIndex);
+	}
+
+	/**
+	 * Files the rule under its most selective field, so it's only a candidate for packets that have a matching value in that field. <br>
+	 * A candidate's criteria are still checked in full, so the field it's filed under only affects how many packets it's checked against.
+	 * 
+	 * @param item - the rule
+	 * @param ruleIndex - index of the compiled rule
+	 */
+	private void indexRule(PacketTypeToMatch item, int ruleIndex)
+	{
+		NumberRangeValues srcPort = item.getSrcPortValues(), dstPort = item.getDstPortValues(), packetSize = item.getPacketSizeValues();
+		SupportedProtocols protocol = item.getProtocolValue();
+		
+		if (isSingleValue(dstPort))
+		{
+			dstPortRules = addToPortTable(dstPortRules, dstPort.getLeftValue(), ruleIndex);
+			return;
+		}
+		
+		if (isSingleValue(srcPort))
+		{
+			srcPortRules = addToPortTable(srcPortRules, srcPort.getLeftValue(), ruleIndex);
+			return;
+		}
+		
+		if (dstPort != null)
+		{
+			addRange(dstPortRangeRules, dstPort, portCount - 1, ruleIndex);
+			return;
+		}
+		
+		if (srcPort != null)
+		{
+			addRange(srcPortRangeRules, srcPort, portCount - 1, ruleIndex);
+			return;
+		}
+		
+		if (packetSize != null)
+		{
+			addRange(packetSizeRules, packetSize, Integer.MAX_VALUE, ruleIndex);
+			return;
+		}
+		
+		if (protocol != null)
+		{
+			if (protocolRules[protocol.ordinal()] == null)
+				protocolRules[protocol.ordinal()] = new BitSet();
+			
+			protocolRules[protocol.ordinal()].set(ruleIndex);
+			return;
+		}
+		
+		unindexedRules.set(ruleIndex);
+	}
+
+	private boolean isSingleValue(NumberRangeValues numberRangeValues)
+	{
+		return numberRangeValues != null && numberRangeValues.getRange() == NumberRange.EQUALS;
+	}
+
+	/**
+	 * @param table - a table of rules by port, or null if it wasn't allocated yet
+	 * @param port - the port the rule matches
+	 * @param ruleIndex - index of the rule
+	 * @return the table, allocated if it was null
+	 */
+	private BitSet[] addToPortTable(BitSet[] table, int port, int ruleIndex)
+	{
+		if (table == null)
+			table = new BitSet[portCount];
+		
+		if (port >= 0 && port < portCount) //otherwise no packet can match the rule, so it's never a candidate
+		{
+			if (table[port] == null)
+				table[port] = new BitSet();
+			
+			table[port].set(ruleIndex);
+		}
+		
+		return table;
+	}
+
+	/**
+	 * @param index - the index to add the range to
+	 * @param numberRangeValues - the number range values, in the same meaning as for the criteria generated from them
+	 * @param maxValue - the highest value the field can have
+	 * @param ruleIndex - index of the rule
+	 */
+	private void addRange(IntervalRuleIndex index, NumberRangeValues numberRangeValues, int maxValue, int ruleIndex)
+	{
+		int leftValue = numberRangeValues.getLeftValue();
+		
+		switch (numberRangeValues.getRange())
+		{
+			case EQUALS:		index.add(leftValue, leftValue, ruleIndex); break;
+			case GREATER_THAN:	index.add(leftValue, maxValue, ruleIndex); break;
+			case LESS_THAN:		index.add(0, leftValue, ruleIndex); break;
+			case RANGE:			index.add(leftValue, numberRangeValues.getRightValue(), ruleIndex); break;
+		}
+	}
+
+	private List<Criteria<PacketView, Boolean>> generateCriteriasToAND(PacketTypeToMatch item)
+	{
+		List<Criteria<PacketView, Boolean>> criteriasToAND = new ArrayList<>();
+
+		if (item.getPacketDirectionValue() != null)
+			criteriasToAND.add(new CriteriaPacketDirection(item.getPacketDirectionValue()));
+
+		String ipAddress = item.getIpAddressValue();
+		if (ipAddress != null && !ipAddress.equals(PacketTypeToMatch.IPAddress_EMPTY))
+		{
+			String temp = item.getNetmaskValue();
+			String netmask = temp == null || temp.isEmpty() || temp.equals(PacketTypeToMatch.netmask_EMPTY) ? "255.255.255.255" : temp;
+			criteriasToAND.add(new CriteriaIP(ipAddress, netmask, item.getPacketDirectionValue()));
+		}
+
+		String ipNotesValue = item.getIPNotesValue();
+		if (ipNotesValue != null && !ipNotesValue.equals(PacketTypeToMatch.ipNotes_EMPTY))
+		{
+			List<String> ipsFromIPNotes = item.getIPsFromIPNotes();
+
+			if (ipsFromIPNotes.size() > 0)
+				criteriasToAND.add(new CriteriaIPSet(ipsFromIPNotes, item.getPacketDirectionValue()));
+		}
+
+		Criteria<PacketView, Boolean> packetSizeCriteria = generateNumberRangeBasedCriteria(NumberRangeBasedCriteria.PACKETSIZE, item.getPacketSizeValues(), null);
+		if (packetSizeCriteria != null)
+			criteriasToAND.add(packetSizeCriteria);
+		
+		SupportedProtocols protocol = item.getProtocolValue();
+		if (protocol != null)
+			criteriasToAND.add(new CriteriaProtocol(protocol));
+		
+		Criteria<PacketView, Boolean> srcPortCriteria = generateNumberRangeBasedCriteria(NumberRangeBasedCriteria.PORT, item.getSrcPortValues(), PortType.SOURCE);
+		if (srcPortCriteria != null)
+			criteriasToAND.add(srcPortCriteria);
+		
+		Criteria<PacketView, Boolean> dstPortCriteria = generateNumberRangeBasedCriteria(NumberRangeBasedCriteria.PORT, item.getDstPortValues(), PortType.DESTINATION);
+		if (dstPortCriteria != null)
+			criteriasToAND.add(dstPortCriteria);
+		
+		return criteriasToAND;
+	}
+	
+	
+	/**
+	 * @param criteriaType - type of criteria to generate
+	 * @param numberRangeValues - the number range values
+	 * @param portType - if it's a CriteriaPort, this is the type of port for the criteria. Otherwise, ignored, should be null.
+	 * @return - the requested criteria, or null if there's no NumberRange set
+	 */
+	private Criteria<PacketView, Boolean> generateNumberRangeBasedCriteria(NumberRangeBasedCriteria criteriaType, NumberRangeValues numberRangeValues, PortType portType)
+	{
+		if (numberRangeValues != null)
+		{
+			NumberRange numberRange = numberRangeValues.getRange();
+			Integer leftValue = numberRangeValues.getLeftValue();
+			
+			if (criteriaType == NumberRangeBasedCriteria.PORT)
+				switch (numberRange)
+				{
+					case EQUALS:
+						return new CriteriaPort(leftValue, RelativeToValue.EQUALS, portType);
+					case GREATER_THAN:
+						return new CriteriaPort(leftValue, RelativeToValue.GREATER_THAN, portType);
+					case LESS_THAN:
+						return new CriteriaPort(leftValue, RelativeToValue.LESS_THAN, portType);
+					case RANGE:
+						return new AndCriteria<PacketView>(new CriteriaPort(leftValue, RelativeToValue.GREATER_THAN, portType), 
+															new CriteriaPort(numberRangeValues.getRightValue(), RelativeToValue.LESS_THAN, portType));
+				}
+			else
+				if (criteriaType == NumberRangeBasedCriteria.PACKETSIZE)
+					switch (numberRange)
+					{
+						case EQUALS:
+							return new CriteriaPacketSize(leftValue, RelativeToValue.EQUALS);
+						case GREATER_THAN:
+							return new CriteriaPacketSize(leftValue, RelativeToValue.GREATER_THAN);
+						case LESS_THAN:
+							return new CriteriaPacketSize(leftValue, RelativeToValue.LESS_THAN);
+						case RANGE:
+							return new AndCriteria<PacketView>(new CriteriaPacketSize(leftValue, RelativeToValue.GREATER_THAN), 
+																new CriteriaPacketSize(numberRangeValues.getRightValue(), RelativeToValue.LESS_THAN));
+					}
+		}
+
+		return null; //nothing to add, just return null
+	}
+}